@@ -5,7 +5,9 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
@@ -28,23 +30,31 @@ import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientState;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientStateStore;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientSubscriptionManager;
+import com.mihir.alzheimerscaregiver.caretaker.utils.LocationTrailBuffer;
+import com.mihir.alzheimerscaregiver.caretaker.utils.MarkerInterpolator;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 /**
  * CaretakerMapActivity - Real-time patient location monitoring
  * 
  * Features:
- * - Real-time location updates from Firebase
+ * - Real-time location updates from Firebase, through the listener shared by
+ *   PatientSubscriptionManager (the dashboard and this screen use the same one)
  * - Stale location detection and warnings
  * - Camera animation to patient location
+ * - Live tracking: one marker animated between fixes, rolling trail of recent points,
+ *   map redraws driven by Choreographer so they never exceed the display frame rate
  * - Location status indicators
  * - Last update timestamp display
  */
@@ -52,8 +62,10 @@ public class CaretakerMapActivity extends AppCompatActivity implements OnMapRead
 
     private static final String TAG = "CaretakerMapActivity";
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
-    private static final long STALE_THRESHOLD_MS = 15 * 60 * 1000; // 15 minutes (best practice)
-    private static final long MIN_UPDATE_INTERVAL_MS = 5000; // Minimum 5 seconds between updates
+    private static final long STALE_THRESHOLD_MS = PatientStateStore.STALE_THRESHOLD_MS;
+    private static final long MIN_UPDATE_INTERVAL_MS = 5000; // Minimum 5 seconds between status text updates
+    private static final long MARKER_ANIMATION_MS = 1000; // Glide between fixes over one second
+    private static final int TRAIL_CAPACITY = 60; // ~10 minutes of test-mode uploads
     
     // UI Components
     private MapView mapView;
@@ -67,8 +79,7 @@ public class CaretakerMapActivity extends AppCompatActivity implements OnMapRead
     private MaterialButton buttonGeofences;
     
     // Firebase
-    private DatabaseReference databaseReference;
-    private ValueEventListener locationListener;
+    private PatientSubscriptionManager.Subscription locationSubscription;
     
     // Map data
     private Marker patientMarker;
@@ -76,8 +87,16 @@ public class CaretakerMapActivity extends AppCompatActivity implements OnMapRead
     private String patientName;
     private boolean isFirstLocationUpdate = true;
     private long lastUpdateTime = 0;
-    private double lastLatitude = 0;
-    private double lastLongitude = 0;
+    
+    // Live tracking
+    private Polyline trailPolyline;
+    private final LocationTrailBuffer trailBuffer = new LocationTrailBuffer(TRAIL_CAPACITY);
+    private final MarkerInterpolator markerInterpolator = new MarkerInterpolator(MARKER_ANIMATION_MS);
+    private final List<LatLng> trailPoints = new ArrayList<>(TRAIL_CAPACITY);
+    private boolean markerShownStale;
+    private boolean trailDirty;
+    private boolean frameScheduled;
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> onMapFrame();
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -103,9 +122,6 @@ public class CaretakerMapActivity extends AppCompatActivity implements OnMapRead
         mapView.onCreate(savedInstanceState);
         mapView.getMapAsync(this);
         
-        // Initialize Firebase
-        databaseReference = FirebaseDatabase.getInstance().getReference();
-        
         Log.d(TAG, "CaretakerMapActivity initialized for patient: " + patientId);
     }
     
@@ -223,55 +239,42 @@ public class CaretakerMapActivity extends AppCompatActivity implements OnMapRead
     
     /**
      * Start listening for real-time location updates from Firebase
+     * Reuses the dashboard's listener when there is one; the cached fix is replayed at once.
      */
     private void startLocationListener() {
-        if (databaseReference == null || patientId == null) {
-            Log.e(TAG, "Database reference or patient ID is null");
+        if (patientId == null || locationSubscription != null) {
             return;
         }
         
-        DatabaseReference locationRef = databaseReference
-                .child("locations")
-                .child(patientId);
-        
-        locationListener = new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                if (dataSnapshot.exists()) {
-                    try {
-                        Double latitude = dataSnapshot.child("latitude").getValue(Double.class);
-                        Double longitude = dataSnapshot.child("longitude").getValue(Double.class);
-                        Long timestamp = dataSnapshot.child("timestamp").getValue(Long.class);
-                        
-                        if (latitude != null && longitude != null && timestamp != null) {
-                            updatePatientLocation(latitude, longitude, timestamp);
-                        } else {
+        locationSubscription = PatientSubscriptionManager.getInstance().acquire(this, patientId,
+                PatientSubscriptionManager.Channel.LOCATION, new PatientSubscriptionManager.SnapshotListener() {
+                    @Override
+                    public void onSnapshot(DataSnapshot snapshot) {
+                        // The manager has already parsed the snapshot into the store
+                        PatientState state = PatientStateStore.getInstance().get(patientId);
+                        if (state != null && state.hasLocation()) {
+                            updatePatientLocation(state.latitude, state.longitude, state.locationTimestamp);
+                        } else if (snapshot.exists()) {
                             Log.w(TAG, "Incomplete location data received");
                             updateLocationStatus("Incomplete location data", false);
+                        } else {
+                            Log.d(TAG, "No location data found for patient: " + patientId);
+                            updateLocationStatus("No location data available", false);
                         }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error parsing location data", e);
-                        updateLocationStatus("Error parsing location data", false);
                     }
-                } else {
-                    Log.d(TAG, "No location data found for patient: " + patientId);
-                    updateLocationStatus("No location data available", false);
-                }
-            }
-            
-            @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
-                Log.e(TAG, "Failed to read location data", databaseError.toException());
-                updateLocationStatus("Failed to load location data", false);
-            }
-        };
-        
-        locationRef.addValueEventListener(locationListener);
+                    
+                    @Override
+                    public void onError(String message) {
+                        Log.e(TAG, "Failed to read location data: " + message);
+                        updateLocationStatus("Failed to load location data", false);
+                    }
+                });
         Log.d(TAG, "Started listening for location updates for patient: " + patientId);
     }
     
     /**
-     * Update patient location on map with stale detection and throttling
+     * Update patient location on map with stale detection
+     * The marker is created once and animated towards each new fix on the next frames.
      */
     private void updatePatientLocation(double latitude, double longitude, long timestamp) {
         if (googleMap == null) {
@@ -279,64 +282,97 @@ public class CaretakerMapActivity extends AppCompatActivity implements OnMapRead
             return;
         }
         
-        // Throttle updates - only update if enough time has passed and location has changed significantly
         long currentTime = System.currentTimeMillis();
-        boolean hasLocationChanged = (Math.abs(latitude - lastLatitude) > 0.0001 || Math.abs(longitude - lastLongitude) > 0.0001);
-        boolean enoughTimePassed = (currentTime - lastUpdateTime) > MIN_UPDATE_INTERVAL_MS;
-        
-        if (!isFirstLocationUpdate && !hasLocationChanged && !enoughTimePassed) {
-            Log.d(TAG, "Throttling location update");
-            return;
-        }
-        
-        LatLng patientLocation = new LatLng(latitude, longitude);
         boolean isStale = (currentTime - timestamp) > STALE_THRESHOLD_MS;
         
-        // Update only if marker position changed or marker doesn't exist
-        if (patientMarker == null || hasLocationChanged) {
-            // Remove existing marker
-            if (patientMarker != null) {
-                patientMarker.remove();
-            }
-        
-        // Create new marker
-        MarkerOptions markerOptions = new MarkerOptions()
-                .position(patientLocation)
-                .title(patientName != null ? patientName : "Patient")
-                .snippet("Last updated: " + formatTimestamp(timestamp));
-        
-        // Set marker color based on staleness
-        if (isStale) {
-            markerOptions.icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_RED));
-        } else {
-            markerOptions.icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN));
+        if (trailBuffer.add(latitude, longitude, timestamp)) {
+            markerInterpolator.setTarget(latitude, longitude, SystemClock.uptimeMillis());
+            trailDirty = true;
         }
         
-            patientMarker = googleMap.addMarker(markerOptions);
+        if (patientMarker == null) {
+            LatLng patientLocation = new LatLng(latitude, longitude);
+            patientMarker = googleMap.addMarker(new MarkerOptions()
+                    .position(patientLocation)
+                    .title(patientName != null ? patientName : "Patient")
+                    .snippet("Last updated: " + formatTimestamp(timestamp))
+                    .icon(markerIcon(isStale)));
+            markerShownStale = isStale;
             
-            // Animate camera on first update only
-            if (isFirstLocationUpdate) {
-                googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(patientLocation, 15f));
-                isFirstLocationUpdate = false;
+            trailPolyline = googleMap.addPolyline(new PolylineOptions()
+                    .width(6f)
+                    .color(ContextCompat.getColor(this, R.color.primary_color))
+                    .geodesic(false));
+        } else {
+            // Only touch the icon when staleness actually flips
+            if (markerShownStale != isStale) {
+                patientMarker.setIcon(markerIcon(isStale));
+                markerShownStale = isStale;
             }
+            patientMarker.setSnippet("Last updated: " + formatTimestamp(timestamp));
         }
         
-        // Update tracking variables
-        lastUpdateTime = currentTime;
-        lastLatitude = latitude;
-        lastLongitude = longitude;
+        // Animate camera on first update only
+        if (isFirstLocationUpdate) {
+            googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(new LatLng(latitude, longitude), 15f));
+        }
+        
+        scheduleMapFrame();
         
         // Update UI (throttled)
+        boolean enoughTimePassed = (currentTime - lastUpdateTime) > MIN_UPDATE_INTERVAL_MS;
         if (enoughTimePassed || isFirstLocationUpdate) {
             updateLocationStatus("Location updated", !isStale);
             updateLastUpdateTime(timestamp);
             showStaleWarning(isStale, timestamp);
+            lastUpdateTime = currentTime;
         }
+        isFirstLocationUpdate = false;
         
         Log.d(TAG, String.format("Updated patient location: %.6f, %.6f (stale: %s)", 
                 latitude, longitude, isStale));
     }
     
+    private com.google.android.gms.maps.model.BitmapDescriptor markerIcon(boolean isStale) {
+        return BitmapDescriptorFactory.defaultMarker(
+                isStale ? BitmapDescriptorFactory.HUE_RED : BitmapDescriptorFactory.HUE_GREEN);
+    }
+    
+    /**
+     * Ask for one callback on the next display frame; repeated requests collapse into one
+     */
+    private void scheduleMapFrame() {
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    }
+    
+    /**
+     * Per-frame map update: move the marker along the animation, then redraw the trail
+     * once the marker has reached the newest fix
+     */
+    private void onMapFrame() {
+        frameScheduled = false;
+        if (googleMap == null || patientMarker == null) {
+            return;
+        }
+        
+        boolean animating = markerInterpolator.update(SystemClock.uptimeMillis());
+        patientMarker.setPosition(new LatLng(markerInterpolator.getLatitude(), markerInterpolator.getLongitude()));
+        
+        if (animating) {
+            scheduleMapFrame();
+        } else if (trailDirty && trailPolyline != null) {
+            trailPoints.clear();
+            for (int i = 0; i < trailBuffer.size(); i++) {
+                trailPoints.add(new LatLng(trailBuffer.getLatitude(i), trailBuffer.getLongitude(i)));
+            }
+            trailPolyline.setPoints(trailPoints);
+            trailDirty = false;
+        }
+    }
+    
     /**
      * Update location status text and icon
      */
@@ -428,11 +464,17 @@ public class CaretakerMapActivity extends AppCompatActivity implements OnMapRead
         if (mapView != null) {
             mapView.onResume();
         }
+        // Catch up on fixes that arrived while paused
+        if (patientMarker != null) {
+            scheduleMapFrame();
+        }
     }
     
     @Override
     protected void onPause() {
         super.onPause();
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        frameScheduled = false;
         if (mapView != null) {
             mapView.onPause();
         }
@@ -442,11 +484,7 @@ public class CaretakerMapActivity extends AppCompatActivity implements OnMapRead
     protected void onDestroy() {
         super.onDestroy();
         
-        // Clean up location listener
-        if (locationListener != null && databaseReference != null && patientId != null) {
-            databaseReference.child("locations").child(patientId)
-                    .removeEventListener(locationListener);
-        }
+        // The shared location listener is released with this activity's lifecycle
         
         if (mapView != null) {
             mapView.onDestroy();
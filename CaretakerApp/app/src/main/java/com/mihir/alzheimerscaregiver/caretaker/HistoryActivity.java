@@ -8,6 +8,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.core.util.Pair;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -18,39 +19,52 @@ import com.google.android.gms.maps.MapView;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.LatLngBounds;
-import com.google.android.gms.maps.model.MarkerOptions;
-import com.google.android.gms.maps.model.Polyline;
-import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.datepicker.CalendarConstraints;
+import com.google.android.material.datepicker.DateValidatorPointBackward;
+import com.google.android.material.datepicker.MaterialDatePicker;
+import com.mihir.alzheimerscaregiver.caretaker.analytics.DailyMovementSummary;
+import com.mihir.alzheimerscaregiver.caretaker.analytics.DailyRollup;
+import com.mihir.alzheimerscaregiver.caretaker.analytics.MovementAnalyzer;
+import com.mihir.alzheimerscaregiver.entities.CompressedTrackSegment;
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
 
 /**
- * HistoryActivity - View patient location history for selected date
+ * HistoryActivity - View patient location history for a selected date or date range
  * 
  * Features:
- * - Date picker for selecting history date
+ * - Date picker for a single day, range picker for multi-day review
+ * - History streamed in pages by LocationHistoryLoader
+ * - Zoom-dependent track detail and clustered time points (HistoryTrackRenderer)
  * - Polyline visualization of patient movement
  * - Time labels at key points
- * - Movement statistics
+ * - Movement statistics: distance, stops and wandering risk, from the nightly rollup for
+ *   completed days and MovementAnalyzer for the rest (normally just today)
+ * - Simplified rollup track for days whose raw history has been pruned
  * - Export/share capabilities
  */
 public class HistoryActivity extends AppCompatActivity implements OnMapReadyCallback {
 
     private static final String TAG = "HistoryActivity";
     private static final int DEFAULT_ZOOM = 15;
+    private static final int MAX_RANGE_DAYS = 31;
     
     // UI Components
     private MapView mapView;
@@ -59,15 +73,32 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
     private TextView textSelectedDate;
     private TextView textMovementStats;
     private MaterialButton buttonSelectDate;
+    private MaterialButton buttonSelectRange;
     private MaterialButton buttonExportData;
     private RecyclerView recyclerTimePoints;
     
     // Firebase
     private DatabaseReference databaseReference;
+    private LocationHistoryLoader historyLoader;
     
     // Map data
-    private Polyline currentPolyline;
+    private HistoryTrackRenderer trackRenderer;
     private List<LocationPoint> locationHistory;
+    private final MovementAnalyzer movementAnalyzer = new MovementAnalyzer();
+    // Summaries of days in the range that have a /locationRollups entry, by day key
+    private final Map<String, DailyMovementSummary> rolledUpDays = new HashMap<>();
+    // Simplified tracks of those days, drawn only for days without raw history
+    private final Map<String, List<LocationPoint>> rollupTracks = new HashMap<>();
+    // Days the loader finished with no raw or segment points (pruned after 30 days)
+    private final Set<String> daysWithoutHistory = new HashSet<>();
+    private boolean rollupsLoaded = false;
+    private int rollupGeneration = 0;
+    // Day of the last point checked by isRolledUp()
+    private long checkedDayStartMs = Long.MAX_VALUE;
+    private long checkedDayEndMs = Long.MIN_VALUE;
+    private boolean checkedDayRolledUp = false;
+    private boolean loadingHistory = false;
+    private boolean cameraFitted = false;
     private LocationTimePointsAdapter timePointsAdapter;
     
     // Patient data
@@ -75,6 +106,8 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
     private String patientName;
     private String selectedDate;
     private Calendar selectedCalendar;
+    private long rangeStartMs;
+    private long rangeEndMs;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -103,14 +136,15 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
         
         // Initialize Firebase
         databaseReference = FirebaseDatabase.getInstance().getReference();
+        historyLoader = new LocationHistoryLoader(databaseReference, patientId);
+        loadSafeZones();
         
         // Initialize data
         locationHistory = new ArrayList<>();
         selectedCalendar = Calendar.getInstance();
-        selectedDate = formatDate(selectedCalendar.getTime());
         
         // Load today's data by default
-        updateSelectedDateDisplay();
+        selectSingleDay(selectedCalendar);
         loadLocationHistory();
         
         Log.d(TAG, "HistoryActivity initialized for patient: " + patientId);
@@ -124,6 +158,7 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
         textSelectedDate = findViewById(R.id.textSelectedDate);
         textMovementStats = findViewById(R.id.textMovementStats);
         buttonSelectDate = findViewById(R.id.buttonSelectDate);
+        buttonSelectRange = findViewById(R.id.buttonSelectRange);
         buttonExportData = findViewById(R.id.buttonExportData);
         recyclerTimePoints = findViewById(R.id.recyclerTimePoints);
         
@@ -136,6 +171,7 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
         
         // Set up click listeners
         buttonSelectDate.setOnClickListener(this::showDatePicker);
+        buttonSelectRange.setOnClickListener(this::showDateRangePicker);
         buttonExportData.setOnClickListener(this::exportLocationData);
         
         // Initial stats
@@ -175,6 +211,8 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
         googleMap.setMapType(GoogleMap.MAP_TYPE_NORMAL);
         googleMap.getUiSettings().setZoomControlsEnabled(true);
         googleMap.getUiSettings().setCompassEnabled(true);
+        trackRenderer = new HistoryTrackRenderer(googleMap,
+                getResources().getColor(com.mihir.alzheimerscaregiver.caretaker.R.color.primary_color, null));
         
         // Load and display current date's history
         displayLocationHistory();
@@ -190,8 +228,7 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
                 this,
                 (datePicker, year, month, dayOfMonth) -> {
                     selectedCalendar.set(year, month, dayOfMonth);
-                    selectedDate = formatDate(selectedCalendar.getTime());
-                    updateSelectedDateDisplay();
+                    selectSingleDay(selectedCalendar);
                     loadLocationHistory();
                 },
                 selectedCalendar.get(Calendar.YEAR),
@@ -204,167 +241,281 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
         datePickerDialog.show();
     }
     
+    /**
+     * Show date range picker dialog for multi-day review
+     */
+    public void showDateRangePicker(View view) {
+        // The picker works on UTC midnights
+        MaterialDatePicker<Pair<Long, Long>> rangePicker = MaterialDatePicker.Builder.dateRangePicker()
+                .setTitleText("Select date range")
+                .setSelection(new Pair<>(toUtcMidnight(rangeStartMs), toUtcMidnight(rangeEndMs)))
+                .setCalendarConstraints(new CalendarConstraints.Builder()
+                        .setValidator(DateValidatorPointBackward.now())
+                        .build())
+                .build();
+        
+        rangePicker.addOnPositiveButtonClickListener(selection -> {
+            if (selection == null || selection.first == null || selection.second == null) {
+                return;
+            }
+            Calendar start = fromUtcMidnight(selection.first);
+            Calendar end = fromUtcMidnight(selection.second);
+            
+            Calendar earliest = (Calendar) end.clone();
+            earliest.add(Calendar.DAY_OF_MONTH, -(MAX_RANGE_DAYS - 1));
+            if (start.before(earliest)) {
+                Toast.makeText(this, "Showing the last " + MAX_RANGE_DAYS + " days of the selected range", Toast.LENGTH_SHORT).show();
+                start = earliest;
+            }
+            
+            selectRange(start, end);
+            loadLocationHistory();
+        });
+        
+        rangePicker.show(getSupportFragmentManager(), "history_range_picker");
+    }
+    
+    /**
+     * Select a single day as the history window
+     */
+    private void selectSingleDay(Calendar day) {
+        selectRange(day, day);
+    }
+    
+    /**
+     * Select the window from the start of {@code startDay} to the end of {@code endDay}
+     */
+    private void selectRange(Calendar startDay, Calendar endDay) {
+        Calendar start = (Calendar) startDay.clone();
+        start.set(Calendar.HOUR_OF_DAY, 0);
+        start.set(Calendar.MINUTE, 0);
+        start.set(Calendar.SECOND, 0);
+        start.set(Calendar.MILLISECOND, 0);
+        
+        Calendar end = (Calendar) endDay.clone();
+        end.set(Calendar.HOUR_OF_DAY, 23);
+        end.set(Calendar.MINUTE, 59);
+        end.set(Calendar.SECOND, 59);
+        end.set(Calendar.MILLISECOND, 999);
+        
+        rangeStartMs = start.getTimeInMillis();
+        rangeEndMs = end.getTimeInMillis();
+        selectedCalendar = (Calendar) endDay.clone();
+        
+        String startDate = formatDate(start.getTime());
+        String endDate = formatDate(end.getTime());
+        selectedDate = startDate.equals(endDate) ? startDate : startDate + " to " + endDate;
+        updateSelectedDateDisplay(start, end);
+    }
+    
     /**
      * Update selected date display
      */
-    private void updateSelectedDateDisplay() {
+    private void updateSelectedDateDisplay(Calendar start, Calendar end) {
         if (textSelectedDate != null) {
-            SimpleDateFormat displayFormat = new SimpleDateFormat("EEEE, MMM dd, yyyy", Locale.getDefault());
-            textSelectedDate.setText(displayFormat.format(selectedCalendar.getTime()));
+            if (formatDate(start.getTime()).equals(formatDate(end.getTime()))) {
+                SimpleDateFormat displayFormat = new SimpleDateFormat("EEEE, MMM dd, yyyy", Locale.getDefault());
+                textSelectedDate.setText(displayFormat.format(start.getTime()));
+            } else {
+                SimpleDateFormat displayFormat = new SimpleDateFormat("EEE, MMM dd", Locale.getDefault());
+                textSelectedDate.setText(displayFormat.format(start.getTime()) + " – " +
+                        displayFormat.format(end.getTime()));
+            }
         }
     }
     
+    private static long toUtcMidnight(long localMs) {
+        Calendar local = Calendar.getInstance();
+        local.setTimeInMillis(localMs);
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.clear();
+        utc.set(local.get(Calendar.YEAR), local.get(Calendar.MONTH), local.get(Calendar.DAY_OF_MONTH));
+        return utc.getTimeInMillis();
+    }
+    
+    private static Calendar fromUtcMidnight(long utcMs) {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(utcMs);
+        Calendar local = Calendar.getInstance();
+        local.clear();
+        local.set(utc.get(Calendar.YEAR), utc.get(Calendar.MONTH), utc.get(Calendar.DAY_OF_MONTH));
+        return local;
+    }
+    
     /**
-     * Load location history for selected date from Firebase
+     * Load location history for the selected range from Firebase
+     * Completed hours are stored as compressed segments under /locationTracks; the current
+     * hour (and any data from older app versions) is still raw under /locationHistory.
+     * LocationHistoryLoader pages through both by time, one day at a time, and each page is
+     * appended to the map as it arrives.
      */
     private void loadLocationHistory() {
-        if (databaseReference == null || patientId == null || selectedDate == null) {
+        if (historyLoader == null || patientId == null || selectedDate == null) {
             Log.e(TAG, "Required data is null");
             return;
         }
         
-        DatabaseReference historyRef = databaseReference
-                .child("locationHistory")
-                .child(patientId)
-                .child(selectedDate);
-        
-        historyRef.addListenerForSingleValueEvent(new ValueEventListener() {
+        locationHistory.clear();
+        daysWithoutHistory.clear();
+        movementAnalyzer.reset();
+        cameraFitted = false;
+        loadingHistory = true;
+        resetMap();
+        updateMovementStats();
+        updateTimePointsList();
+        loadRollups();
+        
+        final long loadStartedAt = System.currentTimeMillis();
+        historyLoader.load(rangeStartMs, rangeEndMs, new LocationHistoryLoader.Listener() {
+            private boolean firstPage = true;
+            
             @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                locationHistory.clear();
-                
-                if (dataSnapshot.exists()) {
-                    for (DataSnapshot locationSnapshot : dataSnapshot.getChildren()) {
-                        try {
-                            Double latitude = locationSnapshot.child("latitude").getValue(Double.class);
-                            Double longitude = locationSnapshot.child("longitude").getValue(Double.class);
-                            Long timestamp = locationSnapshot.child("timestamp").getValue(Long.class);
-                            
-                            if (latitude != null && longitude != null && timestamp != null) {
-                                LocationPoint point = new LocationPoint(latitude, longitude, timestamp);
-                                locationHistory.add(point);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error parsing location point", e);
-                        }
-                    }
-                    
-                    // Sort by timestamp
-                    Collections.sort(locationHistory, new Comparator<LocationPoint>() {
-                        @Override
-                        public int compare(LocationPoint a, LocationPoint b) {
-                            return Long.compare(a.timestamp, b.timestamp);
-                        }
-                    });
-                    
-                    Log.d(TAG, "Loaded " + locationHistory.size() + " location points for " + selectedDate);
-                } else {
-                    Log.d(TAG, "No location history found for " + selectedDate);
+            public void onPage(List<LocationPoint> points) {
+                if (firstPage) {
+                    firstPage = false;
+                    Log.d(TAG, "⚡ First history page after " + (System.currentTimeMillis() - loadStartedAt) + "ms");
+                }
+                appendLocationPoints(points);
+            }
+            
+            @Override
+            public void onDayLoaded(String date, int dayPointCount) {
+                if (dayPointCount == 0) {
+                    daysWithoutHistory.add(date);
+                    showRollupTrack(date);
                 }
-                
-                displayLocationHistory();
                 updateMovementStats();
-                updateTimePointsList();
+                if (trackRenderer != null) {
+                    trackRenderer.refreshTimePoints();
+                }
+            }
+            
+            @Override
+            public void onComplete(int totalPointCount) {
+                loadingHistory = false;
+                Log.d(TAG, "Loaded " + totalPointCount + " location points for " + selectedDate + " in " +
+                        (System.currentTimeMillis() - loadStartedAt) + "ms");
+                fitCameraToHistory();
+                updateMovementStats();
             }
             
             @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
-                Log.e(TAG, "Failed to load location history", databaseError.toException());
-                Toast.makeText(HistoryActivity.this, "Failed to load location history", Toast.LENGTH_SHORT).show();
+            public void onError(String date, String message) {
+                Toast.makeText(HistoryActivity.this, "Failed to load location history for " + date, Toast.LENGTH_SHORT).show();
             }
         });
     }
     
     /**
-     * Display location history on map with polyline
+     * Append a page of points to the loaded history, the map and the time points list
+     * Pages normally arrive in order and are drawn incrementally; a page that goes back in
+     * time (overlapping legacy raw data) is merged and the map redrawn once.
      */
-    private void displayLocationHistory() {
-        if (googleMap == null) {
-            return;
+    private void appendLocationPoints(List<LocationPoint> points) {
+        LocationPoint last = locationHistory.isEmpty() ? null : locationHistory.get(locationHistory.size() - 1);
+        
+        if (last != null && points.get(0).timestamp < last.timestamp) {
+            locationHistory.addAll(points);
+            locationHistory.sort((a, b) -> Long.compare(a.timestamp, b.timestamp));
+            rebuildMovementAnalytics();
+            displayLocationHistory();
+            updateTimePointsList();
+        } else {
+            if (rollupsLoaded) {
+                for (LocationPoint point : points) {
+                    if (!isRolledUp(point.timestamp)) {
+                        movementAnalyzer.addPoint(point.latitude, point.longitude, point.timestamp);
+                    }
+                }
+            }
+            int insertedAt = locationHistory.size();
+            locationHistory.addAll(points);
+            drawLocationPoints(points);
+            if (timePointsAdapter != null) {
+                timePointsAdapter.appendLocationPoints(points, insertedAt);
+            }
         }
         
-        // Clear existing polyline and markers
-        if (currentPolyline != null) {
-            currentPolyline.remove();
+        // Bring the first results into view right away; the final fit happens on completion
+        if (!cameraFitted) {
+            fitCameraToHistory();
         }
-        googleMap.clear();
-        
-        if (locationHistory.isEmpty()) {
-            return;
+        updateMovementStats();
+    }
+    
+    /**
+     * Remove the track and markers from the map
+     */
+    private void resetMap() {
+        if (trackRenderer != null) {
+            trackRenderer.clear();
         }
-        
-        // Create polyline points
-        List<LatLng> polylinePoints = new ArrayList<>();
-        LatLngBounds.Builder boundsBuilder = new LatLngBounds.Builder();
-        
-        for (LocationPoint point : locationHistory) {
-            LatLng latLng = new LatLng(point.latitude, point.longitude);
-            polylinePoints.add(latLng);
-            boundsBuilder.include(latLng);
+    }
+    
+    /**
+     * Redraw the whole loaded history on the map
+     */
+    private void displayLocationHistory() {
+        resetMap();
+        drawLocationPoints(locationHistory);
+        if (trackRenderer != null) {
+            trackRenderer.refreshTimePoints();
         }
-        
-        // Draw polyline
-        if (polylinePoints.size() > 1) {
-            PolylineOptions polylineOptions = new PolylineOptions()
-                    .addAll(polylinePoints)
-                    .color(getResources().getColor(com.mihir.alzheimerscaregiver.caretaker.R.color.primary_color, null))
-                    .width(8f)
-                    .geodesic(true);
-            
-            currentPolyline = googleMap.addPolyline(polylineOptions);
+        if (!loadingHistory) {
+            fitCameraToHistory();
         }
-        
-        // Add markers for start and end points
-        if (!locationHistory.isEmpty()) {
+    }
+    
+    /**
+     * Extend the track with new points; detail follows the current zoom
+     */
+    private void drawLocationPoints(List<LocationPoint> points) {
+        if (trackRenderer != null) {
+            trackRenderer.append(points);
+        }
+    }
+    
+    /**
+     * Fit the map to all loaded points
+     */
+    private void fitCameraToHistory() {
+        if (googleMap == null || trackRenderer == null || locationHistory.isEmpty()) {
+            return;
+        }
+        cameraFitted = true;
+        
+        try {
+            LatLngBounds bounds = trackRenderer.getBounds();
+            int padding = 100; // padding in pixels
+            googleMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, padding));
+        } catch (Exception e) {
+            // Fallback to centering on first point
             LocationPoint firstPoint = locationHistory.get(0);
-            LocationPoint lastPoint = locationHistory.get(locationHistory.size() - 1);
-            
-            // Start marker (green)
-            googleMap.addMarker(new MarkerOptions()
-                    .position(new LatLng(firstPoint.latitude, firstPoint.longitude))
-                    .title("Start")
-                    .snippet(formatTime(firstPoint.timestamp))
-                    .icon(com.google.android.gms.maps.model.BitmapDescriptorFactory
-                            .defaultMarker(com.google.android.gms.maps.model.BitmapDescriptorFactory.HUE_GREEN)));
-            
-            // End marker (red)
-            if (locationHistory.size() > 1) {
-                googleMap.addMarker(new MarkerOptions()
-                        .position(new LatLng(lastPoint.latitude, lastPoint.longitude))
-                        .title("End")
-                        .snippet(formatTime(lastPoint.timestamp))
-                        .icon(com.google.android.gms.maps.model.BitmapDescriptorFactory
-                                .defaultMarker(com.google.android.gms.maps.model.BitmapDescriptorFactory.HUE_RED)));
-            }
-            
-            // Fit map to show all points
-            try {
-                LatLngBounds bounds = boundsBuilder.build();
-                int padding = 100; // padding in pixels
-                googleMap.animateCamera(CameraUpdateFactory.newLatLngBounds(bounds, padding));
-            } catch (Exception e) {
-                // Fallback to centering on first point
-                googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
-                        new LatLng(firstPoint.latitude, firstPoint.longitude), DEFAULT_ZOOM));
-            }
+            googleMap.animateCamera(CameraUpdateFactory.newLatLngZoom(
+                    new LatLng(firstPoint.latitude, firstPoint.longitude), DEFAULT_ZOOM));
         }
     }
     
     /**
      * Update movement statistics
+     * Figures come from the rollups and the incrementally maintained MovementAnalyzer, so
+     * this does not walk the loaded points.
      */
     private void updateMovementStats() {
         if (locationHistory.isEmpty()) {
-            textMovementStats.setText("No location data for selected date");
+            textMovementStats.setText(loadingHistory ? "Loading location history..." : "No location data for selected date");
             return;
         }
         
-        // Calculate total distance
-        double totalDistance = 0;
-        for (int i = 1; i < locationHistory.size(); i++) {
-            LocationPoint prev = locationHistory.get(i - 1);
-            LocationPoint curr = locationHistory.get(i);
-            totalDistance += calculateDistance(prev, curr);
+        List<DailyMovementSummary> summaries = new ArrayList<>(rolledUpDays.values());
+        summaries.addAll(movementAnalyzer.getDailySummaries());
+        double distanceMeters = 0;
+        int stayCount = 0;
+        int maxRisk = 0;
+        for (DailyMovementSummary summary : summaries) {
+            distanceMeters += summary.distanceMeters;
+            stayCount += summary.stayPoints.size();
+            maxRisk = Math.max(maxRisk, summary.wanderingRiskScore);
         }
         
         // Calculate time span
@@ -374,15 +525,178 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
         long minutes = (timeSpan % (1000 * 60 * 60)) / (1000 * 60);
         
         String statsText = String.format(Locale.getDefault(),
-                "%d points • %.1f km • %dh %dm",
+                "%d points • %.1f km • %dh %dm • %d stops • wandering risk %d%s",
                 locationHistory.size(),
-                totalDistance / 1000.0,
+                distanceMeters / 1000.0,
                 hours,
-                minutes);
+                minutes,
+                stayCount,
+                maxRisk,
+                loadingHistory || !rollupsLoaded ? " • loading..." : "");
         
         textMovementStats.setText(statsText);
     }
     
+    /**
+     * Feed the loaded points of days without a rollup through the analyzer again
+     * Only needed when the rollups arrive, points arrive out of order or the safe zones
+     * change; rolled-up days are skipped, so this is normally just today's points.
+     */
+    private void rebuildMovementAnalytics() {
+        movementAnalyzer.reset();
+        if (!rollupsLoaded) {
+            return;
+        }
+        for (LocationPoint point : locationHistory) {
+            if (!isRolledUp(point.timestamp)) {
+                movementAnalyzer.addPoint(point.latitude, point.longitude, point.timestamp);
+            }
+        }
+    }
+    
+    /**
+     * Read the nightly rollups of the selected range in one query
+     * Points are not analyzed until this returns, so completed days never go through
+     * MovementAnalyzer point by point. If the read fails every day is analyzed as before.
+     */
+    private void loadRollups() {
+        final int generation = ++rollupGeneration;
+        rolledUpDays.clear();
+        rollupTracks.clear();
+        rollupsLoaded = false;
+        checkedDayStartMs = Long.MAX_VALUE;
+        checkedDayEndMs = Long.MIN_VALUE;
+        
+        databaseReference.child("locationRollups").child(patientId)
+                .orderByKey()
+                .startAt(formatDate(new Date(rangeStartMs)))
+                .endAt(formatDate(new Date(rangeEndMs)))
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        if (generation != rollupGeneration) {
+                            return;
+                        }
+                        TimeZone timeZone = TimeZone.getDefault();
+                        for (DataSnapshot child : snapshot.getChildren()) {
+                            try {
+                                DailyRollup rollup = DailyRollup.fromFirebase(child.getKey(),
+                                        (Map<String, Object>) child.getValue());
+                                if (rollup.isSupportedVersion()) {
+                                    rolledUpDays.put(child.getKey(), rollup.toSummary(timeZone));
+                                    rollupTracks.put(child.getKey(), toLocationPoints(rollup.getTrackPoints()));
+                                }
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error parsing rollup " + child.getKey(), e);
+                            }
+                        }
+                        Log.d(TAG, "Using rollups for " + rolledUpDays.size() + " day(s)");
+                        onRollupsLoaded();
+                    }
+                    
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError databaseError) {
+                        if (generation != rollupGeneration) {
+                            return;
+                        }
+                        Log.e(TAG, "Failed to load rollups, analyzing raw history", databaseError.toException());
+                        onRollupsLoaded();
+                    }
+                });
+    }
+    
+    private void onRollupsLoaded() {
+        rollupsLoaded = true;
+        checkedDayStartMs = Long.MAX_VALUE;
+        checkedDayEndMs = Long.MIN_VALUE;
+        rebuildMovementAnalytics();
+        for (String date : daysWithoutHistory) {
+            showRollupTrack(date);
+        }
+        updateMovementStats();
+    }
+    
+    /**
+     * Draw the rollup track of a day that has no raw history left
+     * Called both when the day finishes loading and when the rollups arrive, whichever is
+     * last; the track is taken out of rollupTracks so it is only drawn once. The points are
+     * on a rolled-up day, so they are drawn but not analyzed again.
+     */
+    private void showRollupTrack(String date) {
+        if (!rollupsLoaded) {
+            return;
+        }
+        List<LocationPoint> track = rollupTracks.remove(date);
+        if (track != null && !track.isEmpty()) {
+            Log.d(TAG, "Showing " + track.size() + " rollup track points for " + date);
+            appendLocationPoints(track);
+        }
+    }
+    
+    /**
+     * Rollup track points inside the selected range
+     */
+    private List<LocationPoint> toLocationPoints(List<CompressedTrackSegment.TrackPoint> trackPoints) {
+        List<LocationPoint> points = new ArrayList<>(trackPoints.size());
+        for (CompressedTrackSegment.TrackPoint point : trackPoints) {
+            if (point.timestamp >= rangeStartMs && point.timestamp <= rangeEndMs) {
+                points.add(new LocationPoint(point.latitude, point.longitude, point.timestamp));
+            }
+        }
+        return points;
+    }
+    
+    /**
+     * Whether a point's day has its figures from a rollup
+     * Points are checked in time order, so the day of the previous one is remembered.
+     */
+    private boolean isRolledUp(long timestamp) {
+        if (timestamp < checkedDayStartMs || timestamp >= checkedDayEndMs) {
+            Calendar day = Calendar.getInstance();
+            day.setTimeInMillis(timestamp);
+            day.set(Calendar.HOUR_OF_DAY, 0);
+            day.set(Calendar.MINUTE, 0);
+            day.set(Calendar.SECOND, 0);
+            day.set(Calendar.MILLISECOND, 0);
+            checkedDayStartMs = day.getTimeInMillis();
+            checkedDayRolledUp = rolledUpDays.containsKey(formatDate(day.getTime()));
+            day.add(Calendar.DAY_OF_MONTH, 1);
+            checkedDayEndMs = day.getTimeInMillis();
+        }
+        return checkedDayRolledUp;
+    }
+    
+    /**
+     * Load the patient's safe zones once so time outside them can be measured
+     */
+    private void loadSafeZones() {
+        databaseReference.child("patients").child(patientId).child("geofences")
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        List<GeofenceDefinition> geofences = new ArrayList<>();
+                        for (DataSnapshot child : snapshot.getChildren()) {
+                            try {
+                                Map<String, Object> data = (Map<String, Object>) child.getValue();
+                                if (data != null) {
+                                    geofences.add(GeofenceDefinition.fromFirebase(data));
+                                }
+                            } catch (Exception e) {
+                                Log.e(TAG, "Error parsing geofence data", e);
+                            }
+                        }
+                        movementAnalyzer.setSafeZones(geofences);
+                        rebuildMovementAnalytics();
+                        updateMovementStats();
+                    }
+                    
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError databaseError) {
+                        Log.e(TAG, "Failed to load geofences for movement analytics", databaseError.toException());
+                    }
+                });
+    }
+    
     /**
      * Update time points list
      */
@@ -424,18 +738,6 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
         startActivity(android.content.Intent.createChooser(shareIntent, "Export Location Data"));
     }
     
-    /**
-     * Calculate distance between two location points in meters
-     */
-    private double calculateDistance(LocationPoint point1, LocationPoint point2) {
-        float[] results = new float[1];
-        android.location.Location.distanceBetween(
-                point1.latitude, point1.longitude,
-                point2.latitude, point2.longitude,
-                results);
-        return results[0];
-    }
-    
     /**
      * Format date for Firebase path (YYYY-MM-DD)
      */
@@ -444,14 +746,6 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
         return sdf.format(date);
     }
     
-    /**
-     * Format timestamp for display (HH:mm:ss)
-     */
-    private String formatTime(long timestamp) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-        return sdf.format(new Date(timestamp));
-    }
-    
     @Override
     protected void onResume() {
         super.onResume();
@@ -471,6 +765,9 @@ public class HistoryActivity extends AppCompatActivity implements OnMapReadyCall
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (historyLoader != null) {
+            historyLoader.cancel();
+        }
         if (mapView != null) {
             mapView.onDestroy();
         }
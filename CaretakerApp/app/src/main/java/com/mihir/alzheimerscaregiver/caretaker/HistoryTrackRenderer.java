@@ -0,0 +1,256 @@
+package com.mihir.alzheimerscaregiver.caretaker;
+
+import android.util.Log;
+
+import com.google.android.gms.maps.GoogleMap;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
+import com.google.android.gms.maps.model.Marker;
+import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polyline;
+import com.google.android.gms.maps.model.PolylineOptions;
+import com.mihir.alzheimerscaregiver.caretaker.utils.TimePointClusterer;
+import com.mihir.alzheimerscaregiver.caretaker.utils.TrackLevelOfDetail;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * HistoryTrackRenderer - Draws a location history track with zoom-dependent detail
+ *
+ * - The polyline only carries the points that are visible at the current zoom
+ *   (TrackLevelOfDetail), and is re-simplified when the camera settles on a new zoom
+ * - Time points are clustered per screen cell (TimePointClusterer) and only clusters in
+ *   the visible region get a marker; markers are reused between camera moves
+ * - Start/end markers are kept separately and the end marker follows appended pages
+ */
+public class HistoryTrackRenderer implements GoogleMap.OnCameraIdleListener {
+
+    private static final String TAG = "HistoryTrackRenderer";
+
+    private final GoogleMap googleMap;
+    private final int trackColor;
+
+    private final TrackLevelOfDetail levelOfDetail = new TrackLevelOfDetail();
+    private final TimePointClusterer clusterer = new TimePointClusterer();
+    private final Map<Long, Marker> clusterMarkers = new HashMap<>();
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
+
+    private Polyline polyline;
+    private Marker startMarker;
+    private Marker endMarker;
+    private int renderedZoom = -1;
+    private int clusteredZoom = -1;
+
+    private double minLatitude;
+    private double maxLatitude;
+    private double minLongitude;
+    private double maxLongitude;
+
+    public HistoryTrackRenderer(GoogleMap googleMap, int trackColor) {
+        this.googleMap = googleMap;
+        this.trackColor = trackColor;
+        googleMap.setOnCameraIdleListener(this);
+    }
+
+    /**
+     * Append points (in time order) and refresh the polyline for the current zoom
+     */
+    public void append(List<HistoryActivity.LocationPoint> points) {
+        if (points.isEmpty()) {
+            return;
+        }
+
+        double[] latitudes = new double[points.size()];
+        double[] longitudes = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            HistoryActivity.LocationPoint point = points.get(i);
+            latitudes[i] = point.latitude;
+            longitudes[i] = point.longitude;
+            clusterer.add(point.latitude, point.longitude, point.timestamp);
+            includeInBounds(point.latitude, point.longitude, levelOfDetail.size() == 0 && i == 0);
+        }
+        levelOfDetail.append(latitudes, longitudes, points.size());
+
+        updateEndpoints(points.get(0), points.get(points.size() - 1));
+        renderPolyline(currentZoom());
+    }
+
+    /**
+     * Remove everything drawn by this renderer
+     */
+    public void clear() {
+        levelOfDetail.clear();
+        clusterer.clear();
+        if (polyline != null) {
+            polyline.remove();
+            polyline = null;
+        }
+        if (startMarker != null) {
+            startMarker.remove();
+            startMarker = null;
+        }
+        if (endMarker != null) {
+            endMarker.remove();
+            endMarker = null;
+        }
+        for (Marker marker : clusterMarkers.values()) {
+            marker.remove();
+        }
+        clusterMarkers.clear();
+        renderedZoom = -1;
+        clusteredZoom = -1;
+    }
+
+    /**
+     * Bounds of all appended points, or null when empty
+     */
+    public LatLngBounds getBounds() {
+        if (levelOfDetail.size() == 0) {
+            return null;
+        }
+        return new LatLngBounds(new LatLng(minLatitude, minLongitude), new LatLng(maxLatitude, maxLongitude));
+    }
+
+    /**
+     * Re-cluster time point markers, e.g. once a page of history has arrived
+     */
+    public void refreshTimePoints() {
+        renderTimePoints(currentZoom());
+    }
+
+    @Override
+    public void onCameraIdle() {
+        int zoom = currentZoom();
+        if (zoom != renderedZoom) {
+            renderPolyline(zoom);
+        }
+        // Panning at the same zoom still changes which clusters are visible
+        renderTimePoints(zoom);
+    }
+
+    private int currentZoom() {
+        return (int) Math.floor(googleMap.getCameraPosition().zoom);
+    }
+
+    private void renderPolyline(int zoom) {
+        renderedZoom = zoom;
+        if (levelOfDetail.size() < 2) {
+            return;
+        }
+
+        List<LatLng> levelPoints = new ArrayList<>(levelOfDetail.getLevelSize(zoom));
+        levelOfDetail.forEachPoint(zoom, (latitude, longitude) -> levelPoints.add(new LatLng(latitude, longitude)));
+
+        if (polyline == null) {
+            polyline = googleMap.addPolyline(new PolylineOptions()
+                    .addAll(levelPoints)
+                    .color(trackColor)
+                    .width(8f)
+                    .geodesic(true));
+        } else {
+            polyline.setPoints(levelPoints);
+        }
+        Log.d(TAG, "Zoom " + zoom + ": drawing " + levelPoints.size() + " of " + levelOfDetail.size() + " points");
+    }
+
+    private void renderTimePoints(int zoom) {
+        if (clusterer.size() == 0) {
+            return;
+        }
+
+        LatLngBounds visible = googleMap.getProjection().getVisibleRegion().latLngBounds;
+        List<TimePointClusterer.Cluster> clusters = clusterer.cluster(zoom,
+                visible.southwest.latitude, visible.southwest.longitude,
+                visible.northeast.latitude, visible.northeast.longitude);
+
+        // Cell keys are only comparable within one zoom level
+        if (zoom != clusteredZoom) {
+            for (Marker marker : clusterMarkers.values()) {
+                marker.remove();
+            }
+            clusterMarkers.clear();
+            clusteredZoom = zoom;
+        }
+
+        Map<Long, Marker> kept = new HashMap<>();
+        for (TimePointClusterer.Cluster cluster : clusters) {
+            LatLng position = new LatLng(cluster.getLatitude(), cluster.getLongitude());
+            String title = cluster.count == 1
+                    ? timeFormat.format(new Date(cluster.firstTimestamp))
+                    : cluster.count + " time points";
+            String snippet = cluster.count == 1
+                    ? null
+                    : timeFormat.format(new Date(cluster.firstTimestamp)) + " – " +
+                      timeFormat.format(new Date(cluster.lastTimestamp));
+
+            Marker marker = clusterMarkers.remove(cluster.cellKey);
+            if (marker == null) {
+                marker = googleMap.addMarker(new MarkerOptions()
+                        .position(position)
+                        .title(title)
+                        .snippet(snippet)
+                        .alpha(0.8f)
+                        .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_AZURE)));
+            } else {
+                marker.setPosition(position);
+                marker.setTitle(title);
+                marker.setSnippet(snippet);
+            }
+            if (marker != null) {
+                kept.put(cluster.cellKey, marker);
+            }
+        }
+
+        // Whatever is left scrolled out of view or merged into another cluster
+        for (Marker marker : clusterMarkers.values()) {
+            marker.remove();
+        }
+        clusterMarkers.clear();
+        clusterMarkers.putAll(kept);
+    }
+
+    private void updateEndpoints(HistoryActivity.LocationPoint firstOfPage, HistoryActivity.LocationPoint lastOfPage) {
+        // Start marker (green)
+        if (startMarker == null) {
+            startMarker = googleMap.addMarker(new MarkerOptions()
+                    .position(new LatLng(firstOfPage.latitude, firstOfPage.longitude))
+                    .title("Start")
+                    .snippet(timeFormat.format(new Date(firstOfPage.timestamp)))
+                    .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN)));
+        }
+
+        // End marker (red), moved along as pages arrive
+        if (levelOfDetail.size() > 1) {
+            LatLng endPosition = new LatLng(lastOfPage.latitude, lastOfPage.longitude);
+            if (endMarker == null) {
+                endMarker = googleMap.addMarker(new MarkerOptions()
+                        .position(endPosition)
+                        .title("End")
+                        .snippet(timeFormat.format(new Date(lastOfPage.timestamp)))
+                        .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_RED)));
+            } else {
+                endMarker.setPosition(endPosition);
+                endMarker.setSnippet(timeFormat.format(new Date(lastOfPage.timestamp)));
+            }
+        }
+    }
+
+    private void includeInBounds(double latitude, double longitude, boolean first) {
+        if (first) {
+            minLatitude = maxLatitude = latitude;
+            minLongitude = maxLongitude = longitude;
+            return;
+        }
+        minLatitude = Math.min(minLatitude, latitude);
+        maxLatitude = Math.max(maxLatitude, latitude);
+        minLongitude = Math.min(minLongitude, longitude);
+        maxLongitude = Math.max(maxLongitude, longitude);
+    }
+}
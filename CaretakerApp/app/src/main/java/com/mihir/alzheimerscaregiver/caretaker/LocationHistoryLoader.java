@@ -0,0 +1,315 @@
+package com.mihir.alzheimerscaregiver.caretaker;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+import com.mihir.alzheimerscaregiver.entities.CompressedTrackSegment;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * LocationHistoryLoader - Streams a patient's location history for a time window in pages
+ *
+ * History is stored per day, so a range is walked one day at a time and nothing is
+ * requested for a day until the previous one has been delivered. Within a day:
+ * - Compressed hourly segments (/locationTracks/{patientId}/{date}) are paged by startTime
+ * - Raw points (/locationHistory/{patientId}/{date}) are paged by timestamp, bounded to the window
+ *
+ * Every page is handed to the listener as soon as it arrives, in chronological order per
+ * source, so the first points can be drawn after a single round trip. Callbacks run on the
+ * main thread (Firebase's default). Starting a new load cancels the previous one.
+ */
+public class LocationHistoryLoader {
+
+    private static final String TAG = "LocationHistoryLoader";
+
+    public static final int RAW_PAGE_SIZE = 500;
+    public static final int SEGMENT_PAGE_SIZE = 6; // 6 hourly segments per request
+
+    public interface Listener {
+        /**
+         * A page of points, sorted by timestamp and inside the requested window
+         */
+        void onPage(List<HistoryActivity.LocationPoint> points);
+
+        /**
+         * All pages for one day have been delivered
+         */
+        void onDayLoaded(String date, int dayPointCount);
+
+        /**
+         * Every day in the range has been delivered
+         */
+        void onComplete(int totalPointCount);
+
+        /**
+         * One of the reads failed; loading continues with the next source/day
+         */
+        void onError(String date, String message);
+    }
+
+    private enum Phase {
+        SEGMENTS,
+        RAW
+    }
+
+    private final DatabaseReference databaseReference;
+    private final String patientId;
+
+    private int generation = 0;
+
+    public LocationHistoryLoader(DatabaseReference databaseReference, String patientId) {
+        this.databaseReference = databaseReference;
+        this.patientId = patientId;
+    }
+
+    /**
+     * Start streaming history between two timestamps (inclusive)
+     * Any load still in progress is cancelled.
+     */
+    public void load(long startMs, long endMs, Listener listener) {
+        generation++;
+        Session session = new Session(generation, startMs, endMs, daysBetween(startMs, endMs), listener);
+        Log.d(TAG, "📅 Loading history for " + session.days.size() + " day(s) starting " + session.days.get(0));
+        session.nextPage();
+    }
+
+    /**
+     * Drop any load in progress; pending callbacks are ignored
+     */
+    public void cancel() {
+        generation++;
+    }
+
+    /**
+     * Day keys (YYYY-MM-DD, local time) covering the window, oldest first
+     */
+    static List<String> daysBetween(long startMs, long endMs) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        List<String> days = new ArrayList<>();
+
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(startMs);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+
+        do {
+            days.add(dateFormat.format(day.getTime()));
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        } while (day.getTimeInMillis() <= endMs);
+
+        return days;
+    }
+
+    /**
+     * State of one load: which day and source is being paged and where the cursor is
+     */
+    private class Session {
+        final int id;
+        final long startMs;
+        final long endMs;
+        final List<String> days;
+        final Listener listener;
+
+        int dayIndex = 0;
+        Phase phase = Phase.SEGMENTS;
+        // Last delivered child (order value + key) for the current day/source
+        Double cursorValue = null;
+        String cursorKey = null;
+        int dayPointCount = 0;
+        int totalPointCount = 0;
+
+        Session(int id, long startMs, long endMs, List<String> days, Listener listener) {
+            this.id = id;
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.days = days;
+            this.listener = listener;
+        }
+
+        boolean isCancelled() {
+            return id != generation;
+        }
+
+        void nextPage() {
+            if (isCancelled()) {
+                return;
+            }
+            if (dayIndex >= days.size()) {
+                Log.d(TAG, "✅ History load complete: " + totalPointCount + " points");
+                listener.onComplete(totalPointCount);
+                return;
+            }
+
+            String date = days.get(dayIndex);
+            if (phase == Phase.SEGMENTS) {
+                requestSegmentPage(date);
+            } else {
+                requestRawPage(date);
+            }
+        }
+
+        void requestSegmentPage(String date) {
+            // Segments that start after the window cannot contribute any points
+            Query query = databaseReference.child("locationTracks").child(patientId).child(date)
+                    .orderByChild("startTime");
+            query = cursorKey != null ? query.startAt(cursorValue, cursorKey) : query;
+            query = query.endAt(endMs).limitToFirst(SEGMENT_PAGE_SIZE + (cursorKey != null ? 1 : 0));
+
+            query.addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    if (isCancelled()) {
+                        return;
+                    }
+
+                    List<HistoryActivity.LocationPoint> page = new ArrayList<>();
+                    int segmentCount = 0;
+                    for (DataSnapshot segmentSnapshot : snapshot.getChildren()) {
+                        if (segmentSnapshot.getKey().equals(cursorKey)) {
+                            continue;
+                        }
+                        segmentCount++;
+                        cursorKey = segmentSnapshot.getKey();
+
+                        try {
+                            Map<String, Object> data = (Map<String, Object>) segmentSnapshot.getValue();
+                            CompressedTrackSegment segment = CompressedTrackSegment.fromFirebase(data);
+                            cursorValue = (double) segment.startTime;
+                            if (!segment.isSupportedVersion()) {
+                                Log.w(TAG, "Skipping track segment with unknown format version " + segment.version);
+                                continue;
+                            }
+                            if (segment.endTime < startMs) {
+                                continue;
+                            }
+                            for (CompressedTrackSegment.TrackPoint trackPoint : segment.decodePoints()) {
+                                if (trackPoint.timestamp >= startMs && trackPoint.timestamp <= endMs) {
+                                    page.add(new HistoryActivity.LocationPoint(
+                                            trackPoint.latitude, trackPoint.longitude, trackPoint.timestamp));
+                                }
+                            }
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error decoding track segment", e);
+                        }
+                    }
+
+                    deliver(page);
+                    if (segmentCount < SEGMENT_PAGE_SIZE) {
+                        startPhase(Phase.RAW);
+                    }
+                    nextPage();
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError databaseError) {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    Log.e(TAG, "Failed to load compressed history for " + date, databaseError.toException());
+                    listener.onError(date, databaseError.getMessage());
+                    startPhase(Phase.RAW);
+                    nextPage();
+                }
+            });
+        }
+
+        void requestRawPage(String date) {
+            Query query = databaseReference.child("locationHistory").child(patientId).child(date)
+                    .orderByChild("timestamp");
+            query = cursorKey != null ? query.startAt(cursorValue, cursorKey) : query.startAt(startMs);
+            query = query.endAt(endMs).limitToFirst(RAW_PAGE_SIZE + (cursorKey != null ? 1 : 0));
+
+            query.addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                    if (isCancelled()) {
+                        return;
+                    }
+
+                    List<HistoryActivity.LocationPoint> page = new ArrayList<>();
+                    int childCount = 0;
+                    for (DataSnapshot locationSnapshot : snapshot.getChildren()) {
+                        if (locationSnapshot.getKey().equals(cursorKey)) {
+                            continue;
+                        }
+                        childCount++;
+                        cursorKey = locationSnapshot.getKey();
+
+                        try {
+                            Double latitude = locationSnapshot.child("latitude").getValue(Double.class);
+                            Double longitude = locationSnapshot.child("longitude").getValue(Double.class);
+                            Long timestamp = locationSnapshot.child("timestamp").getValue(Long.class);
+
+                            if (timestamp != null) {
+                                cursorValue = (double) timestamp;
+                            }
+                            if (latitude != null && longitude != null && timestamp != null) {
+                                page.add(new HistoryActivity.LocationPoint(latitude, longitude, timestamp));
+                            }
+                        } catch (Exception e) {
+                            Log.e(TAG, "Error parsing location point", e);
+                        }
+                    }
+
+                    deliver(page);
+                    if (childCount < RAW_PAGE_SIZE) {
+                        finishDay(date);
+                    }
+                    nextPage();
+                }
+
+                @Override
+                public void onCancelled(@NonNull DatabaseError databaseError) {
+                    if (isCancelled()) {
+                        return;
+                    }
+                    Log.e(TAG, "Failed to load location history for " + date, databaseError.toException());
+                    listener.onError(date, databaseError.getMessage());
+                    finishDay(date);
+                    nextPage();
+                }
+            });
+        }
+
+        void deliver(List<HistoryActivity.LocationPoint> page) {
+            if (page.isEmpty()) {
+                return;
+            }
+            // Segments are ordered by start time and raw points by timestamp, so only
+            // points inside a single segment page can need a local sort
+            page.sort((a, b) -> Long.compare(a.timestamp, b.timestamp));
+            dayPointCount += page.size();
+            totalPointCount += page.size();
+            listener.onPage(page);
+        }
+
+        void startPhase(Phase next) {
+            phase = next;
+            cursorValue = null;
+            cursorKey = null;
+        }
+
+        void finishDay(String date) {
+            Log.d(TAG, "Loaded " + dayPointCount + " location points for " + date);
+            listener.onDayLoaded(date, dayPointCount);
+            dayIndex++;
+            dayPointCount = 0;
+            startPhase(Phase.SEGMENTS);
+        }
+    }
+}
@@ -31,6 +31,14 @@ public class LocationTimePointsAdapter extends RecyclerView.Adapter<LocationTime
         notifyDataSetChanged();
     }
     
+    /**
+     * Append a page of points without rebinding the rows already shown
+     */
+    public void appendLocationPoints(List<HistoryActivity.LocationPoint> newPoints, int positionStart) {
+        this.locationPoints.addAll(newPoints);
+        notifyItemRangeInserted(positionStart, newPoints.size());
+    }
+    
     @NonNull
     @Override
     public TimePointViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -13,6 +13,8 @@ import androidx.appcompat.app.AppCompatActivity;
 import com.mihir.alzheimerscaregiver.caretaker.activities.EmergencyContactsActivity;
 import com.mihir.alzheimerscaregiver.caretaker.auth.SessionManager;
 import com.mihir.alzheimerscaregiver.caretaker.managers.FCMTokenManager;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientStateStore;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientSubscriptionManager;
 import com.google.firebase.auth.FirebaseAuth;
 
 public class MainActivity extends AppCompatActivity {
@@ -21,7 +23,7 @@ public class MainActivity extends AppCompatActivity {
     
     private Button addMedicationButton, viewMedicationsButton, addTaskButton, addEmergencyContactButton, logoutButton, viewMmseResultsButton;
     private Button scheduleMmseTestButton, addCustomQuestionsButton, addPatientProfileButton;
-    private Button viewLocationButton, viewHistoryButton, manageGeofencesButton;
+    private Button viewLocationButton, viewHistoryButton, manageGeofencesButton, viewDashboardButton;
     
     // New card views for modern UI
     private View addPatientProfileCard, scheduleMmseTestCard, addCustomQuestionsCard, viewMmseResultsCard;
@@ -71,6 +73,7 @@ public class MainActivity extends AppCompatActivity {
         // Location tracking buttons
         viewLocationButton = findViewById(R.id.viewLocationButton);
         viewHistoryButton = findViewById(R.id.viewHistoryButton);
+        viewDashboardButton = findViewById(R.id.viewDashboardButton);
         //manageGeofencesButton = findViewById(R.id.manageGeofencesButton);
         
         // New card views for modern UI
@@ -161,6 +164,10 @@ public class MainActivity extends AppCompatActivity {
             startActivity(intent);
         });
         
+        viewDashboardButton.setOnClickListener(v -> {
+            startActivity(new Intent(MainActivity.this, PatientDashboardActivity.class));
+        });
+        
         // TODO: Geofence management functionality (disabled for now)
         /*
         manageGeofencesButton.setOnClickListener(v -> {
@@ -179,6 +186,10 @@ public class MainActivity extends AppCompatActivity {
         // Use SessionManager to handle proper logout
         sessionManager.signOut();
         
+        // Drop live patient listeners and cached state of this caretaker
+        PatientSubscriptionManager.getInstance().releaseAll();
+        PatientStateStore.getInstance().clear();
+        
         // Clear local preferences
         SharedPreferences.Editor editor = prefs.edit();
         editor.clear();
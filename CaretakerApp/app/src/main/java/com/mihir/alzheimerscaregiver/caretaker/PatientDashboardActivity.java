@@ -0,0 +1,239 @@
+package com.mihir.alzheimerscaregiver.caretaker;
+
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.mihir.alzheimerscaregiver.caretaker.adapters.PatientStatusAdapter;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientState;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientStateStore;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientSubscriptionManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * PatientDashboardActivity - Live overview of every patient linked to this caretaker
+ *
+ * Patients come from caretakerPatients/{uid}/linkedPatients (written by PatientLinkActivity).
+ * Each patient's location and alert paths are acquired once through
+ * PatientSubscriptionManager; rows are drawn from PatientStateStore, so opening a
+ * patient's map reuses the same listener and shows the cached position immediately.
+ */
+public class PatientDashboardActivity extends AppCompatActivity {
+
+    private static final String TAG = "PatientDashboard";
+
+    // Staleness changes with time even when no data arrives
+    private static final long TICK_INTERVAL_MS = 30 * 1000;
+
+    private TextView textSummary;
+    private TextView textEmpty;
+    private ProgressBar progressBar;
+    private PatientStatusAdapter adapter;
+
+    private final PatientStateStore store = PatientStateStore.getInstance();
+    private final Set<String> patientIds = new LinkedHashSet<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean refreshPosted;
+
+    private final Runnable refreshRunnable = () -> {
+        refreshPosted = false;
+        render();
+    };
+
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            render();
+            handler.postDelayed(this, TICK_INTERVAL_MS);
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_patient_dashboard);
+
+        androidx.appcompat.widget.Toolbar toolbar = findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            getSupportActionBar().setTitle("Patient Dashboard");
+        }
+        toolbar.setNavigationOnClickListener(v -> onBackPressed());
+
+        textSummary = findViewById(R.id.textSummary);
+        textEmpty = findViewById(R.id.textEmpty);
+        progressBar = findViewById(R.id.progressBar);
+
+        RecyclerView recyclerView = findViewById(R.id.recyclerPatients);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        adapter = new PatientStatusAdapter(this, this::openPatientMap);
+        recyclerView.setAdapter(adapter);
+
+        // Many patients can update in the same frame; redraw once
+        store.observe(this, state -> {
+            if (patientIds.contains(state.patientId)) {
+                scheduleRefresh();
+            }
+        });
+
+        loadPatients();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(tickRunnable);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(tickRunnable);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        handler.removeCallbacks(refreshRunnable);
+        // Subscriptions are released by the lifecycle observer
+    }
+
+    /**
+     * Read the caretaker's linked patients, then subscribe to each of them
+     */
+    private void loadPatients() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        SharedPreferences prefs = getSharedPreferences("CaretakerApp", MODE_PRIVATE);
+        String linkedPatientId = prefs.getString("linkedPatientId", null);
+
+        if (user == null) {
+            onPatientsLoaded(singleton(linkedPatientId));
+            return;
+        }
+
+        FirebaseFirestore.getInstance()
+                .collection("caretakerPatients")
+                .document(user.getUid())
+                .collection("linkedPatients")
+                .get()
+                .addOnSuccessListener(snapshot -> {
+                    List<String> ids = new ArrayList<>();
+                    for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                        ids.add(doc.getId());
+                    }
+                    // The locally linked patient predates the collection for older installs
+                    if (linkedPatientId != null && !ids.contains(linkedPatientId)) {
+                        ids.add(linkedPatientId);
+                    }
+                    onPatientsLoaded(ids);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to load linked patients", e);
+                    onPatientsLoaded(singleton(linkedPatientId));
+                });
+    }
+
+    private void onPatientsLoaded(List<String> ids) {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        progressBar.setVisibility(View.GONE);
+
+        PatientSubscriptionManager subscriptions = PatientSubscriptionManager.getInstance();
+        for (String patientId : ids) {
+            if (!patientIds.add(patientId)) {
+                continue;
+            }
+            // Rows show up as "No location yet" until the first snapshot arrives
+            store.track(patientId);
+            // Listeners are shared with any screen already watching this patient
+            subscriptions.acquire(this, patientId, PatientSubscriptionManager.Channel.LOCATION, null);
+            subscriptions.acquire(this, patientId, PatientSubscriptionManager.Channel.ALERTS, null);
+            if (store.get(patientId).name == null) {
+                loadPatientName(patientId);
+            }
+        }
+        Log.d(TAG, "📋 Monitoring " + patientIds.size() + " patients with "
+                + subscriptions.getAttachedListenerCount() + " listeners");
+        render();
+    }
+
+    private void loadPatientName(String patientId) {
+        FirebaseFirestore.getInstance()
+                .collection("patients")
+                .document(patientId)
+                .get()
+                .addOnSuccessListener(doc -> {
+                    String name = doc.getString("name");
+                    if (name != null) {
+                        store.setName(patientId, name);
+                    }
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "Failed to load name for patient " + patientId, e));
+    }
+
+    private void scheduleRefresh() {
+        if (!refreshPosted) {
+            refreshPosted = true;
+            handler.post(refreshRunnable);
+        }
+    }
+
+    private void render() {
+        long now = System.currentTimeMillis();
+        List<PatientState> states = new ArrayList<>();
+        int alerting = 0;
+        int stale = 0;
+        for (PatientState state : store.getAllByAttention(now)) {
+            if (!patientIds.contains(state.patientId)) {
+                continue;
+            }
+            states.add(state);
+            if (state.activeAlertCount > 0) {
+                alerting++;
+            }
+            if (state.isStale(now)) {
+                stale++;
+            }
+        }
+        adapter.setPatients(states, now);
+        textEmpty.setVisibility(patientIds.isEmpty() && progressBar.getVisibility() == View.GONE
+                ? View.VISIBLE : View.GONE);
+        textSummary.setText(patientIds.size() + " patients • " + alerting + " with alerts • "
+                + stale + " stale or offline");
+    }
+
+    private void openPatientMap(PatientState state) {
+        Intent intent = new Intent(this, CaretakerMapActivity.class);
+        intent.putExtra("patientId", state.patientId);
+        intent.putExtra("patientName", state.getDisplayName());
+        startActivity(intent);
+    }
+
+    private static List<String> singleton(String patientId) {
+        List<String> ids = new ArrayList<>();
+        if (patientId != null) {
+            ids.add(patientId);
+        }
+        return ids;
+    }
+}
@@ -8,6 +8,7 @@ import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientSubscriptionManager;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -36,11 +37,10 @@ public class PatientGeofenceManager {
     // Firebase references
     private DatabaseReference databaseReference;
     private DatabaseReference geofencesRef;
-    private DatabaseReference alertsRef;
     private DatabaseReference settingsRef;
     
     // Listeners
-    private Map<String, ValueEventListener> alertListeners;
+    private Map<String, PatientSubscriptionManager.Subscription> alertSubscriptions;
     
     // Context
     private Context context;
@@ -48,7 +48,7 @@ public class PatientGeofenceManager {
     public PatientGeofenceManager(Context context) {
         this.context = context;
         this.databaseReference = FirebaseDatabase.getInstance().getReference();
-        this.alertListeners = new HashMap<>();
+        this.alertSubscriptions = new HashMap<>();
         
         Log.d(TAG, "PatientGeofenceManager initialized");
     }
@@ -208,6 +208,7 @@ public class PatientGeofenceManager {
     
     /**
      * Start monitoring alerts for a patient
+     * Shares the unprocessed-alerts listener with the dashboard via PatientSubscriptionManager.
      */
     public void startAlertMonitoring(String patientId, AlertCallback callback) {
         if (patientId == null || callback == null) {
@@ -217,11 +218,10 @@ public class PatientGeofenceManager {
         // Stop existing listener if any
         stopAlertMonitoring(patientId);
         
-        alertsRef = databaseReference.child("patients").child(patientId).child("alerts");
-        
-        ValueEventListener alertListener = new ValueEventListener() {
+        PatientSubscriptionManager.Subscription subscription = PatientSubscriptionManager.getInstance().acquire(
+                patientId, PatientSubscriptionManager.Channel.ALERTS, new PatientSubscriptionManager.SnapshotListener() {
             @Override
-            public void onDataChange(DataSnapshot dataSnapshot) {
+            public void onSnapshot(DataSnapshot dataSnapshot) {
                 for (DataSnapshot alertSnapshot : dataSnapshot.getChildren()) {
                     try {
                         GeofenceAlert alert = parseAlertFromSnapshot(alertSnapshot);
@@ -238,14 +238,12 @@ public class PatientGeofenceManager {
             }
             
             @Override
-            public void onCancelled(DatabaseError databaseError) {
-                Log.e(TAG, "Alert monitoring cancelled", databaseError.toException());
-                callback.onError("Alert monitoring failed: " + databaseError.getMessage());
+            public void onError(String message) {
+                Log.e(TAG, "Alert monitoring cancelled: " + message);
+                callback.onError("Alert monitoring failed: " + message);
             }
-        };
-        
-        alertsRef.addValueEventListener(alertListener);
-        alertListeners.put(patientId, alertListener);
+        });
+        alertSubscriptions.put(patientId, subscription);
         
         Log.d(TAG, "Started alert monitoring for patient: " + patientId);
     }
@@ -254,9 +252,9 @@ public class PatientGeofenceManager {
      * Stop monitoring alerts for a patient
      */
     public void stopAlertMonitoring(String patientId) {
-        ValueEventListener listener = alertListeners.remove(patientId);
-        if (listener != null && alertsRef != null) {
-            alertsRef.removeEventListener(listener);
+        PatientSubscriptionManager.Subscription subscription = alertSubscriptions.remove(patientId);
+        if (subscription != null) {
+            subscription.release();
             Log.d(TAG, "Stopped alert monitoring for patient: " + patientId);
         }
     }
@@ -388,11 +386,9 @@ public class PatientGeofenceManager {
      * Clean up resources
      */
     public void cleanup() {
-        for (Map.Entry<String, ValueEventListener> entry : alertListeners.entrySet()) {
-            String patientId = entry.getKey();
+        for (String patientId : new ArrayList<>(alertSubscriptions.keySet())) {
             stopAlertMonitoring(patientId);
         }
-        alertListeners.clear();
         Log.d(TAG, "PatientGeofenceManager cleaned up");
     }
     
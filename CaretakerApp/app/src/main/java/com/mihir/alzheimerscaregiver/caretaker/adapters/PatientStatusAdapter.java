@@ -0,0 +1,111 @@
+package com.mihir.alzheimerscaregiver.caretaker.adapters;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.mihir.alzheimerscaregiver.caretaker.R;
+import com.mihir.alzheimerscaregiver.caretaker.monitoring.PatientState;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One row per monitored patient on the dashboard: name, location freshness and alerts
+ */
+public class PatientStatusAdapter extends RecyclerView.Adapter<PatientStatusAdapter.PatientViewHolder> {
+
+    public interface OnPatientClickListener {
+        void onPatientClick(PatientState state);
+    }
+
+    private final Context context;
+    private final OnPatientClickListener listener;
+    private final List<PatientState> patients = new ArrayList<>();
+    private long now = System.currentTimeMillis();
+
+    public PatientStatusAdapter(Context context, OnPatientClickListener listener) {
+        this.context = context;
+        this.listener = listener;
+    }
+
+    /**
+     * Replace the rows; {@code now} is used for the "updated x min ago" and staleness labels
+     */
+    public void setPatients(List<PatientState> states, long now) {
+        this.now = now;
+        patients.clear();
+        patients.addAll(states);
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public PatientViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.item_patient_status, parent, false);
+        return new PatientViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PatientViewHolder holder, int position) {
+        PatientState state = patients.get(position);
+        holder.textName.setText(state.getDisplayName());
+
+        boolean stale = state.isStale(now);
+        if (!state.hasLocation()) {
+            holder.textLocation.setText("No location yet");
+        } else {
+            CharSequence age = DateUtils.getRelativeTimeSpanString(state.locationTimestamp, now,
+                    DateUtils.MINUTE_IN_MILLIS);
+            holder.textLocation.setText((stale ? "⚠️ Stale – last seen " : "📍 Updated ") + age);
+        }
+
+        int statusColor;
+        if (state.activeAlertCount > 0) {
+            statusColor = R.color.error;
+            holder.textAlerts.setVisibility(View.VISIBLE);
+            String text = state.activeAlertCount == 1 ? "1 alert" : state.activeAlertCount + " alerts";
+            if (state.latestAlertDescription != null) {
+                text += " • " + state.latestAlertDescription;
+            }
+            holder.textAlerts.setText("🚨 " + text);
+        } else {
+            statusColor = stale ? R.color.warning : R.color.success;
+            holder.textAlerts.setVisibility(View.GONE);
+        }
+        holder.statusDot.getBackground().mutate().setTint(ContextCompat.getColor(context, statusColor));
+
+        holder.itemView.setOnClickListener(v -> {
+            if (listener != null) {
+                listener.onPatientClick(state);
+            }
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return patients.size();
+    }
+
+    static class PatientViewHolder extends RecyclerView.ViewHolder {
+        final View statusDot;
+        final TextView textName;
+        final TextView textLocation;
+        final TextView textAlerts;
+
+        PatientViewHolder(@NonNull View itemView) {
+            super(itemView);
+            statusDot = itemView.findViewById(R.id.viewStatusDot);
+            textName = itemView.findViewById(R.id.textPatientName);
+            textLocation = itemView.findViewById(R.id.textLocationStatus);
+            textAlerts = itemView.findViewById(R.id.textAlerts);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.mihir.alzheimerscaregiver.caretaker.analytics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot of one local day of movement, produced by MovementAnalyzer
+ *
+ * Times are in milliseconds and distances in meters. Stays and trips are attributed
+ * to the day they start on.
+ */
+public class DailyMovementSummary {
+
+    /**
+     * A place where the patient remained within MovementAnalyzer.STAY_RADIUS_METERS
+     * for at least MovementAnalyzer.STAY_MIN_DURATION_MS
+     */
+    public static class StayPoint {
+        public final double latitude;
+        public final double longitude;
+        public final long arrivalTime;
+        public final long departureTime;
+        public final int pointCount;
+        // Still open: the patient has not left yet
+        public final boolean ongoing;
+
+        public StayPoint(double latitude, double longitude, long arrivalTime, long departureTime,
+                         int pointCount, boolean ongoing) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.arrivalTime = arrivalTime;
+            this.departureTime = departureTime;
+            this.pointCount = pointCount;
+            this.ongoing = ongoing;
+        }
+
+        public long getDurationMs() {
+            return departureTime - arrivalTime;
+        }
+    }
+
+    /**
+     * Movement between two stays (or from/to the edge of the data)
+     */
+    public static class Trip {
+        public final long startTime;
+        public final long endTime;
+        public final double distanceMeters;
+        // Straight-line distance between the first and last point
+        public final double displacementMeters;
+        public final boolean ongoing;
+
+        public Trip(long startTime, long endTime, double distanceMeters, double displacementMeters, boolean ongoing) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.distanceMeters = distanceMeters;
+            this.displacementMeters = displacementMeters;
+            this.ongoing = ongoing;
+        }
+
+        public long getDurationMs() {
+            return endTime - startTime;
+        }
+
+        /**
+         * Path length over straight-line distance; 1.0 is a direct route, higher is meandering
+         */
+        public double getTortuosity() {
+            return displacementMeters > 0 ? distanceMeters / displacementMeters : 1.0;
+        }
+    }
+
+    public final String date;
+    public final int pointCount;
+    public final long firstTimestamp;
+    public final long lastTimestamp;
+    public final double distanceMeters;
+    public final long movingMs;
+    public final long nightMovingMs;
+    public final double nightDistanceMeters;
+    public final long outsideSafeZoneMs;
+    public final List<StayPoint> stayPoints;
+    public final List<Trip> trips;
+    // 0 (settled day) to 100, see MovementAnalyzer.computeWanderingRisk
+    public final int wanderingRiskScore;
+
+    public DailyMovementSummary(String date, int pointCount, long firstTimestamp, long lastTimestamp,
+                                double distanceMeters, long movingMs, long nightMovingMs,
+                                double nightDistanceMeters, long outsideSafeZoneMs,
+                                List<StayPoint> stayPoints, List<Trip> trips, int wanderingRiskScore) {
+        this.date = date;
+        this.pointCount = pointCount;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+        this.distanceMeters = distanceMeters;
+        this.movingMs = movingMs;
+        this.nightMovingMs = nightMovingMs;
+        this.nightDistanceMeters = nightDistanceMeters;
+        this.outsideSafeZoneMs = outsideSafeZoneMs;
+        this.stayPoints = new ArrayList<>(stayPoints);
+        this.trips = new ArrayList<>(trips);
+        this.wanderingRiskScore = wanderingRiskScore;
+    }
+
+    @Override
+    public String toString() {
+        return "DailyMovementSummary{" +
+                "date='" + date + '\'' +
+                ", points=" + pointCount +
+                ", distance=" + Math.round(distanceMeters) + "m" +
+                ", stays=" + stayPoints.size() +
+                ", trips=" + trips.size() +
+                ", nightMoving=" + nightMovingMs / 60000 + "min" +
+                ", outside=" + outsideSafeZoneMs / 60000 + "min" +
+                ", risk=" + wanderingRiskScore +
+                '}';
+    }
+}
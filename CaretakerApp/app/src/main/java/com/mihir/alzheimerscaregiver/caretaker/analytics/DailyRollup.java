@@ -0,0 +1,173 @@
+package com.mihir.alzheimerscaregiver.caretaker.analytics;
+
+import com.mihir.alzheimerscaregiver.entities.CompressedTrackSegment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * One completed day as compacted by the dailyLocationRollup function under
+ * /locationRollups/{patientId}/{date}
+ *
+ * Point count, distance, stays and time outside safe zones are taken as the server computed
+ * them from the full day. The rollup does not carry night movement or trips, so those come
+ * from running MovementAnalyzer over the simplified track, a few hundred points at most,
+ * anchored on the server's stays.
+ */
+public class DailyRollup {
+
+    public static final int FORMAT_VERSION = 1;
+
+    public int version;
+    public String date;
+    public int pointCount;
+    public long firstTimestamp;
+    public long lastTimestamp;
+    public double distanceMeters;
+    public long outOfFenceMinutes;
+    public List<DailyMovementSummary.StayPoint> stayPoints = new ArrayList<>();
+    // Douglas-Peucker simplified track of the day, null if the function wrote none
+    public CompressedTrackSegment track;
+
+    public static DailyRollup fromFirebase(String date, Map<String, Object> data) {
+        DailyRollup rollup = new DailyRollup();
+        rollup.date = date;
+        if (data == null) {
+            return rollup;
+        }
+
+        rollup.version = intValue(data.get("version"));
+        rollup.pointCount = intValue(data.get("pointCount"));
+        rollup.firstTimestamp = longValue(data.get("firstTimestamp"));
+        rollup.lastTimestamp = longValue(data.get("lastTimestamp"));
+        rollup.distanceMeters = doubleValue(data.get("distanceMeters"));
+        rollup.outOfFenceMinutes = longValue(data.get("outOfFenceMinutes"));
+
+        for (Object stay : children(data.get("stayPoints"))) {
+            if (stay instanceof Map) {
+                Map<?, ?> stayData = (Map<?, ?>) stay;
+                rollup.stayPoints.add(new DailyMovementSummary.StayPoint(
+                        doubleValue(stayData.get("lat")),
+                        doubleValue(stayData.get("lng")),
+                        longValue(stayData.get("arrivalTime")),
+                        longValue(stayData.get("departureTime")),
+                        intValue(stayData.get("pointCount")),
+                        false));
+            }
+        }
+
+        Object track = data.get("track");
+        if (track instanceof Map) {
+            // Firebase maps are always keyed by String
+            @SuppressWarnings("unchecked")
+            Map<String, Object> trackData = (Map<String, Object>) track;
+            rollup.track = CompressedTrackSegment.fromFirebase(trackData);
+        }
+        return rollup;
+    }
+
+    public boolean isSupportedVersion() {
+        return version == FORMAT_VERSION;
+    }
+
+    /**
+     * Simplified track points, oldest first; empty without a track
+     */
+    public List<CompressedTrackSegment.TrackPoint> getTrackPoints() {
+        if (track == null || !track.isSupportedVersion()) {
+            return Collections.emptyList();
+        }
+        return track.decodePoints();
+    }
+
+    /**
+     * Track points with each server stay pinned to its arrival and departure
+     *
+     * Simplification keeps few points around a stay, so the gap to the first walking point
+     * would otherwise count as movement. Track points inside a stay are replaced by the
+     * stay centre at both of its ends.
+     */
+    List<CompressedTrackSegment.TrackPoint> getAnchoredTrackPoints() {
+        List<CompressedTrackSegment.TrackPoint> trackPoints = getTrackPoints();
+        if (trackPoints.isEmpty() || stayPoints.isEmpty()) {
+            return trackPoints;
+        }
+
+        List<CompressedTrackSegment.TrackPoint> anchored = new ArrayList<>();
+        for (CompressedTrackSegment.TrackPoint point : trackPoints) {
+            if (!isInsideStay(point.timestamp)) {
+                anchored.add(point);
+            }
+        }
+        for (DailyMovementSummary.StayPoint stay : stayPoints) {
+            anchored.add(new CompressedTrackSegment.TrackPoint(stay.latitude, stay.longitude, stay.arrivalTime, 0));
+            anchored.add(new CompressedTrackSegment.TrackPoint(stay.latitude, stay.longitude, stay.departureTime, 0));
+        }
+        Collections.sort(anchored, (a, b) -> Long.compare(a.timestamp, b.timestamp));
+        return anchored;
+    }
+
+    private boolean isInsideStay(long timestamp) {
+        for (DailyMovementSummary.StayPoint stay : stayPoints) {
+            if (timestamp >= stay.arrivalTime && timestamp <= stay.departureTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The day in the form MovementAnalyzer produces for days it analyzed itself
+     *
+     * @param timeZone Zone of the day keys, which also defines night hours
+     */
+    public DailyMovementSummary toSummary(TimeZone timeZone) {
+        MovementAnalyzer analyzer = new MovementAnalyzer(timeZone);
+        for (CompressedTrackSegment.TrackPoint point : getAnchoredTrackPoints()) {
+            analyzer.addPoint(point.latitude, point.longitude, point.timestamp);
+        }
+
+        long movingMs = 0;
+        long nightMovingMs = 0;
+        double nightDistanceMeters = 0;
+        List<DailyMovementSummary.Trip> trips = new ArrayList<>();
+        for (DailyMovementSummary fromTrack : analyzer.getDailySummaries()) {
+            movingMs += fromTrack.movingMs;
+            nightMovingMs += fromTrack.nightMovingMs;
+            nightDistanceMeters += fromTrack.nightDistanceMeters;
+            trips.addAll(fromTrack.trips);
+        }
+
+        long outsideSafeZoneMs = outOfFenceMinutes * 60 * 1000;
+        int risk = MovementAnalyzer.computeWanderingRisk(nightMovingMs, outsideSafeZoneMs, trips);
+        return new DailyMovementSummary(date, pointCount, firstTimestamp, lastTimestamp, distanceMeters,
+                movingMs, nightMovingMs, nightDistanceMeters, outsideSafeZoneMs, stayPoints, trips, risk);
+    }
+
+    // Firebase returns JSON arrays as lists, or as maps when keys are sparse
+    private static Collection<?> children(Object value) {
+        if (value instanceof List) {
+            return (List<?>) value;
+        }
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).values();
+        }
+        return Collections.emptyList();
+    }
+
+    private static int intValue(Object value) {
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double doubleValue(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+}
@@ -0,0 +1,460 @@
+package com.mihir.alzheimerscaregiver.caretaker.analytics;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Incremental movement analytics over a patient's location history
+ *
+ * Points are fed in time order with addPoint(); every derived figure is updated in
+ * amortized constant time per point, so a screen can keep one analyzer alive while history pages
+ * stream in and read a summary at any moment without re-scanning the raw points.
+ *
+ * - Stay points: time/distance thresholds (sliding anchor); consecutive points within
+ *   STAY_RADIUS_METERS of the first one for at least STAY_MIN_DURATION_MS, then held
+ *   while points stay within the radius of the centroid. Movement inside a stay is
+ *   treated as GPS jitter and not counted as distance.
+ * - Trips: movement between two stays (shorter than MIN_TRIP_DISTANCE_METERS is dropped)
+ * - Night movement: moving time and distance between NIGHT_START_HOUR and NIGHT_END_HOUR
+ * - Outside time: time spent outside every active safe zone (zero when none are set)
+ *
+ * Steps longer than MAX_STEP_GAP_MS (tracking stopped) contribute distance but no time.
+ */
+public class MovementAnalyzer {
+
+    public static final double STAY_RADIUS_METERS = 100.0;
+    public static final long STAY_MIN_DURATION_MS = 10 * 60 * 1000;     // 10 minutes
+    public static final double MIN_TRIP_DISTANCE_METERS = 150.0;
+    public static final long MAX_STEP_GAP_MS = 60 * 60 * 1000;          // 1 hour
+    public static final int NIGHT_START_HOUR = 22;
+    public static final int NIGHT_END_HOUR = 6;
+
+    // Wandering-risk weights (sum to 100) and the values at which each saturates
+    static final int RISK_WEIGHT_NIGHT = 35;
+    static final int RISK_WEIGHT_OUTSIDE = 30;
+    static final int RISK_WEIGHT_TORTUOSITY = 20;
+    static final int RISK_WEIGHT_TRIPS = 15;
+    static final long RISK_NIGHT_SATURATION_MS = 60 * 60 * 1000;        // 1 hour moving at night
+    static final long RISK_OUTSIDE_SATURATION_MS = 3 * 60 * 60 * 1000;  // 3 hours outside safe zones
+    static final double RISK_TORTUOSITY_SATURATION = 3.0;               // path 3x the direct route
+    static final int RISK_TRIPS_SATURATION = 8;
+
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+
+    /**
+     * Mutable per-day totals; snapshots are built from these
+     */
+    private static class DayAccumulator {
+        int pointCount;
+        long firstTimestamp = Long.MAX_VALUE;
+        long lastTimestamp = Long.MIN_VALUE;
+        double distanceMeters;
+        long movingMs;
+        long nightMovingMs;
+        double nightDistanceMeters;
+        long outsideSafeZoneMs;
+        final List<DailyMovementSummary.StayPoint> stayPoints = new ArrayList<>();
+        final List<DailyMovementSummary.Trip> trips = new ArrayList<>();
+    }
+
+    private final TimeZone timeZone;
+    private final TreeMap<Long, DayAccumulator> days = new TreeMap<>();
+
+    private double[] safeZoneLatitudes = new double[0];
+    private double[] safeZoneLongitudes = new double[0];
+    private double[] safeZoneRadii = new double[0];
+
+    private int pointCount;
+
+    // Previous point
+    private boolean hasLast;
+    private double lastLatitude;
+    private double lastLongitude;
+    private long lastTimestamp;
+    private boolean lastInsideSafeZone;
+
+    // Points since the stay anchor (the first point that may start a stay), not yet
+    // committed as movement; buffer[bufferStart] is the anchor
+    private double[] bufferLatitudes = new double[64];
+    private double[] bufferLongitudes = new double[64];
+    private long[] bufferTimestamps = new long[64];
+    private int bufferStart;
+    private int bufferEnd;
+
+    // Confirmed stay (buffer is empty while one is open)
+    private boolean stayOpen;
+    private long stayStart;
+    private long stayEnd;
+    private double stayLatitudeSum;
+    private double stayLongitudeSum;
+    private int stayCount;
+
+    // Current trip
+    private boolean tripActive;
+    private long tripStart;
+    private double tripStartLatitude;
+    private double tripStartLongitude;
+    private long tripEnd;
+    private double tripEndLatitude;
+    private double tripEndLongitude;
+    private double tripMeters;
+
+    public MovementAnalyzer() {
+        this(TimeZone.getDefault());
+    }
+
+    /**
+     * @param timeZone Zone that defines day boundaries and night hours
+     */
+    public MovementAnalyzer(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Set the fences that count as safe; only active SAFE_ZONE fences (or fences without
+     * a type) are used. Applies to points added afterwards, so set it before feeding history.
+     */
+    public void setSafeZones(Collection<GeofenceDefinition> geofences) {
+        List<GeofenceDefinition> safeZones = new ArrayList<>();
+        for (GeofenceDefinition geofence : geofences) {
+            if (geofence.active && (geofence.type == null ||
+                    GeofenceDefinition.TYPE_SAFE_ZONE.equalsIgnoreCase(geofence.type))) {
+                safeZones.add(geofence);
+            }
+        }
+
+        safeZoneLatitudes = new double[safeZones.size()];
+        safeZoneLongitudes = new double[safeZones.size()];
+        safeZoneRadii = new double[safeZones.size()];
+        for (int i = 0; i < safeZones.size(); i++) {
+            safeZoneLatitudes[i] = safeZones.get(i).lat;
+            safeZoneLongitudes[i] = safeZones.get(i).lng;
+            safeZoneRadii[i] = safeZones.get(i).radius;
+        }
+    }
+
+    /**
+     * Forget all points and derived state (safe zones are kept)
+     */
+    public void reset() {
+        days.clear();
+        pointCount = 0;
+        hasLast = false;
+        tripActive = false;
+        stayOpen = false;
+        bufferStart = 0;
+        bufferEnd = 0;
+    }
+
+    /**
+     * Add the next point of the track
+     * @return false if the point is not newer than the previous one and was ignored
+     */
+    public boolean addPoint(double latitude, double longitude, long timestamp) {
+        if (hasLast && timestamp <= lastTimestamp) {
+            return false;
+        }
+
+        DayAccumulator day = dayFor(timestamp);
+        day.pointCount++;
+        day.firstTimestamp = Math.min(day.firstTimestamp, timestamp);
+        day.lastTimestamp = Math.max(day.lastTimestamp, timestamp);
+        pointCount++;
+
+        // Attribute the elapsed time to where the patient was at the start of the step
+        if (hasLast && timestamp - lastTimestamp <= MAX_STEP_GAP_MS && !lastInsideSafeZone) {
+            dayFor(lastTimestamp).outsideSafeZoneMs += timestamp - lastTimestamp;
+        }
+
+        if (stayOpen) {
+            // Once open, a stay is held around its centroid: the anchor is usually the first
+            // point of the approach, at the edge of the place
+            if (distanceMeters(stayLatitudeSum / stayCount, stayLongitudeSum / stayCount,
+                    latitude, longitude) <= STAY_RADIUS_METERS) {
+                stayLatitudeSum += latitude;
+                stayLongitudeSum += longitude;
+                stayCount++;
+                stayEnd = timestamp;
+            } else {
+                closeStay();
+                commitStep(lastLatitude, lastLongitude, lastTimestamp, latitude, longitude, timestamp);
+                pushPoint(latitude, longitude, timestamp);
+            }
+        } else {
+            // An anchor the new point has left cannot start a stay any more (it would already
+            // have been confirmed): the step from it becomes trip movement
+            while (bufferEnd > bufferStart && distanceMeters(bufferLatitudes[bufferStart],
+                    bufferLongitudes[bufferStart], latitude, longitude) > STAY_RADIUS_METERS) {
+                popAnchor(latitude, longitude, timestamp);
+            }
+            pushPoint(latitude, longitude, timestamp);
+
+            if (timestamp - bufferTimestamps[bufferStart] >= STAY_MIN_DURATION_MS) {
+                openStay();
+            }
+        }
+
+        hasLast = true;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastTimestamp = timestamp;
+        lastInsideSafeZone = isInsideSafeZone(latitude, longitude);
+        return true;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * Summary of the local day containing {@code timestamp}, or null if it has no points
+     * An ongoing stay or trip is included and flagged as such.
+     */
+    public DailyMovementSummary getDailySummary(long timestamp) {
+        long dayIndex = dayIndex(timestamp);
+        DayAccumulator day = days.get(dayIndex);
+        return day != null ? snapshot(dayIndex, day) : null;
+    }
+
+    /**
+     * Summaries of every day with points, oldest first
+     */
+    public List<DailyMovementSummary> getDailySummaries() {
+        List<DailyMovementSummary> summaries = new ArrayList<>();
+        for (Map.Entry<Long, DayAccumulator> entry : days.entrySet()) {
+            summaries.add(snapshot(entry.getKey(), entry.getValue()));
+        }
+        return summaries;
+    }
+
+    private DailyMovementSummary snapshot(long dayIndex, DayAccumulator day) {
+        List<DailyMovementSummary.StayPoint> stayPoints = new ArrayList<>(day.stayPoints);
+        List<DailyMovementSummary.Trip> trips = new ArrayList<>(day.trips);
+
+        if (stayOpen && dayIndex(stayStart) == dayIndex) {
+            stayPoints.add(currentStay(true));
+        }
+        if (tripActive && tripMeters >= MIN_TRIP_DISTANCE_METERS && dayIndex(tripStart) == dayIndex) {
+            trips.add(currentTrip(true));
+        }
+
+        int risk = computeWanderingRisk(day.nightMovingMs, day.outsideSafeZoneMs, trips);
+        return new DailyMovementSummary(LocalDate.ofEpochDay(dayIndex).toString(), day.pointCount,
+                day.firstTimestamp, day.lastTimestamp, day.distanceMeters, day.movingMs,
+                day.nightMovingMs, day.nightDistanceMeters, day.outsideSafeZoneMs,
+                stayPoints, trips, risk);
+    }
+
+    /**
+     * Heuristic 0-100 wandering-risk score for one day
+     *
+     * Weighted sum of saturating components: movement at night, time outside safe zones,
+     * how meandering the trips were (distance-weighted tortuosity) and how many trips
+     * there were. It ranks days for review; it is not a clinical measure.
+     */
+    static int computeWanderingRisk(long nightMovingMs, long outsideSafeZoneMs, List<DailyMovementSummary.Trip> trips) {
+        double night = Math.min(1.0, (double) nightMovingMs / RISK_NIGHT_SATURATION_MS);
+        double outside = Math.min(1.0, (double) outsideSafeZoneMs / RISK_OUTSIDE_SATURATION_MS);
+
+        double weightedTortuosity = 0;
+        double totalDistance = 0;
+        for (DailyMovementSummary.Trip trip : trips) {
+            weightedTortuosity += trip.getTortuosity() * trip.distanceMeters;
+            totalDistance += trip.distanceMeters;
+        }
+        double meanTortuosity = totalDistance > 0 ? weightedTortuosity / totalDistance : 1.0;
+        double tortuosity = Math.max(0, Math.min(1.0, (meanTortuosity - 1.0) / (RISK_TORTUOSITY_SATURATION - 1.0)));
+
+        double tripCount = Math.min(1.0, (double) trips.size() / RISK_TRIPS_SATURATION);
+
+        return (int) Math.round(night * RISK_WEIGHT_NIGHT + outside * RISK_WEIGHT_OUTSIDE +
+                tortuosity * RISK_WEIGHT_TORTUOSITY + tripCount * RISK_WEIGHT_TRIPS);
+    }
+
+    private void pushPoint(double latitude, double longitude, long timestamp) {
+        if (bufferEnd == bufferLatitudes.length) {
+            int count = bufferEnd - bufferStart;
+            if (count * 2 > bufferLatitudes.length) {
+                bufferLatitudes = Arrays.copyOf(bufferLatitudes, bufferLatitudes.length * 2);
+                bufferLongitudes = Arrays.copyOf(bufferLongitudes, bufferLongitudes.length * 2);
+                bufferTimestamps = Arrays.copyOf(bufferTimestamps, bufferTimestamps.length * 2);
+            }
+            System.arraycopy(bufferLatitudes, bufferStart, bufferLatitudes, 0, count);
+            System.arraycopy(bufferLongitudes, bufferStart, bufferLongitudes, 0, count);
+            System.arraycopy(bufferTimestamps, bufferStart, bufferTimestamps, 0, count);
+            bufferStart = 0;
+            bufferEnd = count;
+        }
+        bufferLatitudes[bufferEnd] = latitude;
+        bufferLongitudes[bufferEnd] = longitude;
+        bufferTimestamps[bufferEnd] = timestamp;
+        bufferEnd++;
+    }
+
+    /**
+     * Drop the anchor and commit the step from it to the next point (buffered or incoming)
+     */
+    private void popAnchor(double nextLatitude, double nextLongitude, long nextTimestamp) {
+        int anchor = bufferStart++;
+        if (!tripActive) {
+            startTrip(bufferLatitudes[anchor], bufferLongitudes[anchor], bufferTimestamps[anchor]);
+        }
+        if (bufferStart < bufferEnd) {
+            commitStep(bufferLatitudes[anchor], bufferLongitudes[anchor], bufferTimestamps[anchor],
+                    bufferLatitudes[bufferStart], bufferLongitudes[bufferStart], bufferTimestamps[bufferStart]);
+        } else {
+            commitStep(bufferLatitudes[anchor], bufferLongitudes[anchor], bufferTimestamps[anchor],
+                    nextLatitude, nextLongitude, nextTimestamp);
+        }
+    }
+
+    /**
+     * The buffered points have stayed near the anchor long enough: they form a stay, their
+     * movement was jitter, and the trip that led here ends at the anchor
+     */
+    private void openStay() {
+        stayOpen = true;
+        double anchorLatitude = bufferLatitudes[bufferStart];
+        double anchorLongitude = bufferLongitudes[bufferStart];
+        stayStart = bufferTimestamps[bufferStart];
+        stayEnd = bufferTimestamps[bufferEnd - 1];
+        stayLatitudeSum = 0;
+        stayLongitudeSum = 0;
+        for (int i = bufferStart; i < bufferEnd; i++) {
+            stayLatitudeSum += bufferLatitudes[i];
+            stayLongitudeSum += bufferLongitudes[i];
+        }
+        stayCount = bufferEnd - bufferStart;
+        bufferStart = 0;
+        bufferEnd = 0;
+
+        // The anchor sits up to STAY_RADIUS_METERS short of the place; count the approach
+        if (tripActive) {
+            double centroidLatitude = stayLatitudeSum / stayCount;
+            double centroidLongitude = stayLongitudeSum / stayCount;
+            double approach = distanceMeters(anchorLatitude, anchorLongitude, centroidLatitude, centroidLongitude);
+            recordMovement(dayFor(stayStart), approach, 0, isNight(stayStart));
+            extendTrip(centroidLatitude, centroidLongitude, stayStart, approach);
+        }
+        finishTrip();
+    }
+
+    /**
+     * The patient left the stay: record it and start a trip from its last point
+     */
+    private void closeStay() {
+        DailyMovementSummary.StayPoint stay = currentStay(false);
+        dayFor(stayStart).stayPoints.add(stay);
+        stayOpen = false;
+
+        // Likewise the last stay point is already on the way out; the trip starts at the place
+        double departure = distanceMeters(stay.latitude, stay.longitude, lastLatitude, lastLongitude);
+        startTrip(stay.latitude, stay.longitude, lastTimestamp);
+        recordMovement(dayFor(lastTimestamp), departure, 0, isNight(lastTimestamp));
+        extendTrip(lastLatitude, lastLongitude, lastTimestamp, departure);
+    }
+
+    private void startTrip(double latitude, double longitude, long timestamp) {
+        tripActive = true;
+        tripStart = timestamp;
+        tripStartLatitude = latitude;
+        tripStartLongitude = longitude;
+        tripEnd = timestamp;
+        tripEndLatitude = latitude;
+        tripEndLongitude = longitude;
+        tripMeters = 0;
+    }
+
+    private void commitStep(double fromLatitude, double fromLongitude, long fromTimestamp,
+                            double toLatitude, double toLongitude, long toTimestamp) {
+        double meters = distanceMeters(fromLatitude, fromLongitude, toLatitude, toLongitude);
+        long dt = toTimestamp - fromTimestamp;
+        recordMovement(dayFor(fromTimestamp), meters, dt <= MAX_STEP_GAP_MS ? dt : 0, isNight(fromTimestamp));
+        extendTrip(toLatitude, toLongitude, toTimestamp, meters);
+    }
+
+    private void recordMovement(DayAccumulator day, double meters, long ms, boolean night) {
+        day.distanceMeters += meters;
+        day.movingMs += ms;
+        if (night) {
+            day.nightMovingMs += ms;
+            day.nightDistanceMeters += meters;
+        }
+    }
+
+    private void extendTrip(double latitude, double longitude, long timestamp, double meters) {
+        tripMeters += meters;
+        tripEnd = timestamp;
+        tripEndLatitude = latitude;
+        tripEndLongitude = longitude;
+    }
+
+    private void finishTrip() {
+        if (tripActive && tripMeters >= MIN_TRIP_DISTANCE_METERS) {
+            dayFor(tripStart).trips.add(currentTrip(false));
+        }
+        tripActive = false;
+        tripMeters = 0;
+    }
+
+    private DailyMovementSummary.StayPoint currentStay(boolean ongoing) {
+        return new DailyMovementSummary.StayPoint(stayLatitudeSum / stayCount,
+                stayLongitudeSum / stayCount, stayStart, stayEnd, stayCount, ongoing);
+    }
+
+    private DailyMovementSummary.Trip currentTrip(boolean ongoing) {
+        double displacement = distanceMeters(tripStartLatitude, tripStartLongitude, tripEndLatitude, tripEndLongitude);
+        return new DailyMovementSummary.Trip(tripStart, tripEnd, tripMeters, displacement, ongoing);
+    }
+
+    private boolean isInsideSafeZone(double latitude, double longitude) {
+        if (safeZoneRadii.length == 0) {
+            // No safe zones known: nothing to be outside of
+            return true;
+        }
+        for (int i = 0; i < safeZoneRadii.length; i++) {
+            if (distanceMeters(safeZoneLatitudes[i], safeZoneLongitudes[i], latitude, longitude) <= safeZoneRadii[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private DayAccumulator dayFor(long timestamp) {
+        long dayIndex = dayIndex(timestamp);
+        DayAccumulator day = days.get(dayIndex);
+        if (day == null) {
+            day = new DayAccumulator();
+            days.put(dayIndex, day);
+        }
+        return day;
+    }
+
+    private long dayIndex(long timestamp) {
+        return Math.floorDiv(timestamp + timeZone.getOffset(timestamp), DAY_MS);
+    }
+
+    private boolean isNight(long timestamp) {
+        long hour = Math.floorMod(timestamp + timeZone.getOffset(timestamp), DAY_MS) / HOUR_MS;
+        return hour >= NIGHT_START_HOUR || hour < NIGHT_END_HOUR;
+    }
+
+    static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
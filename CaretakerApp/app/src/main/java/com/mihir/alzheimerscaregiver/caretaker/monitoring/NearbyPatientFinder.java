@@ -0,0 +1,105 @@
+package com.mihir.alzheimerscaregiver.caretaker.monitoring;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * NearbyPatientFinder - "Which of my patients are within X meters of here?"
+ *
+ * Reads only the geohash cells covering the circle from caretakerLocationIndex/{caretakerId}
+ * (see NearbyPatientQuery) instead of every patient's /locations node, so the cost depends on
+ * how many patients are near the point, not on how many the caretaker has.
+ *
+ * Callbacks arrive on the main thread, like the Firebase callbacks that drive them.
+ */
+public class NearbyPatientFinder {
+
+    private static final String TAG = "NearbyPatientFinder";
+    public static final String LOCATION_INDEX_PATH = "caretakerLocationIndex";
+
+    public interface Callback {
+        /**
+         * @param patients Patients inside the radius, nearest first
+         */
+        void onResult(List<NearbyPatientQuery.Candidate> patients);
+
+        void onError(String message);
+    }
+
+    private final FirebaseDatabase database;
+
+    public NearbyPatientFinder() {
+        this(FirebaseDatabase.getInstance());
+    }
+
+    NearbyPatientFinder(FirebaseDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Find the caretaker's patients within radiusMeters of a point
+     *
+     * @param maxAgeMs Ignore positions older than this, or 0 to include stale ones
+     */
+    public void find(String caretakerId, double latitude, double longitude, double radiusMeters,
+                     long maxAgeMs, Callback callback) {
+        if (caretakerId == null || radiusMeters <= 0) {
+            callback.onError("Invalid caretakerId or radius");
+            return;
+        }
+
+        Set<String> cells = NearbyPatientQuery.coveringPrefixes(latitude, longitude, radiusMeters);
+        DatabaseReference indexRef = database.getReference(LOCATION_INDEX_PATH).child(caretakerId);
+        List<NearbyPatientQuery.Candidate> candidates = new ArrayList<>();
+        int[] remaining = {cells.size()};
+        boolean[] failed = {false};
+
+        Log.d(TAG, "Nearby query: " + radiusMeters + "m around " + latitude + ", " + longitude +
+                " over cells " + cells);
+
+        for (String cell : cells) {
+            indexRef.orderByChild("g").startAt(cell).endAt(cell + NearbyPatientQuery.PREFIX_END)
+                    .addListenerForSingleValueEvent(new ValueEventListener() {
+                        @Override
+                        public void onDataChange(@NonNull DataSnapshot snapshot) {
+                            for (DataSnapshot child : snapshot.getChildren()) {
+                                Double lat = child.child("latitude").getValue(Double.class);
+                                Double lng = child.child("longitude").getValue(Double.class);
+                                Long timestamp = child.child("timestamp").getValue(Long.class);
+                                if (lat != null && lng != null) {
+                                    candidates.add(new NearbyPatientQuery.Candidate(child.getKey(), lat, lng,
+                                            timestamp != null ? timestamp : 0));
+                                }
+                            }
+                            if (--remaining[0] == 0 && !failed[0]) {
+                                List<NearbyPatientQuery.Candidate> result = NearbyPatientQuery.select(candidates,
+                                        latitude, longitude, radiusMeters, maxAgeMs, System.currentTimeMillis());
+                                Log.d(TAG, "✅ " + result.size() + " patient(s) nearby out of " +
+                                        candidates.size() + " read");
+                                callback.onResult(result);
+                            }
+                        }
+
+                        @Override
+                        public void onCancelled(@NonNull DatabaseError error) {
+                            Log.e(TAG, "❌ Nearby query failed for cell " + cell + ": " + error.getMessage());
+                            if (!failed[0]) {
+                                failed[0] = true;
+                                callback.onError(error.getMessage());
+                            }
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mihir.alzheimerscaregiver.caretaker.monitoring;
+
+import com.mihir.alzheimerscaregiver.caretaker.utils.Geohash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * NearbyPatientQuery - Plans and finishes a radius query over the caretaker's geohash index
+ *
+ * The patient app keeps caretakerLocationIndex/{caretakerId}/{patientId}.g set to a
+ * INDEX_PRECISION-character geohash of the latest position. A radius query:
+ * 1. coveringPrefixes: picks the longest geohash prefix length whose covering of the circle
+ *    needs at most MAX_QUERY_CELLS cells, and returns those cells
+ * 2. each cell is read with orderByChild("g").startAt(cell).endAt(cell + PREFIX_END)
+ * 3. select: drops the corner hits outside the circle, de-duplicates and sorts by distance
+ */
+public final class NearbyPatientQuery {
+
+    /**
+     * Precision of the "g" values written by the patient app
+     */
+    public static final int INDEX_PRECISION = 10;
+
+    /**
+     * Upper bound on the reads per query; the covering of a circle at the right precision is 4-9 cells
+     */
+    public static final int MAX_QUERY_CELLS = 9;
+
+    /**
+     * Appended to a prefix for endAt, so the range holds every key starting with the prefix
+     */
+    public static final String PREFIX_END = "\uf8ff";
+
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+
+    // Prevent instantiation
+    private NearbyPatientQuery() {}
+
+    /**
+     * A patient's index entry, with its distance from the query center once selected
+     */
+    public static class Candidate {
+        public final String patientId;
+        public final double latitude;
+        public final double longitude;
+        public final long timestamp;
+        public double distanceMeters;
+
+        public Candidate(String patientId, double latitude, double longitude, long timestamp) {
+            this.patientId = patientId;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Geohash cells to read for a circle, at the finest precision that keeps to MAX_QUERY_CELLS
+     */
+    public static Set<String> coveringPrefixes(double latitude, double longitude, double radiusMeters) {
+        // Cells nest, so the count only grows with precision; stop before enumerating a huge covering
+        Set<String> cells = Geohash.coverCircle(latitude, longitude, radiusMeters, 1);
+        for (int precision = 2; precision < INDEX_PRECISION; precision++) {
+            Set<String> finer = Geohash.coverCircle(latitude, longitude, radiusMeters, precision);
+            if (finer.size() > MAX_QUERY_CELLS) {
+                break;
+            }
+            cells = finer;
+        }
+        return cells;
+    }
+
+    /**
+     * Patients within the radius, nearest first
+     *
+     * @param candidates Every entry returned by the cell queries; duplicates are fine
+     * @param maxAgeMs   Drop entries older than this relative to now, or 0 to keep all
+     */
+    public static List<Candidate> select(Collection<Candidate> candidates, double latitude, double longitude,
+                                         double radiusMeters, long maxAgeMs, long now) {
+        Map<String, Candidate> byPatient = new LinkedHashMap<>();
+        for (Candidate candidate : candidates) {
+            if (candidate == null || candidate.patientId == null) {
+                continue;
+            }
+            if (maxAgeMs > 0 && now - candidate.timestamp > maxAgeMs) {
+                continue;
+            }
+            double distance = distanceMeters(latitude, longitude, candidate.latitude, candidate.longitude);
+            // Cells are squares around a circle; the corners hold patients that are too far
+            if (distance > radiusMeters) {
+                continue;
+            }
+            candidate.distanceMeters = distance;
+            Candidate existing = byPatient.get(candidate.patientId);
+            if (existing == null || candidate.timestamp > existing.timestamp) {
+                byPatient.put(candidate.patientId, candidate);
+            }
+        }
+
+        List<Candidate> result = new ArrayList<>(byPatient.values());
+        Collections.sort(result, (a, b) -> Double.compare(a.distanceMeters, b.distanceMeters));
+        return result;
+    }
+
+    /**
+     * Great-circle distance in meters (haversine)
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
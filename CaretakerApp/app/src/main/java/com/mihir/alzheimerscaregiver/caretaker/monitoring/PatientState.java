@@ -0,0 +1,76 @@
+package com.mihir.alzheimerscaregiver.caretaker.monitoring;
+
+/**
+ * Latest known state of one patient, as held by PatientStateStore
+ *
+ * Instances are immutable; the store replaces them on every update so screens can keep
+ * a reference without it changing underneath them.
+ */
+public final class PatientState {
+
+    public final String patientId;
+    public final String name;
+    // Last reported position; locationTimestamp is 0 until the first fix arrives
+    public final double latitude;
+    public final double longitude;
+    public final long locationTimestamp;
+    // Unprocessed alerts and the newest of them
+    public final int activeAlertCount;
+    public final long latestAlertTimestamp;
+    public final String latestAlertDescription;
+
+    PatientState(String patientId, String name, double latitude, double longitude, long locationTimestamp,
+                 int activeAlertCount, long latestAlertTimestamp, String latestAlertDescription) {
+        this.patientId = patientId;
+        this.name = name;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.locationTimestamp = locationTimestamp;
+        this.activeAlertCount = activeAlertCount;
+        this.latestAlertTimestamp = latestAlertTimestamp;
+        this.latestAlertDescription = latestAlertDescription;
+    }
+
+    static PatientState empty(String patientId) {
+        return new PatientState(patientId, null, 0, 0, 0, 0, 0, null);
+    }
+
+    PatientState withName(String name) {
+        return new PatientState(patientId, name, latitude, longitude, locationTimestamp,
+                activeAlertCount, latestAlertTimestamp, latestAlertDescription);
+    }
+
+    PatientState withLocation(double latitude, double longitude, long timestamp) {
+        return new PatientState(patientId, name, latitude, longitude, timestamp,
+                activeAlertCount, latestAlertTimestamp, latestAlertDescription);
+    }
+
+    PatientState withAlerts(int count, long latestTimestamp, String latestDescription) {
+        return new PatientState(patientId, name, latitude, longitude, locationTimestamp,
+                count, latestTimestamp, latestDescription);
+    }
+
+    public boolean hasLocation() {
+        return locationTimestamp > 0;
+    }
+
+    /**
+     * True when there is no fix, or the last one is older than PatientStateStore.STALE_THRESHOLD_MS
+     */
+    public boolean isStale(long now) {
+        return !hasLocation() || now - locationTimestamp > PatientStateStore.STALE_THRESHOLD_MS;
+    }
+
+    public String getDisplayName() {
+        return name != null && !name.isEmpty() ? name : "Patient " + patientId.substring(0, Math.min(6, patientId.length()));
+    }
+
+    @Override
+    public String toString() {
+        return "PatientState{" +
+                "patientId='" + patientId + '\'' +
+                ", locationTimestamp=" + locationTimestamp +
+                ", activeAlerts=" + activeAlertCount +
+                '}';
+    }
+}
@@ -0,0 +1,148 @@
+package com.mihir.alzheimerscaregiver.caretaker.monitoring;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * PatientStateStore - In-memory latest state for every monitored patient
+ *
+ * Fed by PatientSubscriptionManager (one Firebase listener per patient path) and read by
+ * any screen that needs the latest position or alert count. Screens opened later get the
+ * current value straight from here instead of waiting for a fresh download.
+ *
+ * All methods are expected to be called on the main thread, where Firebase delivers its
+ * callbacks.
+ */
+public class PatientStateStore {
+
+    /**
+     * A location older than this is shown as stale (tracking stopped, phone off, no signal)
+     */
+    public static final long STALE_THRESHOLD_MS = 15 * 60 * 1000; // 15 minutes
+
+    public interface Listener {
+        void onPatientStateChanged(PatientState state);
+    }
+
+    private static PatientStateStore instance;
+
+    private final Map<String, PatientState> states = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public static synchronized PatientStateStore getInstance() {
+        if (instance == null) {
+            instance = new PatientStateStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Latest state, or null when nothing is known about the patient yet
+     */
+    public PatientState get(String patientId) {
+        return states.get(patientId);
+    }
+
+    /**
+     * Patients that need attention first: active alerts, then stale or missing
+     * locations, then by name
+     */
+    public List<PatientState> getAllByAttention(long now) {
+        List<PatientState> all = new ArrayList<>(states.values());
+        Collections.sort(all, attentionOrder(now));
+        return all;
+    }
+
+    public static Comparator<PatientState> attentionOrder(long now) {
+        return (a, b) -> {
+            if ((a.activeAlertCount > 0) != (b.activeAlertCount > 0)) {
+                return a.activeAlertCount > 0 ? -1 : 1;
+            }
+            if (a.isStale(now) != b.isStale(now)) {
+                return a.isStale(now) ? -1 : 1;
+            }
+            return a.getDisplayName().compareToIgnoreCase(b.getDisplayName());
+        };
+    }
+
+    /**
+     * Make sure the patient has an entry, so it is listed before any data arrives
+     */
+    public void track(String patientId) {
+        if (!states.containsKey(patientId)) {
+            put(PatientState.empty(patientId));
+        }
+    }
+
+    public void setName(String patientId, String name) {
+        put(stateFor(patientId).withName(name));
+    }
+
+    /**
+     * Record a location fix; older fixes than the one already held are ignored
+     */
+    public void updateLocation(String patientId, double latitude, double longitude, long timestamp) {
+        PatientState current = stateFor(patientId);
+        if (timestamp < current.locationTimestamp) {
+            return;
+        }
+        put(current.withLocation(latitude, longitude, timestamp));
+    }
+
+    public void updateAlerts(String patientId, int activeCount, long latestTimestamp, String latestDescription) {
+        put(stateFor(patientId).withAlerts(activeCount, latestTimestamp, latestDescription));
+    }
+
+    /**
+     * Forget everything, e.g. on logout
+     */
+    public void clear() {
+        states.clear();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Add a listener for as long as the owner is alive
+     */
+    public void observe(LifecycleOwner owner, Listener listener) {
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        addListener(listener);
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner source) {
+                removeListener(listener);
+            }
+        });
+    }
+
+    private PatientState stateFor(String patientId) {
+        PatientState state = states.get(patientId);
+        return state != null ? state : PatientState.empty(patientId);
+    }
+
+    private void put(PatientState state) {
+        states.put(state.patientId, state);
+        for (Listener listener : listeners) {
+            listener.onPatientStateChanged(state);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.mihir.alzheimerscaregiver.caretaker.monitoring;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * PatientSubscriptionManager - One shared Firebase listener per patient path
+ *
+ * Screens acquire a channel for a patient instead of attaching their own ValueEventListener.
+ * The first acquire attaches the Firebase listener; later ones only bump a reference count
+ * and get the last snapshot replayed, so opening the map from the dashboard does not
+ * re-subscribe or re-download. Every snapshot also updates PatientStateStore.
+ *
+ * When the last holder releases, the Firebase listener is kept for RELEASE_DELAY_MS so
+ * hopping between screens (or a configuration change) reuses it.
+ *
+ * Main thread only, like the Firebase callbacks that drive it.
+ */
+public class PatientSubscriptionManager {
+
+    private static final String TAG = "PatientSubscriptionMgr";
+
+    /**
+     * How long an unreferenced listener stays attached before it is removed
+     */
+    public static final long RELEASE_DELAY_MS = 30 * 1000;
+
+    public enum Channel {
+        // Live position written by the patient app's LocationUploader
+        LOCATION,
+        // Geofence alerts not yet handled by a caretaker
+        ALERTS;
+
+        Query query(FirebaseDatabase database, String patientId) {
+            switch (this) {
+                case ALERTS:
+                    return database.getReference("patients").child(patientId).child("alerts")
+                            .orderByChild("processed").equalTo(false);
+                case LOCATION:
+                default:
+                    return database.getReference("locations").child(patientId);
+            }
+        }
+    }
+
+    public interface SnapshotListener {
+        void onSnapshot(DataSnapshot snapshot);
+
+        default void onError(String message) {
+        }
+    }
+
+    /**
+     * Handle returned by acquire; release it once the holder no longer needs updates
+     */
+    public final class Subscription {
+        private final String key;
+        private final SnapshotListener listener;
+        private boolean released;
+
+        private Subscription(String key, SnapshotListener listener) {
+            this.key = key;
+            this.listener = listener;
+        }
+
+        public void release() {
+            if (!released) {
+                released = true;
+                PatientSubscriptionManager.this.release(this);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final Query query;
+        final List<Subscription> holders = new ArrayList<>();
+        ValueEventListener firebaseListener;
+        DataSnapshot lastSnapshot;
+        Runnable pendingRemoval;
+
+        Entry(Query query) {
+            this.query = query;
+        }
+    }
+
+    private static PatientSubscriptionManager instance;
+
+    private final FirebaseDatabase database;
+    private final PatientStateStore store;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    public static synchronized PatientSubscriptionManager getInstance() {
+        if (instance == null) {
+            instance = new PatientSubscriptionManager(FirebaseDatabase.getInstance(), PatientStateStore.getInstance());
+        }
+        return instance;
+    }
+
+    PatientSubscriptionManager(FirebaseDatabase database, PatientStateStore store) {
+        this.database = database;
+        this.store = store;
+    }
+
+    /**
+     * Start (or share) updates for a patient channel
+     * @param listener Optional per-holder callback; null when the holder only reads PatientStateStore
+     */
+    public Subscription acquire(String patientId, Channel channel, SnapshotListener listener) {
+        String key = channel.name() + "/" + patientId;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(channel.query(database, patientId));
+            entries.put(key, entry);
+            attach(key, entry, patientId, channel);
+        } else if (entry.pendingRemoval != null) {
+            mainHandler.removeCallbacks(entry.pendingRemoval);
+            entry.pendingRemoval = null;
+            Log.d(TAG, "♻️ Reusing lingering listener " + key);
+        }
+
+        Subscription subscription = new Subscription(key, listener);
+        entry.holders.add(subscription);
+
+        // Replay what we already have instead of downloading it again
+        DataSnapshot cached = entry.lastSnapshot;
+        if (listener != null && cached != null) {
+            mainHandler.post(() -> {
+                if (!subscription.released) {
+                    listener.onSnapshot(cached);
+                }
+            });
+        }
+        return subscription;
+    }
+
+    /**
+     * Like acquire, released automatically when the owner is destroyed
+     */
+    public Subscription acquire(LifecycleOwner owner, String patientId, Channel channel, SnapshotListener listener) {
+        Subscription subscription = acquire(patientId, channel, listener);
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            subscription.release();
+            return subscription;
+        }
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner source) {
+                subscription.release();
+            }
+        });
+        return subscription;
+    }
+
+    /**
+     * Drop every listener immediately, e.g. on logout
+     */
+    public void releaseAll() {
+        for (Entry entry : entries.values()) {
+            if (entry.pendingRemoval != null) {
+                mainHandler.removeCallbacks(entry.pendingRemoval);
+            }
+            for (Subscription holder : entry.holders) {
+                holder.released = true;
+            }
+            entry.query.removeEventListener(entry.firebaseListener);
+        }
+        entries.clear();
+        Log.d(TAG, "Released all patient listeners");
+    }
+
+    /**
+     * Number of Firebase listeners currently attached (including lingering ones)
+     */
+    public int getAttachedListenerCount() {
+        return entries.size();
+    }
+
+    private void attach(String key, Entry entry, String patientId, Channel channel) {
+        entry.firebaseListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                entry.lastSnapshot = snapshot;
+                updateStore(patientId, channel, snapshot);
+                for (Subscription holder : new ArrayList<>(entry.holders)) {
+                    if (holder.listener != null) {
+                        holder.listener.onSnapshot(snapshot);
+                    }
+                }
+            }
+
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Listener cancelled for " + key, error.toException());
+                for (Subscription holder : new ArrayList<>(entry.holders)) {
+                    if (holder.listener != null) {
+                        holder.listener.onError(error.getMessage());
+                    }
+                }
+                // Firebase removes a cancelled listener; let the next acquire attach a new one
+                entries.remove(key);
+            }
+        };
+        entry.query.addValueEventListener(entry.firebaseListener);
+        Log.d(TAG, "📡 Attached listener " + key + " (" + entries.size() + " attached)");
+    }
+
+    private void release(Subscription subscription) {
+        Entry entry = entries.get(subscription.key);
+        if (entry == null || !entry.holders.remove(subscription) || !entry.holders.isEmpty()) {
+            return;
+        }
+
+        entry.pendingRemoval = () -> {
+            if (entries.get(subscription.key) == entry && entry.holders.isEmpty()) {
+                entry.query.removeEventListener(entry.firebaseListener);
+                entries.remove(subscription.key);
+                Log.d(TAG, "Detached listener " + subscription.key + " (" + entries.size() + " attached)");
+            }
+        };
+        mainHandler.postDelayed(entry.pendingRemoval, RELEASE_DELAY_MS);
+    }
+
+    private void updateStore(String patientId, Channel channel, DataSnapshot snapshot) {
+        try {
+            switch (channel) {
+                case LOCATION:
+                    Double latitude = snapshot.child("latitude").getValue(Double.class);
+                    Double longitude = snapshot.child("longitude").getValue(Double.class);
+                    Long timestamp = snapshot.child("timestamp").getValue(Long.class);
+                    if (latitude != null && longitude != null && timestamp != null) {
+                        store.updateLocation(patientId, latitude, longitude, timestamp);
+                    }
+                    break;
+                case ALERTS:
+                    int count = 0;
+                    long latestTimestamp = 0;
+                    String latestDescription = null;
+                    for (DataSnapshot alert : snapshot.getChildren()) {
+                        count++;
+                        Long alertTime = alert.child("timestamp").getValue(Long.class);
+                        if (alertTime != null && alertTime >= latestTimestamp) {
+                            latestTimestamp = alertTime;
+                            latestDescription = describeAlert(alert);
+                        }
+                    }
+                    store.updateAlerts(patientId, count, latestTimestamp, latestDescription);
+                    break;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing " + channel + " snapshot for patient " + patientId, e);
+        }
+    }
+
+    private static String describeAlert(DataSnapshot alert) {
+        String transition = alert.child("transitionType").getValue(String.class);
+        String geofence = alert.child("geofenceName").getValue(String.class);
+        if (transition == null) {
+            return geofence;
+        }
+        return geofence != null ? transition + " " + geofence : transition;
+    }
+}
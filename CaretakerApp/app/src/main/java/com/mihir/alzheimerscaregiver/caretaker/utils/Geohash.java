@@ -0,0 +1,140 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohash encoding and cell covering for querying the patients' location index
+ *
+ * Must encode exactly like the patient app's location.Geohash, which writes the index.
+ * Coverings wrap across the antimeridian, so a circle near 180 degrees also picks up the
+ * cells on the other side.
+ */
+public final class Geohash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+
+    // Prevent instantiation
+    private Geohash() {}
+
+    /**
+     * Encode a coordinate as a geohash of the given length
+     */
+    public static String encode(double latitude, double longitude, int precision) {
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        StringBuilder hash = new StringBuilder(precision);
+        boolean evenBit = true;
+        int bit = 0;
+        int ch = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                double mid = (minLng + maxLng) / 2;
+                if (longitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLng = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude >= mid) {
+                    ch = (ch << 1) | 1;
+                    minLat = mid;
+                } else {
+                    ch = ch << 1;
+                    maxLat = mid;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32[ch]);
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Height of a cell in degrees of latitude
+     */
+    public static double cellHeightDegrees(int precision) {
+        int latBits = (precision * 5) / 2;
+        return 180.0 / (1L << latBits);
+    }
+
+    /**
+     * Width of a cell in degrees of longitude
+     */
+    public static double cellWidthDegrees(int precision) {
+        int lngBits = (precision * 5 + 1) / 2;
+        return 360.0 / (1L << lngBits);
+    }
+
+    /**
+     * All cells of the given precision that overlap a bounding box inside [-180, 180]
+     */
+    public static Set<String> coverBoundingBox(double minLat, double minLng, double maxLat, double maxLng, int precision) {
+        Set<String> cells = new LinkedHashSet<>();
+        addCells(cells, minLat, minLng, maxLat, maxLng, precision);
+        return cells;
+    }
+
+    /**
+     * All cells overlapping a circle, using its bounding box
+     */
+    public static Set<String> coverCircle(double latitude, double longitude, double radiusMeters, int precision) {
+        double dLat = radiusMeters / METERS_PER_DEGREE_LAT;
+        double metersPerLng = METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(latitude));
+        double minLat = latitude - dLat;
+        double maxLat = latitude + dLat;
+
+        Set<String> cells = new LinkedHashSet<>();
+        // Close to a pole the box spans every longitude
+        if (metersPerLng < 1e-6 || radiusMeters / metersPerLng >= 180 || minLat <= -90 || maxLat >= 90) {
+            addCells(cells, minLat, -180, maxLat, 180, precision);
+            return cells;
+        }
+
+        double minLng = longitude - radiusMeters / metersPerLng;
+        double maxLng = longitude + radiusMeters / metersPerLng;
+        addCells(cells, minLat, Math.max(-180, minLng), maxLat, Math.min(180, maxLng), precision);
+        if (minLng < -180) {
+            addCells(cells, minLat, minLng + 360, maxLat, 180, precision);
+        }
+        if (maxLng > 180) {
+            addCells(cells, minLat, -180, maxLat, maxLng - 360, precision);
+        }
+        return cells;
+    }
+
+    private static void addCells(Set<String> cells, double minLat, double minLng, double maxLat, double maxLng,
+                                 int precision) {
+        double stepLat = cellHeightDegrees(precision);
+        double stepLng = cellWidthDegrees(precision);
+        minLat = Math.max(-90, minLat);
+        maxLat = Math.min(90, maxLat);
+        minLng = Math.max(-180, minLng);
+        maxLng = Math.min(180, maxLng);
+
+        // Stepping by one cell from the box's corner visits every column and row it touches
+        for (double lat = minLat; ; lat += stepLat) {
+            double clampedLat = Math.min(lat, maxLat);
+            for (double lng = minLng; ; lng += stepLng) {
+                double clampedLng = Math.min(lng, maxLng);
+                cells.add(encode(clampedLat, clampedLng, precision));
+                if (clampedLng >= maxLng) {
+                    break;
+                }
+            }
+            if (clampedLat >= maxLat) {
+                break;
+            }
+        }
+    }
+}
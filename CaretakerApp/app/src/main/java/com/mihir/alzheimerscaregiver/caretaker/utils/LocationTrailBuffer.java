@@ -0,0 +1,91 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+/**
+ * Fixed-size ring buffer of the most recent patient positions for the live map trail
+ *
+ * Backed by primitive arrays so a steady stream of fixes does not allocate;
+ * the oldest point is overwritten once the buffer is full.
+ */
+public class LocationTrailBuffer {
+
+    public interface PointConsumer {
+        void accept(double latitude, double longitude, long timestamp);
+    }
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final long[] timestamps;
+    private int head; // next write position
+    private int size;
+
+    public LocationTrailBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * Append a fix; fixes that are not newer than the last one are ignored
+     * @return true if the point was added
+     */
+    public boolean add(double latitude, double longitude, long timestamp) {
+        if (size > 0 && timestamp <= timestamps[indexOf(size - 1)]) {
+            return false;
+        }
+        latitudes[head] = latitude;
+        longitudes[head] = longitude;
+        timestamps[head] = timestamp;
+        head = (head + 1) % latitudes.length;
+        if (size < latitudes.length) {
+            size++;
+        }
+        return true;
+    }
+
+    /**
+     * Visit points from oldest to newest
+     */
+    public void forEach(PointConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            int index = indexOf(i);
+            consumer.accept(latitudes[index], longitudes[index], timestamps[index]);
+        }
+    }
+
+    public double getLatitude(int i) {
+        return latitudes[indexOf(i)];
+    }
+
+    public double getLongitude(int i) {
+        return longitudes[indexOf(i)];
+    }
+
+    public long getTimestamp(int i) {
+        return timestamps[indexOf(i)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return latitudes.length;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    // Position of the i-th oldest point
+    private int indexOf(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index " + i + " size " + size);
+        }
+        int start = (head - size + latitudes.length) % latitudes.length;
+        return (start + i) % latitudes.length;
+    }
+}
@@ -0,0 +1,90 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+/**
+ * Animates a single marker position from where it is drawn now towards the latest fix
+ *
+ * A new target restarts the animation from the current on-screen position, so fixes
+ * that arrive mid-animation do not make the marker jump. Longitude is interpolated
+ * along the short way around the antimeridian.
+ */
+public class MarkerInterpolator {
+
+    private final long durationMs;
+
+    private double startLat;
+    private double startLng;
+    private double targetLat;
+    private double targetLng;
+    private long startTimeMs;
+    private boolean hasPosition;
+
+    // Last computed position, reused to avoid per-frame allocation
+    private double currentLat;
+    private double currentLng;
+
+    public MarkerInterpolator(long durationMs) {
+        this.durationMs = durationMs;
+    }
+
+    /**
+     * Set a new target; the first target is jumped to directly
+     */
+    public void setTarget(double latitude, double longitude, long nowMs) {
+        if (!hasPosition) {
+            startLat = targetLat = currentLat = latitude;
+            startLng = targetLng = currentLng = longitude;
+            startTimeMs = nowMs - durationMs;
+            hasPosition = true;
+            return;
+        }
+
+        update(nowMs);
+        startLat = currentLat;
+        startLng = currentLng;
+        targetLat = latitude;
+        targetLng = longitude;
+        startTimeMs = nowMs;
+    }
+
+    /**
+     * Advance to {@code nowMs}
+     * @return true while the animation is still running
+     */
+    public boolean update(long nowMs) {
+        if (!hasPosition) {
+            return false;
+        }
+
+        float fraction = durationMs <= 0 ? 1f : Math.min(1f, Math.max(0f, (nowMs - startTimeMs) / (float) durationMs));
+        // Ease out so the marker settles gently on the fix
+        double eased = 1 - (1 - fraction) * (1 - fraction);
+
+        double deltaLng = targetLng - startLng;
+        if (deltaLng > 180) {
+            deltaLng -= 360;
+        } else if (deltaLng < -180) {
+            deltaLng += 360;
+        }
+
+        currentLat = startLat + (targetLat - startLat) * eased;
+        currentLng = startLng + deltaLng * eased;
+        if (currentLng > 180) {
+            currentLng -= 360;
+        } else if (currentLng < -180) {
+            currentLng += 360;
+        }
+        return fraction < 1f;
+    }
+
+    public boolean hasPosition() {
+        return hasPosition;
+    }
+
+    public double getLatitude() {
+        return currentLat;
+    }
+
+    public double getLongitude() {
+        return currentLng;
+    }
+}
@@ -74,6 +74,8 @@ public class NotificationHelper {
         
         if ("EXIT".equals(transitionType)) {
             message = patientName + " has left the " + geofenceName + " safe zone";
+        } else if ("EXIT_PREDICTED".equals(transitionType)) {
+            message = patientName + " is heading out of the " + geofenceName + " safe zone";
         } else if ("ENTER".equals(transitionType)) {
             message = patientName + " has entered the " + geofenceName + " safe zone";
         } else {
@@ -0,0 +1,133 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Screen-space grid clustering of history time points
+ *
+ * Points are bucketed into square cells of a fixed pixel size in Web Mercator world
+ * coordinates at the given zoom, so one cluster marker stands for every time point
+ * that would overlap on screen. Only cells whose centroid is inside the supplied
+ * bounds are returned, which keeps the marker count bounded at any zoom.
+ */
+public class TimePointClusterer {
+
+    public static final int DEFAULT_CELL_PIXELS = 80;
+
+    private static final int TILE_SIZE = 256;
+
+    public static class Cluster {
+        // Stable for a given zoom; used to reuse markers between camera moves
+        public final long cellKey;
+        public int count;
+        public long firstTimestamp;
+        public long lastTimestamp;
+        private double latitudeSum;
+        private double longitudeSum;
+
+        Cluster(long cellKey) {
+            this.cellKey = cellKey;
+        }
+
+        public double getLatitude() {
+            return latitudeSum / count;
+        }
+
+        public double getLongitude() {
+            return longitudeSum / count;
+        }
+    }
+
+    private final int cellPixels;
+
+    private double[] latitudes = new double[256];
+    private double[] longitudes = new double[256];
+    private long[] timestamps = new long[256];
+    private int size;
+
+    public TimePointClusterer() {
+        this(DEFAULT_CELL_PIXELS);
+    }
+
+    public TimePointClusterer(int cellPixels) {
+        this.cellPixels = cellPixels;
+    }
+
+    public void add(double latitude, double longitude, long timestamp) {
+        if (size == latitudes.length) {
+            latitudes = Arrays.copyOf(latitudes, size * 2);
+            longitudes = Arrays.copyOf(longitudes, size * 2);
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+        }
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        timestamps[size] = timestamp;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Cluster all points for a zoom level
+     *
+     * @param zoom Camera zoom (fractional zoom is truncated so clusters are stable while pinching)
+     * @return Clusters whose centroid lies inside the bounds, in order of their first point
+     */
+    public List<Cluster> cluster(float zoom, double south, double west, double north, double east) {
+        double worldSize = TILE_SIZE * Math.pow(2, Math.floor(zoom));
+        Map<Long, Cluster> cells = new LinkedHashMap<>();
+
+        for (int i = 0; i < size; i++) {
+            long cellX = (long) Math.floor(worldX(longitudes[i], worldSize) / cellPixels);
+            long cellY = (long) Math.floor(worldY(latitudes[i], worldSize) / cellPixels);
+            long key = (cellX << 32) ^ (cellY & 0xffffffffL);
+
+            Cluster cluster = cells.get(key);
+            if (cluster == null) {
+                cluster = new Cluster(key);
+                cluster.firstTimestamp = timestamps[i];
+                cells.put(key, cluster);
+            }
+            cluster.count++;
+            cluster.latitudeSum += latitudes[i];
+            cluster.longitudeSum += longitudes[i];
+            cluster.firstTimestamp = Math.min(cluster.firstTimestamp, timestamps[i]);
+            cluster.lastTimestamp = Math.max(cluster.lastTimestamp, timestamps[i]);
+        }
+
+        List<Cluster> visible = new ArrayList<>();
+        for (Cluster cluster : cells.values()) {
+            if (contains(cluster.getLatitude(), cluster.getLongitude(), south, west, north, east)) {
+                visible.add(cluster);
+            }
+        }
+        return visible;
+    }
+
+    private static boolean contains(double latitude, double longitude, double south, double west, double north, double east) {
+        if (latitude < south || latitude > north) {
+            return false;
+        }
+        // Bounds can cross the antimeridian
+        return west <= east ? longitude >= west && longitude <= east : longitude >= west || longitude <= east;
+    }
+
+    private static double worldX(double longitude, double worldSize) {
+        return (longitude + 180.0) / 360.0 * worldSize;
+    }
+
+    private static double worldY(double latitude, double worldSize) {
+        double sin = Math.sin(Math.toRadians(Math.max(-85.0511, Math.min(85.0511, latitude))));
+        return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldSize;
+    }
+}
@@ -0,0 +1,209 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+import java.util.Arrays;
+
+/**
+ * Zoom-dependent simplification of a location track for map rendering
+ *
+ * Each appended chunk is run through Douglas-Peucker once, recording for every point
+ * the distance at which it stops being kept (capped by its parent split, so filtering
+ * by a tolerance reproduces Douglas-Peucker at that tolerance). A zoom level is then
+ * just "points more significant than ~1.5 screen pixels at this zoom"; levels are
+ * built lazily, cached and extended incrementally as more chunks arrive.
+ *
+ * Chunk endpoints are always kept, so appending pages never changes earlier output.
+ */
+public class TrackLevelOfDetail {
+
+    public interface PointConsumer {
+        void accept(double latitude, double longitude);
+    }
+
+    public static final int MAX_ZOOM = 21;
+    public static final double PIXEL_TOLERANCE = 1.5;
+
+    private static final double EARTH_RADIUS_METERS = 6371000.0;
+    // Ground resolution of one 256px-tile pixel at zoom 0 on the equator
+    private static final double METERS_PER_PIXEL_ZOOM_0 = 156543.03392;
+
+    private double[] latitudes = new double[256];
+    private double[] longitudes = new double[256];
+    private double[] significance = new double[256];
+    private int size;
+
+    // Lazily built per-zoom index lists, valid for the first levelCovered[zoom] points
+    private final int[][] levelIndices = new int[MAX_ZOOM + 1][];
+    private final int[] levelSizes = new int[MAX_ZOOM + 1];
+    private final int[] levelCovered = new int[MAX_ZOOM + 1];
+
+    /**
+     * Append a chunk of points (in track order)
+     */
+    public void append(double[] chunkLatitudes, double[] chunkLongitudes, int count) {
+        if (count <= 0) {
+            return;
+        }
+        ensureCapacity(size + count);
+        System.arraycopy(chunkLatitudes, 0, latitudes, size, count);
+        System.arraycopy(chunkLongitudes, 0, longitudes, size, count);
+        computeSignificance(size, count);
+        size += count;
+    }
+
+    public void clear() {
+        size = 0;
+        Arrays.fill(levelSizes, 0);
+        Arrays.fill(levelCovered, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getLatitude(int i) {
+        return latitudes[i];
+    }
+
+    public double getLongitude(int i) {
+        return longitudes[i];
+    }
+
+    /**
+     * Number of points drawn at a zoom level
+     */
+    public int getLevelSize(int zoom) {
+        return buildLevel(clampZoom(zoom));
+    }
+
+    /**
+     * Visit the points drawn at a zoom level, in track order
+     */
+    public void forEachPoint(int zoom, PointConsumer consumer) {
+        int level = clampZoom(zoom);
+        int count = buildLevel(level);
+        int[] indices = levelIndices[level];
+        for (int i = 0; i < count; i++) {
+            consumer.accept(latitudes[indices[i]], longitudes[indices[i]]);
+        }
+    }
+
+    /**
+     * Simplification tolerance for a zoom level, in meters
+     */
+    public static double toleranceMeters(int zoom, double latitude) {
+        return METERS_PER_PIXEL_ZOOM_0 * Math.cos(Math.toRadians(latitude)) / Math.pow(2, zoom) * PIXEL_TOLERANCE;
+    }
+
+    private static int clampZoom(int zoom) {
+        return Math.max(0, Math.min(MAX_ZOOM, zoom));
+    }
+
+    private int buildLevel(int zoom) {
+        if (levelCovered[zoom] == size) {
+            return levelSizes[zoom];
+        }
+
+        double tolerance = size > 0 ? toleranceMeters(zoom, latitudes[0]) : 0;
+        int[] indices = levelIndices[zoom];
+        int count = levelSizes[zoom];
+        for (int i = levelCovered[zoom]; i < size; i++) {
+            if (significance[i] > tolerance) {
+                if (indices == null || count == indices.length) {
+                    indices = indices == null ? new int[64] : Arrays.copyOf(indices, indices.length * 2);
+                }
+                indices[count++] = i;
+            }
+        }
+
+        levelIndices[zoom] = indices;
+        levelSizes[zoom] = count;
+        levelCovered[zoom] = size;
+        return count;
+    }
+
+    /**
+     * Douglas-Peucker over [offset, offset + count), storing each point's significance
+     */
+    private void computeSignificance(int offset, int count) {
+        significance[offset] = Double.POSITIVE_INFINITY;
+        significance[offset + count - 1] = Double.POSITIVE_INFINITY;
+        if (count <= 2) {
+            return;
+        }
+        // Points never chosen as a split (collinear runs) are only drawn at zero tolerance
+        Arrays.fill(significance, offset + 1, offset + count - 1, 0);
+
+        // Project to a local flat plane in meters around the first point of the chunk
+        double originLat = latitudes[offset];
+        double originLng = longitudes[offset];
+        double cosLat = Math.cos(Math.toRadians(originLat));
+        double metersPerDegree = Math.toRadians(1) * EARTH_RADIUS_METERS;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = (longitudes[offset + i] - originLng) * metersPerDegree * cosLat;
+            ys[i] = (latitudes[offset + i] - originLat) * metersPerDegree;
+        }
+
+        // Explicit stack of (first, last, parent significance) so long tracks cannot overflow
+        int[] stack = new int[2 * count];
+        double[] caps = new double[count];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = count - 1;
+        caps[0] = Double.POSITIVE_INFINITY;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double cap = caps[top / 2];
+
+            double maxDistance = -1;
+            int maxIndex = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = perpendicularDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    maxIndex = i;
+                }
+            }
+            if (maxIndex < 0 || maxDistance <= 0) {
+                // Nothing inside, or a straight run: interior points keep zero significance
+                continue;
+            }
+
+            // A split point is only reachable while its parent is kept, so it can never
+            // be more significant than the split that exposed it
+            double split = Math.min(maxDistance, cap);
+            significance[offset + maxIndex] = split;
+
+            caps[top / 2] = split;
+            stack[top++] = first;
+            stack[top++] = maxIndex;
+            caps[top / 2] = split;
+            stack[top++] = maxIndex;
+            stack[top++] = last;
+        }
+    }
+
+    private static double perpendicularDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.hypot(px - ax, py - ay);
+        }
+        double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= latitudes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, latitudes.length * 2);
+        latitudes = Arrays.copyOf(latitudes, newCapacity);
+        longitudes = Arrays.copyOf(longitudes, newCapacity);
+        significance = Arrays.copyOf(significance, newCapacity);
+    }
+}
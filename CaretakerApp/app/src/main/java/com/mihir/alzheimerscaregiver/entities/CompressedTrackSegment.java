@@ -0,0 +1,340 @@
+package com.mihir.alzheimerscaregiver.entities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompressedTrackSegment - Compact storage format for a run of location history points
+ * Written by the Patient App (LocationUploader) and decoded by the CaretakerApp (HistoryActivity)
+ *
+ * Stored under /locationTracks/{patientId}/{YYYY-MM-DD}/{segmentKey} instead of one
+ * LocationEntity object per point. Each array is delta-encoded and packed with the
+ * printable variable-length scheme used by Google's encoded polyline format:
+ * - coords: lat/lng pairs scaled by 1e6 (~0.1 m), delta from the previous point
+ * - times: timestamps in ms, delta from the previous point (first delta is from startTime)
+ * - accuracies: horizontal accuracy rounded to whole meters, delta from the previous point
+ * - keep: indices of the Douglas-Peucker simplified track, delta-encoded, for overview drawing
+ *
+ * Provider and mock-location flags are not kept; history consumers only use position and time.
+ */
+public class CompressedTrackSegment {
+
+    public static final int FORMAT_VERSION = 1;
+    public static final double COORDINATE_SCALE = 1e6;
+    public static final double DEFAULT_SIMPLIFY_TOLERANCE_METERS = 10.0;
+
+    private static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    public int version;
+    public long startTime;
+    public long endTime;
+    public int count;
+    public String coords;
+    public String times;
+    public String accuracies;
+    public String keep;
+
+    /**
+     * Decoded point of a segment
+     */
+    public static class TrackPoint {
+        public final double latitude;
+        public final double longitude;
+        public final long timestamp;
+        public final float accuracy;
+
+        public TrackPoint(double latitude, double longitude, long timestamp, float accuracy) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+            this.accuracy = accuracy;
+        }
+    }
+
+    // Default constructor for Firebase
+    public CompressedTrackSegment() {
+        this.version = FORMAT_VERSION;
+    }
+
+    /**
+     * Encode points (sorted by timestamp) into a segment
+     *
+     * @param points Points in chronological order, at least one
+     * @param simplifyToleranceMeters Douglas-Peucker tolerance for the overview track
+     */
+    public static CompressedTrackSegment encode(List<TrackPoint> points, double simplifyToleranceMeters) {
+        if (points == null || points.isEmpty()) {
+            throw new IllegalArgumentException("Cannot encode an empty track");
+        }
+
+        CompressedTrackSegment segment = new CompressedTrackSegment();
+        segment.count = points.size();
+        segment.startTime = points.get(0).timestamp;
+        segment.endTime = points.get(points.size() - 1).timestamp;
+
+        StringBuilder coordBuilder = new StringBuilder(points.size() * 6);
+        StringBuilder timeBuilder = new StringBuilder(points.size() * 3);
+        StringBuilder accuracyBuilder = new StringBuilder(points.size());
+
+        long previousLat = 0;
+        long previousLng = 0;
+        long previousTime = segment.startTime;
+        long previousAccuracy = 0;
+
+        double[] lats = new double[points.size()];
+        double[] lngs = new double[points.size()];
+
+        for (int i = 0; i < points.size(); i++) {
+            TrackPoint point = points.get(i);
+            long lat = Math.round(point.latitude * COORDINATE_SCALE);
+            long lng = Math.round(point.longitude * COORDINATE_SCALE);
+            long accuracy = Math.round(point.accuracy);
+
+            writeSigned(coordBuilder, lat - previousLat);
+            writeSigned(coordBuilder, lng - previousLng);
+            writeSigned(timeBuilder, point.timestamp - previousTime);
+            writeSigned(accuracyBuilder, accuracy - previousAccuracy);
+
+            previousLat = lat;
+            previousLng = lng;
+            previousTime = point.timestamp;
+            previousAccuracy = accuracy;
+            lats[i] = point.latitude;
+            lngs[i] = point.longitude;
+        }
+
+        StringBuilder keepBuilder = new StringBuilder();
+        int previousIndex = 0;
+        for (int index : simplify(lats, lngs, simplifyToleranceMeters)) {
+            writeSigned(keepBuilder, index - previousIndex);
+            previousIndex = index;
+        }
+
+        segment.coords = coordBuilder.toString();
+        segment.times = timeBuilder.toString();
+        segment.accuracies = accuracyBuilder.toString();
+        segment.keep = keepBuilder.toString();
+        return segment;
+    }
+
+    /**
+     * Decode every point of the segment
+     */
+    public List<TrackPoint> decodePoints() {
+        List<TrackPoint> points = new ArrayList<>(Math.max(count, 0));
+        if (coords == null || times == null || count <= 0) {
+            return points;
+        }
+
+        int[] coordCursor = {0};
+        int[] timeCursor = {0};
+        int[] accuracyCursor = {0};
+        long lat = 0;
+        long lng = 0;
+        long time = startTime;
+        long accuracy = 0;
+        boolean hasAccuracy = accuracies != null && !accuracies.isEmpty();
+
+        for (int i = 0; i < count; i++) {
+            lat += readSigned(coords, coordCursor);
+            lng += readSigned(coords, coordCursor);
+            time += readSigned(times, timeCursor);
+            if (hasAccuracy) {
+                accuracy += readSigned(accuracies, accuracyCursor);
+            }
+            points.add(new TrackPoint(lat / COORDINATE_SCALE, lng / COORDINATE_SCALE, time, accuracy));
+        }
+        return points;
+    }
+
+    /**
+     * Decode only the Douglas-Peucker simplified points (falls back to all points)
+     */
+    public List<TrackPoint> decodeSimplifiedPoints() {
+        List<TrackPoint> all = decodePoints();
+        if (keep == null || keep.isEmpty()) {
+            return all;
+        }
+
+        List<TrackPoint> simplified = new ArrayList<>();
+        int[] cursor = {0};
+        int index = 0;
+        while (cursor[0] < keep.length()) {
+            index += (int) readSigned(keep, cursor);
+            if (index >= 0 && index < all.size()) {
+                simplified.add(all.get(index));
+            }
+        }
+        return simplified;
+    }
+
+    /**
+     * Douglas-Peucker simplification
+     * @return Sorted indices of the points to keep (always includes first and last)
+     */
+    public static int[] simplify(double[] lats, double[] lngs, double toleranceMeters) {
+        int n = lats.length;
+        if (n <= 2) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        // Project to a local flat plane in meters around the first point
+        double cosLat = Math.cos(Math.toRadians(lats[0]));
+        double metersPerDegree = Math.toRadians(1) * EARTH_RADIUS_METERS;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = (lngs[i] - lngs[0]) * metersPerDegree * cosLat;
+            ys[i] = (lats[i] - lats[0]) * metersPerDegree;
+        }
+
+        boolean[] kept = new boolean[n];
+        kept[0] = true;
+        kept[n - 1] = true;
+
+        // Explicit stack so long tracks cannot overflow the call stack
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDistance = -1;
+            int maxIndex = -1;
+
+            for (int i = first + 1; i < last; i++) {
+                double distance = perpendicularDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    maxIndex = i;
+                }
+            }
+
+            if (maxIndex >= 0 && maxDistance > toleranceMeters) {
+                kept[maxIndex] = true;
+                stack[top++] = first;
+                stack[top++] = maxIndex;
+                stack[top++] = maxIndex;
+                stack[top++] = last;
+            }
+        }
+
+        int keptCount = 0;
+        for (boolean k : kept) {
+            if (k) keptCount++;
+        }
+        int[] indices = new int[keptCount];
+        int cursor = 0;
+        for (int i = 0; i < n; i++) {
+            if (kept[i]) {
+                indices[cursor++] = i;
+            }
+        }
+        return indices;
+    }
+
+    private static double perpendicularDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.hypot(px - ax, py - ay);
+        }
+        double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    /**
+     * Append a signed value using zig-zag + 5-bit printable chunks (encoded polyline scheme)
+     */
+    static void writeSigned(StringBuilder out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while (zigzag >= 0x20) {
+            out.append((char) ((0x20 | (zigzag & 0x1f)) + 63));
+            zigzag >>>= 5;
+        }
+        out.append((char) (zigzag + 63));
+    }
+
+    static long readSigned(String in, int[] cursor) {
+        long result = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            chunk = in.charAt(cursor[0]++) - 63;
+            result |= (long) (chunk & 0x1f) << shift;
+            shift += 5;
+        } while (chunk >= 0x20);
+        return (result >>> 1) ^ -(result & 1);
+    }
+
+    // Constructor from Firebase data
+    public static CompressedTrackSegment fromFirebase(Map<String, Object> data) {
+        CompressedTrackSegment segment = new CompressedTrackSegment();
+
+        if (data != null) {
+            Object versionObj = data.get("version");
+            if (versionObj instanceof Number) {
+                segment.version = ((Number) versionObj).intValue();
+            }
+
+            Object startObj = data.get("startTime");
+            if (startObj instanceof Number) {
+                segment.startTime = ((Number) startObj).longValue();
+            }
+
+            Object endObj = data.get("endTime");
+            if (endObj instanceof Number) {
+                segment.endTime = ((Number) endObj).longValue();
+            }
+
+            Object countObj = data.get("count");
+            if (countObj instanceof Number) {
+                segment.count = ((Number) countObj).intValue();
+            }
+
+            segment.coords = (String) data.get("coords");
+            segment.times = (String) data.get("times");
+            segment.accuracies = (String) data.get("accuracies");
+            segment.keep = (String) data.get("keep");
+        }
+
+        return segment;
+    }
+
+    // Convert to Firebase-compatible map
+    public Map<String, Object> toFirebaseMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("version", version);
+        map.put("startTime", startTime);
+        map.put("endTime", endTime);
+        map.put("count", count);
+        map.put("coords", coords);
+        map.put("times", times);
+        map.put("accuracies", accuracies);
+        map.put("keep", keep);
+        return map;
+    }
+
+    public boolean isSupportedVersion() {
+        return version == FORMAT_VERSION;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedTrackSegment{" +
+                "startTime=" + startTime +
+                ", endTime=" + endTime +
+                ", count=" + count +
+                ", bytes=" + ((coords != null ? coords.length() : 0) + (times != null ? times.length() : 0)) +
+                '}';
+    }
+}
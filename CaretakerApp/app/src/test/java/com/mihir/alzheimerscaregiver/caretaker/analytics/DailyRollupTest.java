@@ -0,0 +1,242 @@
+package com.mihir.alzheimerscaregiver.caretaker.analytics;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.CompressedTrackSegment;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Tests that a /locationRollups entry yields the same day summary as analyzing its raw points
+ */
+public class DailyRollupTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final double HOME_LAT = 40.712800;
+    private static final double HOME_LNG = -74.006000;
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+    private static final long DAY_START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long FIX_INTERVAL_MS = 30 * 1000;
+
+    /**
+     * Raw fixes of a day built from stays and straight walks
+     */
+    private static class TrackBuilder {
+        final List<CompressedTrackSegment.TrackPoint> points = new ArrayList<>();
+        final Random random = new Random(42);
+        double northMeters;
+        double eastMeters;
+        long time;
+
+        TrackBuilder(long start) {
+            this.time = start;
+        }
+
+        TrackBuilder stay(long durationMs) {
+            long end = time + durationMs;
+            while (time < end) {
+                emit(northMeters + random.nextGaussian() * 5, eastMeters + random.nextGaussian() * 5);
+                time += FIX_INTERVAL_MS;
+            }
+            return this;
+        }
+
+        TrackBuilder walkTo(double targetNorth, double targetEast, double speedMetersPerSecond) {
+            double distance = Math.hypot(targetNorth - northMeters, targetEast - eastMeters);
+            long steps = Math.max(1, Math.round(distance / (speedMetersPerSecond * FIX_INTERVAL_MS / 1000.0)));
+            double startNorth = northMeters;
+            double startEast = eastMeters;
+            for (long i = 1; i <= steps; i++) {
+                northMeters = startNorth + (targetNorth - startNorth) * i / steps;
+                eastMeters = startEast + (targetEast - startEast) * i / steps;
+                time += FIX_INTERVAL_MS;
+                emit(northMeters, eastMeters);
+            }
+            return this;
+        }
+
+        void emit(double north, double east) {
+            double lat = HOME_LAT + north / METERS_PER_DEGREE_LAT;
+            double lng = HOME_LNG + east / (METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(HOME_LAT)));
+            points.add(new CompressedTrackSegment.TrackPoint(lat, lng, time, 0));
+        }
+    }
+
+    /**
+     * A night outing to a spot 800 m away and back, then an afternoon walk with a detour
+     */
+    private static List<CompressedTrackSegment.TrackPoint> nightOutingDay() {
+        return new TrackBuilder(DAY_START)
+                .stay(HOUR)
+                .walkTo(800, 0, 1.0)
+                .stay(30 * 60 * 1000)
+                .walkTo(0, 0, 1.0)
+                .stay(12 * HOUR)
+                .walkTo(300, 300, 1.2)
+                .walkTo(0, 600, 1.2)
+                .walkTo(0, 0, 1.2)
+                .stay(HOUR)
+                .points;
+    }
+
+    private static MovementAnalyzer analyze(List<CompressedTrackSegment.TrackPoint> points) {
+        MovementAnalyzer analyzer = new MovementAnalyzer(UTC);
+        for (CompressedTrackSegment.TrackPoint point : points) {
+            analyzer.addPoint(point.latitude, point.longitude, point.timestamp);
+        }
+        return analyzer;
+    }
+
+    /**
+     * The node dailyLocationRollup writes: server figures plus the 10 m simplified track
+     */
+    private static Map<String, Object> rollupData(List<CompressedTrackSegment.TrackPoint> points,
+                                                  DailyMovementSummary server) {
+        double[] lats = new double[points.size()];
+        double[] lngs = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            lats[i] = points.get(i).latitude;
+            lngs[i] = points.get(i).longitude;
+        }
+        List<CompressedTrackSegment.TrackPoint> simplified = new ArrayList<>();
+        for (int index : CompressedTrackSegment.simplify(lats, lngs, CompressedTrackSegment.DEFAULT_SIMPLIFY_TOLERANCE_METERS)) {
+            simplified.add(points.get(index));
+        }
+
+        List<Object> stays = new ArrayList<>();
+        for (DailyMovementSummary.StayPoint stay : server.stayPoints) {
+            Map<String, Object> stayData = new HashMap<>();
+            stayData.put("lat", stay.latitude);
+            stayData.put("lng", stay.longitude);
+            stayData.put("arrivalTime", stay.arrivalTime);
+            stayData.put("departureTime", stay.departureTime);
+            stayData.put("pointCount", stay.pointCount);
+            stays.add(stayData);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("version", 1);
+        data.put("date", server.date);
+        data.put("generatedAt", DAY_START + 25 * HOUR);
+        data.put("pointCount", server.pointCount);
+        data.put("firstTimestamp", server.firstTimestamp);
+        data.put("lastTimestamp", server.lastTimestamp);
+        // Firebase hands whole numbers back as Long
+        data.put("distanceMeters", Math.round(server.distanceMeters));
+        data.put("outOfFenceMinutes", 95L);
+        data.put("stayPoints", stays);
+        data.put("track", CompressedTrackSegment.encode(simplified, 0).toFirebaseMap());
+        return data;
+    }
+
+    @Test
+    public void serverFiguresArePassedThrough() {
+        List<CompressedTrackSegment.TrackPoint> points = nightOutingDay();
+        DailyMovementSummary raw = analyze(points).getDailySummary(DAY_START);
+
+        DailyRollup rollup = DailyRollup.fromFirebase("2025-01-01", rollupData(points, raw));
+        DailyMovementSummary summary = rollup.toSummary(UTC);
+
+        assertTrue(rollup.isSupportedVersion());
+        assertEquals("2025-01-01", summary.date);
+        assertEquals(raw.pointCount, summary.pointCount);
+        assertEquals(points.get(0).timestamp, summary.firstTimestamp);
+        assertEquals(Math.round(raw.distanceMeters), summary.distanceMeters, 0);
+        assertEquals(95 * 60 * 1000, summary.outsideSafeZoneMs);
+        assertEquals(raw.stayPoints.size(), summary.stayPoints.size());
+        assertEquals(raw.stayPoints.get(1).arrivalTime, summary.stayPoints.get(1).arrivalTime);
+        assertFalse(summary.stayPoints.get(1).ongoing);
+    }
+
+    @Test
+    public void simplifiedTrackGivesTripsAndNightMovementCloseToRawAnalysis() {
+        List<CompressedTrackSegment.TrackPoint> points = nightOutingDay();
+        DailyMovementSummary raw = analyze(points).getDailySummary(DAY_START);
+
+        DailyRollup rollup = DailyRollup.fromFirebase("2025-01-01", rollupData(points, raw));
+        DailyMovementSummary summary = rollup.toSummary(UTC);
+
+        assertEquals(raw.trips.size(), summary.trips.size());
+        for (int i = 0; i < raw.trips.size(); i++) {
+            assertEquals(raw.trips.get(i).distanceMeters, summary.trips.get(i).distanceMeters, 60);
+            // Stay edges move by a few fixes once the stay jitter has been simplified away
+            assertEquals(raw.trips.get(i).startTime, summary.trips.get(i).startTime, 10 * 60 * 1000.0);
+            // Not tortuosity: the round trip ends metres from where it started, so the ratio is noise
+            assertEquals(raw.trips.get(i).displacementMeters, summary.trips.get(i).displacementMeters, 20);
+        }
+        assertEquals(raw.nightMovingMs, summary.nightMovingMs, 3 * 60 * 1000.0);
+        assertTrue(summary.nightMovingMs > 0);
+
+        // Risk from the rollup uses its own outside time, so compare against the raw figures with it
+        int expectedRisk = MovementAnalyzer.computeWanderingRisk(raw.nightMovingMs, 95 * 60 * 1000, raw.trips);
+        assertEquals(expectedRisk, summary.wanderingRiskScore, 3);
+    }
+
+    @Test
+    public void rollupWithoutTrackKeepsServerFiguresOnly() {
+        List<CompressedTrackSegment.TrackPoint> points = nightOutingDay();
+        DailyMovementSummary raw = analyze(points).getDailySummary(DAY_START);
+        Map<String, Object> data = rollupData(points, raw);
+        data.remove("track");
+
+        DailyMovementSummary summary = DailyRollup.fromFirebase("2025-01-01", data).toSummary(UTC);
+
+        assertTrue(summary.trips.isEmpty());
+        assertEquals(0, summary.nightMovingMs);
+        assertEquals(raw.stayPoints.size(), summary.stayPoints.size());
+        assertEquals(MovementAnalyzer.computeWanderingRisk(0, 95 * 60 * 1000, summary.trips),
+                summary.wanderingRiskScore);
+    }
+
+    @Test
+    public void staysStoredAsSparseMapAreRead() {
+        Map<String, Object> stay = new HashMap<>();
+        stay.put("lat", HOME_LAT);
+        stay.put("lng", HOME_LNG);
+        stay.put("arrivalTime", DAY_START);
+        stay.put("departureTime", DAY_START + HOUR);
+        stay.put("pointCount", 120L);
+        Map<String, Object> stays = new HashMap<>();
+        stays.put("1", stay);
+        Map<String, Object> data = new HashMap<>();
+        data.put("version", 1L);
+        data.put("stayPoints", stays);
+
+        DailyRollup rollup = DailyRollup.fromFirebase("2025-01-01", data);
+
+        assertEquals(1, rollup.stayPoints.size());
+        assertEquals(120, rollup.stayPoints.get(0).pointCount);
+        assertEquals(HOUR, rollup.stayPoints.get(0).getDurationMs());
+        assertTrue(rollup.getTrackPoints().isEmpty());
+    }
+
+    @Test
+    public void unknownVersionIsNotSupported() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("version", 2L);
+
+        assertFalse(DailyRollup.fromFirebase("2025-01-01", data).isSupportedVersion());
+        assertFalse(DailyRollup.fromFirebase("2025-01-01", null).isSupportedVersion());
+    }
+
+    @Test
+    public void stayListMatchesFunctionFieldNames() {
+        // Field names of StayPoint in functions/src/rollup.ts
+        List<String> fields = Arrays.asList("lat", "lng", "arrivalTime", "departureTime", "pointCount");
+        List<CompressedTrackSegment.TrackPoint> points = nightOutingDay();
+        Map<String, Object> data = rollupData(points, analyze(points).getDailySummary(DAY_START));
+
+        for (Object stay : (List<?>) data.get("stayPoints")) {
+            assertTrue(((Map<?, ?>) stay).keySet().containsAll(fields));
+        }
+    }
+}
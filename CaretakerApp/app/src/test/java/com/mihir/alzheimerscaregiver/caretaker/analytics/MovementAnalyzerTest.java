@@ -0,0 +1,261 @@
+package com.mihir.alzheimerscaregiver.caretaker.analytics;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Synthetic-day tests and a month-long benchmark for MovementAnalyzer
+ */
+public class MovementAnalyzerTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final double HOME_LAT = 40.712800;
+    private static final double HOME_LNG = -74.006000;
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+    private static final long DAY_START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long FIX_INTERVAL_MS = 30 * 1000;
+
+    /**
+     * Feeds a track built from stays and straight walks, one fix every FIX_INTERVAL_MS
+     */
+    private static class TrackBuilder {
+        final MovementAnalyzer analyzer;
+        final Random random = new Random(42);
+        double northMeters;
+        double eastMeters;
+        long time;
+
+        TrackBuilder(MovementAnalyzer analyzer, long start) {
+            this.analyzer = analyzer;
+            this.time = start;
+        }
+
+        TrackBuilder stay(long durationMs) {
+            long end = time + durationMs;
+            while (time < end) {
+                // GPS jitter of a few meters around the spot
+                emit(northMeters + random.nextGaussian() * 5, eastMeters + random.nextGaussian() * 5);
+                time += FIX_INTERVAL_MS;
+            }
+            return this;
+        }
+
+        TrackBuilder walkTo(double targetNorth, double targetEast, double speedMetersPerSecond) {
+            double distance = Math.hypot(targetNorth - northMeters, targetEast - eastMeters);
+            long steps = Math.max(1, Math.round(distance / (speedMetersPerSecond * FIX_INTERVAL_MS / 1000.0)));
+            double startNorth = northMeters;
+            double startEast = eastMeters;
+            for (long i = 1; i <= steps; i++) {
+                northMeters = startNorth + (targetNorth - startNorth) * i / steps;
+                eastMeters = startEast + (targetEast - startEast) * i / steps;
+                time += FIX_INTERVAL_MS;
+                emit(northMeters, eastMeters);
+            }
+            return this;
+        }
+
+        void emit(double north, double east) {
+            double lat = HOME_LAT + north / METERS_PER_DEGREE_LAT;
+            double lng = HOME_LNG + east / (METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(HOME_LAT)));
+            analyzer.addPoint(lat, lng, time);
+        }
+    }
+
+    private static GeofenceDefinition homeZone(float radius) {
+        GeofenceDefinition home = new GeofenceDefinition("home", "Home", "", HOME_LAT, HOME_LNG, radius, "test");
+        home.type = GeofenceDefinition.TYPE_SAFE_ZONE;
+        home.active = true;
+        return home;
+    }
+
+    @Test
+    public void detectsStaysAndTripsForAnOuting() {
+        MovementAnalyzer analyzer = new MovementAnalyzer(UTC);
+        new TrackBuilder(analyzer, DAY_START + 9 * HOUR)
+                .stay(HOUR)
+                .walkTo(1000, 0, 1.2)
+                .stay(HOUR)
+                .walkTo(0, 0, 1.2)
+                .stay(HOUR);
+
+        DailyMovementSummary summary = analyzer.getDailySummary(DAY_START + 12 * HOUR);
+
+        assertEquals("2025-01-01", summary.date);
+        assertEquals(3, summary.stayPoints.size());
+        assertTrue(summary.stayPoints.get(2).ongoing);
+        assertFalse(summary.stayPoints.get(0).ongoing);
+        assertEquals(2, summary.trips.size());
+        // Two 1 km legs; jitter inside stays is not distance
+        assertEquals(2000, summary.distanceMeters, 150);
+        assertEquals(1000, summary.trips.get(0).distanceMeters, 100);
+        assertTrue(summary.trips.get(0).getTortuosity() < 1.2);
+
+        DailyMovementSummary.StayPoint park = summary.stayPoints.get(1);
+        assertEquals(1000, MovementAnalyzer.distanceMeters(HOME_LAT, HOME_LNG, park.latitude, park.longitude), 50);
+        assertTrue(park.getDurationMs() >= 55 * 60 * 1000);
+    }
+
+    @Test
+    public void shortPauseDoesNotSplitTrip() {
+        MovementAnalyzer analyzer = new MovementAnalyzer(UTC);
+        new TrackBuilder(analyzer, DAY_START + 9 * HOUR)
+                .stay(HOUR)
+                .walkTo(600, 0, 1.2)
+                .stay(3 * 60 * 1000)  // waiting at a crossing
+                .walkTo(1200, 0, 1.2)
+                .stay(HOUR);
+
+        DailyMovementSummary summary = analyzer.getDailySummary(DAY_START + 9 * HOUR);
+
+        assertEquals(2, summary.stayPoints.size());
+        assertEquals(1, summary.trips.size());
+        assertEquals(1200, summary.trips.get(0).distanceMeters, 100);
+    }
+
+    @Test
+    public void nightWalkCountsAsNightMovementAndRaisesRisk() {
+        MovementAnalyzer dayWalk = new MovementAnalyzer(UTC);
+        new TrackBuilder(dayWalk, DAY_START + 14 * HOUR)
+                .stay(HOUR).walkTo(800, 0, 1.0).walkTo(0, 0, 1.0).stay(HOUR);
+
+        MovementAnalyzer nightWalk = new MovementAnalyzer(UTC);
+        new TrackBuilder(nightWalk, DAY_START + 1 * HOUR)
+                .stay(HOUR).walkTo(800, 0, 1.0).walkTo(0, 0, 1.0).stay(HOUR);
+
+        DailyMovementSummary day = dayWalk.getDailySummary(DAY_START);
+        DailyMovementSummary night = nightWalk.getDailySummary(DAY_START);
+
+        assertEquals(0, day.nightMovingMs);
+        // ~27 minutes of walking, less the legs inside the home stay radius
+        assertTrue(night.nightMovingMs >= 20 * 60 * 1000);
+        assertEquals(1600, night.nightDistanceMeters, 150);
+        assertTrue(night.wanderingRiskScore > day.wanderingRiskScore);
+    }
+
+    @Test
+    public void timeOutsideSafeZoneIsMeasured() {
+        MovementAnalyzer analyzer = new MovementAnalyzer(UTC);
+        analyzer.setSafeZones(Collections.singletonList(homeZone(150)));
+        new TrackBuilder(analyzer, DAY_START + 9 * HOUR)
+                .stay(HOUR)
+                .walkTo(1000, 0, 1.2)
+                .stay(2 * HOUR)
+                .walkTo(0, 0, 1.2)
+                .stay(HOUR);
+
+        DailyMovementSummary summary = analyzer.getDailySummary(DAY_START);
+
+        // Two hours at the park plus most of both ~14 minute walks
+        long outsideMinutes = summary.outsideSafeZoneMs / 60000;
+        assertTrue("outside " + outsideMinutes + " min", outsideMinutes >= 140 && outsideMinutes <= 150);
+    }
+
+    @Test
+    public void noSafeZonesMeansNoOutsideTime() {
+        MovementAnalyzer analyzer = new MovementAnalyzer(UTC);
+        new TrackBuilder(analyzer, DAY_START + 9 * HOUR).stay(HOUR).walkTo(1000, 0, 1.2).stay(HOUR);
+
+        assertEquals(0, analyzer.getDailySummary(DAY_START).outsideSafeZoneMs);
+    }
+
+    @Test
+    public void meanderingTripScoresHigherThanDirectTrip() {
+        MovementAnalyzer direct = new MovementAnalyzer(UTC);
+        new TrackBuilder(direct, DAY_START + 9 * HOUR).stay(HOUR).walkTo(1000, 0, 1.2).stay(HOUR);
+
+        MovementAnalyzer meandering = new MovementAnalyzer(UTC);
+        new TrackBuilder(meandering, DAY_START + 9 * HOUR).stay(HOUR)
+                .walkTo(300, 400, 1.2).walkTo(600, -400, 1.2).walkTo(800, 400, 1.2).walkTo(1000, 0, 1.2)
+                .stay(HOUR);
+
+        DailyMovementSummary directSummary = direct.getDailySummary(DAY_START);
+        DailyMovementSummary meanderingSummary = meandering.getDailySummary(DAY_START);
+
+        assertTrue(meanderingSummary.trips.get(0).getTortuosity() > 2.0);
+        assertTrue(meanderingSummary.wanderingRiskScore > directSummary.wanderingRiskScore);
+    }
+
+    @Test
+    public void olderPointsAreIgnored() {
+        MovementAnalyzer analyzer = new MovementAnalyzer(UTC);
+
+        assertTrue(analyzer.addPoint(HOME_LAT, HOME_LNG, DAY_START + 1000));
+        assertFalse(analyzer.addPoint(HOME_LAT, HOME_LNG, DAY_START + 1000));
+        assertFalse(analyzer.addPoint(HOME_LAT, HOME_LNG, DAY_START));
+        assertEquals(1, analyzer.getPointCount());
+    }
+
+    @Test
+    public void summariesAreSplitByLocalDay() {
+        MovementAnalyzer analyzer = new MovementAnalyzer(UTC);
+        new TrackBuilder(analyzer, DAY_START + 20 * HOUR)
+                .stay(6 * HOUR)  // past midnight
+                .walkTo(1000, 0, 1.2)
+                .stay(HOUR);
+
+        List<DailyMovementSummary> summaries = analyzer.getDailySummaries();
+
+        assertEquals(2, summaries.size());
+        assertEquals("2025-01-01", summaries.get(0).date);
+        assertEquals("2025-01-02", summaries.get(1).date);
+        // The stay is attributed to the day it started on
+        assertEquals(1, summaries.get(0).stayPoints.size());
+        assertEquals(1, summaries.get(1).trips.size());
+    }
+
+    /**
+     * A month of 30 s fixes (~86k points) with two outings a day
+     * Reports per-point ingest cost and the cost of reading every daily summary.
+     */
+    @Test
+    public void benchmarkMonthOfHistory() {
+        MovementAnalyzer analyzer = new MovementAnalyzer(UTC);
+        analyzer.setSafeZones(Collections.singletonList(homeZone(150)));
+        Random random = new Random(7);
+
+        long ingestStart = System.nanoTime();
+        for (int day = 0; day < 30; day++) {
+            TrackBuilder track = new TrackBuilder(analyzer, DAY_START + day * 24 * HOUR);
+            track.northMeters = 0;
+            track.eastMeters = 0;
+            double outing = random.nextDouble() * 2 * Math.PI;
+            double stroll = random.nextDouble() * 2 * Math.PI;
+            track.stay(9 * HOUR)
+                    .walkTo(1200 * Math.cos(outing), 1200 * Math.sin(outing), 1.2)
+                    .stay(HOUR)
+                    .walkTo(0, 0, 1.2)
+                    .stay(5 * HOUR)
+                    .walkTo(400 * Math.cos(stroll), 400 * Math.sin(stroll), 1.0)
+                    .walkTo(0, 0, 1.0);
+            // Home for the rest of the day
+            track.stay(DAY_START + (day + 1) * 24 * HOUR - track.time);
+        }
+        long ingestNanos = System.nanoTime() - ingestStart;
+
+        long summaryStart = System.nanoTime();
+        List<DailyMovementSummary> summaries = analyzer.getDailySummaries();
+        long summaryNanos = System.nanoTime() - summaryStart;
+
+        int points = analyzer.getPointCount();
+        System.out.println(String.format("MovementAnalyzer: %d points, %.0f ns/point, %d daily summaries in %.2f ms",
+                points, (double) ingestNanos / points, summaries.size(), summaryNanos / 1e6));
+
+        assertEquals(30, summaries.size());
+        assertTrue(points > 80000);
+        for (DailyMovementSummary summary : summaries) {
+            assertTrue(summary.toString(), summary.trips.size() >= 2);
+        }
+        // Generous bounds so the check only fails on a real regression
+        assertTrue(ingestNanos / points < 20000);
+        assertTrue(summaryNanos < 50_000_000L);
+    }
+}
@@ -0,0 +1,243 @@
+package com.mihir.alzheimerscaregiver.caretaker.monitoring;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.caretaker.utils.Geohash;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Radius queries over an in-memory copy of the geohash index, with points placed on cell boundaries
+ */
+public class NearbyPatientQueryTest {
+
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+    private static final long NOW = 1735689600000L; // 2025-01-01 00:00:00 UTC
+
+    /**
+     * The index as the Realtime Database sees it: children ordered by "g", read by key range
+     */
+    private static class FakeIndex {
+        final TreeMap<String, List<NearbyPatientQuery.Candidate>> byGeohash = new TreeMap<>();
+        final List<NearbyPatientQuery.Candidate> all = new ArrayList<>();
+        int reads;
+
+        void put(String patientId, double latitude, double longitude) {
+            put(patientId, latitude, longitude, NOW);
+        }
+
+        void put(String patientId, double latitude, double longitude, long timestamp) {
+            NearbyPatientQuery.Candidate candidate = new NearbyPatientQuery.Candidate(patientId, latitude, longitude, timestamp);
+            String g = Geohash.encode(latitude, longitude, NearbyPatientQuery.INDEX_PRECISION);
+            byGeohash.computeIfAbsent(g, key -> new ArrayList<>()).add(candidate);
+            all.add(candidate);
+        }
+
+        /**
+         * What NearbyPatientFinder does: one orderByChild("g").startAt(cell).endAt(cell + PREFIX_END) per cell
+         */
+        List<NearbyPatientQuery.Candidate> query(double latitude, double longitude, double radiusMeters) {
+            List<NearbyPatientQuery.Candidate> candidates = new ArrayList<>();
+            for (String cell : NearbyPatientQuery.coveringPrefixes(latitude, longitude, radiusMeters)) {
+                Map<String, List<NearbyPatientQuery.Candidate>> range =
+                        byGeohash.subMap(cell, true, cell + NearbyPatientQuery.PREFIX_END, true);
+                for (List<NearbyPatientQuery.Candidate> entries : range.values()) {
+                    candidates.addAll(entries);
+                    reads += entries.size();
+                }
+            }
+            return NearbyPatientQuery.select(candidates, latitude, longitude, radiusMeters, 0, NOW);
+        }
+
+        Set<String> bruteForce(double latitude, double longitude, double radiusMeters) {
+            Set<String> ids = new HashSet<>();
+            for (NearbyPatientQuery.Candidate candidate : all) {
+                if (NearbyPatientQuery.distanceMeters(latitude, longitude, candidate.latitude, candidate.longitude)
+                        <= radiusMeters) {
+                    ids.add(candidate.patientId);
+                }
+            }
+            return ids;
+        }
+    }
+
+    private static Set<String> ids(List<NearbyPatientQuery.Candidate> candidates) {
+        Set<String> ids = new HashSet<>();
+        for (NearbyPatientQuery.Candidate candidate : candidates) {
+            ids.add(candidate.patientId);
+        }
+        return ids;
+    }
+
+    /**
+     * Latitude of the cell edge at or just below the given latitude, for a precision
+     */
+    private static double cellEdgeLatitude(double latitude, int precision) {
+        double height = Geohash.cellHeightDegrees(precision);
+        return Math.floor((latitude + 90) / height) * height - 90;
+    }
+
+    private static double cellEdgeLongitude(double longitude, int precision) {
+        double width = Geohash.cellWidthDegrees(precision);
+        return Math.floor((longitude + 180) / width) * width - 180;
+    }
+
+    @Test
+    public void encodeMatchesPatientAppAndReferenceVector() {
+        // Reference value from the original geohash description
+        assertEquals("u4pruydqqvj", Geohash.encode(57.64911, 10.40744, 11));
+        assertEquals("dr5regw3pp", Geohash.encode(40.712800, -74.006000, NearbyPatientQuery.INDEX_PRECISION));
+    }
+
+    @Test
+    public void coveringStaysWithinReadBudgetAndCoarsensWithRadius() {
+        int previousLength = Integer.MAX_VALUE;
+        for (double radius : new double[] {10, 50, 200, 1000, 5000, 20000, 100000}) {
+            Set<String> cells = NearbyPatientQuery.coveringPrefixes(40.7128, -74.0060, radius);
+            assertTrue(radius + "m needs " + cells.size() + " cells", cells.size() <= NearbyPatientQuery.MAX_QUERY_CELLS);
+            int length = cells.iterator().next().length();
+            assertTrue(length <= previousLength);
+            previousLength = length;
+        }
+    }
+
+    @Test
+    public void patientJustAcrossCellEdgeIsFound() {
+        double radius = 100;
+        double centerLat = 40.7128;
+        double centerLng = -74.0060;
+        int precision = NearbyPatientQuery.coveringPrefixes(centerLat, centerLng, radius).iterator().next().length();
+
+        // Center 1 m north of a cell edge, patient 1 m south of it, both 1 m east of a column edge
+        double edgeLat = cellEdgeLatitude(centerLat, precision);
+        double edgeLng = cellEdgeLongitude(centerLng, precision);
+        double oneMeterLat = 1 / METERS_PER_DEGREE_LAT;
+        double oneMeterLng = 1 / (METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(edgeLat)));
+        double queryLat = edgeLat + oneMeterLat;
+        double queryLng = edgeLng + oneMeterLng;
+
+        FakeIndex index = new FakeIndex();
+        index.put("south", edgeLat - oneMeterLat, queryLng);
+        index.put("west", queryLat, edgeLng - oneMeterLng);
+        index.put("south-west", edgeLat - oneMeterLat, edgeLng - oneMeterLng);
+        index.put("on-edge", edgeLat, edgeLng);
+
+        assertNotEquals(Geohash.encode(queryLat, queryLng, precision), Geohash.encode(edgeLat - oneMeterLat, queryLng, precision));
+        assertNotEquals(Geohash.encode(queryLat, queryLng, precision), Geohash.encode(queryLat, edgeLng - oneMeterLng, precision));
+        assertEquals(new HashSet<>(Arrays.asList("south", "west", "south-west", "on-edge")),
+                ids(index.query(queryLat, queryLng, radius)));
+    }
+
+    @Test
+    public void cellCornersOutsideTheCircleAreDropped() {
+        FakeIndex index = new FakeIndex();
+        double lat = 40.7128;
+        double lng = -74.0060;
+        double metersPerLng = METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(lat));
+        // 95 m north and 95 m east: inside the bounding box, 134 m away
+        index.put("corner", lat + 95 / METERS_PER_DEGREE_LAT, lng + 95 / metersPerLng);
+        index.put("inside", lat + 60 / METERS_PER_DEGREE_LAT, lng);
+
+        List<NearbyPatientQuery.Candidate> result = index.query(lat, lng, 100);
+
+        assertEquals(Collections.singleton("inside"), ids(result));
+        assertEquals(60, result.get(0).distanceMeters, 0.5);
+        assertTrue("corner should have been read and then filtered", index.reads >= 2);
+    }
+
+    @Test
+    public void circleAcrossTheAntimeridianReadsBothSides() {
+        FakeIndex index = new FakeIndex();
+        double lat = -16.5;
+        double oneMeterLng = 1 / (METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(lat)));
+        index.put("east", lat, 180 - 20 * oneMeterLng);
+        index.put("west", lat, -180 + 20 * oneMeterLng);
+        index.put("far-west", lat, -180 + 500 * oneMeterLng);
+
+        List<NearbyPatientQuery.Candidate> result = index.query(lat, 180 - 10 * oneMeterLng, 100);
+
+        assertEquals(new HashSet<>(Arrays.asList("east", "west")), ids(result));
+        assertEquals("east", result.get(0).patientId);
+    }
+
+    @Test
+    public void circleAcrossTheEquatorAndPrimeMeridianMatchesBruteForce() {
+        // The four first-level cells meet here, so every prefix length differs across the axes
+        FakeIndex index = new FakeIndex();
+        Random random = new Random(3);
+        for (int i = 0; i < 400; i++) {
+            index.put("p" + i, (random.nextDouble() - 0.5) * 0.02, (random.nextDouble() - 0.5) * 0.02);
+        }
+        for (double radius : new double[] {50, 300, 1000}) {
+            assertEquals(index.bruteForce(0, 0, radius), ids(index.query(0, 0, radius)));
+        }
+    }
+
+    @Test
+    public void randomQueriesMatchBruteForce() {
+        Random random = new Random(11);
+        FakeIndex index = new FakeIndex();
+        double baseLat = 40.7128;
+        double baseLng = -74.0060;
+        int precision = 7;
+        double edgeLat = cellEdgeLatitude(baseLat, precision);
+        double edgeLng = cellEdgeLongitude(baseLng, precision);
+
+        // A care facility's worth of patients spread over ~5 km, a tenth of them exactly on cell edges
+        for (int i = 0; i < 2000; i++) {
+            double lat = baseLat + (random.nextDouble() - 0.5) * 0.05;
+            double lng = baseLng + (random.nextDouble() - 0.5) * 0.05;
+            if (i % 10 == 0) {
+                lat = edgeLat + Math.round((lat - edgeLat) / Geohash.cellHeightDegrees(precision))
+                        * Geohash.cellHeightDegrees(precision);
+            } else if (i % 10 == 1) {
+                lng = edgeLng + Math.round((lng - edgeLng) / Geohash.cellWidthDegrees(precision))
+                        * Geohash.cellWidthDegrees(precision);
+            }
+            index.put("p" + i, lat, lng);
+        }
+
+        int totalFound = 0;
+        for (int q = 0; q < 200; q++) {
+            double lat = baseLat + (random.nextDouble() - 0.5) * 0.04;
+            double lng = baseLng + (random.nextDouble() - 0.5) * 0.04;
+            // Every fourth query is centered on a cell corner
+            if (q % 4 == 0) {
+                lat = edgeLat;
+                lng = edgeLng;
+            }
+            double radius = new double[] {25, 150, 400, 1500}[q % 4];
+            List<NearbyPatientQuery.Candidate> result = index.query(lat, lng, radius);
+            assertEquals("query " + q + " (" + radius + "m)", index.bruteForce(lat, lng, radius), ids(result));
+            for (int i = 1; i < result.size(); i++) {
+                assertTrue(result.get(i - 1).distanceMeters <= result.get(i).distanceMeters);
+            }
+            totalFound += result.size();
+        }
+        assertTrue(totalFound > 0);
+    }
+
+    @Test
+    public void selectKeepsNewestEntryAndDropsStaleOnes() {
+        List<NearbyPatientQuery.Candidate> candidates = Arrays.asList(
+                new NearbyPatientQuery.Candidate("a", 40.7128, -74.0060, NOW - 1000),
+                new NearbyPatientQuery.Candidate("a", 40.7129, -74.0060, NOW - 500),
+                new NearbyPatientQuery.Candidate("b", 40.7128, -74.0061, NOW - 60 * 60 * 1000));
+
+        List<NearbyPatientQuery.Candidate> result =
+                NearbyPatientQuery.select(candidates, 40.7128, -74.0060, 100, 10 * 60 * 1000, NOW);
+
+        assertEquals(1, result.size());
+        assertEquals(NOW - 500, result.get(0).timestamp);
+    }
+}
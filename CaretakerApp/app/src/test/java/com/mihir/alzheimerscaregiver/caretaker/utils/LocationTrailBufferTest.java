@@ -0,0 +1,104 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ordering, wraparound and stale-fix tests for LocationTrailBuffer
+ */
+public class LocationTrailBufferTest {
+
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+
+    private static List<Long> timestamps(LocationTrailBuffer buffer) {
+        List<Long> result = new ArrayList<>();
+        buffer.forEach((latitude, longitude, timestamp) -> result.add(timestamp));
+        return result;
+    }
+
+    @Test
+    public void pointsAreVisitedOldestFirstBeforeWrapping() {
+        LocationTrailBuffer buffer = new LocationTrailBuffer(4);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(buffer.add(i, -i, START + i));
+        }
+
+        assertEquals(3, buffer.size());
+        assertEquals(4, buffer.capacity());
+        assertEquals(0, buffer.getLatitude(0), 0);
+        assertEquals(-2, buffer.getLongitude(2), 0);
+        assertEquals(Arrays.asList(START, START + 1, START + 2), timestamps(buffer));
+    }
+
+    @Test
+    public void oldestPointsAreOverwrittenOnceFull() {
+        LocationTrailBuffer buffer = new LocationTrailBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(i, -i, START + i);
+        }
+
+        assertEquals(4, buffer.size());
+        assertEquals(Arrays.asList(START + 6, START + 7, START + 8, START + 9), timestamps(buffer));
+        assertEquals(6, buffer.getLatitude(0), 0);
+        assertEquals(-9, buffer.getLongitude(3), 0);
+    }
+
+    @Test
+    public void wrapsExactlyAtCapacity() {
+        LocationTrailBuffer buffer = new LocationTrailBuffer(3);
+        for (int i = 0; i < 4; i++) {
+            buffer.add(i, i, START + i);
+        }
+
+        assertEquals(START + 1, buffer.getTimestamp(0));
+        assertEquals(START + 3, buffer.getTimestamp(2));
+    }
+
+    @Test
+    public void fixesNotNewerThanTheLastAreIgnored() {
+        LocationTrailBuffer buffer = new LocationTrailBuffer(3);
+        buffer.add(1, 1, START + 10);
+
+        assertFalse(buffer.add(2, 2, START + 10));
+        assertFalse(buffer.add(2, 2, START + 5));
+        assertEquals(1, buffer.size());
+
+        // Also after wrapping, where the last point is no longer at the end of the arrays
+        for (int i = 1; i <= 4; i++) {
+            buffer.add(i, i, START + 10 + i);
+        }
+        assertFalse(buffer.add(9, 9, START + 13));
+        assertEquals(START + 14, buffer.getTimestamp(buffer.size() - 1));
+    }
+
+    @Test
+    public void clearEmptiesAndAllowsReuse() {
+        LocationTrailBuffer buffer = new LocationTrailBuffer(2);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(i, i, START + i);
+        }
+        buffer.clear();
+        assertEquals(0, buffer.size());
+
+        // Older timestamps are accepted again after a clear
+        assertTrue(buffer.add(7, 7, START));
+        assertEquals(Arrays.asList(START), timestamps(buffer));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexPastSizeThrows() {
+        LocationTrailBuffer buffer = new LocationTrailBuffer(4);
+        buffer.add(0, 0, START);
+        buffer.getLatitude(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacityIsRejected() {
+        new LocationTrailBuffer(0);
+    }
+}
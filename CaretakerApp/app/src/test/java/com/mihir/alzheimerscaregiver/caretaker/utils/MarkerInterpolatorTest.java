@@ -0,0 +1,102 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Clamping, retargeting and antimeridian tests for MarkerInterpolator
+ */
+public class MarkerInterpolatorTest {
+
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long DURATION_MS = 1000;
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void firstTargetIsJumpedTo() {
+        MarkerInterpolator interpolator = new MarkerInterpolator(DURATION_MS);
+        assertFalse(interpolator.hasPosition());
+        assertFalse(interpolator.update(START));
+
+        interpolator.setTarget(12.97, 77.59, START);
+
+        assertTrue(interpolator.hasPosition());
+        assertFalse(interpolator.update(START));
+        assertEquals(12.97, interpolator.getLatitude(), EPSILON);
+        assertEquals(77.59, interpolator.getLongitude(), EPSILON);
+    }
+
+    @Test
+    public void progressIsEasedAndClampedToTheTarget() {
+        MarkerInterpolator interpolator = new MarkerInterpolator(DURATION_MS);
+        interpolator.setTarget(0, 0, START);
+        interpolator.setTarget(10, 20, START);
+
+        assertTrue(interpolator.update(START + DURATION_MS / 2));
+        // Ease-out: 1 - (1 - 0.5)^2 = 0.75 of the way there at half time
+        assertEquals(7.5, interpolator.getLatitude(), EPSILON);
+        assertEquals(15, interpolator.getLongitude(), EPSILON);
+
+        assertFalse(interpolator.update(START + DURATION_MS));
+        assertEquals(10, interpolator.getLatitude(), EPSILON);
+
+        // Long after the end it stays on the target instead of overshooting
+        assertFalse(interpolator.update(START + 10 * DURATION_MS));
+        assertEquals(10, interpolator.getLatitude(), EPSILON);
+        assertEquals(20, interpolator.getLongitude(), EPSILON);
+    }
+
+    @Test
+    public void timeBeforeStartClampsToStartPosition() {
+        MarkerInterpolator interpolator = new MarkerInterpolator(DURATION_MS);
+        interpolator.setTarget(0, 0, START);
+        interpolator.setTarget(10, 10, START + 500);
+
+        // A frame timestamp older than the retarget time
+        assertTrue(interpolator.update(START));
+        assertEquals(0, interpolator.getLatitude(), EPSILON);
+        assertEquals(0, interpolator.getLongitude(), EPSILON);
+    }
+
+    @Test
+    public void retargetStartsFromCurrentPosition() {
+        MarkerInterpolator interpolator = new MarkerInterpolator(DURATION_MS);
+        interpolator.setTarget(0, 0, START);
+        interpolator.setTarget(10, 0, START);
+
+        // Halfway through, a new fix arrives going back to the origin
+        interpolator.setTarget(0, 0, START + DURATION_MS / 2);
+        assertEquals(7.5, interpolator.getLatitude(), EPSILON);
+
+        interpolator.update(START + DURATION_MS / 2);
+        assertEquals(7.5, interpolator.getLatitude(), EPSILON);
+        interpolator.update(START + DURATION_MS / 2 + DURATION_MS);
+        assertEquals(0, interpolator.getLatitude(), EPSILON);
+    }
+
+    @Test
+    public void longitudeTakesShortWayAcrossAntimeridian() {
+        MarkerInterpolator interpolator = new MarkerInterpolator(DURATION_MS);
+        interpolator.setTarget(0, 179, START);
+        interpolator.setTarget(0, -179, START);
+
+        interpolator.update(START + DURATION_MS / 2);
+        // 2 degrees east in total, 1.5 of them after the eased half time: past 180 and wrapped
+        assertEquals(-179.5, interpolator.getLongitude(), EPSILON);
+
+        interpolator.update(START + DURATION_MS);
+        assertEquals(-179, interpolator.getLongitude(), EPSILON);
+    }
+
+    @Test
+    public void zeroDurationSnapsToTarget() {
+        MarkerInterpolator interpolator = new MarkerInterpolator(0);
+        interpolator.setTarget(0, 0, START);
+        interpolator.setTarget(5, 5, START);
+
+        assertFalse(interpolator.update(START));
+        assertEquals(5, interpolator.getLatitude(), EPSILON);
+        assertEquals(5, interpolator.getLongitude(), EPSILON);
+    }
+}
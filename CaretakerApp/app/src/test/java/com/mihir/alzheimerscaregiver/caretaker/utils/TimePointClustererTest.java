@@ -0,0 +1,127 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Grouping, bounds and zoom tests for TimePointClusterer
+ */
+public class TimePointClustererTest {
+
+    private static final double HOME_LAT = 12.9716;
+    private static final double HOME_LNG = 77.5946;
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long MINUTE = 60 * 1000;
+
+    private static final double[] WORLD = {-90, -180, 90, 180};
+
+    private static List<TimePointClusterer.Cluster> cluster(TimePointClusterer clusterer, float zoom, double[] bounds) {
+        return clusterer.cluster(zoom, bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    /**
+     * Two groups of points about 1 km apart, each spread over a few meters
+     */
+    private static TimePointClusterer twoPlaces() {
+        TimePointClusterer clusterer = new TimePointClusterer();
+        for (int i = 0; i < 5; i++) {
+            clusterer.add(HOME_LAT + i * 1e-5, HOME_LNG, START + i * MINUTE);
+        }
+        for (int i = 0; i < 3; i++) {
+            clusterer.add(HOME_LAT + 0.009, HOME_LNG + i * 1e-5, START + (10 + i) * MINUTE);
+        }
+        return clusterer;
+    }
+
+    @Test
+    public void nearbyPointsShareOneClusterWhenZoomedOut() {
+        List<TimePointClusterer.Cluster> clusters = cluster(twoPlaces(), 10, WORLD);
+
+        assertEquals(1, clusters.size());
+        TimePointClusterer.Cluster cluster = clusters.get(0);
+        assertEquals(8, cluster.count);
+        assertEquals(START, cluster.firstTimestamp);
+        assertEquals(START + 12 * MINUTE, cluster.lastTimestamp);
+    }
+
+    @Test
+    public void placesSplitWhenZoomedIn() {
+        List<TimePointClusterer.Cluster> clusters = cluster(twoPlaces(), 17, WORLD);
+
+        assertEquals(2, clusters.size());
+        // In order of their first point
+        TimePointClusterer.Cluster home = clusters.get(0);
+        assertEquals(5, home.count);
+        assertEquals(HOME_LAT + 2e-5, home.getLatitude(), 1e-9);
+        assertEquals(HOME_LNG, home.getLongitude(), 1e-9);
+        assertEquals(START + 4 * MINUTE, home.lastTimestamp);
+        assertEquals(3, clusters.get(1).count);
+        assertEquals(START + 10 * MINUTE, clusters.get(1).firstTimestamp);
+    }
+
+    @Test
+    public void onlyClustersInsideBoundsAreReturned() {
+        double[] aroundHome = {HOME_LAT - 0.002, HOME_LNG - 0.002, HOME_LAT + 0.002, HOME_LNG + 0.002};
+
+        List<TimePointClusterer.Cluster> clusters = cluster(twoPlaces(), 17, aroundHome);
+
+        assertEquals(1, clusters.size());
+        assertEquals(5, clusters.get(0).count);
+    }
+
+    @Test
+    public void boundsCrossingAntimeridianContainBothSides() {
+        TimePointClusterer clusterer = new TimePointClusterer();
+        clusterer.add(0, 179.9, START);
+        clusterer.add(0, -179.9, START + MINUTE);
+        clusterer.add(0, 0, START + 2 * MINUTE);
+
+        List<TimePointClusterer.Cluster> clusters = clusterer.cluster(12, -1, 179, 1, -179);
+
+        assertEquals(2, clusters.size());
+    }
+
+    @Test
+    public void fractionalZoomUsesTheSameCells() {
+        TimePointClusterer clusterer = twoPlaces();
+
+        List<TimePointClusterer.Cluster> whole = cluster(clusterer, 14, WORLD);
+        List<TimePointClusterer.Cluster> pinching = cluster(clusterer, 14.9f, WORLD);
+
+        assertEquals(whole.size(), pinching.size());
+        for (int i = 0; i < whole.size(); i++) {
+            assertEquals(whole.get(i).cellKey, pinching.get(i).cellKey);
+            assertEquals(whole.get(i).count, pinching.get(i).count);
+        }
+    }
+
+    @Test
+    public void unsortedTimestampsGiveFirstAndLast() {
+        TimePointClusterer clusterer = new TimePointClusterer();
+        clusterer.add(HOME_LAT, HOME_LNG, START + 5 * MINUTE);
+        clusterer.add(HOME_LAT, HOME_LNG, START);
+        clusterer.add(HOME_LAT, HOME_LNG, START + 9 * MINUTE);
+
+        TimePointClusterer.Cluster cluster = cluster(clusterer, 15, WORLD).get(0);
+
+        assertEquals(START, cluster.firstTimestamp);
+        assertEquals(START + 9 * MINUTE, cluster.lastTimestamp);
+    }
+
+    @Test
+    public void growsPastInitialCapacityAndClears() {
+        TimePointClusterer clusterer = new TimePointClusterer();
+        for (int i = 0; i < 1000; i++) {
+            clusterer.add(HOME_LAT, HOME_LNG, START + i);
+        }
+        assertEquals(1000, clusterer.size());
+        assertEquals(1000, cluster(clusterer, 15, WORLD).get(0).count);
+
+        clusterer.clear();
+        assertEquals(0, clusterer.size());
+        assertTrue(cluster(clusterer, 15, WORLD).isEmpty());
+    }
+}
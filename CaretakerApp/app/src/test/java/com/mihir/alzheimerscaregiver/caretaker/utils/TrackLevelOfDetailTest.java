@@ -0,0 +1,217 @@
+package com.mihir.alzheimerscaregiver.caretaker.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares TrackLevelOfDetail zoom levels with a plain recursive Douglas-Peucker
+ */
+public class TrackLevelOfDetailTest {
+
+    private static final double HOME_LAT = 12.9716;
+    private static final double HOME_LNG = 77.5946;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * 6371000.0;
+    private static final int[] ZOOMS = {8, 12, 14, 15, 16, 17, 18, 20};
+
+    /**
+     * Random walk with turns, pauses and straight stretches, about 5 m per step
+     */
+    private static double[][] walk(int count, long seed) {
+        Random random = new Random(seed);
+        double[][] track = new double[2][count];
+        double lat = HOME_LAT;
+        double lng = HOME_LNG;
+        double heading = 0;
+        for (int i = 0; i < count; i++) {
+            if (random.nextInt(10) == 0) {
+                heading += (random.nextDouble() - 0.5) * Math.PI;
+            }
+            double step = random.nextInt(20) == 0 ? 0 : 5 + random.nextGaussian();
+            lat += step * Math.cos(heading) / METERS_PER_DEGREE;
+            lng += step * Math.sin(heading) / (METERS_PER_DEGREE * Math.cos(Math.toRadians(HOME_LAT)));
+            track[0][i] = lat;
+            track[1][i] = lng;
+        }
+        return track;
+    }
+
+    /**
+     * Textbook recursive Douglas-Peucker over one chunk, on the same local flat projection
+     */
+    private static void douglasPeucker(double[] xs, double[] ys, int first, int last, double tolerance, boolean[] keep) {
+        double maxDistance = -1;
+        int maxIndex = -1;
+        for (int i = first + 1; i < last; i++) {
+            double distance = segmentDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+            if (distance > maxDistance) {
+                maxDistance = distance;
+                maxIndex = i;
+            }
+        }
+        if (maxIndex >= 0 && maxDistance > tolerance) {
+            keep[maxIndex] = true;
+            douglasPeucker(xs, ys, first, maxIndex, tolerance, keep);
+            douglasPeucker(xs, ys, maxIndex, last, tolerance, keep);
+        }
+    }
+
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return Math.hypot(px - ax, py - ay);
+        }
+        double t = Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+        return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+    }
+
+    /**
+     * Reference output for a track appended in chunks of the given size
+     */
+    private static List<double[]> reference(double[][] track, int chunkSize, double tolerance) {
+        List<double[]> kept = new ArrayList<>();
+        int total = track[0].length;
+        for (int offset = 0; offset < total; offset += chunkSize) {
+            int count = Math.min(chunkSize, total - offset);
+            double originLat = track[0][offset];
+            double originLng = track[1][offset];
+            double cosLat = Math.cos(Math.toRadians(originLat));
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            for (int i = 0; i < count; i++) {
+                xs[i] = (track[1][offset + i] - originLng) * METERS_PER_DEGREE * cosLat;
+                ys[i] = (track[0][offset + i] - originLat) * METERS_PER_DEGREE;
+            }
+            boolean[] keep = new boolean[count];
+            keep[0] = true;
+            keep[count - 1] = true;
+            douglasPeucker(xs, ys, 0, count - 1, tolerance, keep);
+            for (int i = 0; i < count; i++) {
+                if (keep[i]) {
+                    kept.add(new double[] {track[0][offset + i], track[1][offset + i]});
+                }
+            }
+        }
+        return kept;
+    }
+
+    private static TrackLevelOfDetail build(double[][] track, int chunkSize) {
+        TrackLevelOfDetail lod = new TrackLevelOfDetail();
+        int total = track[0].length;
+        for (int offset = 0; offset < total; offset += chunkSize) {
+            int count = Math.min(chunkSize, total - offset);
+            double[] lats = new double[count];
+            double[] lngs = new double[count];
+            System.arraycopy(track[0], offset, lats, 0, count);
+            System.arraycopy(track[1], offset, lngs, 0, count);
+            lod.append(lats, lngs, count);
+        }
+        return lod;
+    }
+
+    private static List<double[]> level(TrackLevelOfDetail lod, int zoom) {
+        List<double[]> points = new ArrayList<>();
+        lod.forEachPoint(zoom, (latitude, longitude) -> points.add(new double[] {latitude, longitude}));
+        return points;
+    }
+
+    private static void assertSamePoints(String message, List<double[]> expected, List<double[]> actual) {
+        assertEquals(message + " size", expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message + " lat " + i, expected.get(i)[0], actual.get(i)[0], 0);
+            assertEquals(message + " lng " + i, expected.get(i)[1], actual.get(i)[1], 0);
+        }
+    }
+
+    @Test
+    public void everyZoomMatchesReferenceDouglasPeucker() {
+        for (long seed = 1; seed <= 5; seed++) {
+            double[][] track = walk(2000, seed);
+            TrackLevelOfDetail lod = build(track, track[0].length);
+            for (int zoom : ZOOMS) {
+                double tolerance = TrackLevelOfDetail.toleranceMeters(zoom, track[0][0]);
+                assertSamePoints("seed " + seed + " zoom " + zoom, reference(track, track[0].length, tolerance), level(lod, zoom));
+            }
+        }
+    }
+
+    @Test
+    public void chunkedAppendMatchesReferencePerChunk() {
+        double[][] track = walk(2500, 42);
+        TrackLevelOfDetail lod = build(track, 400);
+        assertEquals(2500, lod.size());
+
+        for (int zoom : ZOOMS) {
+            double tolerance = TrackLevelOfDetail.toleranceMeters(zoom, track[0][0]);
+            assertSamePoints("zoom " + zoom, reference(track, 400, tolerance), level(lod, zoom));
+        }
+    }
+
+    @Test
+    public void cachedLevelIsExtendedWhenChunksArrive() {
+        double[][] track = walk(1200, 9);
+        double tolerance = TrackLevelOfDetail.toleranceMeters(16, track[0][0]);
+        TrackLevelOfDetail lod = new TrackLevelOfDetail();
+
+        double[] lats = new double[300];
+        double[] lngs = new double[300];
+        for (int offset = 0; offset < 1200; offset += 300) {
+            System.arraycopy(track[0], offset, lats, 0, 300);
+            System.arraycopy(track[1], offset, lngs, 0, 300);
+            lod.append(lats, lngs, 300);
+            // Read the level between appends so it is built incrementally
+            lod.getLevelSize(16);
+        }
+
+        assertSamePoints("zoom 16", reference(track, 300, tolerance), level(lod, 16));
+    }
+
+    @Test
+    public void levelsShrinkAsZoomDecreases() {
+        TrackLevelOfDetail lod = build(walk(3000, 3), 3000);
+
+        int previous = Integer.MAX_VALUE;
+        for (int zoom = TrackLevelOfDetail.MAX_ZOOM; zoom >= 0; zoom--) {
+            int count = lod.getLevelSize(zoom);
+            assertTrue("zoom " + zoom, count <= previous);
+            previous = count;
+        }
+        // Endpoints survive at any zoom
+        assertEquals(2, lod.getLevelSize(0));
+        assertTrue(lod.getLevelSize(TrackLevelOfDetail.MAX_ZOOM) > lod.getLevelSize(14));
+    }
+
+    @Test
+    public void straightRunKeepsOnlyEndpoints() {
+        TrackLevelOfDetail lod = new TrackLevelOfDetail();
+        double[] lats = new double[50];
+        double[] lngs = new double[50];
+        for (int i = 0; i < 50; i++) {
+            lats[i] = HOME_LAT + i * 1e-5;
+            lngs[i] = HOME_LNG;
+        }
+        lod.append(lats, lngs, 50);
+
+        assertEquals(2, lod.getLevelSize(TrackLevelOfDetail.MAX_ZOOM));
+    }
+
+    @Test
+    public void clearResetsLevels() {
+        TrackLevelOfDetail lod = build(walk(500, 5), 500);
+        lod.getLevelSize(15);
+        lod.clear();
+        assertEquals(0, lod.size());
+        assertEquals(0, lod.getLevelSize(15));
+
+        double[][] track = walk(200, 6);
+        lod.append(track[0], track[1], 200);
+        double tolerance = TrackLevelOfDetail.toleranceMeters(15, track[0][0]);
+        assertSamePoints("after clear", reference(track, 200, tolerance), level(lod, 15));
+    }
+}
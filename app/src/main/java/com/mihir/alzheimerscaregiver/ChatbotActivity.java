@@ -30,6 +30,7 @@ import android.widget.Toast;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.mihir.alzheimerscaregiver.utils.LanguagePreferenceManager;
+import com.mihir.alzheimerscaregiver.utils.SpeechChunker;
 import com.mihir.alzheimerscaregiver.utils.TextToSpeechManager;
 
 import java.util.ArrayList;
@@ -349,21 +350,38 @@ public class ChatbotActivity extends AppCompatActivity {
         statusText.setText("AI is thinking...");
         statusText.setVisibility(View.VISIBLE);
         
-        // Process with Gemini AI
-        geminiChatService.sendMessage(userText, new GeminiChatService.ChatCallback() {
+        // Process with Gemini AI, streamed so the first sentence is shown and spoken
+        // while the rest is still being generated
+        SpeechChunker speechChunker = new SpeechChunker();
+        StringBuilder streamedText = new StringBuilder();
+        ChatMessage[] aiMessage = new ChatMessage[1];
+        boolean[] hasSpoken = new boolean[1];
+        
+        geminiChatService.sendMessageStreaming(userText, new GeminiChatService.StreamingChatCallback() {
             @Override
-            public void onResponse(String response) {
+            public void onPartialResponse(String delta) {
                 runOnUiThread(() -> {
-                    statusText.setVisibility(View.GONE);
+                    streamedText.append(delta);
+                    aiMessage[0] = showAiText(aiMessage[0], streamedText.toString().trim());
                     
-                    // Add AI response to chat
-                    ChatMessage aiMessage = new ChatMessage(response, false, System.currentTimeMillis());
-                    chatMessages.add(aiMessage);
-                    chatAdapter.notifyItemInserted(chatMessages.size() - 1);
-                    scrollToBottom();
+                    // Speak each sentence as soon as it is complete
+                    for (String sentence : speechChunker.append(delta)) {
+                        speakText(sentence, hasSpoken[0]);
+                        hasSpoken[0] = true;
+                    }
+                });
+            }
+            
+            @Override
+            public void onResponse(String response) {
+                runOnUiThread(() -> {
+                    aiMessage[0] = showAiText(aiMessage[0], response);
                     
-                    // Speak the response
-                    speakText(response);
+                    // Speak whatever has not been spoken yet
+                    String rest = hasSpoken[0] ? speechChunker.flush() : response;
+                    if (rest != null) {
+                        speakText(rest, hasSpoken[0]);
+                    }
                     
                     // Save conversation for analysis
                     saveConversation(userText, response);
@@ -390,10 +408,35 @@ public class ChatbotActivity extends AppCompatActivity {
         });
     }
     
+    /**
+     * Add the AI reply row on first use, then update it in place as more text streams in
+     * @return The row's message
+     */
+    private ChatMessage showAiText(ChatMessage message, String text) {
+        if (message == null) {
+            statusText.setVisibility(View.GONE);
+            message = new ChatMessage(text, false, System.currentTimeMillis());
+            chatMessages.add(message);
+            chatAdapter.notifyItemInserted(chatMessages.size() - 1);
+        } else {
+            message.setText(text);
+            int position = chatMessages.indexOf(message);
+            if (position >= 0) {
+                chatAdapter.notifyItemChanged(position);
+            }
+        }
+        scrollToBottom();
+        return message;
+    }
+    
     private void speakText(String text) {
+        speakText(text, false);
+    }
+    
+    private void speakText(String text, boolean queue) {
         if (textToSpeechManager != null && isTtsReady) {
             // Use TextToSpeechManager with current language
-            textToSpeechManager.speak(text, currentLanguage);
+            textToSpeechManager.speak(text, currentLanguage, queue);
         }
     }
     
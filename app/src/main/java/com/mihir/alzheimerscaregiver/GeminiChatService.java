@@ -4,51 +4,32 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import com.mihir.alzheimerscaregiver.BuildConfig;
+import com.mihir.alzheimerscaregiver.gemini.ContextWindow;
+import com.mihir.alzheimerscaregiver.gemini.GeminiClient;
+import com.mihir.alzheimerscaregiver.gemini.GeminiRequest;
+import com.mihir.alzheimerscaregiver.gemini.RequestScheduler;
+import com.mihir.alzheimerscaregiver.gemini.ResponseCache;
 import com.mihir.alzheimerscaregiver.utils.LanguagePreferenceManager;
-import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 /**
  * GeminiChatService - Handles communication with Google's Gemini AI using REST API
  * Specialized for Alzheimer's patient conversations with MMSE assessment capabilities
- * Uses same model fallback system as story generation for reliability
+ * Requests go through the shared GeminiClient and its model fallback chain
  */
 public class GeminiChatService {
     
     private static final String TAG = "GeminiChatService";
     
-    // API Configuration - Same as GeminiStoryGenerator for consistency
-    private static final String BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
-    private static final String[] MODEL_NAMES = {
-        "gemini-2.5-flash",          // Recommended: Fast, efficient, multimodal (Active)
-        "gemini-2.5-flash-lite",     // Extremely low cost/latency fallback
-        "gemini-2.5-pro"             // High intelligence for complex reasoning
-    };
-    private static final String GENERATE_ENDPOINT = ":generateContent?key=";
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    // Process-wide so repeated questions are recognised across chat sessions
+    private static final ResponseCache responseCache = new ResponseCache();
     
-    private final OkHttpClient httpClient;
-    private final ExecutorService executor;
     private final Handler mainHandler;
-    private StringBuilder conversationHistory;
+    private ContextWindow contextWindow;
     private String preferredLanguage;
     
     public GeminiChatService(String language) {
-        httpClient = new OkHttpClient.Builder().build();
-        executor = Executors.newSingleThreadExecutor();
         mainHandler = new Handler(Looper.getMainLooper());
-        conversationHistory = new StringBuilder();
         preferredLanguage = language != null ? language : LanguagePreferenceManager.DEFAULT_LANGUAGE;
         setupAlzheimerSpecificPrompt();
         
@@ -90,195 +71,188 @@ public class GeminiChatService {
                 "- Remember that repetition is normal and be patient\n\n" +
                 "Start each conversation warmly and adapt to their communication style.";
         
-        conversationHistory.append("System: ").append(systemPrompt).append("\n\n");
+        contextWindow = new ContextWindow(systemPrompt);
     }
     
     public void sendMessage(String userMessage, ChatCallback callback) {
-        // Add user message to conversation history
-        conversationHistory.append("User: ").append(userMessage).append("\n");
-        
-        executor.execute(() -> {
-            try {
-                // Get API key
-                String apiKey = BuildConfig.GOOGLE_API_KEY;
-                if (apiKey == null || apiKey.isEmpty()) {
-                    mainHandler.post(() -> callback.onError("API configuration error. Please check settings."));
-                    return;
-                }
-                
-                // Create prompt with conversation context  
-                String prompt = conversationHistory.toString();
-                
-                // Try first model
-                tryModelOrFallback(userMessage, callback, 0, prompt);
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error preparing chat request", e);
-                mainHandler.post(() -> callback.onError("Unable to process your message. Please try again."));
+        if (answerFromCache(userMessage, callback)) {
+            return;
+        }
+        GeminiRequest request = prepareChatRequest(userMessage, callback);
+        if (request == null) {
+            return;
+        }
+        GeminiClient.getInstance().generate(request, new GeminiClient.ResponseCallback() {
+            @Override
+            public void onSuccess(String responseText, String model) {
+                deliverResponse(userMessage, responseText, model, callback);
+            }
+            
+            @Override
+            public void onFailure(String error) {
+                deliverFailure(error, callback);
             }
         });
     }
     
     /**
-     * Tries the next available model or shows appropriate error if all models fail
+     * Same as sendMessage, but the reply is also handed over piece by piece as Gemini
+     * streams it, so the chat screen can show and speak the first sentence early.
+     * onResponse still arrives once with the full text.
      */
-    private void tryModelOrFallback(String userMessage, ChatCallback callback, int modelIndex, String prompt) {
-        if (modelIndex >= MODEL_NAMES.length) {
-            Log.e(TAG, "All chat models failed");
-            mainHandler.post(() -> callback.onError("Chat service is temporarily unavailable. Please try again in a few minutes."));
+    public void sendMessageStreaming(String userMessage, StreamingChatCallback callback) {
+        if (answerFromCache(userMessage, callback)) {
             return;
         }
-
-        String currentModel = MODEL_NAMES[modelIndex];
-        Log.d(TAG, "Trying chat model: " + currentModel + " (attempt " + (modelIndex + 1) + "/" + MODEL_NAMES.length + ")");
-
-        try {
-            JSONObject requestBody = createRequestBody(prompt);
-            String url = BASE_URL + currentModel + GENERATE_ENDPOINT + BuildConfig.GOOGLE_API_KEY;
+        GeminiRequest request = prepareChatRequest(userMessage, callback);
+        if (request == null) {
+            return;
+        }
+        GeminiClient.getInstance().stream(request, new GeminiClient.StreamCallback() {
+            @Override
+            public void onPartial(String delta) {
+                mainHandler.post(() -> callback.onPartialResponse(delta));
+            }
             
-            Request request = new Request.Builder()
-                    .url(url)
-                    .post(RequestBody.create(requestBody.toString(), JSON))
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Failed to generate response with " + currentModel, e);
-                    mainHandler.post(() -> tryModelOrFallback(userMessage, callback, modelIndex + 1, prompt));
-                }
-
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try (Response r = response) {
-                        if (!r.isSuccessful()) {
-                            String responseBody = r.body() != null ? r.body().string() : "No response body";
-                            Log.e(TAG, "API call unsuccessful for " + currentModel + ": " + r.code() + " - " + r.message());
-                            
-                            // Handle rate limiting with exponential backoff
-                            if (r.code() == 429) {
-                                int delaySeconds = (int) Math.pow(2, modelIndex) * 3; // 3s, 6s, 12s, 24s
-                                Log.w(TAG, "Rate limit hit for chat model " + currentModel + ", waiting " + delaySeconds + " seconds before retry");
-                                
-                                // Use executor to handle the delay without blocking main thread
-                                executor.execute(() -> {
-                                    try {
-                                        Thread.sleep(delaySeconds * 1000);
-                                        mainHandler.post(() -> tryModelOrFallback(userMessage, callback, modelIndex + 1, prompt));
-                                    } catch (InterruptedException ie) {
-                                        Thread.currentThread().interrupt();
-                                        Log.w(TAG, "Rate limit delay interrupted");
-                                        mainHandler.post(() -> tryModelOrFallback(userMessage, callback, modelIndex + 1, prompt));
-                                    }
-                                });
-                                return;
-                            }
-                            
-                            // Try next model for other errors
-                            mainHandler.post(() -> tryModelOrFallback(userMessage, callback, modelIndex + 1, prompt));
-                            return;
-                        }
-
-                        String responseBody = r.body().string();
-                        String responseText = parseResponseFromJson(responseBody);
-                        
-                        if (responseText == null || responseText.trim().isEmpty()) {
-                            Log.w(TAG, "Generated response is empty for " + currentModel);
-                            mainHandler.post(() -> tryModelOrFallback(userMessage, callback, modelIndex + 1, prompt));
-                            return;
-                        }
-                        
-                        Log.d(TAG, "Successfully generated chat response with model: " + currentModel);
-                        
-                        // Add AI response to conversation history
-                        conversationHistory.append("Assistant: ").append(responseText).append("\n");
-                        
-                        // Trim conversation history if it gets too long
-                        trimConversationHistory();
-                        
-                        mainHandler.post(() -> {
-                            callback.onResponse(responseText.trim());
-                            
-                            // Analyze for MMSE elements and memories
-                            analyzeForMmseElements(userMessage, responseText);
-                        });
-                        
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing response for " + currentModel, e);
-                        mainHandler.post(() -> tryModelOrFallback(userMessage, callback, modelIndex + 1, prompt));
-                    }
-                }
-            });
+            @Override
+            public void onSuccess(String responseText, String model) {
+                deliverResponse(userMessage, responseText, model, callback);
+            }
             
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating request for " + currentModel, e);
-            mainHandler.post(() -> tryModelOrFallback(userMessage, callback, modelIndex + 1, prompt));
+            @Override
+            public void onFailure(String error) {
+                deliverFailure(error, callback);
+            }
+        });
+    }
+    
+    /**
+     * Answer a question the patient has asked before without calling Gemini
+     * @return true if the cached reply has been delivered
+     */
+    private boolean answerFromCache(String userMessage, ChatCallback callback) {
+        String cached = responseCache.lookup(preferredLanguage, userMessage, System.currentTimeMillis());
+        Log.d(TAG, "Response cache " + (cached != null ? "hit" : "miss") + ", " + responseCache.stats().toLogLine());
+        if (cached == null) {
+            return false;
         }
+        contextWindow.addTurn(true, userMessage);
+        deliverResponse(userMessage, cached, null, callback);
+        return true;
     }
     
     /**
-     * Creates the JSON request body for the Gemini API
+     * Hit rate and size of the chat reply cache, shared by all chat sessions
+     * Shown on the telemetry debug screen
      */
-    private JSONObject createRequestBody(String prompt) throws JSONException {
-        JSONObject requestBody = new JSONObject();
-        JSONArray contents = new JSONArray();
-        JSONObject content = new JSONObject();
-        JSONArray parts = new JSONArray();
-        JSONObject part = new JSONObject();
-        
-        part.put("text", prompt);
-        parts.put(part);
-        content.put("parts", parts);
-        contents.put(content);
-        requestBody.put("contents", contents);
-        
-        return requestBody;
+    public static ResponseCache.Stats getResponseCacheStats() {
+        return responseCache.stats();
     }
     
     /**
-     * Parses the response from the Gemini API JSON
+     * Add the user's turn to the history and build the request for it
+     * @return null if the API key is missing; callback has then been told
      */
-    private String parseResponseFromJson(String responseBody) {
-        try {
-            JSONObject response = new JSONObject(responseBody);
-            JSONArray candidates = response.getJSONArray("candidates");
-            
-            if (candidates.length() > 0) {
-                JSONObject candidate = candidates.getJSONObject(0);
-                JSONObject content = candidate.getJSONObject("content");
-                JSONArray parts = content.getJSONArray("parts");
-                
-                if (parts.length() > 0) {
-                    JSONObject part = parts.getJSONObject(0);
-                    return part.getString("text");
-                }
-            }
-        } catch (JSONException e) {
-            Log.e(TAG, "Error parsing response", e);
+    private GeminiRequest prepareChatRequest(String userMessage, ChatCallback callback) {
+        // Add user message to conversation history
+        contextWindow.addTurn(true, userMessage);
+        
+        // Get API key
+        String apiKey = BuildConfig.GOOGLE_API_KEY;
+        if (apiKey == null || apiKey.isEmpty()) {
+            mainHandler.post(() -> callback.onError("API configuration error. Please check settings."));
+            return null;
         }
-        return null;
+        
+        // System prompt first and unchanged from turn to turn, so Gemini can reuse it from
+        // its prompt cache; the rolling summary follows it
+        String summary = contextWindow.getSummary();
+        GeminiRequest request = new GeminiRequest("chat", null, apiKey)
+                .setPriority(RequestScheduler.Priority.CHAT)
+                .setSystemInstruction(contextWindow.getSystemPrompt(),
+                        summary.isEmpty() ? null : "Summary of the earlier conversation: " + summary);
+        for (ContextWindow.Turn turn : contextWindow.getTurns()) {
+            request.addTurn(turn.fromUser, turn.text);
+        }
+        Log.d(TAG, "Chat context ~" + contextWindow.estimatedTokens() + " tokens");
+        return request;
     }
     
-    private void trimConversationHistory() {
-        // Keep conversation history manageable (last 10 exchanges approximately)
-        String history = conversationHistory.toString();
-        String[] lines = history.split("\n");
-        
-        if (lines.length > 25) { // System prompt + ~12 exchanges
-            StringBuilder trimmed = new StringBuilder();
-            // Keep system prompt
-            trimmed.append(lines[0]).append("\n").append(lines[1]).append("\n\n");
+    /**
+     * @param model Model that generated the reply, or null if it came from the cache
+     */
+    private void deliverResponse(String userMessage, String responseText, String model, ChatCallback callback) {
+        if (model != null) {
+            Log.d(TAG, "Successfully generated chat response with model: " + model);
+            responseCache.store(preferredLanguage, userMessage, responseText.trim(), System.currentTimeMillis());
+        }
+        
+        // Add AI response to conversation history
+        contextWindow.addTurn(false, responseText);
+        
+        // Fold turns that no longer fit the window into the summary
+        summarizeEvictedTurns();
+        
+        mainHandler.post(() -> {
+            callback.onResponse(responseText.trim());
             
-            // Keep last 20 lines
-            for (int i = lines.length - 20; i < lines.length; i++) {
-                if (i >= 0) {
-                    trimmed.append(lines[i]).append("\n");
-                }
+            // Analyze for MMSE elements and memories
+            analyzeForMmseElements(userMessage, responseText);
+        });
+    }
+    
+    private void deliverFailure(String error, ChatCallback callback) {
+        Log.e(TAG, "All chat models failed: " + error);
+        mainHandler.post(() -> callback.onError("Chat service is temporarily unavailable. Please try again in a few minutes."));
+    }
+    
+    /**
+     * Summarize the turns the context window has evicted, in the background so the next chat
+     * turn is not held up. The evicted turns are still sent until the summary is ready.
+     */
+    private void summarizeEvictedTurns() {
+        ContextWindow window = contextWindow;
+        java.util.List<ContextWindow.Turn> evicted = window.beginSummary();
+        if (evicted == null) {
+            return;
+        }
+        
+        String apiKey = BuildConfig.GOOGLE_API_KEY;
+        if (apiKey == null || apiKey.isEmpty()) {
+            window.abandonSummary();
+            return;
+        }
+        
+        String summary = window.getSummary();
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("You keep a running summary of a conversation between an elderly person with Alzheimer's disease ")
+              .append("and a companion assistant. Update the summary with the new part of the conversation below.\n")
+              .append("Keep the names of people, pets and places, the memories and events they talked about, ")
+              .append("how they were feeling, and anything the assistant asked or promised to come back to.\n")
+              .append("Write plain English sentences, under 150 words. Reply with the summary only.\n\n")
+              .append("Current summary:\n").append(summary.isEmpty() ? "(none yet)" : summary).append("\n\n")
+              .append("New part of the conversation:\n");
+        for (ContextWindow.Turn turn : evicted) {
+            prompt.append(turn.fromUser ? "Patient: " : "Assistant: ").append(turn.text).append("\n");
+        }
+        
+        GeminiRequest request = new GeminiRequest("chat summary", prompt.toString(), apiKey)
+                .setPriority(RequestScheduler.Priority.BACKGROUND);
+        GeminiClient.getInstance().generate(request, new GeminiClient.ResponseCallback() {
+            @Override
+            public void onSuccess(String responseText, String model) {
+                window.completeSummary(responseText);
+                Log.d(TAG, "Summarized " + evicted.size() + " turns, chat context now ~"
+                        + window.estimatedTokens() + " tokens");
             }
             
-            conversationHistory = trimmed;
-        }
+            @Override
+            public void onFailure(String error) {
+                // The turns stay in the window and are tried again after the next reply
+                window.abandonSummary();
+                Log.w(TAG, "Conversation summary failed: " + error);
+            }
+        });
     }
     
     private void analyzeForMmseElements(String userInput, String aiResponse) {
@@ -438,14 +412,13 @@ public class GeminiChatService {
     }
     
     public void clearConversationHistory() {
-        conversationHistory = new StringBuilder();
         setupAlzheimerSpecificPrompt();
     }
     
     public String getConversationSummary() {
         // This would generate a summary of the conversation for caregiver review
         // and extract key points for MMSE assessment
-        return conversationHistory.toString();
+        return contextWindow.toTranscript();
     }
     
     /**
@@ -469,10 +442,7 @@ public class GeminiChatService {
         
         Log.d(TAG, "💭 Memory extraction prompt created, executing...");
         
-        executor.execute(() -> {
-            // Try with the same model fallback system
-            tryMemoryExtractionOrFallback(memoryExtractionPrompt, callback, 0);
-        });
+        requestMemoryExtraction(memoryExtractionPrompt, callback);
     }
     
     private String createMemoryExtractionPrompt(String conversationText) {
@@ -607,102 +577,27 @@ public class GeminiChatService {
         return examples.toString();
     }
     
-    private void tryMemoryExtractionOrFallback(String prompt, MemoryExtractionCallback callback, int modelIndex) {
-        if (modelIndex >= MODEL_NAMES.length) {
-            Log.e(TAG, "❌ All memory extraction models failed");
-            mainHandler.post(() -> callback.onError("Memory extraction failed - all models unavailable"));
-            return;
-        }
-        
-        String currentModel = MODEL_NAMES[modelIndex];
-        Log.d(TAG, "🤖 Trying memory extraction with model: " + currentModel + " (attempt " + (modelIndex + 1) + "/" + MODEL_NAMES.length + ")");
-        
-        String apiKey = BuildConfig.GOOGLE_API_KEY;
-        String url = BASE_URL + currentModel + GENERATE_ENDPOINT + apiKey;
-        
-        try {
-            // Create request body for memory extraction
-            JSONObject requestBody = new JSONObject();
-            JSONArray contents = new JSONArray();
-            JSONObject content = new JSONObject();
-            JSONArray parts = new JSONArray();
-            JSONObject part = new JSONObject();
-            part.put("text", prompt);
-            parts.put(part);
-            content.put("parts", parts);
-            contents.put(content);
-            requestBody.put("contents", contents);
-            
-            RequestBody body = RequestBody.create(requestBody.toString(), JSON);
-            Request request = new Request.Builder()
-                    .url(url)
-                    .post(body)
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-            
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.w(TAG, "Memory extraction failed with model " + currentModel + ": " + e.getMessage());
-                    // Try next model
-                    tryMemoryExtractionOrFallback(prompt, callback, modelIndex + 1);
-                }
+    private void requestMemoryExtraction(String prompt, MemoryExtractionCallback callback) {
+        GeminiRequest request = new GeminiRequest("memory extraction", prompt, BuildConfig.GOOGLE_API_KEY)
+                .setPriority(RequestScheduler.Priority.BACKGROUND);
+        GeminiClient.getInstance().generate(request, new GeminiClient.ResponseCallback() {
+            @Override
+            public void onSuccess(String aiResponse, String model) {
+                Log.d(TAG, "🧠 AI memory extraction result from " + model + ": " + aiResponse);
                 
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    Log.d(TAG, "📡 Memory extraction API response received, code: " + response.code());
-                    
-                    if (response.isSuccessful()) {
-                        try {
-                            String responseBody = response.body().string();
-                            Log.d(TAG, "📋 Raw memory extraction response: " + responseBody);
-                            
-                            JSONObject jsonResponse = new JSONObject(responseBody);
-                            JSONArray candidates = jsonResponse.getJSONArray("candidates");
-                            if (candidates.length() > 0) {
-                                JSONObject firstCandidate = candidates.getJSONObject(0);
-                                JSONObject content = firstCandidate.getJSONObject("content");
-                                JSONArray parts = content.getJSONArray("parts");
-                                if (parts.length() > 0) {
-                                    String aiResponse = parts.getJSONObject(0).getString("text");
-                                    Log.d(TAG, "🧠 AI memory extraction result: " + aiResponse);
-                                    
-                                    // Parse memories from AI response into list format
-                                    java.util.List<String> memories = parseMemoriesFromAIResponse(aiResponse);
-                                    Log.d(TAG, "✅ Parsed memories: " + memories.toString());
-                                    
-                                    mainHandler.post(() -> callback.onMemoriesExtracted(memories));
-                                    return;
-                                }
-                            }
-                            
-                            Log.e(TAG, "❌ Invalid memory extraction response structure");
-                            mainHandler.post(() -> callback.onError("Invalid response structure"));
-                        } catch (Exception e) {
-                            Log.e(TAG, "❌ Error parsing memory extraction response", e);
-                            mainHandler.post(() -> callback.onError("Response parsing error: " + e.getMessage()));
-                        }
-                    } else {
-                        String errorBody = "";
-                        try {
-                            errorBody = response.body().string();
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error reading error response", e);
-                        }
-                        Log.e(TAG, "❌ Memory extraction API error: " + response.code() + " - " + response.message());
-                        Log.e(TAG, "❌ Error body: " + errorBody);
-                        
-                        // Try next model if available
-                        tryMemoryExtractionOrFallback(prompt, callback, modelIndex + 1);
-                    }
-                }
-            });
+                // Parse memories from AI response into list format
+                java.util.List<String> memories = parseMemoriesFromAIResponse(aiResponse);
+                Log.d(TAG, "✅ Parsed memories: " + memories.toString());
+                
+                mainHandler.post(() -> callback.onMemoriesExtracted(memories));
+            }
             
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating memory extraction request", e);
-            // Try next model
-            tryMemoryExtractionOrFallback(prompt, callback, modelIndex + 1);
-        }
+            @Override
+            public void onFailure(String error) {
+                Log.e(TAG, "❌ All memory extraction models failed: " + error);
+                mainHandler.post(() -> callback.onError("Memory extraction failed - all models unavailable"));
+            }
+        });
     }
     
     private java.util.List<String> parseMemoriesFromAIResponse(String aiResponse) {
@@ -760,4 +655,12 @@ public class GeminiChatService {
         void onResponse(String response);
         void onError(String error);
     }
+    
+    /**
+     * Callback interface for streamed chat responses; partial text arrives on the main thread
+     * before onResponse
+     */
+    public interface StreamingChatCallback extends ChatCallback {
+        void onPartialResponse(String delta);
+    }
 }
\ No newline at end of file
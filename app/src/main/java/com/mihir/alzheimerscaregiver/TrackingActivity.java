@@ -23,6 +23,7 @@ import androidx.core.content.ContextCompat;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.google.android.material.switchmaterial.SwitchMaterial;
+import com.mihir.alzheimerscaregiver.debug.LocationTelemetryActivity;
 import com.mihir.alzheimerscaregiver.location.LocationServiceManager;
 import com.mihir.alzheimerscaregiver.location.LocationUploader;
 
@@ -122,6 +123,11 @@ public class TrackingActivity extends AppCompatActivity {
         
         // Debug Firebase button
         buttonDebugFirebase.setOnClickListener(v -> debugFirebaseConnection());
+        // Long press opens the location cost counters
+        buttonDebugFirebase.setOnLongClickListener(v -> {
+            startActivity(new Intent(this, LocationTelemetryActivity.class));
+            return true;
+        });
     }
     
     /**
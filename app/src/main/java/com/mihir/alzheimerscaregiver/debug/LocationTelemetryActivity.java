@@ -0,0 +1,156 @@
+package com.mihir.alzheimerscaregiver.debug;
+
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.mihir.alzheimerscaregiver.GeminiChatService;
+import com.mihir.alzheimerscaregiver.location.LocationConfig;
+import com.mihir.alzheimerscaregiver.location.LocationTelemetry;
+import com.mihir.alzheimerscaregiver.location.RollingTelemetryLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Debug screen for LocationTelemetry: live counters and histograms, the chat reply cache
+ * hit rate, and the rolling log the tracking service writes. Opened with a long press on
+ * "Debug Firebase" in TrackingActivity.
+ */
+public class LocationTelemetryActivity extends AppCompatActivity {
+
+    private static final String TAG = "LocationTelemetry";
+    private static final long REFRESH_INTERVAL_MS = 2000;
+    // Lines of the log shown; a full log is a few thousand
+    private static final int LOG_TAIL_LINES = 20;
+
+    private TextView reportText;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final Runnable refreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            showLiveReport();
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
+    private boolean showingLog;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setTitle("Location Telemetry");
+
+        // Create a simple layout programmatically
+        LinearLayout layout = new LinearLayout(this);
+        layout.setOrientation(LinearLayout.VERTICAL);
+        layout.setPadding(32, 32, 32, 32);
+
+        LinearLayout buttons = new LinearLayout(this);
+        buttons.setOrientation(LinearLayout.HORIZONTAL);
+
+        Button liveButton = new Button(this);
+        liveButton.setText("Live");
+        liveButton.setOnClickListener(v -> {
+            showingLog = false;
+            showLiveReport();
+        });
+        buttons.addView(liveButton);
+
+        Button logButton = new Button(this);
+        logButton.setText("Log");
+        logButton.setOnClickListener(v -> showLogTail());
+        buttons.addView(logButton);
+
+        Button resetButton = new Button(this);
+        resetButton.setText("Reset");
+        resetButton.setOnClickListener(v -> {
+            LocationTelemetry.getInstance().reset();
+            Toast.makeText(this, "Counters reset", Toast.LENGTH_SHORT).show();
+            showingLog = false;
+            showLiveReport();
+        });
+        buttons.addView(resetButton);
+        layout.addView(buttons);
+
+        ScrollView scrollView = new ScrollView(this);
+        reportText = new TextView(this);
+        reportText.setTypeface(Typeface.MONOSPACE);
+        reportText.setTextSize(11);
+        reportText.setTextIsSelectable(true);
+        reportText.setPadding(0, 24, 0, 0);
+        scrollView.addView(reportText);
+        layout.addView(scrollView);
+
+        setContentView(layout);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        handler.post(refreshRunnable);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refreshRunnable);
+    }
+
+    @Override
+    protected void onDestroy() {
+        ioExecutor.shutdown();
+        super.onDestroy();
+    }
+
+    private void showLiveReport() {
+        if (showingLog) {
+            return;
+        }
+        reportText.setText(LocationTelemetry.getInstance().snapshot().toReport()
+                + "\n\nChat reply cache: " + GeminiChatService.getResponseCacheStats().toLogLine());
+    }
+
+    /**
+     * Show the newest snapshots from the rolling log, newest first
+     */
+    private void showLogTail() {
+        showingLog = true;
+        File directory = new File(getFilesDir(), LocationConfig.TELEMETRY_LOG_DIR);
+        ioExecutor.execute(() -> {
+            String text;
+            try {
+                RollingTelemetryLog log = new RollingTelemetryLog(directory, LocationConfig.TELEMETRY_LOG_NAME,
+                        LocationConfig.TELEMETRY_FILE_MAX_BYTES, LocationConfig.TELEMETRY_FILE_COUNT);
+                List<String> lines = log.readAll();
+                StringBuilder tail = new StringBuilder();
+                tail.append(lines.size()).append(" snapshot(s) in ").append(directory).append("\n\n");
+                for (int i = lines.size() - 1; i >= Math.max(0, lines.size() - LOG_TAIL_LINES); i--) {
+                    tail.append(lines.get(i)).append("\n\n");
+                }
+                text = tail.toString();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read telemetry log", e);
+                text = "Failed to read telemetry log: " + e.getMessage();
+            }
+            String result = text;
+            handler.post(() -> {
+                if (showingLog && !isFinishing()) {
+                    reportText.setText(result);
+                }
+            });
+        });
+    }
+}
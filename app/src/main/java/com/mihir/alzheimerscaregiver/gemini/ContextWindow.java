@@ -0,0 +1,206 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Conversation context for a chat session, kept within a token budget
+ *
+ * Recent turns are sent verbatim. When they outgrow the budget, the oldest exchanges are
+ * evicted and wait to be folded into a rolling summary, which the owner produces
+ * asynchronously: beginSummary() hands out the waiting turns, completeSummary() replaces
+ * them with the new summary. Until then they are still sent, so nothing drops out of the
+ * conversation while a summary is being written. If summaries keep failing, waiting turns
+ * beyond a second budget are dropped, oldest first, as the old line-count trim did.
+ *
+ * Turns are evicted a whole exchange at a time, so the window always starts with the
+ * patient's turn.
+ *
+ * Token counts are estimates (about four characters per token for Latin script, two for
+ * Indic scripts); they only need to keep payloads bounded.
+ */
+public class ContextWindow {
+
+    public static final int DEFAULT_RECENT_TOKENS = 1500;
+    public static final int DEFAULT_PENDING_TOKENS = 1500;
+
+    public static final class Turn {
+        public final boolean fromUser;
+        public final String text;
+        final int tokens;
+
+        Turn(boolean fromUser, String text) {
+            this.fromUser = fromUser;
+            this.text = text;
+            this.tokens = estimateTokens(text);
+        }
+    }
+
+    private final String systemPrompt;
+    private final int recentBudget;
+    private final int pendingBudget;
+    private final ArrayDeque<Turn> recent = new ArrayDeque<>();
+    // Evicted from recent, still sent until a summary covers them
+    private final ArrayDeque<Turn> pending = new ArrayDeque<>();
+    private int recentTokens;
+    private int pendingTokens;
+    private String summary = "";
+    // Turns handed to the summary being written, null if none is
+    private List<Turn> summarizing;
+
+    public ContextWindow(String systemPrompt) {
+        this(systemPrompt, DEFAULT_RECENT_TOKENS, DEFAULT_PENDING_TOKENS);
+    }
+
+    /**
+     * @param recentBudget Tokens of recent turns to send verbatim
+     * @param pendingBudget Tokens of evicted turns to keep sending while they wait for a summary
+     */
+    public ContextWindow(String systemPrompt, int recentBudget, int pendingBudget) {
+        this.systemPrompt = systemPrompt;
+        this.recentBudget = recentBudget;
+        this.pendingBudget = pendingBudget;
+    }
+
+    public synchronized void addTurn(boolean fromUser, String text) {
+        Turn turn = new Turn(fromUser, text);
+        recent.addLast(turn);
+        recentTokens += turn.tokens;
+
+        // Always keep the latest exchange, however long it is
+        while (recentTokens > recentBudget && recent.size() > 2) {
+            moveToPending(recent.pollFirst());
+            while (!recent.isEmpty() && !recent.peekFirst().fromUser && recent.size() > 1) {
+                moveToPending(recent.pollFirst());
+            }
+        }
+        while (pendingTokens > pendingBudget && !pending.isEmpty()) {
+            dropPending();
+            while (!pending.isEmpty() && !pending.peekFirst().fromUser) {
+                dropPending();
+            }
+        }
+    }
+
+    /**
+     * Whether there are evicted turns to summarize and no summary is being written
+     */
+    public synchronized boolean needsSummary() {
+        return summarizing == null && !pending.isEmpty();
+    }
+
+    /**
+     * Claim the evicted turns for a new summary
+     * @return The turns to fold into getSummary(), or null if there are none or a summary is
+     * already being written
+     */
+    public synchronized List<Turn> beginSummary() {
+        if (!needsSummary()) {
+            return null;
+        }
+        summarizing = new ArrayList<>(pending);
+        return Collections.unmodifiableList(summarizing);
+    }
+
+    /**
+     * The summary from beginSummary() is ready: it replaces the turns it covers
+     */
+    public synchronized void completeSummary(String newSummary) {
+        if (summarizing == null) {
+            return;
+        }
+        summary = newSummary.trim();
+        Iterator<Turn> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Turn turn = iterator.next();
+            // Identity, not text: the patient may well have said the same thing twice
+            for (Turn covered : summarizing) {
+                if (covered == turn) {
+                    iterator.remove();
+                    pendingTokens -= turn.tokens;
+                    break;
+                }
+            }
+        }
+        summarizing = null;
+    }
+
+    /**
+     * The summary from beginSummary() failed; its turns wait for the next attempt
+     */
+    public synchronized void abandonSummary() {
+        summarizing = null;
+    }
+
+    public String getSystemPrompt() {
+        return systemPrompt;
+    }
+
+    /**
+     * Rolling summary of the turns no longer sent verbatim, empty at first
+     */
+    public synchronized String getSummary() {
+        return summary;
+    }
+
+    /**
+     * Turns to send, oldest first
+     */
+    public synchronized List<Turn> getTurns() {
+        List<Turn> turns = new ArrayList<>(pending);
+        turns.addAll(recent);
+        return turns;
+    }
+
+    /**
+     * Estimated tokens of everything that is sent: system prompt, summary and turns
+     */
+    public synchronized int estimatedTokens() {
+        return estimateTokens(systemPrompt) + estimateTokens(summary) + pendingTokens + recentTokens;
+    }
+
+    /**
+     * Plain-text view in the old "User:/Assistant:" format, for caregiver review and logs
+     */
+    public synchronized String toTranscript() {
+        StringBuilder transcript = new StringBuilder();
+        transcript.append("System: ").append(systemPrompt).append("\n\n");
+        if (!summary.isEmpty()) {
+            transcript.append("Summary: ").append(summary).append("\n\n");
+        }
+        for (Turn turn : getTurns()) {
+            transcript.append(turn.fromUser ? "User: " : "Assistant: ").append(turn.text).append("\n");
+        }
+        return transcript.toString();
+    }
+
+    static int estimateTokens(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + (other + 1) / 2;
+    }
+
+    private void moveToPending(Turn turn) {
+        recentTokens -= turn.tokens;
+        pending.addLast(turn);
+        pendingTokens += turn.tokens;
+    }
+
+    private void dropPending() {
+        Turn turn = pending.pollFirst();
+        pendingTokens -= turn.tokens;
+    }
+}
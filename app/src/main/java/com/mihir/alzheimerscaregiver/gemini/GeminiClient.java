@@ -0,0 +1,425 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSource;
+
+/**
+ * Process-wide Gemini REST client shared by chat, stories, MMSE and proactive questions
+ *
+ * There is one OkHttpClient and so one connection pool. generativelanguage.googleapis.com
+ * negotiates HTTP/2 over ALPN, so concurrent calls from different features multiplex over a
+ * single warm TLS connection instead of each class paying its own handshake.
+ *
+ * The model fallback chain lives here as well: each call walks ModelHealth.order() and
+ * reports every attempt back, so a model that is down is skipped by all callers until its
+ * cooldown ends.
+ *
+ * Every attempt is paced by RequestScheduler: per-model token buckets sized to the quota,
+ * paused by a 429's retryDelay, and served by priority so a chat turn goes ahead of any
+ * background work that is queued.
+ *
+ * stream() uses streamGenerateContent over server-sent events so chat can show and speak a
+ * reply while it is still being generated.
+ *
+ * Callbacks run on OkHttp's dispatcher threads or the scheduler thread; callers post to the
+ * main thread themselves.
+ */
+public final class GeminiClient {
+
+    private static final String TAG = "GeminiClient";
+
+    public static final String BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
+    public static final String[] MODEL_NAMES = {
+        "gemini-2.5-flash",          // Recommended: Fast, efficient, multimodal (Active)
+        "gemini-2.5-flash-lite",     // Extremely low cost/latency fallback
+        "gemini-2.5-pro"             // High intelligence for complex reasoning
+    };
+    private static final String GENERATE_ENDPOINT = ":generateContent?key=";
+    private static final String STREAM_ENDPOINT = ":streamGenerateContent?alt=sse&key=";
+    private static final String SSE_DATA_PREFIX = "data:";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    // Free-tier requests per minute and burst size, same order as MODEL_NAMES
+    private static final int[] MODEL_REQUESTS_PER_MINUTE = {10, 15, 5};
+    private static final int[] MODEL_BURST = {3, 4, 2};
+    // Used when a 429 does not say how long to wait
+    private static final long DEFAULT_RETRY_DELAY_MS = 30 * 1000;
+    // Attempts per call, counting a rate-limited model that is waited for and tried again
+    private static final int MAX_ATTEMPTS = 5;
+
+    // Connections kept warm between chat turns; HTTP/2 needs only one per host
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    private static volatile GeminiClient instance;
+
+    private final OkHttpClient httpClient;
+    private final ModelHealth modelHealth;
+    private final RequestScheduler<PendingCall> scheduler;
+    // Runs drain(); the only thread that touches nextDrain
+    private final ScheduledExecutorService schedulerThread;
+    private final ExecutorService executor;
+    private ScheduledFuture<?> nextDrain;
+
+    public interface ResponseCallback {
+        void onSuccess(String text, String model);
+        void onFailure(String error);
+    }
+
+    /**
+     * onPartial delivers each piece of text as it arrives; onSuccess then gets the whole reply
+     */
+    public interface StreamCallback extends ResponseCallback {
+        void onPartial(String delta);
+    }
+
+    public static GeminiClient getInstance() {
+        if (instance == null) {
+            synchronized (GeminiClient.class) {
+                if (instance == null) {
+                    instance = new GeminiClient();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private GeminiClient() {
+        httpClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(30, TimeUnit.SECONDS)
+                .readTimeout(90, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .build();
+        modelHealth = new ModelHealth(MODEL_NAMES);
+        scheduler = new RequestScheduler<>(MODEL_NAMES, MODEL_REQUESTS_PER_MINUTE, MODEL_BURST,
+                System.currentTimeMillis());
+        schedulerThread = Executors.newSingleThreadScheduledExecutor();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Shared background executor for Gemini features that need to prepare or post-process off
+     * the main thread, or that use generateBlocking()
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public ModelHealth getModelHealth() {
+        return modelHealth;
+    }
+
+    /**
+     * Queue a request at its priority; it falls back through the healthy models until one
+     * returns text
+     */
+    public void generate(GeminiRequest request, ResponseCallback callback) {
+        enqueue(new PendingCall(request, callback, false));
+    }
+
+    /**
+     * Like generate(), but the reply is delivered piece by piece as the model produces it.
+     * Falling back to another model is only possible until the first piece has arrived; if the
+     * stream breaks after that, onSuccess gets the text received so far.
+     */
+    public void stream(GeminiRequest request, StreamCallback callback) {
+        enqueue(new PendingCall(request, callback, true));
+    }
+
+    private void enqueue(PendingCall pending) {
+        long now = System.currentTimeMillis();
+        scheduler.submit(pending, pending.request.priority, modelHealth.order(now), now);
+        schedulerThread.execute(this::drain);
+    }
+
+    /**
+     * Blocking variant of generate() for callers already on a background thread
+     * @return Generated text, never empty
+     * @throws IOException When every model failed or the call waited too long, with the last error as the message
+     */
+    public String generateBlocking(GeminiRequest request) throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        String[] outcome = new String[2];
+        generate(request, new ResponseCallback() {
+            @Override
+            public void onSuccess(String text, String model) {
+                outcome[0] = text;
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(String error) {
+                outcome[1] = error;
+                done.countDown();
+            }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for Gemini");
+        }
+        if (outcome[0] == null) {
+            throw new IOException(outcome[1]);
+        }
+        return outcome[0];
+    }
+
+    /**
+     * Send whatever the scheduler releases and sleep until it can release more
+     */
+    private void drain() {
+        long now = System.currentTimeMillis();
+        for (RequestScheduler.Ticket<PendingCall> ticket : scheduler.poll(now)) {
+            if (ticket.isExpired()) {
+                PendingCall pending = ticket.payload;
+                Log.w(TAG, pending.request.label + ": gave up after waiting " + ticket.waitedMs(now) + " ms, "
+                        + scheduler.size() + " still queued");
+                pending.callback.onFailure(pending.lastError != null ? pending.lastError
+                        : "Gemini is busy. Please try again in a moment.");
+            } else {
+                send(ticket, now);
+            }
+        }
+
+        if (nextDrain != null) {
+            nextDrain.cancel(false);
+            nextDrain = null;
+        }
+        long wakeup = scheduler.nextWakeup(now);
+        if (wakeup != Long.MAX_VALUE) {
+            nextDrain = schedulerThread.schedule(this::drain, Math.max(1, wakeup - now), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void send(RequestScheduler.Ticket<PendingCall> ticket, long now) {
+        PendingCall pending = ticket.payload;
+        GeminiRequest request = pending.request;
+        String model = ticket.getModel();
+        pending.attempts++;
+        Log.d(TAG, request.label + ": trying " + model + " (attempt " + pending.attempts + ", "
+                + request.priority + ", waited " + ticket.waitedMs(now) + " ms)");
+
+        Request httpRequest;
+        try {
+            httpRequest = buildHttpRequest(request, model, pending.streaming);
+        } catch (JSONException e) {
+            Log.e(TAG, request.label + ": could not build request", e);
+            pending.callback.onFailure("Could not build Gemini request");
+            return;
+        }
+
+        httpClient.newCall(httpRequest).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w(TAG, request.label + ": " + model + " network error: " + e.getMessage());
+                finish(ticket, Attempt.failed(ModelHealth.Outcome.NETWORK_ERROR, "Network error: " + e.getMessage(), 0));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                finish(ticket, pending.streaming
+                        ? readStream(request, model, response, (StreamCallback) pending.callback)
+                        : readResponse(request, model, response));
+            }
+        });
+    }
+
+    /**
+     * Deliver a successful attempt, or requeue the call with the models it has left
+     */
+    private void finish(RequestScheduler.Ticket<PendingCall> ticket, Attempt result) {
+        PendingCall pending = ticket.payload;
+        String model = ticket.getModel();
+        long now = System.currentTimeMillis();
+        modelHealth.record(model, result.outcome, now);
+        if (result.text != null) {
+            pending.callback.onSuccess(result.text, model);
+            return;
+        }
+
+        pending.lastError = result.error;
+        List<String> remaining = new ArrayList<>(ticket.getModels());
+        remaining.remove(model);
+        if (result.outcome == ModelHealth.Outcome.RATE_LIMITED) {
+            long delay = result.retryDelayMs > 0 ? result.retryDelayMs : DEFAULT_RETRY_DELAY_MS;
+            Log.w(TAG, model + " rate limited, pausing it for " + delay + " ms");
+            scheduler.rateLimited(model, delay, now);
+            // Still worth waiting for if the other models fail too
+            remaining.add(model);
+        }
+
+        if (pending.attempts < MAX_ATTEMPTS && scheduler.requeue(ticket, remaining)) {
+            schedulerThread.execute(this::drain);
+        } else {
+            Log.e(TAG, pending.request.label + ": all models failed - " + modelHealth.describe(now));
+            pending.callback.onFailure(result.error);
+        }
+    }
+
+    private Request buildHttpRequest(GeminiRequest request, String model, boolean streaming) throws JSONException {
+        return new Request.Builder()
+                .url(BASE_URL + model + (streaming ? STREAM_ENDPOINT : GENERATE_ENDPOINT) + request.apiKey)
+                .post(RequestBody.create(request.toJson().toString(), JSON))
+                .addHeader("Content-Type", "application/json")
+                .build();
+    }
+
+    private Attempt readResponse(GeminiRequest request, String model, Response response) {
+        try (Response r = response) {
+            if (!r.isSuccessful()) {
+                return readError(request, model, r);
+            }
+            String body = r.body() != null ? r.body().string() : "";
+            String text = parseText(body);
+            if (text == null || text.trim().isEmpty()) {
+                Log.w(TAG, request.label + ": " + model + " returned no text");
+                return Attempt.failed(ModelHealth.Outcome.BAD_RESPONSE, "Empty response", 0);
+            }
+            Log.d(TAG, request.label + ": answered by " + model);
+            return Attempt.succeeded(text);
+        } catch (IOException e) {
+            Log.w(TAG, request.label + ": " + model + " failed reading response: " + e.getMessage());
+            return Attempt.failed(ModelHealth.Outcome.NETWORK_ERROR, "Network error: " + e.getMessage(), 0);
+        }
+    }
+
+    /**
+     * Read an SSE stream: each "data:" line is a partial GenerateContentResponse
+     */
+    private Attempt readStream(GeminiRequest request, String model, Response response, StreamCallback callback) {
+        StringBuilder text = new StringBuilder();
+        try (Response r = response) {
+            if (!r.isSuccessful()) {
+                return readError(request, model, r);
+            }
+            if (r.body() == null) {
+                return Attempt.failed(ModelHealth.Outcome.BAD_RESPONSE, "Empty response", 0);
+            }
+            BufferedSource source = r.body().source();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (!line.startsWith(SSE_DATA_PREFIX)) {
+                    continue;
+                }
+                String delta = parseText(line.substring(SSE_DATA_PREFIX.length()).trim());
+                if (delta != null && !delta.isEmpty()) {
+                    if (text.length() == 0) {
+                        Log.d(TAG, request.label + ": first text from " + model);
+                    }
+                    text.append(delta);
+                    callback.onPartial(delta);
+                }
+            }
+        } catch (IOException e) {
+            if (text.length() == 0) {
+                Log.w(TAG, request.label + ": " + model + " failed reading stream: " + e.getMessage());
+                return Attempt.failed(ModelHealth.Outcome.NETWORK_ERROR, "Network error: " + e.getMessage(), 0);
+            }
+            // Already shown and spoken; keep what arrived rather than starting over on another model
+            Log.w(TAG, request.label + ": " + model + " stream broke after " + text.length() + " chars: " + e.getMessage());
+        }
+        if (text.toString().trim().isEmpty()) {
+            Log.w(TAG, request.label + ": " + model + " streamed no text");
+            return Attempt.failed(ModelHealth.Outcome.BAD_RESPONSE, "Empty response", 0);
+        }
+        Log.d(TAG, request.label + ": streamed by " + model);
+        return Attempt.succeeded(text.toString());
+    }
+
+    private Attempt readError(GeminiRequest request, String model, Response r) throws IOException {
+        String body = r.body() != null ? r.body().string() : "";
+        ModelHealth.Outcome outcome = ModelHealth.classify(r.code());
+        Log.e(TAG, request.label + ": " + model + " returned " + r.code() + " - " + r.message());
+        long retryDelayMs = outcome == ModelHealth.Outcome.RATE_LIMITED ? ModelHealth.parseRetryDelayMs(body) : 0;
+        return Attempt.failed(outcome, "API error: " + r.code(), retryDelayMs);
+    }
+
+    /**
+     * Text of the first candidate's first part, or null if the response has none
+     */
+    public static String parseText(String responseBody) {
+        try {
+            JSONObject response = new JSONObject(responseBody);
+            JSONArray candidates = response.optJSONArray("candidates");
+            if (candidates != null && candidates.length() > 0) {
+                JSONObject content = candidates.getJSONObject(0).optJSONObject("content");
+                JSONArray parts = content != null ? content.optJSONArray("parts") : null;
+                if (parts != null && parts.length() > 0) {
+                    return parts.getJSONObject(0).optString("text", null);
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error parsing response", e);
+        }
+        return null;
+    }
+
+    /**
+     * What the scheduler queues for one generate() call
+     */
+    private static final class PendingCall {
+        final GeminiRequest request;
+        final ResponseCallback callback;
+        // Set for stream(); callback is then a StreamCallback
+        final boolean streaming;
+        int attempts;
+        String lastError;
+
+        PendingCall(GeminiRequest request, ResponseCallback callback, boolean streaming) {
+            this.request = request;
+            this.callback = callback;
+            this.streaming = streaming;
+        }
+    }
+
+    private static final class Attempt {
+        final String text;
+        final ModelHealth.Outcome outcome;
+        final String error;
+        final long retryDelayMs;
+
+        private Attempt(String text, ModelHealth.Outcome outcome, String error, long retryDelayMs) {
+            this.text = text;
+            this.outcome = outcome;
+            this.error = error;
+            this.retryDelayMs = retryDelayMs;
+        }
+
+        static Attempt succeeded(String text) {
+            return new Attempt(text, ModelHealth.Outcome.SUCCESS, null, 0);
+        }
+
+        static Attempt failed(ModelHealth.Outcome outcome, String error, long retryDelayMs) {
+            return new Attempt(null, outcome, error, retryDelayMs);
+        }
+    }
+}
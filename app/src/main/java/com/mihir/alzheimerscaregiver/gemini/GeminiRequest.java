@@ -0,0 +1,105 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One generateContent call as GeminiClient sends it to whichever model is tried
+ */
+public final class GeminiRequest {
+
+    final String label;
+    final String prompt;
+    final String apiKey;
+    RequestScheduler.Priority priority = RequestScheduler.Priority.FOREGROUND;
+    private JSONObject generationConfig;
+    private String[] systemInstruction;
+    private List<ContextWindow.Turn> turns;
+
+    /**
+     * @param label Short name of the calling feature, used in logs
+     * @param prompt Full prompt text, or null if the request is built from addTurn()
+     * @param apiKey BuildConfig key the feature is configured with
+     */
+    public GeminiRequest(String label, String prompt, String apiKey) {
+        this.label = label;
+        this.prompt = prompt;
+        this.apiKey = apiKey;
+    }
+
+    /**
+     * Queue position relative to other Gemini traffic; FOREGROUND unless set
+     */
+    public GeminiRequest setPriority(RequestScheduler.Priority priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public GeminiRequest setGenerationConfig(JSONObject generationConfig) {
+        this.generationConfig = generationConfig;
+        return this;
+    }
+
+    /**
+     * Instructions sent ahead of the conversation rather than as part of it. Keep the parts
+     * that never change first: identical leading tokens are what Gemini's implicit prompt
+     * caching reuses from one request to the next.
+     */
+    public GeminiRequest setSystemInstruction(String... parts) {
+        this.systemInstruction = parts;
+        return this;
+    }
+
+    /**
+     * Append one turn of a multi-turn conversation; prompt is not sent once any are added
+     */
+    public GeminiRequest addTurn(boolean fromUser, String text) {
+        if (turns == null) {
+            turns = new ArrayList<>();
+        }
+        turns.add(new ContextWindow.Turn(fromUser, text));
+        return this;
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject requestBody = new JSONObject();
+
+        if (systemInstruction != null && systemInstruction.length > 0) {
+            requestBody.put("systemInstruction", new JSONObject().put("parts", textParts(systemInstruction)));
+        }
+
+        JSONArray contents = new JSONArray();
+        if (turns != null) {
+            for (ContextWindow.Turn turn : turns) {
+                JSONObject content = new JSONObject();
+                content.put("role", turn.fromUser ? "user" : "model");
+                content.put("parts", textParts(turn.text));
+                contents.put(content);
+            }
+        } else {
+            JSONObject content = new JSONObject();
+            content.put("parts", textParts(prompt));
+            contents.put(content);
+        }
+        requestBody.put("contents", contents);
+
+        if (generationConfig != null) {
+            requestBody.put("generationConfig", generationConfig);
+        }
+        return requestBody;
+    }
+
+    private static JSONArray textParts(String... texts) throws JSONException {
+        JSONArray parts = new JSONArray();
+        for (String text : texts) {
+            if (text != null && !text.isEmpty()) {
+                parts.put(new JSONObject().put("text", text));
+            }
+        }
+        return parts;
+    }
+}
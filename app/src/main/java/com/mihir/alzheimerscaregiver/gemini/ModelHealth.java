@@ -0,0 +1,175 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-model health for the Gemini fallback chain
+ *
+ * GeminiClient reports how every model attempt ended. A model that answers 404 is treated as
+ * retired for an hour, and one that keeps failing backs off exponentially. order() lists the
+ * models that are not cooling down first, in preference order, so a dead model costs one
+ * request per cooldown instead of one per call.
+ *
+ * Network errors and rejected requests (400/401/403) say nothing about the model and are not
+ * counted against it. Rate limits are not either: a 429 pauses the model's TokenBucket in
+ * RequestScheduler instead.
+ */
+public class ModelHealth {
+
+    public enum Outcome {
+        SUCCESS,
+        NOT_FOUND,
+        RATE_LIMITED,
+        SERVER_ERROR,
+        // 200 with no usable text
+        BAD_RESPONSE,
+        NETWORK_ERROR,
+        REQUEST_ERROR
+    }
+
+    static final long NOT_FOUND_COOLDOWN_MS = 60 * 60 * 1000;
+    static final long FAILURE_BASE_COOLDOWN_MS = 5 * 1000;
+    static final long FAILURE_MAX_COOLDOWN_MS = 5 * 60 * 1000;
+
+    // google.rpc.RetryInfo in the error details, e.g. "retryDelay": "23s" or "1.5s"
+    private static final Pattern RETRY_DELAY = Pattern.compile("\"retryDelay\"\\s*:\\s*\"(\\d+(?:\\.\\d+)?)s\"");
+
+    private final String[] models;
+    private final int[] consecutiveFailures;
+    private final long[] coolingUntil;
+
+    public ModelHealth(String... models) {
+        this.models = models.clone();
+        this.consecutiveFailures = new int[models.length];
+        this.coolingUntil = new long[models.length];
+    }
+
+    /**
+     * Models to try, best first: available ones in preference order. When every model is
+     * cooling down, the one that recovers soonest is returned alone as a probe, so a call is
+     * never refused outright on stale health.
+     */
+    public synchronized List<String> order(long now) {
+        List<String> ordered = new ArrayList<>();
+        int soonest = 0;
+        for (int i = 0; i < models.length; i++) {
+            if (coolingUntil[i] <= now) {
+                ordered.add(models[i]);
+            } else if (coolingUntil[i] < coolingUntil[soonest]) {
+                soonest = i;
+            }
+        }
+        if (ordered.isEmpty() && models.length > 0) {
+            ordered.add(models[soonest]);
+        }
+        return ordered;
+    }
+
+    /**
+     * Record how an attempt on a model ended
+     */
+    public synchronized void record(String model, Outcome outcome, long now) {
+        int i = indexOf(model);
+        if (i < 0) {
+            return;
+        }
+        switch (outcome) {
+            case SUCCESS:
+                consecutiveFailures[i] = 0;
+                coolingUntil[i] = 0;
+                break;
+            case NOT_FOUND:
+                consecutiveFailures[i]++;
+                coolingUntil[i] = now + NOT_FOUND_COOLDOWN_MS;
+                break;
+            case SERVER_ERROR:
+            case BAD_RESPONSE:
+                consecutiveFailures[i]++;
+                int shift = Math.min(consecutiveFailures[i] - 1, 16);
+                coolingUntil[i] = now + Math.min(FAILURE_BASE_COOLDOWN_MS << shift, FAILURE_MAX_COOLDOWN_MS);
+                break;
+            case RATE_LIMITED:
+            case NETWORK_ERROR:
+            case REQUEST_ERROR:
+                break;
+        }
+    }
+
+    public synchronized boolean isAvailable(String model, long now) {
+        int i = indexOf(model);
+        return i >= 0 && coolingUntil[i] <= now;
+    }
+
+    /**
+     * Milliseconds until a model leaves its cooldown, 0 if it is available
+     */
+    public synchronized long cooldownRemaining(String model, long now) {
+        int i = indexOf(model);
+        return i < 0 ? 0 : Math.max(0, coolingUntil[i] - now);
+    }
+
+    /**
+     * One line for logs, e.g. "gemini-2.5-flash ok, gemini-2.5-pro cooling 25s (2 failures)"
+     */
+    public synchronized String describe(long now) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < models.length; i++) {
+            if (i > 0) {
+                description.append(", ");
+            }
+            description.append(models[i]);
+            if (coolingUntil[i] > now) {
+                description.append(String.format(Locale.US, " cooling %ds", (coolingUntil[i] - now + 999) / 1000));
+            } else {
+                description.append(" ok");
+            }
+            if (consecutiveFailures[i] > 0) {
+                description.append(" (").append(consecutiveFailures[i]).append(" failures)");
+            }
+        }
+        return description.toString();
+    }
+
+    public static Outcome classify(int httpCode) {
+        if (httpCode >= 200 && httpCode < 300) {
+            return Outcome.SUCCESS;
+        }
+        if (httpCode == 404) {
+            return Outcome.NOT_FOUND;
+        }
+        if (httpCode == 429) {
+            return Outcome.RATE_LIMITED;
+        }
+        if (httpCode >= 500) {
+            return Outcome.SERVER_ERROR;
+        }
+        return Outcome.REQUEST_ERROR;
+    }
+
+    /**
+     * The retryDelay from a 429 error body, or 0 if it has none
+     */
+    public static long parseRetryDelayMs(String errorBody) {
+        if (errorBody == null) {
+            return 0;
+        }
+        Matcher matcher = RETRY_DELAY.matcher(errorBody);
+        if (!matcher.find()) {
+            return 0;
+        }
+        return (long) Math.ceil(Double.parseDouble(matcher.group(1)) * 1000);
+    }
+
+    private int indexOf(String model) {
+        for (int i = 0; i < models.length; i++) {
+            if (models[i].equals(model)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
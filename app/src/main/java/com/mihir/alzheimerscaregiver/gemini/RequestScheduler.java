@@ -0,0 +1,196 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Process-wide queue that decides which Gemini call goes out next, and on which model
+ *
+ * Every attempt needs a token from its model's TokenBucket. Waiting calls are served by
+ * priority, then in arrival order; a call that cannot go yet reserves its models, so nothing
+ * of lower priority takes a token it is waiting for. Background calls also leave a token in
+ * each bucket, which keeps a burst of question generation from delaying the next chat turn.
+ *
+ * The scheduler makes decisions only: GeminiClient polls it, sends what it returns and
+ * requeues failed attempts with the models they have left.
+ */
+public class RequestScheduler<T> {
+
+    public enum Priority {
+        // A patient is waiting on the chat screen
+        CHAT(1, 30 * 1000),
+        // Other screens the user is waiting on: MMSE evaluation and generation, stories
+        FOREGROUND(1, 60 * 1000),
+        // Question generation and memory extraction; nobody is watching
+        BACKGROUND(2, 10 * 60 * 1000);
+
+        final int minTokens;
+        final long maxWaitMs;
+
+        Priority(int minTokens, long maxWaitMs) {
+            this.minTokens = minTokens;
+            this.maxWaitMs = maxWaitMs;
+        }
+    }
+
+    /**
+     * One queued call. model is set when poll() hands it out; null then means it expired.
+     */
+    public static final class Ticket<T> {
+        public final T payload;
+        public final Priority priority;
+        final long sequence;
+        final long submittedAt;
+        final long deadline;
+        List<String> models;
+        String model;
+
+        Ticket(T payload, Priority priority, List<String> models, long sequence, long now) {
+            this.payload = payload;
+            this.priority = priority;
+            this.models = new ArrayList<>(models);
+            this.sequence = sequence;
+            this.submittedAt = now;
+            this.deadline = now + priority.maxWaitMs;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        /**
+         * Models still to try, in order
+         */
+        public List<String> getModels() {
+            return models;
+        }
+
+        public boolean isExpired() {
+            return model == null;
+        }
+
+        public long waitedMs(long now) {
+            return now - submittedAt;
+        }
+    }
+
+    private final Map<String, TokenBucket> buckets = new HashMap<>();
+    private final PriorityQueue<Ticket<T>> queue = new PriorityQueue<>((a, b) -> {
+        int byPriority = a.priority.compareTo(b.priority);
+        return byPriority != 0 ? byPriority : Long.compare(a.sequence, b.sequence);
+    });
+    private long nextSequence;
+
+    /**
+     * @param models Model names
+     * @param requestsPerMinute Quota per model, same order as models
+     * @param burst Bucket capacity per model, same order as models
+     */
+    public RequestScheduler(String[] models, int[] requestsPerMinute, int[] burst, long now) {
+        for (int i = 0; i < models.length; i++) {
+            buckets.put(models[i], new TokenBucket(burst[i], requestsPerMinute[i], now));
+        }
+    }
+
+    public synchronized Ticket<T> submit(T payload, Priority priority, List<String> models, long now) {
+        Ticket<T> ticket = new Ticket<>(payload, priority, models, nextSequence++, now);
+        queue.add(ticket);
+        return ticket;
+    }
+
+    /**
+     * Put a ticket back after a failed attempt, keeping its place in line
+     * @return false if it has no models left to try
+     */
+    public synchronized boolean requeue(Ticket<T> ticket, List<String> models) {
+        if (models.isEmpty()) {
+            return false;
+        }
+        ticket.models = new ArrayList<>(models);
+        ticket.model = null;
+        queue.add(ticket);
+        return true;
+    }
+
+    /**
+     * The model answered 429: stop sending to it until the delay has passed
+     */
+    public synchronized void rateLimited(String model, long retryDelayMs, long now) {
+        TokenBucket bucket = buckets.get(model);
+        if (bucket != null) {
+            bucket.pause(retryDelayMs, now);
+        }
+    }
+
+    /**
+     * Tickets to act on now, in priority order: dispatched ones with their model set and a
+     * token taken, and expired ones with no model
+     */
+    public synchronized List<Ticket<T>> poll(long now) {
+        List<Ticket<T>> ready = new ArrayList<>();
+        List<Ticket<T>> waiting = new ArrayList<>();
+        Set<String> reserved = new HashSet<>();
+
+        while (!queue.isEmpty()) {
+            Ticket<T> ticket = queue.poll();
+            if (now >= ticket.deadline) {
+                ticket.model = null;
+                ready.add(ticket);
+                continue;
+            }
+            String chosen = null;
+            for (String model : ticket.models) {
+                TokenBucket bucket = buckets.get(model);
+                if (reserved.contains(model)) {
+                    continue;
+                }
+                if (bucket == null || bucket.tryAcquire(ticket.priority.minTokens, now)) {
+                    chosen = model;
+                    break;
+                }
+            }
+            if (chosen != null) {
+                ticket.model = chosen;
+                ready.add(ticket);
+            } else {
+                reserved.addAll(ticket.models);
+                waiting.add(ticket);
+            }
+        }
+        queue.addAll(waiting);
+        return ready;
+    }
+
+    /**
+     * When poll() may next have something to return, or Long.MAX_VALUE if the queue is empty
+     */
+    public synchronized long nextWakeup(long now) {
+        List<Ticket<T>> ordered = new ArrayList<>(queue);
+        ordered.sort(queue.comparator());
+        Set<String> reserved = new HashSet<>();
+        long wakeup = Long.MAX_VALUE;
+        for (Ticket<T> ticket : ordered) {
+            wakeup = Math.min(wakeup, ticket.deadline);
+            // A model reserved by an earlier ticket frees up only when that ticket goes, which
+            // its own availableAt already covers
+            for (String model : ticket.models) {
+                if (reserved.contains(model)) {
+                    continue;
+                }
+                TokenBucket bucket = buckets.get(model);
+                wakeup = Math.min(wakeup, bucket == null ? now : bucket.availableAt(ticket.priority.minTokens, now));
+            }
+            reserved.addAll(ticket.models);
+        }
+        return wakeup;
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+}
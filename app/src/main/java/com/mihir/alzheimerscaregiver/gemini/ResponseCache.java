@@ -0,0 +1,334 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local cache of chat replies for questions the patient has asked before
+ *
+ * Messages are normalized (case, punctuation, spacing) and looked up exactly first. Failing
+ * that, each one is turned into a small hashed bag of words and character trigrams, and the
+ * closest cached question is used if its cosine similarity clears the threshold, so "Where is
+ * my wife?" and "where's my wife" share one reply. Entries live in one LRU partition per
+ * reply language and expire after a TTL.
+ *
+ * Very short messages ("yes", "tell me") depend on what was said before and are never cached.
+ * Neither are questions about the time or date ("what day is it today?"): the reply would be
+ * wrong as soon as the clock moves on, and patients ask them often.
+ */
+public class ResponseCache {
+
+    public static final double DEFAULT_MIN_SIMILARITY = 0.8;
+    public static final long DEFAULT_TTL_MS = 30 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    static final int MIN_WORDS = 3;
+    static final int DIMENSIONS = 256;
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+    private static final float SHORT_WORD_WEIGHT = 0.4f;
+
+    // Words that make a question depend on when it is asked, in every reply language. Words in
+    // Indian scripts also match with suffixes, e.g. Tamil "இன்றைக்கு" for "இன்று" (today).
+    private static final List<String> TIME_WORDS = Arrays.asList(
+            // English
+            "time", "clock", "date", "day", "days", "today", "tonight", "tomorrow", "yesterday", "now",
+            "week", "weekend", "month", "year", "morning", "afternoon", "evening", "monday", "tuesday",
+            "wednesday", "thursday", "friday", "saturday", "sunday",
+            // Hindi: time, time, o'clock, date, day, today, yesterday/tomorrow, now, year, month, week
+            "समय", "वक्त", "बजे", "बजा", "तारीख", "दिन", "आज", "कल", "अभी", "साल", "महीना", "हफ्ता",
+            // Kannada: time, today, day, tomorrow, yesterday, hour, date, year
+            "ಸಮಯ", "ಇಂದು", "ದಿನ", "ನಾಳೆ", "ನಿನ್ನೆ", "ಗಂಟೆ", "ದಿನಾಂಕ", "ವರ್ಷ",
+            // Tamil: time, today, day, date, tomorrow, yesterday, o'clock, year
+            "நேரம்", "இன்று", "நாள்", "தேதி", "நாளை", "நேற்று", "மணி", "வருடம்",
+            // Telugu: time, today, day, date, tomorrow, yesterday, hours, year
+            "సమయం", "ఈరోజు", "రోజు", "తేదీ", "రేపు", "నిన్న", "గంటలు", "సంవత్సరం",
+            // Malayalam: time, today, day, date, tomorrow, yesterday, o'clock, year
+            "സമയം", "ഇന്ന്", "ദിവസം", "തീയതി", "നാളെ", "ഇന്നലെ", "മണി", "വർഷം");
+    private static final Set<String> TIME_WORDS_EXACT = new HashSet<>();
+    private static final Set<String> TIME_WORD_PREFIXES = new HashSet<>();
+
+    static {
+        for (String word : TIME_WORDS) {
+            // Same spelling the messages get
+            String normalized = normalize(word);
+            // Short Indic words ("कल") would also match unrelated longer ones
+            if (normalized.chars().allMatch(c -> c < 128) || normalized.length() < 3) {
+                TIME_WORDS_EXACT.add(normalized);
+            } else {
+                TIME_WORD_PREFIXES.add(normalized);
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String question;
+        final float[] embedding;
+        final String response;
+        final long storedAt;
+
+        Entry(String question, float[] embedding, String response, long storedAt) {
+            this.question = question;
+            this.embedding = embedding;
+            this.response = response;
+            this.storedAt = storedAt;
+        }
+    }
+
+    private final double minSimilarity;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final Map<String, LinkedHashMap<String, Entry>> partitions = new HashMap<>();
+
+    private long exactHits;
+    private long similarHits;
+    private long misses;
+    private long skipped;
+    private long evictions;
+    private long expirations;
+
+    public ResponseCache() {
+        this(DEFAULT_MIN_SIMILARITY, DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param minSimilarity Cosine similarity a cached question needs to be reused, 0 to 1
+     * @param ttlMs How long a reply stays usable
+     * @param maxEntries Entries kept per language before the least recently used goes
+     */
+    public ResponseCache(double minSimilarity, long ttlMs, int maxEntries) {
+        this.minSimilarity = minSimilarity;
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * The cached reply to a message, or null on a miss
+     * @param language Reply language, from LanguagePreferenceManager
+     */
+    public synchronized String lookup(String language, String message, long now) {
+        String question = normalize(message);
+        if (!isCacheable(question)) {
+            skipped++;
+            return null;
+        }
+        LinkedHashMap<String, Entry> partition = partitions.get(language);
+        if (partition == null) {
+            misses++;
+            return null;
+        }
+        removeExpired(partition, now);
+
+        // get() also marks the entry as recently used
+        Entry exact = partition.get(question);
+        if (exact != null) {
+            exactHits++;
+            return exact.response;
+        }
+
+        float[] embedding = embed(question);
+        Entry best = null;
+        double bestSimilarity = minSimilarity;
+        for (Entry entry : partition.values()) {
+            double similarity = similarity(embedding, entry.embedding);
+            if (similarity >= bestSimilarity) {
+                best = entry;
+                bestSimilarity = similarity;
+            }
+        }
+        if (best == null) {
+            misses++;
+            return null;
+        }
+        partition.get(best.question);
+        similarHits++;
+        return best.response;
+    }
+
+    /**
+     * Remember the reply Gemini gave to a message
+     */
+    public synchronized void store(String language, String message, String response, long now) {
+        String question = normalize(message);
+        if (!isCacheable(question) || response == null || response.trim().isEmpty()) {
+            return;
+        }
+        LinkedHashMap<String, Entry> partition = partitions.get(language);
+        if (partition == null) {
+            partition = new LinkedHashMap<>(16, 0.75f, true);
+            partitions.put(language, partition);
+        }
+        partition.put(question, new Entry(question, embed(question), response, now));
+
+        // Access order puts the least recently used entry first
+        Iterator<Entry> iterator = partition.values().iterator();
+        while (partition.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void clear() {
+        partitions.clear();
+    }
+
+    public synchronized Stats stats() {
+        int entries = 0;
+        for (LinkedHashMap<String, Entry> partition : partitions.values()) {
+            entries += partition.size();
+        }
+        return new Stats(exactHits, similarHits, misses, skipped, evictions, expirations, entries);
+    }
+
+    /**
+     * Lowercase words separated by single spaces; letters, combining marks (Indic vowel
+     * signs) and digits only
+     */
+    static String normalize(String message) {
+        if (message == null) {
+            return "";
+        }
+        return (message.toLowerCase(Locale.ROOT) + " ")
+                .replace('\u2019', '\'')
+                .replace("n't", " not")
+                .replace("'s ", " is ")
+                .replace("'re ", " are ")
+                .replace("'m ", " am ")
+                // Spelling variants speech-to-text produces for the same Devanagari word
+                .replace('\u0901', '\u0902')
+                .replace("\u093C", "")
+                .replaceAll("[^\\p{L}\\p{M}\\p{N}]+", " ")
+                .trim();
+    }
+
+    /**
+     * Hashed words plus character trigrams of each word, scaled to unit length. Trigrams let
+     * small spelling and speech-to-text differences still land close together.
+     */
+    static float[] embed(String normalized) {
+        float[] vector = new float[DIMENSIONS];
+        for (String word : normalized.split(" ")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            // Short words ("is", "my") carry little meaning but appear in nearly every question
+            float weight = word.length() <= 2 ? SHORT_WORD_WEIGHT : 1f;
+            vector[bucket("w:" + word)] += weight;
+            String padded = " " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                vector[bucket(padded.substring(i, i + 3))] += TRIGRAM_WEIGHT * weight;
+            }
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Cosine similarity of two embed() vectors
+     */
+    static double similarity(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    private static int bucket(String feature) {
+        return Math.floorMod(feature.hashCode() * 0x9E3779B9, DIMENSIONS);
+    }
+
+    private static boolean isCacheable(String question) {
+        return !question.isEmpty() && question.split(" ").length >= MIN_WORDS && !isAboutTime(question);
+    }
+
+    /**
+     * Whether the answer to a normalized message depends on the current time or date
+     */
+    static boolean isAboutTime(String question) {
+        for (String word : question.split(" ")) {
+            if (TIME_WORDS_EXACT.contains(word)) {
+                return true;
+            }
+            for (String prefix : TIME_WORD_PREFIXES) {
+                if (word.startsWith(prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void removeExpired(LinkedHashMap<String, Entry> partition, long now) {
+        Iterator<Entry> iterator = partition.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().storedAt >= ttlMs) {
+                iterator.remove();
+                expirations++;
+            }
+        }
+    }
+
+    /**
+     * Counters since the cache was created
+     */
+    public static final class Stats {
+        public final long exactHits;
+        public final long similarHits;
+        public final long misses;
+        // Messages too short or too time-dependent to cache
+        public final long skipped;
+        public final long evictions;
+        public final long expirations;
+        public final int entries;
+
+        Stats(long exactHits, long similarHits, long misses, long skipped, long evictions,
+              long expirations, int entries) {
+            this.exactHits = exactHits;
+            this.similarHits = similarHits;
+            this.misses = misses;
+            this.skipped = skipped;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.entries = entries;
+        }
+
+        public long hits() {
+            return exactHits + similarHits;
+        }
+
+        /**
+         * Share of cacheable lookups answered from the cache, 0 to 1
+         */
+        public double hitRate() {
+            long lookups = hits() + misses;
+            return lookups == 0 ? 0 : (double) hits() / lookups;
+        }
+
+        /**
+         * One line for logs, e.g. "hit rate 42% (8 exact, 3 similar, 15 misses, 4 skipped), 20 entries,
+         * 0 evicted, 2 expired"
+         */
+        public String toLogLine() {
+            return String.format(Locale.US,
+                    "hit rate %.0f%% (%d exact, %d similar, %d misses, %d skipped), %d entries, %d evicted, %d expired",
+                    hitRate() * 100, exactHits, similarHits, misses, skipped, entries, evictions, expirations);
+        }
+    }
+}
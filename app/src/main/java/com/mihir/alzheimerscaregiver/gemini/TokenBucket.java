@@ -0,0 +1,75 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+/**
+ * Request budget for one Gemini model
+ *
+ * Holds up to capacity tokens and refills at the model's requests-per-minute quota. A 429
+ * empties the bucket and stops refilling until the server's retryDelay has passed, so every
+ * feature backs off together instead of each one sleeping on its own.
+ *
+ * Not thread-safe; RequestScheduler guards it.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerMs;
+    private double tokens;
+    private long updatedAt;
+    private long pausedUntil;
+
+    public TokenBucket(int capacity, int requestsPerMinute, long now) {
+        this.capacity = Math.max(1, capacity);
+        this.tokensPerMs = Math.max(1, requestsPerMinute) / 60000.0;
+        this.tokens = this.capacity;
+        this.updatedAt = now;
+    }
+
+    /**
+     * Take one token if at least minTokens are available
+     * @param minTokens Tokens that must be present, so lower priorities leave some for higher ones
+     */
+    public boolean tryAcquire(int minTokens, long now) {
+        refill(now);
+        if (now < pausedUntil || tokens < Math.min(minTokens, capacity)) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Earliest time tryAcquire(minTokens) can succeed, assuming nothing else takes tokens first
+     */
+    public long availableAt(int minTokens, long now) {
+        refill(now);
+        double needed = Math.min(minTokens, capacity) - tokens;
+        long start = Math.max(now, pausedUntil);
+        if (needed <= 0) {
+            return start;
+        }
+        return start + (long) Math.ceil(needed / tokensPerMs);
+    }
+
+    /**
+     * The server rejected a call: no tokens until retryDelayMs from now
+     */
+    public void pause(long retryDelayMs, long now) {
+        refill(now);
+        tokens = 0;
+        pausedUntil = Math.max(pausedUntil, now + retryDelayMs);
+        updatedAt = pausedUntil;
+    }
+
+    public double getTokens(long now) {
+        refill(now);
+        return tokens;
+    }
+
+    private void refill(long now) {
+        if (now <= updatedAt) {
+            return;
+        }
+        tokens = Math.min(capacity, tokens + (now - updatedAt) * tokensPerMs);
+        updatedAt = now;
+    }
+}
@@ -0,0 +1,120 @@
+package com.mihir.alzheimerscaregiver.geofence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Makes sure one real geofence crossing raises one alert
+ *
+ * The same crossing is detected twice: by VirtualGeofenceManager on the next fix and by the
+ * Play Services geofence, which can be minutes late. Both paths ask shouldRaise() before they
+ * write an alert, notify locally or send FCM, and only the first one gets through.
+ *
+ * Events are compared by when the crossing happened (the fix or triggering location time),
+ * not by when they arrived. A repeat of the same transition on the same fence within the
+ * window is the same crossing, unless a transition the other way (ENTER or DWELL against
+ * EXIT) happened in between: then it is a new crossing and raises its own alert.
+ */
+public class GeofenceAlertDeduplicator {
+
+    public static final String ENTER = "ENTER";
+    public static final String EXIT = "EXIT";
+    public static final String DWELL = "DWELL";
+
+    // Covers the platform geofence's detection delay relative to the on-device evaluator
+    public static final long DEFAULT_WINDOW_MS = 10 * 60 * 1000;
+
+    private static GeofenceAlertDeduplicator instance;
+
+    private static final class Raised {
+        final String transition;
+        final long eventTime;
+
+        Raised(String transition, long eventTime) {
+            this.transition = transition;
+            this.eventTime = eventTime;
+        }
+    }
+
+    private final long windowMs;
+    // patientId|geofenceId -> transitions raised within the window, in the order raised
+    private final Map<String, List<Raised>> raised = new HashMap<>();
+    private int duplicates;
+
+    /**
+     * The instance shared by the geofence receiver and the location service
+     */
+    public static synchronized GeofenceAlertDeduplicator getInstance() {
+        if (instance == null) {
+            instance = new GeofenceAlertDeduplicator(DEFAULT_WINDOW_MS);
+        }
+        return instance;
+    }
+
+    public GeofenceAlertDeduplicator(long windowMs) {
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Claim the alert for a transition
+     *
+     * @param transition ENTER, EXIT or DWELL
+     * @param eventTime When the crossing was observed, not when it was delivered
+     * @return false if this crossing has already been raised by either path
+     */
+    public synchronized boolean shouldRaise(String patientId, String geofenceId, String transition, long eventTime) {
+        String key = patientId + "|" + geofenceId;
+        List<Raised> history = raised.get(key);
+        if (history == null) {
+            history = new ArrayList<>();
+            raised.put(key, history);
+        }
+        prune(history, eventTime);
+
+        for (Raised previous : history) {
+            if (previous.transition.equals(transition)
+                    && Math.abs(previous.eventTime - eventTime) < windowMs
+                    && !crossedBackBetween(history, transition, previous.eventTime, eventTime)) {
+                duplicates++;
+                return false;
+            }
+        }
+        history.add(new Raised(transition, eventTime));
+        return true;
+    }
+
+    /**
+     * Transitions dropped as duplicates since this instance was created
+     */
+    public synchronized int getDuplicateCount() {
+        return duplicates;
+    }
+
+    private static boolean crossedBackBetween(List<Raised> history, String transition, long a, long b) {
+        long from = Math.min(a, b);
+        long to = Math.max(a, b);
+        for (Raised other : history) {
+            if (isOpposite(transition, other.transition) && other.eventTime > from && other.eventTime < to) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOpposite(String a, String b) {
+        return EXIT.equals(a) != EXIT.equals(b);
+    }
+
+    private void prune(List<Raised> history, long now) {
+        Iterator<Raised> iterator = history.iterator();
+        while (iterator.hasNext()) {
+            // Kept twice the window so a late event can still see the crossing that preceded it
+            if (now - iterator.next().eventTime > 2 * windowMs) {
+                iterator.remove();
+            }
+        }
+    }
+}
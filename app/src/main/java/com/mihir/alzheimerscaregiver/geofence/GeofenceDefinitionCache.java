@@ -0,0 +1,206 @@
+package com.mihir.alzheimerscaregiver.geofence;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Persistent local copy of a patient's GeofenceDefinitions, keyed by id
+ *
+ * PatientGeofenceClient applies Firebase child events to this cache and uses the
+ * returned Change to decide whether a fence has to be re-registered with the
+ * platform. updatedAt (set by the CaretakerApp on every edit) is the version:
+ * an event older than the cached copy is ignored.
+ *
+ * The cache survives restarts, so fences can be registered from disk before the
+ * first Firebase sync completes.
+ */
+public class GeofenceDefinitionCache {
+
+    private static final int FILE_VERSION = 1;
+
+    public enum Change {
+        // New fence
+        ADDED,
+        // Center, radius or active flag changed: re-registration needed
+        GEOMETRY_CHANGED,
+        // Only label, description, type or color changed: no re-registration
+        DETAILS_CHANGED,
+        // Same version and content, or an older version than the cached one
+        UNCHANGED
+    }
+
+    private final File file;
+    private final Map<String, GeofenceDefinition> definitions = new LinkedHashMap<>();
+
+    public GeofenceDefinitionCache(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Insert or update a definition
+     * @return What changed compared to the cached copy
+     */
+    public synchronized Change put(GeofenceDefinition definition) throws IOException {
+        GeofenceDefinition cached = definitions.get(definition.id);
+
+        Change change;
+        if (cached == null) {
+            change = Change.ADDED;
+        } else if (definition.updatedAt < cached.updatedAt) {
+            return Change.UNCHANGED;
+        } else if (!sameGeometry(cached, definition)) {
+            change = Change.GEOMETRY_CHANGED;
+        } else if (!sameDetails(cached, definition)) {
+            change = Change.DETAILS_CHANGED;
+        } else {
+            return Change.UNCHANGED;
+        }
+
+        definitions.put(definition.id, definition);
+        save();
+        return change;
+    }
+
+    /**
+     * Remove a definition
+     * @return The removed definition, or null if it was not cached
+     */
+    public synchronized GeofenceDefinition remove(String id) throws IOException {
+        GeofenceDefinition removed = definitions.remove(id);
+        if (removed != null) {
+            save();
+        }
+        return removed;
+    }
+
+    /**
+     * Drop every cached definition whose id is not in {@code ids}
+     * Used after the initial sync to forget fences deleted while the app was not listening.
+     *
+     * @return The removed definitions
+     */
+    public synchronized List<GeofenceDefinition> retainOnly(Collection<String> ids) throws IOException {
+        List<GeofenceDefinition> removed = new ArrayList<>();
+        for (GeofenceDefinition definition : new ArrayList<>(definitions.values())) {
+            if (!ids.contains(definition.id)) {
+                definitions.remove(definition.id);
+                removed.add(definition);
+            }
+        }
+        if (!removed.isEmpty()) {
+            save();
+        }
+        return removed;
+    }
+
+    public synchronized GeofenceDefinition get(String id) {
+        return definitions.get(id);
+    }
+
+    public synchronized List<GeofenceDefinition> getAll() {
+        return new ArrayList<>(definitions.values());
+    }
+
+    public synchronized int size() {
+        return definitions.size();
+    }
+
+    static boolean sameGeometry(GeofenceDefinition a, GeofenceDefinition b) {
+        return a.lat == b.lat && a.lng == b.lng && a.radius == b.radius && a.active == b.active;
+    }
+
+    static boolean sameDetails(GeofenceDefinition a, GeofenceDefinition b) {
+        return a.updatedAt == b.updatedAt &&
+                Objects.equals(a.label, b.label) &&
+                Objects.equals(a.description, b.description) &&
+                Objects.equals(a.type, b.type) &&
+                Objects.equals(a.color, b.color);
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                GeofenceDefinition definition = new GeofenceDefinition();
+                definition.id = in.readUTF();
+                definition.label = readNullable(in);
+                definition.description = readNullable(in);
+                definition.lat = in.readDouble();
+                definition.lng = in.readDouble();
+                definition.radius = in.readFloat();
+                definition.type = readNullable(in);
+                definition.color = readNullable(in);
+                definition.active = in.readBoolean();
+                definition.createdAt = in.readLong();
+                definition.updatedAt = in.readLong();
+                definition.createdBy = readNullable(in);
+                definitions.put(definition.id, definition);
+            }
+        } catch (EOFException e) {
+            // Truncated file: start over from Firebase
+            definitions.clear();
+        } catch (IOException e) {
+            definitions.clear();
+        }
+    }
+
+    private void save() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(FILE_VERSION);
+            data.writeInt(definitions.size());
+            for (GeofenceDefinition definition : definitions.values()) {
+                data.writeUTF(definition.id);
+                writeNullable(data, definition.label);
+                writeNullable(data, definition.description);
+                data.writeDouble(definition.lat);
+                data.writeDouble(definition.lng);
+                data.writeFloat(definition.radius);
+                writeNullable(data, definition.type);
+                writeNullable(data, definition.color);
+                data.writeBoolean(definition.active);
+                data.writeLong(definition.createdAt);
+                data.writeLong(definition.updatedAt);
+                writeNullable(data, definition.createdBy);
+            }
+            data.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to update geofence cache");
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
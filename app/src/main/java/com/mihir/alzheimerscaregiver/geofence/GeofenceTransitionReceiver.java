@@ -67,7 +67,8 @@ public class GeofenceTransitionReceiver extends BroadcastReceiver {
                             geofence.getRequestId(),
                             geofenceTransition,
                             triggeringLocation.getLatitude(),
-                            triggeringLocation.getLongitude()
+                            triggeringLocation.getLongitude(),
+                            triggeringLocation.getTime()
                     );
                 }
             } else {
@@ -82,7 +83,8 @@ public class GeofenceTransitionReceiver extends BroadcastReceiver {
      * Handle individual geofence transition
      */
     private void handleGeofenceTransition(Context context, String geofenceId, 
-                                        int transitionType, double latitude, double longitude) {
+                                        int transitionType, double latitude, double longitude,
+                                        long eventTime) {
         
         Log.d(TAG, "Geofence transition: " + geofenceId + " - " + getTransitionString(transitionType));
         
@@ -93,6 +95,13 @@ public class GeofenceTransitionReceiver extends BroadcastReceiver {
             return;
         }
         
+        // The on-device evaluator usually sees the same crossing first
+        if (!GeofenceAlertDeduplicator.getInstance().shouldRaise(
+                patientId, geofenceId, getTransitionString(transitionType), eventTime)) {
+            Log.d(TAG, "Geofence " + geofenceId + " " + getTransitionString(transitionType) + " already alerted, skipping");
+            return;
+        }
+        
         // Send alert to Firebase directly (this is the main notification path)
         sendGeofenceAlert(patientId, geofenceId, transitionType, latitude, longitude);
         
@@ -144,7 +153,7 @@ public class GeofenceTransitionReceiver extends BroadcastReceiver {
                                     Log.i(TAG, "✅ Enhanced alert saved to Firebase: " + geofenceName);
                                     
                                     // Send FCM notification to caretakers
-                                    sendFCMNotificationToCaretakers(context, patientId, geofenceName, 
+                                    sendFCMNotificationToCaretakers(context, patientId, geofenceId, geofenceName, 
                                                                    getTransitionString(transitionType), 
                                                                    severity, alertId);
                                 })
@@ -171,7 +180,7 @@ public class GeofenceTransitionReceiver extends BroadcastReceiver {
      * Determine alert severity based on transition type and zone type
      */
     private String determineSeverity(int transitionType, String zoneType) {
-        if ("safe_zone".equals(zoneType) && transitionType == Geofence.GEOFENCE_TRANSITION_EXIT) {
+        if ("safe_zone".equalsIgnoreCase(zoneType) && transitionType == Geofence.GEOFENCE_TRANSITION_EXIT) {
             return "high"; // Exiting safe zone is high priority
         }
         return "medium";
@@ -180,7 +189,7 @@ public class GeofenceTransitionReceiver extends BroadcastReceiver {
     /**
      * Send FCM notification to all caretakers
      */
-    private void sendFCMNotificationToCaretakers(Context context, String patientId, 
+    private void sendFCMNotificationToCaretakers(Context context, String patientId, String geofenceId,
                                                 String geofenceName, String transitionType,
                                                 String severity, String alertId) {
         Log.i(TAG, "📤 Sending FCM notifications to caretakers...");
@@ -202,14 +211,14 @@ public class GeofenceTransitionReceiver extends BroadcastReceiver {
                     }
                     
                     Log.i(TAG, "📤 Sending FCM for patient: " + patientName);
-                    fcmSender.sendGeofenceAlert(patientId, patientName, geofenceName, 
+                    fcmSender.sendGeofenceAlert(patientId, patientName, geofenceId, geofenceName, 
                                                transitionType, severity, alertId);
                 }
                 
                 @Override
                 public void onCancelled(com.google.firebase.database.DatabaseError error) {
                     Log.w(TAG, "Failed to get patient name, using default");
-                    fcmSender.sendGeofenceAlert(patientId, "Patient", geofenceName, 
+                    fcmSender.sendGeofenceAlert(patientId, "Patient", geofenceId, geofenceName, 
                                                transitionType, severity, alertId);
                 }
             });
@@ -6,6 +6,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.core.content.ContextCompat;
@@ -14,6 +16,7 @@ import com.google.android.gms.location.Geofence;
 import com.google.android.gms.location.GeofencingClient;
 import com.google.android.gms.location.GeofencingRequest;
 import com.google.android.gms.location.LocationServices;
+import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
@@ -21,10 +24,15 @@ import com.google.firebase.database.FirebaseDatabase;
 import com.google.firebase.database.ValueEventListener;
 
 import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+import com.mihir.alzheimerscaregiver.location.LocationTelemetry;
+import com.mihir.alzheimerscaregiver.utils.FCMDispatcher;
 import com.mihir.alzheimerscaregiver.utils.FCMNotificationSender;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -32,7 +40,8 @@ import java.util.Map;
  * PatientGeofenceClient - Manages geofences on the patient device
  * 
  * Features:
- * - Reads geofence definitions from Firebase
+ * - Reads geofence definitions from Firebase as child-level diffs
+ * - Keeps a persistent GeofenceDefinitionCache so only changed fences are re-registered
  * - Registers geofences with Android GeofencingClient
  * - Handles geofence transition events
  * - Sends alerts to Firebase for caretaker notifications
@@ -43,6 +52,9 @@ public class PatientGeofenceClient {
     private static final String TAG = "PatientGeofenceClient";
     private static final long GEOFENCE_EXPIRATION_TIME = 24 * 60 * 60 * 1000; // 24 hours
     
+    // Transition name for early warnings from GeofenceBreachPredictor
+    public static final String TRANSITION_EXIT_PREDICTED = "EXIT_PREDICTED";
+    
     // Android Services
     private Context context;
     private GeofencingClient geofencingClient;
@@ -50,12 +62,17 @@ public class PatientGeofenceClient {
     
     // Firebase
     private DatabaseReference databaseReference;
-    private ValueEventListener geofenceListener;
+    private ChildEventListener geofenceListener;
     
     // Data
     private String patientId;
     private List<PatientGeofence> activeGeofences;
     private Map<String, GeofenceDefinition> geofenceDefinitions;
+    private GeofenceDefinitionCache geofenceCache;
+    private String cachedPatientName;
+    private final Map<String, PatientGeofence> pendingRegistrations = new LinkedHashMap<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LocationTelemetry telemetry = LocationTelemetry.getInstance();
     
     // FCM Notifications
     private FCMNotificationSender fcmNotificationSender;
@@ -69,6 +86,16 @@ public class PatientGeofenceClient {
         this.geofenceDefinitions = new HashMap<>();
         this.fcmNotificationSender = new FCMNotificationSender(context);
         
+        // Start from the last known definitions so transitions resolve before the first sync
+        this.geofenceCache = new GeofenceDefinitionCache(
+                new File(context.getNoBackupFilesDir(), "geofence_cache_" + patientId + ".bin"));
+        for (GeofenceDefinition definition : geofenceCache.getAll()) {
+            if (definition.isValid() && definition.active) {
+                geofenceDefinitions.put(definition.id, definition);
+                activeGeofences.add(convertToPatientGeofence(definition));
+            }
+        }
+        
         Log.d(TAG, "PatientGeofenceClient initialized for patient: " + patientId);
     }
     
@@ -81,11 +108,11 @@ public class PatientGeofenceClient {
             return;
         }
         
-        // Listen for geofence updates from Firebase
-        startGeofenceUpdatesListener();
+        // Register the cached fences right away; Firebase only sends what changed since
+        registerGeofences(new ArrayList<>(activeGeofences));
         
-        // Load and register initial geofences
-        loadAndRegisterGeofences();
+        // Listen for per-fence changes from Firebase
+        startGeofenceUpdatesListener();
         
         // Add test geofence for debugging if no geofences exist
         addTestGeofenceIfNeeded();
@@ -99,8 +126,9 @@ public class PatientGeofenceClient {
     public void stopGeofenceMonitoring() {
         // Remove geofence listener
         if (geofenceListener != null && databaseReference != null) {
-            databaseReference.child("geofences").child(patientId)
+            databaseReference.child("patients").child(patientId).child("geofences")
                     .removeEventListener(geofenceListener);
+            geofenceListener = null;
         }
         
         // Remove all geofences
@@ -111,43 +139,30 @@ public class PatientGeofenceClient {
     
     /**
      * Start listening for geofence updates from Firebase
+     * Each added/changed/removed child is diffed against the cache and only that fence is touched.
      */
     private void startGeofenceUpdatesListener() {
         DatabaseReference geofencesRef = databaseReference.child("patients").child(patientId).child("geofences");
         
-        geofenceListener = new ValueEventListener() {
+        geofenceListener = new ChildEventListener() {
             @Override
-            public void onDataChange(DataSnapshot dataSnapshot) {
-                Log.i(TAG, "🌍 Loading " + dataSnapshot.getChildrenCount() + " geofences from Firebase for patient: " + patientId);
-                
-                List<PatientGeofence> updatedGeofences = new ArrayList<>();
-                geofenceDefinitions.clear();
-                
-                // Parse geofences using GeofenceDefinition
-                for (DataSnapshot geofenceSnapshot : dataSnapshot.getChildren()) {
-                    try {
-                        Map<String, Object> data = (Map<String, Object>) geofenceSnapshot.getValue();
-                        if (data != null) {
-                            GeofenceDefinition geofenceDefinition = GeofenceDefinition.fromFirebase(data);
-                            if (geofenceDefinition.isValid() && geofenceDefinition.active) {
-                                geofenceDefinitions.put(geofenceDefinition.id, geofenceDefinition);
-                                Log.i(TAG, "🎯 Loaded geofence: " + geofenceDefinition.label + " at " + 
-                                      geofenceDefinition.lat + "," + geofenceDefinition.lng + " (radius: " + 
-                                      geofenceDefinition.radius + "m)");
-                                
-                                PatientGeofence patientGeofence = convertToPatientGeofence(geofenceDefinition);
-                                updatedGeofences.add(patientGeofence);
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error parsing geofence during update", e);
-                    }
-                }
-                
-                // Update active geofences
-                updateActiveGeofences(updatedGeofences);
-                
-                Log.i(TAG, "✅ Successfully loaded and registered " + updatedGeofences.size() + " geofences for monitoring!");
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                applyGeofenceSnapshot(snapshot);
+            }
+            
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                applyGeofenceSnapshot(snapshot);
+            }
+            
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                removeGeofence(snapshot.getKey());
+            }
+            
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // Ordering is irrelevant for geofences
             }
             
             @Override
@@ -155,49 +170,163 @@ public class PatientGeofenceClient {
                 Log.e(TAG, "Failed to load geofences", databaseError.toException());
             }
         };
+        geofencesRef.addChildEventListener(geofenceListener);
         
-        geofencesRef.addValueEventListener(geofenceListener);
-        Log.d(TAG, "Started listening for geofence updates");
-    }
-    
-    /**
-     * Load and register geofences from Firebase
-     */
-    private void loadAndRegisterGeofences() {
-        DatabaseReference geofencesRef = databaseReference.child("patients").child(patientId).child("geofences");
-        
+        // Value events fire after the initial child events, from the data the child
+        // listener already synced; use it to forget fences deleted while we were away
         geofencesRef.addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot dataSnapshot) {
-                List<PatientGeofence> geofences = new ArrayList<>();
-                geofenceDefinitions.clear();
-                
-                for (DataSnapshot geofenceSnapshot : dataSnapshot.getChildren()) {
-                    try {
-                        Map<String, Object> data = (Map<String, Object>) geofenceSnapshot.getValue();
-                        if (data != null) {
-                            GeofenceDefinition geofenceDefinition = GeofenceDefinition.fromFirebase(data);
-                            if (geofenceDefinition.isValid() && geofenceDefinition.active) {
-                                geofenceDefinitions.put(geofenceDefinition.id, geofenceDefinition);
-                                
-                                PatientGeofence patientGeofence = convertToPatientGeofence(geofenceDefinition);
-                                geofences.add(patientGeofence);
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error parsing geofence", e);
+                List<String> ids = new ArrayList<>();
+                for (DataSnapshot child : dataSnapshot.getChildren()) {
+                    ids.add(child.getKey());
+                }
+                try {
+                    List<GeofenceDefinition> stale = geofenceCache.retainOnly(ids);
+                    for (GeofenceDefinition definition : stale) {
+                        unregisterGeofence(definition.id);
                     }
+                    Log.i(TAG, "✅ Geofence sync complete: " + activeGeofences.size() + " active, " + 
+                          stale.size() + " stale removed");
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to update geofence cache", e);
                 }
-                
-                Log.d(TAG, "Loaded " + geofences.size() + " geofences from Firebase");
-                registerGeofences(geofences);
             }
             
             @Override
             public void onCancelled(DatabaseError databaseError) {
-                Log.e(TAG, "Failed to load initial geofences", databaseError.toException());
+                Log.w(TAG, "Geofence reconciliation cancelled", databaseError.toException());
             }
         });
+        Log.d(TAG, "Started listening for geofence updates");
+    }
+    
+    /**
+     * Apply one added or changed geofence child
+     */
+    private void applyGeofenceSnapshot(DataSnapshot snapshot) {
+        GeofenceDefinition geofenceDefinition;
+        try {
+            Map<String, Object> data = (Map<String, Object>) snapshot.getValue();
+            if (data == null) {
+                return;
+            }
+            geofenceDefinition = GeofenceDefinition.fromFirebase(data);
+        } catch (Exception e) {
+            Log.e(TAG, "Error parsing geofence during update", e);
+            return;
+        }
+        
+        if (!geofenceDefinition.isValid()) {
+            Log.w(TAG, "Ignoring invalid geofence " + snapshot.getKey() + ": " + geofenceDefinition.getValidationError());
+            removeGeofence(snapshot.getKey());
+            return;
+        }
+        
+        GeofenceDefinitionCache.Change change;
+        try {
+            change = geofenceCache.put(geofenceDefinition);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist geofence cache, re-registering " + geofenceDefinition.id, e);
+            change = GeofenceDefinitionCache.Change.GEOMETRY_CHANGED;
+        }
+        
+        switch (change) {
+            case UNCHANGED:
+                Log.d(TAG, "Geofence unchanged: " + geofenceDefinition.label);
+                break;
+                
+            case DETAILS_CHANGED:
+                // Label/description only: keep the platform registration as is
+                if (geofenceDefinition.active) {
+                    geofenceDefinitions.put(geofenceDefinition.id, geofenceDefinition);
+                    replaceActiveGeofence(convertToPatientGeofence(geofenceDefinition));
+                }
+                Log.d(TAG, "Geofence details updated: " + geofenceDefinition.label);
+                break;
+                
+            case ADDED:
+            case GEOMETRY_CHANGED:
+                if (geofenceDefinition.active) {
+                    geofenceDefinitions.put(geofenceDefinition.id, geofenceDefinition);
+                    PatientGeofence patientGeofence = convertToPatientGeofence(geofenceDefinition);
+                    replaceActiveGeofence(patientGeofence);
+                    
+                    // Same request id replaces the existing registration
+                    queueRegistration(patientGeofence);
+                    
+                    Log.i(TAG, "🎯 Geofence " + change + ": " + geofenceDefinition.label + " at " + 
+                          geofenceDefinition.lat + "," + geofenceDefinition.lng + " (radius: " + 
+                          geofenceDefinition.radius + "m)");
+                } else {
+                    unregisterGeofence(geofenceDefinition.id);
+                }
+                break;
+        }
+    }
+    
+    /**
+     * Forget a geofence and remove only its platform registration
+     */
+    private void removeGeofence(String geofenceId) {
+        if (geofenceId == null) {
+            return;
+        }
+        try {
+            geofenceCache.remove(geofenceId);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist geofence cache", e);
+        }
+        unregisterGeofence(geofenceId);
+    }
+    
+    private void unregisterGeofence(String geofenceId) {
+        geofenceDefinitions.remove(geofenceId);
+        PatientGeofence existing = findGeofenceById(geofenceId);
+        if (existing == null) {
+            return;
+        }
+        activeGeofences.remove(existing);
+        
+        List<String> ids = new ArrayList<>();
+        ids.add(geofenceId);
+        try {
+            geofencingClient.removeGeofences(ids)
+                    .addOnSuccessListener(aVoid -> Log.d(TAG, "Geofence removed: " + geofenceId))
+                    .addOnFailureListener(e -> Log.e(TAG, "Failed to remove geofence " + geofenceId, e));
+        } catch (Exception e) {
+            Log.e(TAG, "Error removing geofence " + geofenceId, e);
+        }
+    }
+    
+    /**
+     * Collect changed fences from one burst of child events into a single addGeofences call
+     */
+    private void queueRegistration(PatientGeofence geofence) {
+        pendingRegistrations.put(geofence.id, geofence);
+        if (pendingRegistrations.size() == 1) {
+            mainHandler.post(this::flushPendingRegistrations);
+        }
+    }
+    
+    private void flushPendingRegistrations() {
+        List<PatientGeofence> geofences = new ArrayList<>();
+        for (PatientGeofence geofence : pendingRegistrations.values()) {
+            // Skip fences removed again before the flush
+            if (findGeofenceById(geofence.id) == geofence) {
+                geofences.add(geofence);
+            }
+        }
+        pendingRegistrations.clear();
+        registerGeofences(geofences);
+    }
+    
+    private void replaceActiveGeofence(PatientGeofence geofence) {
+        PatientGeofence existing = findGeofenceById(geofence.id);
+        if (existing != null) {
+            activeGeofences.remove(existing);
+        }
+        activeGeofences.add(geofence);
     }
     
     /**
@@ -216,21 +345,6 @@ public class PatientGeofenceClient {
         return patientGeofence;
     }
     
-    /**
-     * Update active geofences when Firebase data changes
-     */
-    private void updateActiveGeofences(List<PatientGeofence> updatedGeofences) {
-        // Remove geofences that are no longer active
-        removeAllGeofences();
-        
-        // Register new geofences
-        registerGeofences(updatedGeofences);
-        
-        // Update active geofences list
-        activeGeofences.clear();
-        activeGeofences.addAll(updatedGeofences);
-    }
-    
     /**
      * Register geofences with Android GeofencingClient
      */
@@ -317,8 +431,75 @@ public class PatientGeofenceClient {
             return;
         }
         
+        telemetry.increment(LocationTelemetry.Counter.GEOFENCE_TRANSITIONS);
+        raiseGeofenceAlert(geofenceDefinition, geofence, transitionType, latitude, longitude,
+                System.currentTimeMillis(), "geofencing_api");
+    }
+    
+    /**
+     * Handle a transition detected on-device by VirtualGeofenceManager
+     * The definition comes from the caller, so this works without startGeofenceMonitoring()
+     * @param eventTime Time of the fix that crossed the boundary
+     */
+    public void handleVirtualTransition(GeofenceDefinition geofenceDefinition, int transitionType,
+                                        double latitude, double longitude, long eventTime) {
+        Log.i(TAG, "🔔 Virtual geofence transition: " + geofenceDefinition.id + " - " + getTransitionName(transitionType));
+        
+        PatientGeofence geofence = findGeofenceById(geofenceDefinition.id);
+        if (geofence == null) {
+            geofence = convertToPatientGeofence(geofenceDefinition);
+        }
+        telemetry.increment(LocationTelemetry.Counter.GEOFENCE_TRANSITIONS);
+        raiseGeofenceAlert(geofenceDefinition, geofence, transitionType, latitude, longitude, eventTime, "virtual");
+    }
+    
+    /**
+     * Early warning from GeofenceBreachPredictor: the patient is inside the safe zone but
+     * heading out of it. Raised as a medium-severity EXIT_PREDICTED alert through the same
+     * alert node and FCM path as real transitions; the real EXIT still follows if it happens.
+     */
+    public void handlePredictedExit(GeofenceDefinition geofenceDefinition, long timeToExitMs,
+                                    double latitude, double longitude) {
+        Log.i(TAG, "⏱️ Predicted exit from " + geofenceDefinition.id + " in " + timeToExitMs / 1000 + "s");
+        
+        telemetry.increment(LocationTelemetry.Counter.GEOFENCE_PREDICTIONS);
+        Map<String, Object> extras = new HashMap<>();
+        extras.put("predictedExitInSeconds", timeToExitMs / 1000);
+        writeGeofenceAlert(geofenceDefinition, TRANSITION_EXIT_PREDICTED, "medium", "predicted",
+                latitude, longitude, "prediction", extras);
+    }
+    
+    /**
+     * Save the alert to Firebase, notify caretakers and show a local notification, unless
+     * the other detection path has already raised this crossing
+     */
+    private void raiseGeofenceAlert(GeofenceDefinition geofenceDefinition, PatientGeofence geofence,
+                                    int transitionType, double latitude, double longitude,
+                                    long eventTime, String source) {
+        if (!GeofenceAlertDeduplicator.getInstance().shouldRaise(
+                patientId, geofenceDefinition.id, getTransitionName(transitionType), eventTime)) {
+            Log.d(TAG, "Geofence " + geofenceDefinition.id + " " + getTransitionName(transitionType) +
+                    " already alerted, skipping " + source + " alert");
+            return;
+        }
+        writeGeofenceAlert(geofenceDefinition, getTransitionName(transitionType),
+                determineSeverity(transitionType, geofenceDefinition.type), String.valueOf(transitionType),
+                latitude, longitude, source, null);
+        
+        // Show local notification
+        showGeofenceNotification(geofence, transitionType);
+    }
+    
+    /**
+     * Write one alert under patients/{id}/alerts and notify caretakers over FCM
+     */
+    private void writeGeofenceAlert(GeofenceDefinition geofenceDefinition, String transitionName, String severity,
+                                    String alertIdTag, double latitude, double longitude, String source,
+                                    Map<String, Object> extras) {
+        String geofenceId = geofenceDefinition.id;
+        
         // Generate unique alert ID with timestamp to prevent duplicates
-        String alertId = geofenceId + "_" + transitionType + "_" + System.currentTimeMillis();
+        String alertId = geofenceId + "_" + alertIdTag + "_" + System.currentTimeMillis();
         long timestamp = System.currentTimeMillis();
         
         // Create enhanced alert data using GeofenceDefinition
@@ -329,8 +510,8 @@ public class PatientGeofenceClient {
         alertData.put("geofenceName", geofenceDefinition.label);
         alertData.put("geofenceDescription", geofenceDefinition.description);
         alertData.put("zoneType", geofenceDefinition.type);
-        alertData.put("transitionType", getTransitionName(transitionType));
-        alertData.put("severity", determineSeverity(transitionType, geofenceDefinition.type));
+        alertData.put("transitionType", transitionName);
+        alertData.put("severity", severity);
         alertData.put("timestamp", timestamp);
         alertData.put("patientLocation", new HashMap<String, Object>() {{
             put("lat", latitude);
@@ -342,6 +523,10 @@ public class PatientGeofenceClient {
         }});
         alertData.put("processed", false);
         alertData.put("acknowledged", false);
+        alertData.put("source", source);
+        if (extras != null) {
+            alertData.putAll(extras);
+        }
         
         // Send alert to Firebase with structured ID
         DatabaseReference alertRef = databaseReference
@@ -353,19 +538,18 @@ public class PatientGeofenceClient {
         alertRef.setValue(alertData)
                 .addOnSuccessListener(aVoid -> {
                     Log.i(TAG, "✅ Enhanced geofence alert saved to Firebase: " + geofenceDefinition.label + 
-                           " - " + getTransitionName(transitionType) + 
-                           " (Severity: " + determineSeverity(transitionType, geofenceDefinition.type) + ")");
-                    
-                    // Send FCM notification to all caretakers
-                    Log.i(TAG, "📤 Sending FCM notification to caretakers...");
-                    sendFCMNotificationToCaretakers(geofenceDefinition, transitionType, alertId);
+                           " - " + transitionName + " (Severity: " + severity + ")");
+                    telemetry.increment(LocationTelemetry.Counter.GEOFENCE_ALERTS_WRITTEN);
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Failed to send geofence alert", e);
+                    telemetry.increment(LocationTelemetry.Counter.GEOFENCE_ALERT_FAILURES);
                 });
         
-        // Show local notification
-        showGeofenceNotification(geofence, transitionType);
+        // Notify caretakers in parallel with the write instead of waiting for the server ack;
+        // the payload carries the alert id so the CaretakerApp can open it once it syncs
+        Log.i(TAG, "📤 Sending FCM notification to caretakers...");
+        sendFCMNotificationToCaretakers(geofenceDefinition, transitionName, severity, alertId);
     }
     
     /**
@@ -383,7 +567,17 @@ public class PatientGeofenceClient {
      * Send FCM notification to all caretakers associated with this patient
      */
     private void sendFCMNotificationToCaretakers(GeofenceDefinition geofenceDefinition, 
-                                                int transitionType, String alertId) {
+                                                String transitionName, String severity, String alertId) {
+        // Counted per caretaker FCM accepted the alert for, not per attempt
+        FCMDispatcher.DeliveryCallback onDelivered =
+                caretakerId -> telemetry.increment(LocationTelemetry.Counter.GEOFENCE_FCM_SENT);
+        if (cachedPatientName != null) {
+            // Name already known: no database round trip before the send
+            fcmNotificationSender.sendGeofenceAlert(patientId, cachedPatientName, geofenceDefinition.id,
+                    geofenceDefinition.label, transitionName, severity, alertId, onDelivered);
+            return;
+        }
+        
         try {
             // Get patient name from Firebase or use default
             databaseReference.child("patients").child(patientId).child("name")
@@ -393,22 +587,24 @@ public class PatientGeofenceClient {
                             String patientName = dataSnapshot.getValue(String.class);
                             if (patientName == null) {
                                 patientName = "Patient"; // Default name
+                            } else {
+                                cachedPatientName = patientName;
                             }
                             
-                            String severity = determineSeverity(transitionType, geofenceDefinition.type);
-                            
                             // Send FCM notification
                             fcmNotificationSender.sendGeofenceAlert(
                                 patientId,
                                 patientName,
+                                geofenceDefinition.id,
                                 geofenceDefinition.label,
-                                getTransitionName(transitionType),
+                                transitionName,
                                 severity,
-                                alertId
+                                alertId,
+                                onDelivered
                             );
                             
                             Log.d(TAG, "FCM notification sent to caretakers: " + 
-                                  patientName + " - " + getTransitionName(transitionType) + 
+                                  patientName + " - " + transitionName + 
                                   " " + geofenceDefinition.label);
                         }
                         
@@ -417,14 +613,15 @@ public class PatientGeofenceClient {
                             Log.w(TAG, "Failed to get patient name, using default", databaseError.toException());
                             
                             // Send with default patient name
-                            String severity = determineSeverity(transitionType, geofenceDefinition.type);
                             fcmNotificationSender.sendGeofenceAlert(
                                 patientId,
                                 "Patient",
+                                geofenceDefinition.id,
                                 geofenceDefinition.label,
-                                getTransitionName(transitionType),
+                                transitionName,
                                 severity,
-                                alertId
+                                alertId,
+                                onDelivered
                             );
                         }
                     });
@@ -0,0 +1,271 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Motion-aware sampling policy for PatientLocationService
+ *
+ * Looks at a short window of recent fixes and classifies the patient as:
+ * - STATIONARY_KNOWN_PLACE: not moving and inside a configured safe zone (widest interval)
+ * - STATIONARY: not moving somewhere else
+ * - MOVING: walking or travelling (base interval)
+ * - NEAR_BOUNDARY: close to the edge of a configured geofence (tightest interval)
+ * - WALKING_NEAR_BOUNDARY: moving inside a safe zone whose edge a walker could reach before
+ *   the next fix at the base interval (walking rate, so GeofenceBreachPredictor has a track
+ *   to fit before the patient is out)
+ *
+ * Movement is judged from the net speed across the window and the spread (standard
+ * deviation) of the fixes around their centroid, so GPS jitter while sitting at home
+ * does not count as movement, even at the walking rate.
+ */
+public class AdaptiveSamplingPolicy {
+    
+    public enum State {
+        STATIONARY_KNOWN_PLACE,
+        STATIONARY,
+        MOVING,
+        NEAR_BOUNDARY,
+        WALKING_NEAR_BOUNDARY
+    }
+    
+    // Window of fixes used for classification; the age limit stretches to two of the
+    // current intervals so a widened interval still leaves a previous fix to compare with
+    private static final int WINDOW_SIZE = 12;
+    private static final long WINDOW_MAX_AGE_MS = 10 * 60 * 1000;
+    
+    // Below this average speed and spread the patient is considered stationary
+    private static final double STATIONARY_SPEED_MPS = 0.3;
+    private static final double STATIONARY_SPREAD_METERS = 20.0;
+    
+    // Band around a fence edge that counts as "near the boundary"
+    private static final double BOUNDARY_BAND_MIN_METERS = 30.0;
+    private static final double BOUNDARY_BAND_RADIUS_FRACTION = 0.25;
+    
+    // Interval multipliers relative to the base interval
+    private static final long STATIONARY_KNOWN_PLACE_MULTIPLIER = 4;
+    private static final long STATIONARY_MULTIPLIER = 2;
+    private static final long NEAR_BOUNDARY_DIVISOR = 4;
+    
+    // Never sample slower than this, even when parked at home
+    private static final long MAX_INTERVAL_MS = 20 * 60 * 1000;
+    // Never sample faster than this near a boundary
+    private static final long MIN_INTERVAL_MS = 10 * 1000;
+    
+    // Walking rate; the breach predictor needs several fixes within its 60 s window
+    static final long WALKING_INTERVAL_MS = 5 * 1000;
+    // Assumed when judging whether a safe-zone edge is in reach, since speed measured across
+    // a widened interval understates a patient who has just set off
+    private static final double WALKING_SPEED_MPS = 1.2;
+    
+    private final long baseIntervalMs;
+    private final float baseDisplacementMeters;
+    private final ArrayDeque<double[]> window = new ArrayDeque<>(); // {lat, lng, timestamp}
+    private List<GeofenceDefinition> geofences = Collections.emptyList();
+    
+    private State state = State.MOVING;
+    private double recentSpeedMps;
+    private double spreadMeters;
+    private double boundaryDistanceMeters = Double.NaN;
+    
+    public AdaptiveSamplingPolicy(long baseIntervalMs, float baseDisplacementMeters) {
+        this.baseIntervalMs = baseIntervalMs;
+        this.baseDisplacementMeters = baseDisplacementMeters;
+    }
+    
+    /**
+     * Replace the geofences used for known-place and boundary checks
+     */
+    public synchronized void setGeofences(Collection<GeofenceDefinition> definitions) {
+        List<GeofenceDefinition> active = new ArrayList<>();
+        if (definitions != null) {
+            for (GeofenceDefinition definition : definitions) {
+                if (definition != null && definition.active) {
+                    active.add(definition);
+                }
+            }
+        }
+        this.geofences = active;
+    }
+    
+    /**
+     * Feed a new fix
+     * @return True if the classification changed and the location request should be rebuilt
+     */
+    public synchronized boolean onFix(double latitude, double longitude, long timestampMs) {
+        window.addLast(new double[]{latitude, longitude, timestampMs});
+        while (window.size() > WINDOW_SIZE) {
+            window.removeFirst();
+        }
+        long maxAgeMs = Math.max(WINDOW_MAX_AGE_MS, 2 * getIntervalMs());
+        while (window.size() > 1 && timestampMs - (long) window.peekFirst()[2] > maxAgeMs) {
+            window.removeFirst();
+        }
+        
+        updateMotionStats();
+        State previous = state;
+        state = classify(latitude, longitude);
+        return state != previous;
+    }
+    
+    private void updateMotionStats() {
+        if (window.size() < 2) {
+            recentSpeedMps = 0;
+            spreadMeters = 0;
+            return;
+        }
+        
+        double sumLat = 0;
+        double sumLng = 0;
+        for (double[] fix : window) {
+            sumLat += fix[0];
+            sumLng += fix[1];
+        }
+        
+        // First to last rather than along the path: a few meters of jitter every 5 s
+        // would otherwise add up to walking pace
+        double[] first = window.peekFirst();
+        double[] last = window.peekLast();
+        double seconds = (last[2] - first[2]) / 1000.0;
+        recentSpeedMps = seconds > 0 ? GeoUtils.distanceMeters(first[0], first[1], last[0], last[1]) / seconds : 0;
+        
+        double centroidLat = sumLat / window.size();
+        double centroidLng = sumLng / window.size();
+        double sumSquares = 0;
+        for (double[] fix : window) {
+            double d = GeoUtils.distanceMeters(centroidLat, centroidLng, fix[0], fix[1]);
+            sumSquares += d * d;
+        }
+        spreadMeters = Math.sqrt(sumSquares / window.size());
+    }
+    
+    private State classify(double latitude, double longitude) {
+        boolean insideSafeZone = false;
+        double safeZoneDepth = Double.NaN;
+        double closestEdge = Double.NaN;
+        boolean nearBoundary = false;
+        
+        for (GeofenceDefinition fence : geofences) {
+            double toCenter = GeoUtils.distanceMeters(latitude, longitude, fence.lat, fence.lng);
+            double toEdge = Math.abs(toCenter - fence.radius);
+            double band = Math.max(BOUNDARY_BAND_MIN_METERS, fence.radius * BOUNDARY_BAND_RADIUS_FRACTION);
+            
+            if (Double.isNaN(closestEdge) || toEdge < closestEdge) {
+                closestEdge = toEdge;
+            }
+            if (toEdge <= band) {
+                nearBoundary = true;
+            }
+            if (toCenter < fence.radius && GeofenceDefinition.TYPE_SAFE_ZONE.equals(fence.type)) {
+                insideSafeZone = true;
+                if (Double.isNaN(safeZoneDepth) || toEdge < safeZoneDepth) {
+                    safeZoneDepth = toEdge;
+                }
+            }
+        }
+        boundaryDistanceMeters = closestEdge;
+        
+        // Need at least two fixes before calling anything stationary
+        boolean stationary = window.size() >= 2
+                && recentSpeedMps < STATIONARY_SPEED_MPS
+                && spreadMeters < STATIONARY_SPREAD_METERS;
+        
+        // On the move with a safe-zone edge closer than a walker covers in one base interval
+        double reachMeters = Math.max(recentSpeedMps, WALKING_SPEED_MPS) * baseIntervalMs / 1000.0;
+        if (!stationary && window.size() >= 2 && insideSafeZone && safeZoneDepth <= reachMeters) {
+            return State.WALKING_NEAR_BOUNDARY;
+        }
+        if (nearBoundary) {
+            return State.NEAR_BOUNDARY;
+        }
+        if (!stationary) {
+            return State.MOVING;
+        }
+        return insideSafeZone ? State.STATIONARY_KNOWN_PLACE : State.STATIONARY;
+    }
+    
+    /**
+     * Location request interval for the current state
+     */
+    public synchronized long getIntervalMs() {
+        switch (state) {
+            case STATIONARY_KNOWN_PLACE:
+                return Math.min(baseIntervalMs * STATIONARY_KNOWN_PLACE_MULTIPLIER, Math.max(baseIntervalMs, MAX_INTERVAL_MS));
+            case STATIONARY:
+                return Math.min(baseIntervalMs * STATIONARY_MULTIPLIER, Math.max(baseIntervalMs, MAX_INTERVAL_MS));
+            case NEAR_BOUNDARY:
+                return nearBoundaryIntervalMs();
+            case WALKING_NEAR_BOUNDARY:
+                return Math.min(baseIntervalMs, WALKING_INTERVAL_MS);
+            case MOVING:
+            default:
+                return baseIntervalMs;
+        }
+    }
+    
+    /**
+     * Minimum time between uploads for the current state
+     * Walking-rate fixes are for the on-device predictor; they are uploaded no more often
+     * than near a boundary.
+     */
+    public synchronized long getUploadIntervalMs() {
+        return state == State.WALKING_NEAR_BOUNDARY ? nearBoundaryIntervalMs() : getIntervalMs();
+    }
+    
+    private long nearBoundaryIntervalMs() {
+        return Math.max(baseIntervalMs / NEAR_BOUNDARY_DIVISOR, Math.min(baseIntervalMs, MIN_INTERVAL_MS));
+    }
+    
+    /**
+     * Minimum displacement for the current state
+     */
+    public synchronized float getMinDisplacementMeters() {
+        switch (state) {
+            case STATIONARY_KNOWN_PLACE:
+            case STATIONARY:
+                return baseDisplacementMeters * 2;
+            case NEAR_BOUNDARY:
+                return baseDisplacementMeters / 2;
+            case WALKING_NEAR_BOUNDARY:
+                // Time-driven, so slow walkers still get an even cadence
+                return 0;
+            case MOVING:
+            default:
+                return baseDisplacementMeters;
+        }
+    }
+    
+    public synchronized State getState() {
+        return state;
+    }
+    
+    public synchronized double getRecentSpeedMps() {
+        return recentSpeedMps;
+    }
+    
+    public synchronized double getSpreadMeters() {
+        return spreadMeters;
+    }
+    
+    /**
+     * Distance to the nearest geofence edge, or NaN when no geofences are configured
+     */
+    public synchronized double getBoundaryDistanceMeters() {
+        return boundaryDistanceMeters;
+    }
+    
+    /**
+     * One-line summary for logs and diagnostics screens
+     */
+    public synchronized String describe() {
+        return String.format(Locale.US, "%s interval=%dms displacement=%.0fm speed=%.2fm/s spread=%.0fm edge=%s",
+                state, getIntervalMs(), getMinDisplacementMeters(), recentSpeedMps, spreadMeters,
+                Double.isNaN(boundaryDistanceMeters) ? "n/a" : String.format(Locale.US, "%.0fm", boundaryDistanceMeters));
+    }
+}
@@ -0,0 +1,167 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import com.mihir.alzheimerscaregiver.entities.LocationEntity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps each patient's entry in the caretaker's geohash index on their latest upload
+ *
+ * Latest position of every patient, grouped under their caretaker and keyed for prefix queries:
+ * caretakerLocationIndex/{caretakerId}/{patientId} = {g, latitude, longitude, timestamp}
+ * "g" is a geohash, so a radius query only has to read the few cells that cover the circle.
+ *
+ * All LocationUploader instances share one of these, so there is one listener on
+ * patientCaretakerLinks/{patientId} per patient whichever uploader changes the link. The entry
+ * goes out in its own update after the location batch; if it fails, the next upload writes it
+ * again. When the link moves, the entry is deleted under the old caretaker and written under
+ * the new one.
+ */
+public class CaretakerLocationIndex {
+
+    public static final String LOCATION_INDEX_PATH = "caretakerLocationIndex";
+    // About 1.2 m x 0.6 m; queries use shorter prefixes of the same string
+    public static final int LOCATION_INDEX_PRECISION = 10;
+
+    /**
+     * The parts of the Realtime Database the index needs
+     */
+    public interface Database {
+        /**
+         * Deliver the patient's caretaker to index.onLinkChanged now and on every change
+         */
+        void watchLink(String patientId, CaretakerLocationIndex index);
+
+        /**
+         * Apply a multi-path update; a failure is only logged
+         */
+        void update(Map<String, Object> updates);
+    }
+
+    private static final class Link {
+        // null until the first link value arrives, or while the patient is unlinked
+        String caretakerId;
+        // Newest uploaded fix, null once sharing stopped
+        LocationEntity latest;
+    }
+
+    private final Database database;
+    private final Map<String, Link> links = new HashMap<>();
+
+    public CaretakerLocationIndex(Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Point the patient's entry at a fix that has just been written to /locations
+     */
+    public void onUpload(String patientId, LocationEntity latest) {
+        Map<String, Object> updates = new HashMap<>();
+        boolean firstUse;
+        synchronized (this) {
+            firstUse = !links.containsKey(patientId);
+            Link link = getLink(patientId);
+            if (link.latest == null || latest.timestamp >= link.latest.timestamp) {
+                link.latest = latest;
+                // Without a caretaker yet, the entry is written when the link arrives
+                if (link.caretakerId != null) {
+                    updates.put(entryPath(link.caretakerId, patientId), buildIndexEntry(latest));
+                }
+            }
+            apply(updates);
+        }
+        // Outside the lock: the listener may deliver the current link straight away
+        if (firstUse) {
+            database.watchLink(patientId, this);
+        }
+    }
+
+    /**
+     * Drop the patient's entry so nearby queries stop finding them
+     */
+    public void onLocationCleared(String patientId) {
+        Map<String, Object> updates = new HashMap<>();
+        boolean firstUse;
+        synchronized (this) {
+            // A patient not seen yet may still have an entry from before a restart; the
+            // first link value deletes it
+            firstUse = !links.containsKey(patientId);
+            Link link = getLink(patientId);
+            link.latest = null;
+            if (link.caretakerId != null) {
+                updates.put(entryPath(link.caretakerId, patientId), null);
+            }
+            apply(updates);
+        }
+        if (firstUse) {
+            database.watchLink(patientId, this);
+        }
+    }
+
+    /**
+     * New value of patientCaretakerLinks/{patientId}, null if the link was removed
+     */
+    public void onLinkChanged(String patientId, String caretakerId) {
+        Map<String, Object> updates = new HashMap<>();
+        synchronized (this) {
+            Link link = links.get(patientId);
+            if (link == null || equal(link.caretakerId, caretakerId)) {
+                return;
+            }
+            if (link.caretakerId != null) {
+                updates.put(entryPath(link.caretakerId, patientId), null);
+            }
+            link.caretakerId = caretakerId;
+            if (caretakerId != null) {
+                updates.put(entryPath(caretakerId, patientId),
+                        link.latest != null ? buildIndexEntry(link.latest) : null);
+            }
+            apply(updates);
+        }
+    }
+
+    /**
+     * Caretaker whose index holds the patient, null if not known yet
+     */
+    public synchronized String getCaretakerId(String patientId) {
+        Link link = links.get(patientId);
+        return link != null ? link.caretakerId : null;
+    }
+
+    private Link getLink(String patientId) {
+        Link link = links.get(patientId);
+        if (link == null) {
+            link = new Link();
+            links.put(patientId, link);
+        }
+        return link;
+    }
+
+    // Issued under the lock so writes for one patient reach the database in order
+    private void apply(Map<String, Object> updates) {
+        if (!updates.isEmpty()) {
+            database.update(updates);
+        }
+    }
+
+    static String entryPath(String caretakerId, String patientId) {
+        return LOCATION_INDEX_PATH + "/" + caretakerId + "/" + patientId;
+    }
+
+    /**
+     * Value stored in the caretaker's geohash index for a patient's latest position
+     */
+    static Map<String, Object> buildIndexEntry(LocationEntity entity) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("g", Geohash.encode(entity.latitude, entity.longitude, LOCATION_INDEX_PRECISION));
+        entry.put("latitude", entity.latitude);
+        entry.put("longitude", entity.longitude);
+        entry.put("timestamp", entity.timestamp);
+        return entry;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
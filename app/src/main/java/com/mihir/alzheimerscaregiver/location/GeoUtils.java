@@ -0,0 +1,55 @@
+package com.mihir.alzheimerscaregiver.location;
+
+/**
+ * Plain-Java geodesy helpers for the location pipeline
+ */
+public final class GeoUtils {
+    
+    // Prevent instantiation
+    private GeoUtils() {}
+    
+    /**
+     * Mean Earth radius in meters (same value android.location uses for short distances)
+     */
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+    
+    /**
+     * Great-circle distance between two coordinates using the haversine formula
+     * @return Distance in meters
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+    
+    /**
+     * Initial bearing from the first coordinate to the second
+     * @return Bearing in degrees clockwise from north, 0..360
+     */
+    public static double bearingDegrees(double lat1, double lng1, double lat2, double lng2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double y = Math.sin(dLng) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLng);
+        return (Math.toDegrees(Math.atan2(y, x)) + 360.0) % 360.0;
+    }
+    
+    /**
+     * Meters per degree of latitude (constant on a sphere)
+     */
+    public static double metersPerDegreeLat() {
+        return Math.toRadians(1) * EARTH_RADIUS_METERS;
+    }
+    
+    /**
+     * Meters per degree of longitude at the given latitude
+     */
+    public static double metersPerDegreeLng(double latitude) {
+        return metersPerDegreeLat() * Math.cos(Math.toRadians(latitude));
+    }
+}
@@ -0,0 +1,329 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Early warning for safe-zone exits, fed by PatientLocationService with every fix
+ *
+ * Play Services (and VirtualGeofenceManager's hysteresis) only report EXIT once the
+ * patient is already outside. This predictor fits a constant-velocity line to the last
+ * WINDOW_MS of fixes (least squares, so per-fix jitter averages out) and, for every
+ * active SAFE_ZONE fence the patient is inside, solves for the time until that line
+ * crosses the fence edge. A warning is raised when, for MIN_APPROACH_MS, the patient has
+ * been clearly walking away from the center, the time-to-exit has stayed below the
+ * threshold and the edge has been within MAX_WARNING_DEPTH_METERS.
+ *
+ * The depth limit keeps trips to the gate from raising warnings: further inside, walking
+ * up to a gate and stopping there looks exactly like leaving. Lead time is traded for that.
+ *
+ * Each fence warns at most once until the patient is back well inside it and has not
+ * headed for the edge for REARM_COOLDOWN_MS, so pacing near the edge does not repeat
+ * the alert.
+ *
+ * The window needs fixes every few seconds. AdaptiveSamplingPolicy switches to its walking
+ * rate once a fix shows the patient moving within reach of a safe-zone edge; a walk that
+ * starts and ends between two widened fixes is only reported by the regular EXIT.
+ */
+public class GeofenceBreachPredictor {
+
+    /**
+     * An exit predicted for one fence on one fix
+     */
+    public static class Prediction {
+        public final GeofenceDefinition geofence;
+        public final long timeToExitMs;
+        public final double distanceToEdgeMeters;
+        public final double speedMetersPerSecond;
+        public final double bearingDegrees;
+        public final double latitude;
+        public final double longitude;
+        public final long timestamp;
+
+        Prediction(GeofenceDefinition geofence, long timeToExitMs, double distanceToEdgeMeters,
+                   double speedMetersPerSecond, double bearingDegrees,
+                   double latitude, double longitude, long timestamp) {
+            this.geofence = geofence;
+            this.timeToExitMs = timeToExitMs;
+            this.distanceToEdgeMeters = distanceToEdgeMeters;
+            this.speedMetersPerSecond = speedMetersPerSecond;
+            this.bearingDegrees = bearingDegrees;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public String toString() {
+            return "EXIT_PREDICTED " + geofence.id + " @" + timestamp + " in " + timeToExitMs / 1000 + "s (" +
+                    Math.round(distanceToEdgeMeters) + "m to edge at " +
+                    String.format(java.util.Locale.US, "%.1f", speedMetersPerSecond) + "m/s)";
+        }
+    }
+
+    public interface PredictionListener {
+        void onBreachPredicted(Prediction prediction);
+    }
+
+    /**
+     * Default time-to-exit below which a warning is raised
+     */
+    public static final long DEFAULT_WARNING_THRESHOLD_MS = 60 * 1000;
+
+    // Velocity is fitted over this much recent track, about a dozen fixes at the walking rate
+    static final long WINDOW_MS = 60 * 1000;
+    private static final int MAX_WINDOW_FIXES = 30;
+    private static final int MIN_WINDOW_FIXES = 3;
+    private static final long MIN_WINDOW_SPAN_MS = 15 * 1000;
+
+    // Fixes this inaccurate make the heading meaningless
+    private static final float MAX_FIX_ACCURACY_METERS = 40.0f;
+
+    // Slower than this is standing or shuffling around the room
+    private static final double MIN_SPEED_MPS = 0.4;
+    // Share of the position variance explained by straight-line motion; pacing and circling score low
+    private static final double MIN_MOTION_FIT = 0.6;
+    // How long the approach must be sustained before warning, so one lunge toward the edge is not enough
+    private static final long MIN_APPROACH_MS = 5 * 1000;
+    // Only warn this close to the edge; see the class comment
+    private static final double MAX_WARNING_DEPTH_METERS = 15.0;
+
+    // Re-arm once back this far inside the fence and no approach has been seen for the cooldown
+    private static final double REARM_DEPTH_METERS = 25.0;
+    private static final long REARM_COOLDOWN_MS = 2 * 60 * 1000;
+
+    private static class FenceEntry {
+        final GeofenceDefinition definition;
+        boolean armed = true;
+        // First fix of the current approach within warning depth, -1 when there is none
+        long approachStart = -1;
+        long lastApproachTime;
+
+        FenceEntry(GeofenceDefinition definition) {
+            this.definition = definition;
+        }
+    }
+
+    private final long warningThresholdMs;
+    private final PredictionListener listener;
+
+    private final Map<String, FenceEntry> fences = new LinkedHashMap<>();
+    private final ArrayDeque<double[]> window = new ArrayDeque<>(); // {lat, lng, timestamp}
+
+    public GeofenceBreachPredictor(PredictionListener listener) {
+        this(DEFAULT_WARNING_THRESHOLD_MS, listener);
+    }
+
+    public GeofenceBreachPredictor(long warningThresholdMs, PredictionListener listener) {
+        this.warningThresholdMs = warningThresholdMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Replace the monitored fences; only active safe zones are considered
+     * Arming state is kept for fences whose id is unchanged.
+     */
+    public synchronized void setGeofences(Collection<GeofenceDefinition> definitions) {
+        Map<String, FenceEntry> previous = new HashMap<>(fences);
+        fences.clear();
+        if (definitions == null) {
+            return;
+        }
+
+        for (GeofenceDefinition definition : definitions) {
+            if (definition == null || definition.id == null || !definition.active || definition.radius <= 0
+                    || (definition.type != null && !GeofenceDefinition.TYPE_SAFE_ZONE.equals(definition.type))) {
+                continue;
+            }
+            FenceEntry entry = new FenceEntry(definition);
+            FenceEntry old = previous.get(definition.id);
+            if (old != null) {
+                entry.armed = old.armed;
+                entry.approachStart = old.approachStart;
+                entry.lastApproachTime = old.lastApproachTime;
+            }
+            fences.put(definition.id, entry);
+        }
+    }
+
+    /**
+     * Add a fix and check every safe zone for an imminent exit
+     *
+     * @return Warnings raised by this fix (also delivered to the listener)
+     */
+    public synchronized List<Prediction> onFix(double latitude, double longitude, float accuracy, long timestamp) {
+        if (accuracy > MAX_FIX_ACCURACY_METERS) {
+            return Collections.emptyList();
+        }
+        if (!window.isEmpty() && timestamp <= window.peekLast()[2]) {
+            return Collections.emptyList();
+        }
+
+        window.addLast(new double[] {latitude, longitude, timestamp});
+        while (window.size() > MAX_WINDOW_FIXES || timestamp - window.peekFirst()[2] > WINDOW_MS) {
+            window.removeFirst();
+        }
+        if (fences.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Motion motion = fitMotion(latitude, longitude, timestamp);
+        List<Prediction> predictions = null;
+
+        for (FenceEntry entry : fences.values()) {
+            GeofenceDefinition fence = entry.definition;
+            // Fence center relative to the fitted current position, in meters
+            double cx = (fence.lng - longitude) * GeoUtils.metersPerDegreeLng(latitude) - motion.x;
+            double cy = (fence.lat - latitude) * GeoUtils.metersPerDegreeLat() - motion.y;
+            double distanceFromCenter = Math.hypot(cx, cy);
+            double depth = fence.radius - distanceFromCenter;
+
+            // Walking along the edge or back toward the center is not heading out
+            double outwardSpeed = distanceFromCenter > 0
+                    ? -(cx * motion.vx + cy * motion.vy) / distanceFromCenter : motion.speed();
+            long timeToExitMs = depth > 0 && motion.valid && outwardSpeed >= MIN_SPEED_MPS
+                    ? timeToExitMs(-cx, -cy, motion.vx, motion.vy, fence.radius) : Long.MAX_VALUE;
+            boolean approaching = timeToExitMs <= warningThresholdMs;
+
+            if (!entry.armed) {
+                if (approaching) {
+                    // Each new approach restarts the cooldown
+                    entry.lastApproachTime = timestamp;
+                } else if (depth >= REARM_DEPTH_METERS && timestamp - entry.lastApproachTime >= REARM_COOLDOWN_MS) {
+                    entry.armed = true;
+                }
+                continue;
+            }
+
+            // The fitted line runs on past a patient who has just stopped, so the fix itself
+            // has to be near the edge too
+            double fixDepth = fence.radius - Math.hypot(cx + motion.x, cy + motion.y);
+            if (!approaching || Math.max(depth, fixDepth) > MAX_WARNING_DEPTH_METERS) {
+                entry.approachStart = -1;
+                continue;
+            }
+            if (entry.approachStart < 0) {
+                entry.approachStart = timestamp;
+            }
+            if (timestamp - entry.approachStart >= MIN_APPROACH_MS) {
+                entry.armed = false;
+                entry.approachStart = -1;
+                entry.lastApproachTime = timestamp;
+                double bearing = (Math.toDegrees(Math.atan2(motion.vx, motion.vy)) + 360.0) % 360.0;
+                Prediction prediction = new Prediction(fence, timeToExitMs, depth, motion.speed(), bearing,
+                        latitude, longitude, timestamp);
+                if (predictions == null) {
+                    predictions = new ArrayList<>(1);
+                }
+                predictions.add(prediction);
+            }
+        }
+
+        if (predictions == null) {
+            return Collections.emptyList();
+        }
+        if (listener != null) {
+            for (Prediction prediction : predictions) {
+                listener.onBreachPredicted(prediction);
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * Time until a point moving from (px, py) with velocity (vx, vy) leaves a circle of
+     * the given radius around the origin; the point must start inside
+     */
+    static long timeToExitMs(double px, double py, double vx, double vy, double radius) {
+        double a = vx * vx + vy * vy;
+        if (a == 0) {
+            return Long.MAX_VALUE;
+        }
+        double b = 2 * (px * vx + py * vy);
+        double c = px * px + py * py - radius * radius;
+        double seconds = (-b + Math.sqrt(b * b - 4 * a * c)) / (2 * a);
+        return Math.round(seconds * 1000);
+    }
+
+    /**
+     * Least-squares constant-velocity fit over the window, in meters relative to the newest fix
+     */
+    private static class Motion {
+        boolean valid;
+        // Fitted position at the newest timestamp
+        double x;
+        double y;
+        double vx;
+        double vy;
+
+        double speed() {
+            return Math.hypot(vx, vy);
+        }
+    }
+
+    private Motion fitMotion(double latitude, double longitude, long timestamp) {
+        Motion motion = new Motion();
+        int n = window.size();
+        if (n < MIN_WINDOW_FIXES || timestamp - window.peekFirst()[2] < MIN_WINDOW_SPAN_MS) {
+            return motion;
+        }
+
+        double metersPerLat = GeoUtils.metersPerDegreeLat();
+        double metersPerLng = GeoUtils.metersPerDegreeLng(latitude);
+        double sumT = 0, sumX = 0, sumY = 0;
+        for (double[] fix : window) {
+            sumT += (fix[2] - timestamp) / 1000.0;
+            sumX += (fix[1] - longitude) * metersPerLng;
+            sumY += (fix[0] - latitude) * metersPerLat;
+        }
+        double meanT = sumT / n;
+        double meanX = sumX / n;
+        double meanY = sumY / n;
+
+        double varT = 0, covTX = 0, covTY = 0, varX = 0, varY = 0;
+        for (double[] fix : window) {
+            double t = (fix[2] - timestamp) / 1000.0 - meanT;
+            double x = (fix[1] - longitude) * metersPerLng - meanX;
+            double y = (fix[0] - latitude) * metersPerLat - meanY;
+            varT += t * t;
+            covTX += t * x;
+            covTY += t * y;
+            varX += x * x;
+            varY += y * y;
+        }
+        if (varT == 0) {
+            return motion;
+        }
+
+        motion.vx = covTX / varT;
+        motion.vy = covTY / varT;
+        // Evaluate the fitted line at the newest fix (t = 0)
+        motion.x = meanX - motion.vx * meanT;
+        motion.y = meanY - motion.vy * meanT;
+
+        double explained = (motion.vx * motion.vx + motion.vy * motion.vy) * varT;
+        double total = varX + varY;
+        double fit = total > 0 ? explained / total : 0;
+        motion.valid = motion.speed() >= MIN_SPEED_MPS && fit >= MIN_MOTION_FIT;
+        return motion;
+    }
+
+    /**
+     * Forget the recent track, e.g. after tracking was paused
+     */
+    public synchronized void reset() {
+        window.clear();
+    }
+
+    public synchronized long getWarningThresholdMs() {
+        return warningThresholdMs;
+    }
+}
@@ -202,6 +202,27 @@ public final class LocationConfig {
      */
     public static final float TEST_DISPLACEMENT_METERS = 5.0f;
     
+    // ============================================================================
+    // TELEMETRY
+    // ============================================================================
+    
+    /**
+     * How often PatientLocationService appends a LocationTelemetry snapshot to the local log (15 minutes)
+     */
+    public static final long TELEMETRY_DUMP_INTERVAL_MS = 15 * 60 * 1000;
+    
+    /**
+     * Size at which the telemetry log rolls over, and how many files are kept (about a week at 15 minutes)
+     */
+    public static final long TELEMETRY_FILE_MAX_BYTES = 256 * 1024;
+    public static final int TELEMETRY_FILE_COUNT = 3;
+    
+    /**
+     * Telemetry log location under the app's files directory
+     */
+    public static final String TELEMETRY_LOG_DIR = "telemetry";
+    public static final String TELEMETRY_LOG_NAME = "location_telemetry";
+    
     // ============================================================================
     // HELPER METHODS
     // ============================================================================
@@ -0,0 +1,230 @@
+package com.mihir.alzheimerscaregiver.location;
+
+/**
+ * Quality filter between the FusedLocationProvider callback and everything downstream
+ * (adaptive sampling, virtual geofences, breach prediction and upload)
+ *
+ * Each fix goes through three stages:
+ * - Accuracy gate: fixes reporting worse than LocationConfig.MAX_ACCURACY_METERS are dropped
+ * - Speed plausibility: a fix that would need an impossible speed from the last accepted one,
+ *   even after allowing for both fixes' accuracy, is treated as an outlier (multipath, a
+ *   stale Wi-Fi position). Several outliers in a row are taken as a real relocation instead.
+ * - Kalman smoother: a constant-velocity filter per axis (east/north, in meters around the
+ *   first fix), so jitter is averaged out while standing still without lagging behind a
+ *   patient who is walking or driving
+ */
+public class LocationFixFilter {
+
+    public enum Rejection {
+        INACCURATE,
+        OUT_OF_ORDER,
+        IMPLAUSIBLE_SPEED
+    }
+
+    /**
+     * A fix that passed the filter, with the smoothed position and its estimated accuracy
+     */
+    public static class FilteredFix {
+        public final double latitude;
+        public final double longitude;
+        public final float accuracy;
+        public final long timestamp;
+        public final double rawLatitude;
+        public final double rawLongitude;
+
+        FilteredFix(double latitude, double longitude, float accuracy, long timestamp,
+                    double rawLatitude, double rawLongitude) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+            this.timestamp = timestamp;
+            this.rawLatitude = rawLatitude;
+            this.rawLongitude = rawLongitude;
+        }
+    }
+
+    // Faster than a car on a highway; anything above this between fixes is an outlier
+    static final double MAX_PLAUSIBLE_SPEED_MPS = 55.0;
+    // After this many outliers in a row the patient has really moved; start over there
+    private static final int MAX_CONSECUTIVE_OUTLIERS = 3;
+
+    // How quickly the velocity is allowed to change (m/s^2); low enough to average out jitter while
+    // standing still, high enough to follow a patient who stops or turns within a few fixes
+    private static final double ACCELERATION_NOISE = 0.1;
+    // Velocity uncertainty when the smoother (re)starts
+    private static final double INITIAL_SPEED_STD_MPS = 5.0;
+    // The smoother restarts after this long without fixes
+    private static final long RESET_GAP_MS = 10 * 60 * 1000;
+    // Floor on the reported accuracy, GPS never really gets better than this
+    private static final float MIN_ACCURACY_METERS = 1.0f;
+
+    private final float maxAccuracyMeters;
+
+    // Smoother state, in meters east/north of the origin
+    private boolean initialized;
+    private double originLatitude;
+    private double originLongitude;
+    private double metersPerLat;
+    private double metersPerLng;
+    private final Axis east = new Axis();
+    private final Axis north = new Axis();
+    private long lastTimestamp;
+
+    // Last accepted raw fix, for the plausibility check
+    private double lastRawLatitude;
+    private double lastRawLongitude;
+    private float lastRawAccuracy;
+    private int consecutiveOutliers;
+
+    private Rejection lastRejection;
+    private int acceptedCount;
+    private final int[] rejectedCounts = new int[Rejection.values().length];
+
+    public LocationFixFilter() {
+        this(LocationConfig.MAX_ACCURACY_METERS);
+    }
+
+    public LocationFixFilter(float maxAccuracyMeters) {
+        this.maxAccuracyMeters = maxAccuracyMeters;
+    }
+
+    /**
+     * Run one fix through the filter
+     *
+     * @return The smoothed fix, or null when it was rejected (see getLastRejection())
+     */
+    public synchronized FilteredFix onFix(double rawLatitude, double rawLongitude, float accuracy, long timestamp) {
+        if (accuracy <= 0 || accuracy > maxAccuracyMeters) {
+            return reject(Rejection.INACCURATE);
+        }
+        if (initialized && timestamp <= lastTimestamp) {
+            return reject(Rejection.OUT_OF_ORDER);
+        }
+
+        accuracy = Math.max(accuracy, MIN_ACCURACY_METERS);
+        if (!initialized || timestamp - lastTimestamp > RESET_GAP_MS) {
+            start(rawLatitude, rawLongitude, accuracy, timestamp);
+            return accept(rawLatitude, rawLongitude);
+        }
+
+        double seconds = (timestamp - lastTimestamp) / 1000.0;
+        double jump = GeoUtils.distanceMeters(lastRawLatitude, lastRawLongitude, rawLatitude, rawLongitude);
+        // The part of the jump that the two fixes' accuracy cannot explain
+        double unexplained = Math.max(0, jump - lastRawAccuracy - accuracy);
+        if (unexplained / seconds > MAX_PLAUSIBLE_SPEED_MPS) {
+            if (++consecutiveOutliers < MAX_CONSECUTIVE_OUTLIERS) {
+                return reject(Rejection.IMPLAUSIBLE_SPEED);
+            }
+            // Consistently somewhere else: trust the new position
+            start(rawLatitude, rawLongitude, accuracy, timestamp);
+            return accept(rawLatitude, rawLongitude);
+        }
+        consecutiveOutliers = 0;
+
+        double measurementVariance = (double) accuracy * accuracy;
+        east.update((rawLongitude - originLongitude) * metersPerLng, seconds, measurementVariance);
+        north.update((rawLatitude - originLatitude) * metersPerLat, seconds, measurementVariance);
+
+        lastTimestamp = timestamp;
+        lastRawLatitude = rawLatitude;
+        lastRawLongitude = rawLongitude;
+        lastRawAccuracy = accuracy;
+        return accept(rawLatitude, rawLongitude);
+    }
+
+    private void start(double rawLatitude, double rawLongitude, float accuracy, long timestamp) {
+        initialized = true;
+        originLatitude = rawLatitude;
+        originLongitude = rawLongitude;
+        metersPerLat = GeoUtils.metersPerDegreeLat();
+        metersPerLng = GeoUtils.metersPerDegreeLng(rawLatitude);
+        east.start((double) accuracy * accuracy);
+        north.start((double) accuracy * accuracy);
+        lastTimestamp = timestamp;
+        lastRawLatitude = rawLatitude;
+        lastRawLongitude = rawLongitude;
+        lastRawAccuracy = accuracy;
+        consecutiveOutliers = 0;
+    }
+
+    private FilteredFix accept(double rawLatitude, double rawLongitude) {
+        lastRejection = null;
+        acceptedCount++;
+        double latitude = originLatitude + north.position / metersPerLat;
+        double longitude = originLongitude + east.position / metersPerLng;
+        float accuracy = (float) Math.sqrt((east.positionVariance + north.positionVariance) / 2);
+        return new FilteredFix(latitude, longitude, Math.max(accuracy, MIN_ACCURACY_METERS), lastTimestamp,
+                rawLatitude, rawLongitude);
+    }
+
+    /**
+     * Constant-velocity Kalman filter along one axis: state (position, velocity) with a
+     * symmetric 2x2 covariance
+     */
+    private static class Axis {
+        double position;
+        double velocity;
+        double positionVariance;
+        double covariance;
+        double velocityVariance;
+
+        void start(double measurementVariance) {
+            position = 0;
+            velocity = 0;
+            positionVariance = measurementVariance;
+            covariance = 0;
+            velocityVariance = INITIAL_SPEED_STD_MPS * INITIAL_SPEED_STD_MPS;
+        }
+
+        void update(double measurement, double dt, double measurementVariance) {
+            // Predict with white-noise acceleration
+            double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+            double dt2 = dt * dt;
+            position += velocity * dt;
+            positionVariance += dt * (2 * covariance + dt * velocityVariance) + q * dt2 * dt2 / 4;
+            covariance += dt * velocityVariance + q * dt2 * dt / 2;
+            velocityVariance += q * dt2;
+
+            // Correct toward the measurement
+            double innovation = measurement - position;
+            double innovationVariance = positionVariance + measurementVariance;
+            double positionGain = positionVariance / innovationVariance;
+            double velocityGain = covariance / innovationVariance;
+            position += positionGain * innovation;
+            velocity += velocityGain * innovation;
+            velocityVariance -= velocityGain * covariance;
+            covariance -= positionGain * covariance;
+            positionVariance -= positionGain * positionVariance;
+        }
+    }
+
+    private FilteredFix reject(Rejection reason) {
+        lastRejection = reason;
+        rejectedCounts[reason.ordinal()]++;
+        return null;
+    }
+
+    /**
+     * Forget the smoother state, e.g. when tracking restarts
+     */
+    public synchronized void reset() {
+        initialized = false;
+        consecutiveOutliers = 0;
+        lastRejection = null;
+    }
+
+    /**
+     * Why the most recent fix was rejected, or null if it was accepted
+     */
+    public synchronized Rejection getLastRejection() {
+        return lastRejection;
+    }
+
+    public synchronized int getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public synchronized int getRejectedCount(Rejection reason) {
+        return rejectedCounts[reason.ordinal()];
+    }
+}
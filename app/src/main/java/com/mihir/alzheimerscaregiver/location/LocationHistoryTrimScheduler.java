@@ -0,0 +1,58 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler for periodic location history trimming using WorkManager
+ */
+public class LocationHistoryTrimScheduler {
+    private static final String TAG = "LocationHistoryTrimScheduler";
+    private static final String WORK_NAME = "location_history_trim";
+    
+    /**
+     * Schedule history trimming to run hourly while connected
+     * At the 10-minute production cadence this lets a day overshoot the cap by a handful of points at most
+     */
+    public static void schedule(Context context) {
+        try {
+            Constraints constraints = new Constraints.Builder()
+                    .setRequiredNetworkType(NetworkType.CONNECTED)
+                    .build();
+            
+            PeriodicWorkRequest trimWork = new PeriodicWorkRequest.Builder(
+                    LocationHistoryTrimWorker.class,
+                    1, TimeUnit.HOURS)
+                    .setConstraints(constraints)
+                    .build();
+            
+            // KEEP so restarting tracking does not reset the period
+            WorkManager.getInstance(context)
+                    .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, trimWork);
+            
+            Log.d(TAG, "Location history trim scheduled");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to schedule location history trim", e);
+        }
+    }
+    
+    /**
+     * Cancel periodic history trimming
+     */
+    public static void cancel(Context context) {
+        try {
+            WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+            Log.d(TAG, "Location history trim cancelled");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to cancel location history trim", e);
+        }
+    }
+}
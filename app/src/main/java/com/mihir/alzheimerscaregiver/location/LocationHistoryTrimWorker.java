@@ -0,0 +1,106 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WorkManager worker that maintains location history on a schedule instead of after every upload
+ * For today and yesterday (so the day that just rolled over is also handled) it:
+ * 1. Compacts raw points from completed hours into CompressedTrackSegments
+ * 2. Trims whatever raw points remain using the per-day counters maintained by LocationUploader
+ */
+public class LocationHistoryTrimWorker extends Worker {
+    private static final String TAG = "LocationHistoryTrimWorker";
+    private static final long ONE_DAY_MS = 24 * 60 * 60 * 1000;
+    private static final long ONE_HOUR_MS = 60 * 60 * 1000;
+    
+    public LocationHistoryTrimWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+    
+    @NonNull
+    @Override
+    public Result doWork() {
+        LocationUploader uploader = new LocationUploader();
+        String patientId = uploader.getCurrentPatientId();
+        if (patientId == null) {
+            Log.d(TAG, "User not authenticated, skipping history trim");
+            return Result.success();
+        }
+        
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+        long now = System.currentTimeMillis();
+        String[] dates = {
+                dateFormat.format(new Date(now - ONE_DAY_MS)),
+                dateFormat.format(new Date(now))
+        };
+        
+        CountDownLatch latch = new CountDownLatch(dates.length);
+        AtomicBoolean failed = new AtomicBoolean(false);
+        
+        // Leave the current hour raw so the live view and trimming still see it
+        long compactBefore = now - (now % ONE_HOUR_MS);
+        
+        for (String date : dates) {
+            uploader.compactHistory(patientId, date, compactBefore, new LocationUploader.CleanupCallback() {
+                @Override
+                public void onComplete(int entriesCompacted) {
+                    if (entriesCompacted > 0) {
+                        Log.d(TAG, "Compacted " + entriesCompacted + " entries for " + date);
+                    }
+                    trim(uploader, patientId, date, latch, failed);
+                }
+                
+                @Override
+                public void onError(String error) {
+                    Log.w(TAG, "History compaction failed for " + date + ": " + error);
+                    failed.set(true);
+                    trim(uploader, patientId, date, latch, failed);
+                }
+            });
+        }
+        
+        try {
+            if (!latch.await(LocationConfig.NETWORK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "History trim timed out");
+                return Result.retry();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+        
+        return failed.get() ? Result.retry() : Result.success();
+    }
+    
+    private void trim(LocationUploader uploader, String patientId, String date,
+                      CountDownLatch latch, AtomicBoolean failed) {
+        uploader.trimHistoryIncremental(patientId, date, new LocationUploader.CleanupCallback() {
+            @Override
+            public void onComplete(int entriesRemoved) {
+                if (entriesRemoved > 0) {
+                    Log.d(TAG, "Trimmed " + entriesRemoved + " entries for " + date);
+                }
+                latch.countDown();
+            }
+            
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "History trim failed for " + date + ": " + error);
+                failed.set(true);
+                latch.countDown();
+            }
+        });
+    }
+}
@@ -0,0 +1,112 @@
+package com.mihir.alzheimerscaregiver.location;
+
+/**
+ * Per-fix decision chain of PatientLocationService, kept free of Android types
+ *
+ * Order matters and matches what the service has always done:
+ * 1. LocationFixFilter drops bad fixes and smooths the rest
+ * 2. AdaptiveSamplingPolicy sees every accepted fix and may change the request interval
+ * 3. VirtualGeofenceManager and GeofenceBreachPredictor see every accepted fix, uploaded or not
+ * 4. The upload gate lets a fix through once the policy's upload interval has passed
+ *
+ * The service applies the Decision (re-request updates, enqueue the upload); the replay
+ * harness in the unit tests drives the same chain with recorded tracks.
+ */
+public class LocationPipeline {
+
+    /**
+     * What the service should do with one fix
+     */
+    public static class Decision {
+        // Smoothed fix, or null when the filter rejected it
+        public final LocationFixFilter.FilteredFix fix;
+        public final LocationFixFilter.Rejection rejection;
+        // The sampling policy wants a different location request
+        public final boolean samplingChanged;
+        public final boolean upload;
+        public final long sinceLastUploadMs;
+        public final long minIntervalMs;
+
+        Decision(LocationFixFilter.FilteredFix fix, LocationFixFilter.Rejection rejection, boolean samplingChanged,
+                 boolean upload, long sinceLastUploadMs, long minIntervalMs) {
+            this.fix = fix;
+            this.rejection = rejection;
+            this.samplingChanged = samplingChanged;
+            this.upload = upload;
+            this.sinceLastUploadMs = sinceLastUploadMs;
+            this.minIntervalMs = minIntervalMs;
+        }
+    }
+
+    private final LocationFixFilter fixFilter;
+    private AdaptiveSamplingPolicy samplingPolicy;
+    private VirtualGeofenceManager geofenceManager;
+    private GeofenceBreachPredictor breachPredictor;
+    private long lastUploadTime;
+
+    public LocationPipeline() {
+        this(new LocationFixFilter());
+    }
+
+    public LocationPipeline(LocationFixFilter fixFilter) {
+        this.fixFilter = fixFilter;
+    }
+
+    public synchronized void setSamplingPolicy(AdaptiveSamplingPolicy samplingPolicy) {
+        this.samplingPolicy = samplingPolicy;
+    }
+
+    /**
+     * Attach or (with nulls) detach the on-device geofence evaluators
+     */
+    public synchronized void setGeofenceEvaluators(VirtualGeofenceManager geofenceManager,
+                                                   GeofenceBreachPredictor breachPredictor) {
+        this.geofenceManager = geofenceManager;
+        this.breachPredictor = breachPredictor;
+    }
+
+    /**
+     * Run one fix through the chain
+     *
+     * @param fixTime     Time the fix was taken (Location.getTime())
+     * @param now         Wall-clock time, used for the upload gate
+     * @param forceUpload Upload regardless of the interval, e.g. for an explicit current-location request
+     */
+    public synchronized Decision process(double latitude, double longitude, float accuracy,
+                                         long fixTime, long now, boolean forceUpload) {
+        LocationFixFilter.FilteredFix fix = fixFilter.onFix(latitude, longitude, accuracy, fixTime);
+        if (fix == null) {
+            return new Decision(null, fixFilter.getLastRejection(), false, false, now - lastUploadTime, 0);
+        }
+
+        boolean samplingChanged = samplingPolicy != null
+                && samplingPolicy.onFix(fix.latitude, fix.longitude, fix.timestamp);
+
+        if (geofenceManager != null) {
+            geofenceManager.onFix(fix.latitude, fix.longitude, fix.accuracy, fix.timestamp);
+        }
+        if (breachPredictor != null) {
+            breachPredictor.onFix(fix.latitude, fix.longitude, fix.accuracy, fix.timestamp);
+        }
+
+        long sinceLastUpload = now - lastUploadTime;
+        long minInterval = samplingPolicy != null
+                ? samplingPolicy.getUploadIntervalMs() : LocationConfig.DEFAULT_LOCATION_INTERVAL_MS;
+        boolean upload = forceUpload || sinceLastUpload >= minInterval;
+        if (upload) {
+            lastUploadTime = now;
+        }
+        return new Decision(fix, null, samplingChanged, upload, sinceLastUpload, minInterval);
+    }
+
+    /**
+     * Forget the smoother state, e.g. when tracking stops
+     */
+    public synchronized void reset() {
+        fixFilter.reset();
+    }
+
+    public LocationFixFilter getFixFilter() {
+        return fixFilter;
+    }
+}
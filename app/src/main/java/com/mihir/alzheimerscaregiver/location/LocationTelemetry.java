@@ -0,0 +1,331 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide counters and histograms for what location tracking costs
+ *
+ * Recording is lock-free (atomic adds and CAS max), so it can be called from the location
+ * callback, the queue thread and Firebase callbacks without contention. Readers take a
+ * Snapshot, which the tracking notification, LocationTelemetryActivity and the periodic
+ * file dump all format from.
+ *
+ * Counts run from process start (or the last reset), not per tracking session.
+ */
+public final class LocationTelemetry {
+
+    public enum Counter {
+        // Times the service was woken: FusedLocationProvider deliveries and retry timers
+        WAKEUPS,
+        FIXES_RECEIVED,
+        FIXES_ACCEPTED,
+        FIXES_DROPPED_INACCURATE,
+        FIXES_DROPPED_OUT_OF_ORDER,
+        FIXES_DROPPED_SPEED,
+        SAMPLING_CHANGES,
+        FIXES_QUEUED,
+        UPLOAD_WRITES,
+        UPLOAD_FIXES,
+        // Approximate JSON size of the multi-path updates; the SDK does not report wire bytes
+        UPLOAD_BYTES,
+        UPLOAD_FAILURES,
+        UPLOAD_RETRIES,
+        GEOFENCE_TRANSITIONS,
+        GEOFENCE_PREDICTIONS,
+        GEOFENCE_ALERTS_WRITTEN,
+        GEOFENCE_ALERT_FAILURES,
+        // Geofence pushes FCM accepted, one per caretaker
+        GEOFENCE_FCM_SENT
+    }
+
+    public enum Histogram {
+        FIX_ACCURACY_METERS,
+        // Time between consecutive deliveries, i.e. the effective sampling interval
+        FIX_INTERVAL_MS,
+        UPLOAD_BATCH_SIZE,
+        // Oldest fix in a batch to server acknowledgement
+        UPLOAD_LATENCY_MS,
+        UPLOAD_BYTES,
+        RETRY_DELAY_MS
+    }
+
+    /**
+     * Log-linear buckets: exact below 4, then 4 buckets per power of two (at most 25% wide)
+     */
+    static final int SUB_BUCKETS = 4;
+    static final int BUCKET_COUNT = SUB_BUCKETS + (62 - 1) * SUB_BUCKETS;
+
+    private static final LocationTelemetry INSTANCE = new LocationTelemetry();
+
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+    private final HistogramData[] histograms = new HistogramData[Histogram.values().length];
+    private final AtomicLong startedAt = new AtomicLong();
+
+    public static LocationTelemetry getInstance() {
+        return INSTANCE;
+    }
+
+    LocationTelemetry() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new HistogramData();
+        }
+        startedAt.set(System.currentTimeMillis());
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    /**
+     * Record one value; negative values count as 0
+     */
+    public void record(Histogram histogram, long value) {
+        histograms[histogram.ordinal()].record(Math.max(0, value));
+    }
+
+    /**
+     * Count a fix the filter rejected under the matching drop counter
+     */
+    public void recordRejection(LocationFixFilter.Rejection rejection) {
+        if (rejection == null) {
+            return;
+        }
+        switch (rejection) {
+            case INACCURATE:
+                increment(Counter.FIXES_DROPPED_INACCURATE);
+                break;
+            case OUT_OF_ORDER:
+                increment(Counter.FIXES_DROPPED_OUT_OF_ORDER);
+                break;
+            case IMPLAUSIBLE_SPEED:
+                increment(Counter.FIXES_DROPPED_SPEED);
+                break;
+        }
+    }
+
+    /**
+     * Zero everything, e.g. before measuring a LocationConfig change
+     * Not atomic with concurrent recording; a value recorded during the reset may survive it
+     */
+    public void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        for (HistogramData histogram : histograms) {
+            histogram.reset();
+        }
+        startedAt.set(System.currentTimeMillis());
+    }
+
+    public Snapshot snapshot() {
+        return snapshot(System.currentTimeMillis());
+    }
+
+    Snapshot snapshot(long now) {
+        long[] counts = new long[counters.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = counters.get(i);
+        }
+        HistogramSnapshot[] histogramSnapshots = new HistogramSnapshot[histograms.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histogramSnapshots[i] = histograms[i].snapshot();
+        }
+        return new Snapshot(startedAt.get(), now, counts, histogramSnapshots);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >> (exponent - 2)) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS + (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Largest value that falls in a bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + 2;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS | sub) << (exponent - 2);
+        return lower + (1L << (exponent - 2)) - 1;
+    }
+
+    private static final class HistogramData {
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+        void record(long value) {
+            buckets.incrementAndGet(bucketIndex(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            max.accumulateAndGet(value, Math::max);
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] copy = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                copy[i] = buckets.get(i);
+                total += copy[i];
+            }
+            // Bucket counts are the source of truth; count/sum may be a record ahead of them
+            return new HistogramSnapshot(copy, total, sum.get(), max.get());
+        }
+    }
+
+    /**
+     * A histogram's state at one moment
+     */
+    public static final class HistogramSnapshot {
+        private final long[] buckets;
+        public final long count;
+        public final long sum;
+        public final long max;
+
+        HistogramSnapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Value at a percentile (0-100), as the upper bound of its bucket and never above max
+         */
+        public long percentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    /**
+     * Every counter and histogram at one moment, with the formats used to show them
+     */
+    public static final class Snapshot {
+        public final long startedAt;
+        public final long takenAt;
+        private final long[] counts;
+        private final HistogramSnapshot[] histograms;
+
+        Snapshot(long startedAt, long takenAt, long[] counts, HistogramSnapshot[] histograms) {
+            this.startedAt = startedAt;
+            this.takenAt = takenAt;
+            this.counts = counts;
+            this.histograms = histograms;
+        }
+
+        public long get(Counter counter) {
+            return counts[counter.ordinal()];
+        }
+
+        public HistogramSnapshot get(Histogram histogram) {
+            return histograms[histogram.ordinal()];
+        }
+
+        public long fixesDropped() {
+            return get(Counter.FIXES_DROPPED_INACCURATE) + get(Counter.FIXES_DROPPED_OUT_OF_ORDER)
+                    + get(Counter.FIXES_DROPPED_SPEED);
+        }
+
+        public double hours() {
+            return Math.max(takenAt - startedAt, 1) / 3600000.0;
+        }
+
+        /**
+         * One line for the tracking notification
+         */
+        public String toNotificationText() {
+            return String.format(Locale.getDefault(), "%d fixes (%d dropped) · %d uploads · %s · %d retries",
+                    get(Counter.FIXES_RECEIVED), fixesDropped(), get(Counter.UPLOAD_WRITES),
+                    formatBytes(get(Counter.UPLOAD_BYTES)), get(Counter.UPLOAD_RETRIES));
+        }
+
+        /**
+         * One key=value line per snapshot for the rolling log; stable order so files diff cleanly
+         */
+        public String toLogLine() {
+            StringBuilder line = new StringBuilder();
+            line.append("t=").append(takenAt).append(" since=").append(startedAt);
+            for (Counter counter : Counter.values()) {
+                line.append(' ').append(counter.name().toLowerCase(Locale.US)).append('=').append(get(counter));
+            }
+            for (Histogram histogram : Histogram.values()) {
+                HistogramSnapshot h = get(histogram);
+                String name = histogram.name().toLowerCase(Locale.US);
+                line.append(' ').append(name).append("=n:").append(h.count)
+                        .append(",p50:").append(h.percentile(50))
+                        .append(",p90:").append(h.percentile(90))
+                        .append(",p99:").append(h.percentile(99))
+                        .append(",max:").append(h.max);
+            }
+            return line.toString();
+        }
+
+        /**
+         * Multi-line report for the debug screen, with per-hour rates
+         */
+        public String toReport() {
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.US, "Over %.1f h\n\n", hours()));
+            for (Counter counter : Counter.values()) {
+                long value = get(counter);
+                report.append(String.format(Locale.US, "%-26s %10d  (%.1f/h)\n",
+                        counter.name().toLowerCase(Locale.US), value, value / hours()));
+            }
+            report.append('\n');
+            for (Histogram histogram : Histogram.values()) {
+                HistogramSnapshot h = get(histogram);
+                report.append(String.format(Locale.US, "%-20s n=%d mean=%.0f p50=%d p90=%d p99=%d max=%d\n",
+                        histogram.name().toLowerCase(Locale.US), h.count, h.mean(),
+                        h.percentile(50), h.percentile(90), h.percentile(99), h.max));
+            }
+            return report.toString();
+        }
+
+        static String formatBytes(long bytes) {
+            if (bytes < 1024) {
+                return bytes + " B";
+            }
+            if (bytes < 1024 * 1024) {
+                return String.format(Locale.US, "%.1f KB", bytes / 1024.0);
+            }
+            return String.format(Locale.US, "%.1f MB", bytes / (1024.0 * 1024.0));
+        }
+    }
+}
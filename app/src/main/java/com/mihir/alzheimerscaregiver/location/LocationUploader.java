@@ -10,12 +10,19 @@ import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ServerValue;
 import com.google.firebase.database.ValueEventListener;
+import com.mihir.alzheimerscaregiver.entities.CompressedTrackSegment;
 import com.mihir.alzheimerscaregiver.entities.LocationEntity;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Helper class for uploading location data to Firebase Realtime Database
@@ -25,13 +32,53 @@ public class LocationUploader {
     
     private static final String TAG = "LocationUploader";
     private static final int MAX_HISTORY_POINTS_PER_DAY = 144; // For 10-minute intervals
+    private static final String HISTORY_COUNTS_PATH = "locationHistoryCounts";
+    private static final String TRACKS_PATH = "locationTracks";
+    
+    // Field names and punctuation of a serialized LocationEntity, for the telemetry byte estimate
+    private static final int ENTITY_JSON_OVERHEAD_BYTES = 98;
     
     private final FirebaseDatabase realtimeDb;
     private final FirebaseAuth auth;
+    private final LocationTelemetry telemetry = LocationTelemetry.getInstance();
+    private final CaretakerLocationIndex locationIndex;
+    
+    // Shared by every instance, so one link listener serves the whole process
+    private static CaretakerLocationIndex sharedLocationIndex;
     
     public LocationUploader() {
         this.realtimeDb = FirebaseDatabase.getInstance();
         this.auth = FirebaseAuth.getInstance();
+        this.locationIndex = getLocationIndex(realtimeDb);
+    }
+    
+    private static synchronized CaretakerLocationIndex getLocationIndex(FirebaseDatabase database) {
+        if (sharedLocationIndex == null) {
+            sharedLocationIndex = new CaretakerLocationIndex(new CaretakerLocationIndex.Database() {
+                @Override
+                public void watchLink(String patientId, CaretakerLocationIndex index) {
+                    database.getReference("patientCaretakerLinks").child(patientId)
+                            .addValueEventListener(new ValueEventListener() {
+                                @Override
+                                public void onDataChange(@NonNull DataSnapshot snapshot) {
+                                    index.onLinkChanged(patientId, snapshot.getValue(String.class));
+                                }
+                                
+                                @Override
+                                public void onCancelled(@NonNull DatabaseError error) {
+                                    Log.w(TAG, "Stopped watching caretaker link for location index: " + error.getMessage());
+                                }
+                            });
+                }
+                
+                @Override
+                public void update(Map<String, Object> updates) {
+                    database.getReference().updateChildren(updates)
+                            .addOnFailureListener(e -> Log.w(TAG, "Failed to update location index", e));
+                }
+            });
+        }
+        return sharedLocationIndex;
     }
     
     /**
@@ -53,6 +100,7 @@ public class LocationUploader {
     /**
      * Upload current location to Firebase Realtime Database
      * Writes to /locations/{patientId} (latest) and appends to /locationHistory/{patientId}/{YYYY-MM-DD}
+     * in a single atomic multi-path update
      * 
      * @param patientId The patient's unique identifier
      * @param location The location to upload
@@ -79,20 +127,106 @@ public class LocationUploader {
                 location.isFromMockProvider()
         );
         
-        Log.d(TAG, "Uploading location for patient: " + patientId + " at " + 
-              locationEntity.latitude + ", " + locationEntity.longitude);
+        uploadLocations(patientId, Collections.singletonList(locationEntity), callback);
+    }
+    
+    /**
+     * Upload one or more queued locations with a single multi-path updateChildren write
+     * The newest entry becomes /locations/{patientId}, and once written, the patient's entry in the
+     * caretaker's geohash index; every entry is appended to its day under /locationHistory/{patientId}/{YYYY-MM-DD}/{pushKey}
+     * 
+     * @param patientId The patient's unique identifier
+     * @param entities Locations to upload, in any order
+     * @param callback Callback for success/error handling
+     */
+    public void uploadLocations(String patientId, List<LocationEntity> entities, UploadCallback callback) {
+        if (patientId == null || entities == null || entities.isEmpty()) {
+            if (callback != null) {
+                callback.onError("Invalid patientId or location");
+            }
+            return;
+        }
         
-        // Update latest location first
-        DatabaseReference latestRef = realtimeDb.getReference("locations").child(patientId);
-        latestRef.setValue(locationEntity)
+        DatabaseReference rootRef = realtimeDb.getReference();
+        Map<String, Object> updates = new HashMap<>();
+        Map<String, Integer> pointsPerDate = new HashMap<>();
+        LocationEntity latest = null;
+        
+        for (LocationEntity entity : entities) {
+            if (entity == null) {
+                continue;
+            }
+            
+            String dateKey = formatDateKey(entity.timestamp);
+            String historyPath = "locationHistory/" + patientId + "/" + dateKey;
+            
+            // Push keys are generated client-side, so no round trip is needed here
+            String pushKey = rootRef.child(historyPath).push().getKey();
+            if (pushKey == null) {
+                Log.e(TAG, "Failed to generate push key for history entry");
+                if (callback != null) {
+                    callback.onError("Failed to generate unique key for history entry");
+                }
+                return;
+            }
+            
+            updates.put(historyPath + "/" + pushKey, entity);
+            Integer count = pointsPerDate.get(dateKey);
+            pointsPerDate.put(dateKey, count == null ? 1 : count + 1);
+            
+            if (latest == null || entity.timestamp >= latest.timestamp) {
+                latest = entity;
+            }
+        }
+        
+        if (latest == null) {
+            if (callback != null) {
+                callback.onError("Invalid patientId or location");
+            }
+            return;
+        }
+        
+        int historyEntries = updates.size();
+        updates.put("locations/" + patientId, latest);
+        
+        // Keep the running per-day counters in the same atomic write so trimming never has to count children
+        for (Map.Entry<String, Integer> entry : pointsPerDate.entrySet()) {
+            updates.put(HISTORY_COUNTS_PATH + "/" + patientId + "/" + entry.getKey(), 
+                    ServerValue.increment(entry.getValue()));
+        }
+        
+        Log.d(TAG, "Uploading " + historyEntries + " location(s) for patient: " + patientId + 
+              ", latest at " + latest.latitude + ", " + latest.longitude);
+        
+        int estimatedBytes = estimateJsonBytes(updates);
+        LocationEntity newest = latest;
+        rootRef.updateChildren(updates)
                 .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Latest location updated successfully");
+                    Log.d(TAG, "Location batch written for dates: " + pointsPerDate.keySet());
                     
-                    // Now add to history
-                    addToHistory(patientId, locationEntity, callback);
+                    long ackTime = System.currentTimeMillis();
+                    telemetry.increment(LocationTelemetry.Counter.UPLOAD_WRITES);
+                    telemetry.add(LocationTelemetry.Counter.UPLOAD_FIXES, historyEntries);
+                    telemetry.add(LocationTelemetry.Counter.UPLOAD_BYTES, estimatedBytes);
+                    telemetry.record(LocationTelemetry.Histogram.UPLOAD_BATCH_SIZE, historyEntries);
+                    telemetry.record(LocationTelemetry.Histogram.UPLOAD_BYTES, estimatedBytes);
+                    for (LocationEntity entity : entities) {
+                        if (entity != null) {
+                            telemetry.record(LocationTelemetry.Histogram.UPLOAD_LATENCY_MS, ackTime - entity.timestamp);
+                        }
+                    }
+                    
+                    // The geohash index follows in its own write; a failure there must not fail the batch
+                    locationIndex.onUpload(patientId, newest);
+                    
+                    // History trimming runs on a schedule (LocationHistoryTrimWorker), not per fix
+                    if (callback != null) {
+                        callback.onSuccess();
+                    }
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to update latest location", e);
+                    Log.e(TAG, "Failed to write location batch", e);
+                    telemetry.increment(LocationTelemetry.Counter.UPLOAD_FAILURES);
                     if (callback != null) {
                         callback.onError("Failed to upload location: " + e.getMessage());
                     }
@@ -100,55 +234,273 @@ public class LocationUploader {
     }
     
     /**
-     * Add location to daily history with automatic cleanup
+     * Rough JSON size of a multi-path update, which is what the SDK puts on the wire
      */
-    private void addToHistory(String patientId, LocationEntity locationEntity, UploadCallback callback) {
-        String dateKey = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date(locationEntity.timestamp));
+    static int estimateJsonBytes(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof Map) {
+            int bytes = 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += String.valueOf(entry.getKey()).length() + 4 + estimateJsonBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        if (value instanceof LocationEntity) {
+            LocationEntity entity = (LocationEntity) value;
+            return ENTITY_JSON_OVERHEAD_BYTES + String.valueOf(entity.patientId).length()
+                    + String.valueOf(entity.provider).length() + String.valueOf(entity.latitude).length()
+                    + String.valueOf(entity.longitude).length() + String.valueOf(entity.accuracy).length()
+                    + String.valueOf(entity.timestamp).length() + String.valueOf(entity.isMockLocation).length();
+        }
+        if (value instanceof String) {
+            return ((String) value).length() + 2;
+        }
+        return String.valueOf(value).length();
+    }
+    
+    /**
+     * Format a timestamp as the YYYY-MM-DD key used for history nodes
+     */
+    private static String formatDateKey(long timestamp) {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault()).format(new Date(timestamp));
+    }
+    
+    /**
+     * Trim history for a specific date using the running per-day counter
+     * Only the overflow is queried (orderByChild("timestamp").limitToFirst(n)) and it is
+     * deleted together with the counter decrement in one multi-path null write.
+     * Days written before counters existed fall back to a one-time full trim that seeds the counter.
+     * 
+     * @param patientId The patient's unique identifier
+     * @param date Date string in format YYYY-MM-DD
+     * @param callback Callback for cleanup completion
+     */
+    public void trimHistoryIncremental(String patientId, String date, CleanupCallback callback) {
+        if (patientId == null || date == null) {
+            if (callback != null) {
+                callback.onError("Invalid patientId or date");
+            }
+            return;
+        }
+        
+        DatabaseReference countRef = realtimeDb.getReference(HISTORY_COUNTS_PATH)
+                .child(patientId)
+                .child(date);
+        
+        countRef.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                Long count = snapshot.getValue(Long.class);
+                
+                if (count == null) {
+                    Log.d(TAG, "No history counter for date " + date + ", seeding it with a full trim");
+                    seedHistoryCounter(patientId, date, callback);
+                    return;
+                }
+                
+                if (count <= MAX_HISTORY_POINTS_PER_DAY) {
+                    if (callback != null) {
+                        callback.onComplete(0);
+                    }
+                    return;
+                }
+                
+                removeOldestHistoryEntries(patientId, date, (int) (count - MAX_HISTORY_POINTS_PER_DAY), callback);
+            }
+            
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Failed to read history counter", error.toException());
+                if (callback != null) {
+                    callback.onError("Database query failed: " + error.getMessage());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Delete the oldest {@code overflow} entries of a day and decrement its counter atomically
+     */
+    private void removeOldestHistoryEntries(String patientId, String date, int overflow, CleanupCallback callback) {
         DatabaseReference historyRef = realtimeDb.getReference("locationHistory")
                 .child(patientId)
-                .child(dateKey);
+                .child(date);
         
-        // Use push() to generate unique key for each location entry
-        String pushKey = historyRef.push().getKey();
-        if (pushKey != null) {
-            historyRef.child(pushKey).setValue(locationEntity)
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d(TAG, "Location added to history for date: " + dateKey);
+        historyRef.orderByChild("timestamp").limitToFirst(overflow)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        Map<String, Object> deletes = new HashMap<>();
+                        for (DataSnapshot child : snapshot.getChildren()) {
+                            deletes.put("locationHistory/" + patientId + "/" + date + "/" + child.getKey(), null);
+                        }
                         
-                        // Trigger cleanup for this date
-                        trimHistoryForDate(patientId, dateKey, new CleanupCallback() {
-                            @Override
-                            public void onComplete(int entriesRemoved) {
-                                if (entriesRemoved > 0) {
-                                    Log.d(TAG, "History cleanup completed, removed " + entriesRemoved + " entries");
-                                }
-                                if (callback != null) {
-                                    callback.onSuccess();
-                                }
+                        int removed = deletes.size();
+                        if (removed == 0) {
+                            // Counter drifted above the real size; recount the day from its entries
+                            Log.w(TAG, "History counter for " + date + " is ahead of the data, recounting");
+                            seedHistoryCounter(patientId, date, callback);
+                            return;
+                        }
+                        
+                        deletes.put(HISTORY_COUNTS_PATH + "/" + patientId + "/" + date, ServerValue.increment(-removed));
+                        
+                        realtimeDb.getReference().updateChildren(deletes)
+                                .addOnSuccessListener(aVoid -> {
+                                    Log.d(TAG, "Trimmed " + removed + " history entries for date " + date);
+                                    if (callback != null) {
+                                        callback.onComplete(removed);
+                                    }
+                                })
+                                .addOnFailureListener(e -> {
+                                    Log.w(TAG, "Failed to trim history for date " + date, e);
+                                    if (callback != null) {
+                                        callback.onError("Failed to trim history: " + e.getMessage());
+                                    }
+                                });
+                    }
+                    
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        Log.e(TAG, "Failed to query history overflow", error.toException());
+                        if (callback != null) {
+                            callback.onError("Database query failed: " + error.getMessage());
+                        }
+                    }
+                });
+    }
+    
+    /**
+     * Count a day's entries, trim it to the cap and record the resulting size as its counter
+     * Used once for days written before counters existed, and to repair a counter that drifted
+     */
+    private void seedHistoryCounter(String patientId, String date, CleanupCallback callback) {
+        DatabaseReference historyRef = realtimeDb.getReference("locationHistory")
+                .child(patientId)
+                .child(date);
+        
+        historyRef.orderByChild("timestamp").addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                long totalCount = snapshot.getChildrenCount();
+                int toRemove = (int) Math.max(0, totalCount - MAX_HISTORY_POINTS_PER_DAY);
+                
+                Map<String, Object> updates = new HashMap<>();
+                int removed = 0;
+                for (DataSnapshot child : snapshot.getChildren()) {
+                    if (removed >= toRemove) {
+                        break;
+                    }
+                    updates.put("locationHistory/" + patientId + "/" + date + "/" + child.getKey(), null);
+                    removed++;
+                }
+                updates.put(HISTORY_COUNTS_PATH + "/" + patientId + "/" + date, totalCount - removed);
+                
+                final int entriesRemoved = removed;
+                realtimeDb.getReference().updateChildren(updates)
+                        .addOnSuccessListener(aVoid -> {
+                            if (callback != null) {
+                                callback.onComplete(entriesRemoved);
                             }
-                            
-                            @Override
-                            public void onError(String error) {
-                                Log.w(TAG, "History cleanup failed: " + error);
-                                // Still consider the upload successful even if cleanup fails
-                                if (callback != null) {
-                                    callback.onSuccess();
-                                }
+                        })
+                        .addOnFailureListener(e -> {
+                            if (callback != null) {
+                                callback.onError("Failed to seed history counter: " + e.getMessage());
                             }
                         });
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Failed to add location to history", e);
-                        if (callback != null) {
-                            callback.onError("Failed to save to history: " + e.getMessage());
-                        }
-                    });
-        } else {
-            Log.e(TAG, "Failed to generate push key for history entry");
+            }
+            
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.e(TAG, "Failed to query history for counter seeding", error.toException());
+                if (callback != null) {
+                    callback.onError("Database query failed: " + error.getMessage());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Pack raw history points older than {@code beforeTimestamp} into a CompressedTrackSegment
+     * The segment is written to /locationTracks/{patientId}/{date}/{segmentKey} and the raw
+     * entries are removed (with their counter decrement) in the same multi-path write.
+     * 
+     * @param patientId The patient's unique identifier
+     * @param date Date string in format YYYY-MM-DD
+     * @param beforeTimestamp Only points strictly older than this are compacted
+     * @param callback Callback with the number of raw entries compacted
+     */
+    public void compactHistory(String patientId, String date, long beforeTimestamp, CleanupCallback callback) {
+        if (patientId == null || date == null) {
             if (callback != null) {
-                callback.onError("Failed to generate unique key for history entry");
+                callback.onError("Invalid patientId or date");
             }
+            return;
         }
+        
+        DatabaseReference historyRef = realtimeDb.getReference("locationHistory")
+                .child(patientId)
+                .child(date);
+        
+        historyRef.orderByChild("timestamp").endAt(beforeTimestamp - 1)
+                .addListenerForSingleValueEvent(new ValueEventListener() {
+                    @Override
+                    public void onDataChange(@NonNull DataSnapshot snapshot) {
+                        List<CompressedTrackSegment.TrackPoint> points = new ArrayList<>();
+                        Map<String, Object> updates = new HashMap<>();
+                        
+                        for (DataSnapshot child : snapshot.getChildren()) {
+                            LocationEntity entity = child.getValue(LocationEntity.class);
+                            if (entity != null) {
+                                points.add(new CompressedTrackSegment.TrackPoint(
+                                        entity.latitude, entity.longitude, entity.timestamp, entity.accuracy));
+                            }
+                            updates.put("locationHistory/" + patientId + "/" + date + "/" + child.getKey(), null);
+                        }
+                        
+                        if (points.isEmpty()) {
+                            if (callback != null) {
+                                callback.onComplete(0);
+                            }
+                            return;
+                        }
+                        
+                        // Query results arrive in timestamp order already
+                        CompressedTrackSegment segment = CompressedTrackSegment.encode(
+                                points, CompressedTrackSegment.DEFAULT_SIMPLIFY_TOLERANCE_METERS);
+                        
+                        // Keyed by start time so segments sort chronologically
+                        String segmentKey = String.valueOf(segment.startTime);
+                        updates.put(TRACKS_PATH + "/" + patientId + "/" + date + "/" + segmentKey, segment.toFirebaseMap());
+                        updates.put(HISTORY_COUNTS_PATH + "/" + patientId + "/" + date,
+                                ServerValue.increment(-snapshot.getChildrenCount()));
+                        
+                        final int compacted = points.size();
+                        realtimeDb.getReference().updateChildren(updates)
+                                .addOnSuccessListener(aVoid -> {
+                                    Log.d(TAG, "Compacted " + compacted + " history points for " + date + " into " + segment);
+                                    if (callback != null) {
+                                        callback.onComplete(compacted);
+                                    }
+                                })
+                                .addOnFailureListener(e -> {
+                                    Log.w(TAG, "Failed to compact history for date " + date, e);
+                                    if (callback != null) {
+                                        callback.onError("Failed to compact history: " + e.getMessage());
+                                    }
+                                });
+                    }
+                    
+                    @Override
+                    public void onCancelled(@NonNull DatabaseError error) {
+                        Log.e(TAG, "Failed to query history for compaction", error.toException());
+                        if (callback != null) {
+                            callback.onError("Database query failed: " + error.getMessage());
+                        }
+                    }
+                });
     }
     
     /**
@@ -310,6 +662,9 @@ public class LocationUploader {
         
         Log.d(TAG, "Clearing current location for patient: " + patientId);
         
+        // Drop the index entry too so nearby queries stop finding the patient
+        locationIndex.onLocationCleared(patientId);
+        
         DatabaseReference latestRef = realtimeDb.getReference("locations").child(patientId);
         latestRef.removeValue()
                 .addOnSuccessListener(aVoid -> {
@@ -420,9 +775,30 @@ public class LocationUploader {
         Log.d(TAG, "Linking patient " + patientId + " to caretaker " + caretakerId);
         
         DatabaseReference linkRef = realtimeDb.getReference("patientCaretakerLinks").child(patientId);
+        // The shared index listener moves the entry when it sees the new link. Read the old
+        // link first as well, in case the entry predates this process and nothing watches it.
+        linkRef.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                writePatientCaretakerLink(linkRef, patientId, snapshot.getValue(String.class), caretakerId, callback);
+            }
+            
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                writePatientCaretakerLink(linkRef, patientId, null, caretakerId, callback);
+            }
+        });
+    }
+    
+    private void writePatientCaretakerLink(DatabaseReference linkRef, String patientId, String previousCaretakerId,
+                                           String caretakerId, UploadCallback callback) {
         linkRef.setValue(caretakerId)
                 .addOnSuccessListener(aVoid -> {
                     Log.d(TAG, "Patient-Caretaker link updated successfully");
+                    if (previousCaretakerId != null && !previousCaretakerId.equals(caretakerId)) {
+                        realtimeDb.getReference(CaretakerLocationIndex.entryPath(previousCaretakerId, patientId))
+                                .removeValue();
+                    }
                     if (callback != null) {
                         callback.onSuccess();
                     }
@@ -23,23 +23,36 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.Geofence;
 import com.google.android.gms.location.LocationCallback;
 import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.location.Priority;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
 import com.mihir.alzheimerscaregiver.MainActivity;
 import com.mihir.alzheimerscaregiver.R;
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
 import com.mihir.alzheimerscaregiver.entities.LocationEntity;
+import com.mihir.alzheimerscaregiver.geofence.PatientGeofenceClient;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Foreground service for continuous patient location tracking
@@ -47,9 +60,12 @@ import java.util.Map;
  * Features:
  * - Uses FusedLocationProviderClient with PRIORITY_BALANCED_POWER_ACCURACY for battery efficiency
  * - Uploads location to Firebase Realtime Database at configurable intervals (default: 5 minutes)
+ * - Adapts the sampling interval to motion: wider when stationary at a safe zone, tighter near fence edges
  * - Maintains location history with bounded storage (144 points per day max)
  * - Implements security measures to detect mock locations
- * - Handles network failures with exponential backoff
+ * - Queues fixes on disk and replays them in order after network failures, crashes or reboots
+ * - Counts fixes, drops, uploads, bytes, retries and wakeups in LocationTelemetry, shown in the
+ *   notification and periodically appended to a rolling local log
  * - Respects user privacy settings and location sharing toggles
  */
 public class PatientLocationService extends Service {
@@ -73,6 +89,47 @@ public class PatientLocationService extends Service {
     private long currentRetryDelay = INITIAL_RETRY_DELAY_MS;
     private int consecutiveFailures = 0;
     
+    // Durable queue of fixes waiting for upload, drained by a single uploader
+    private static final String PENDING_QUEUE_NAME = "pending_locations";
+    private static final int MAX_UPLOAD_BATCH_SIZE = 50;
+    private PendingLocationQueue pendingQueue;
+    private ExecutorService queueExecutor;
+    private boolean isDraining = false;
+    // Set while a retry timer is pending; new fixes wait for it instead of draining early
+    private boolean retryPending = false;
+    private final Runnable drainRunnable = () -> {
+        // Only ever posted as a retry timer
+        telemetry.increment(LocationTelemetry.Counter.WAKEUPS);
+        retryPending = false;
+        drainPendingQueue();
+    };
+    
+    // Cost counters, dumped to a rolling file while tracking
+    private final LocationTelemetry telemetry = LocationTelemetry.getInstance();
+    private RollingTelemetryLog telemetryLog;
+    private long lastFixReceivedTime;
+    private final Runnable telemetryDumpRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dumpTelemetry();
+            if (isTracking) {
+                mainHandler.postDelayed(this, LocationConfig.TELEMETRY_DUMP_INTERVAL_MS);
+            }
+        }
+    };
+    
+    // Filter, sampling, geofence evaluation and upload gate for every fix
+    private final LocationPipeline pipeline = new LocationPipeline();
+    
+    // Motion-aware sampling
+    private AdaptiveSamplingPolicy samplingPolicy;
+    private ValueEventListener geofenceListener;
+    
+    // On-device geofence evaluation, alerts raised through PatientGeofenceClient
+    private VirtualGeofenceManager virtualGeofenceManager;
+    private GeofenceBreachPredictor breachPredictor;
+    private PatientGeofenceClient geofenceAlertClient;
+    
     // Service components
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
@@ -86,7 +143,6 @@ public class PatientLocationService extends Service {
     // State tracking
     private boolean isTracking = false;
     private Location lastKnownLocation;
-    private long lastUploadTime = 0;
     private String currentPatientId;
     
     // Test mode timer for forcing location updates
@@ -105,6 +161,22 @@ public class PatientLocationService extends Service {
         prefs = getSharedPreferences("location_prefs", MODE_PRIVATE);
         mainHandler = new Handler(Looper.getMainLooper());
         locationUploader = new LocationUploader();
+        queueExecutor = Executors.newSingleThreadExecutor();
+        try {
+            pendingQueue = new PendingLocationQueue(getNoBackupFilesDir(), PENDING_QUEUE_NAME);
+            if (!pendingQueue.isEmpty()) {
+                Log.i(TAG, "Recovered " + pendingQueue.size() + " pending location(s) from disk");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open pending location queue, uploads will not survive restarts", e);
+        }
+        try {
+            telemetryLog = new RollingTelemetryLog(new File(getFilesDir(), LocationConfig.TELEMETRY_LOG_DIR),
+                    LocationConfig.TELEMETRY_LOG_NAME,
+                    LocationConfig.TELEMETRY_FILE_MAX_BYTES, LocationConfig.TELEMETRY_FILE_COUNT);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open telemetry log, counters will only be shown live", e);
+        }
         
         // Initialize test mode components
         testModeHandler = new Handler(Looper.getMainLooper());
@@ -177,6 +249,10 @@ public class PatientLocationService extends Service {
     public void onDestroy() {
         Log.d(TAG, "PatientLocationService destroyed");
         stopLocationTracking();
+        mainHandler.removeCallbacks(drainRunnable);
+        mainHandler.removeCallbacks(telemetryDumpRunnable);
+        // Pending fixes stay on disk and are replayed on the next start
+        queueExecutor.shutdown();
         super.onDestroy();
     }
     
@@ -213,6 +289,9 @@ public class PatientLocationService extends Service {
         
         isTracking = true;
         
+        // History is capped by a periodic job rather than after every upload
+        LocationHistoryTrimScheduler.schedule(getApplicationContext());
+        
         // Request location updates
         try {
             fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
@@ -221,6 +300,16 @@ public class PatientLocationService extends Service {
             // Reset retry delay on successful start
             currentRetryDelay = INITIAL_RETRY_DELAY_MS;
             consecutiveFailures = 0;
+            retryPending = false;
+            mainHandler.removeCallbacks(drainRunnable);
+            
+            // Replay anything left over from before a crash or reboot
+            drainPendingQueue();
+            
+            mainHandler.removeCallbacks(telemetryDumpRunnable);
+            mainHandler.postDelayed(telemetryDumpRunnable, LocationConfig.TELEMETRY_DUMP_INTERVAL_MS);
+            
+            startGeofenceListener();
             
             // Start test mode periodic updates if enabled
             if (LocationConfig.TEST_MODE && testModeLocationUpdater != null) {
@@ -245,6 +334,12 @@ public class PatientLocationService extends Service {
         
         Log.d(TAG, "Stopping location tracking");
         isTracking = false;
+        pipeline.reset();
+        lastFixReceivedTime = 0;
+        
+        // Keep the tail of the session in the log
+        mainHandler.removeCallbacks(telemetryDumpRunnable);
+        dumpTelemetry();
         
         // Stop test mode updates
         if (LocationConfig.TEST_MODE && testModeHandler != null && testModeLocationUpdater != null) {
@@ -256,6 +351,10 @@ public class PatientLocationService extends Service {
         if (fusedLocationClient != null) {
             fusedLocationClient.removeLocationUpdates(locationCallback);
         }
+        stopGeofenceListener();
+        
+        // Restarting tracking schedules it again
+        LocationHistoryTrimScheduler.cancel(getApplicationContext());
         
         // Remove from Firebase (optional - for privacy)
         if (isLocationSharingEnabled()) {
@@ -298,6 +397,7 @@ public class PatientLocationService extends Service {
     
     /**
      * Setup location request parameters
+     * The configured interval and displacement are the base values for the adaptive sampling policy
      */
     private void setupLocationRequest() {
         long intervalMillis = prefs.getLong("location_interval_millis", LocationConfig.DEFAULT_LOCATION_INTERVAL_MS);
@@ -306,12 +406,9 @@ public class PatientLocationService extends Service {
         // Use effective intervals from config (TEST_MODE gives 10 seconds)
         long effectiveInterval = LocationConfig.getEffectiveUploadInterval(intervalMillis);
         
-        locationRequest = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, effectiveInterval)
-                .setMinUpdateIntervalMillis(effectiveInterval / 2) // Allow faster updates
-                .setMinUpdateDistanceMeters(displacementMeters) // 0 in test mode
-                .setMaxUpdateDelayMillis(effectiveInterval * 2) // Double the interval for max delay
-                .setWaitForAccurateLocation(false) // Don't wait indefinitely for high accuracy
-                .build();
+        samplingPolicy = new AdaptiveSamplingPolicy(effectiveInterval, displacementMeters);
+        pipeline.setSamplingPolicy(samplingPolicy);
+        locationRequest = buildLocationRequest(effectiveInterval, displacementMeters);
         
         Log.i(TAG, "Location request configured: interval=" + effectiveInterval + "ms, displacement=" + displacementMeters + "m, priority=HIGH_ACCURACY");
         
@@ -320,6 +417,130 @@ public class PatientLocationService extends Service {
         }
     }
     
+    private LocationRequest buildLocationRequest(long intervalMillis, float displacementMeters) {
+        return new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, intervalMillis)
+                .setMinUpdateIntervalMillis(intervalMillis / 2) // Allow faster updates
+                .setMinUpdateDistanceMeters(displacementMeters) // 0 in test mode
+                .setMaxUpdateDelayMillis(intervalMillis * 2) // Double the interval for max delay
+                .setWaitForAccurateLocation(false) // Don't wait indefinitely for high accuracy
+                .build();
+    }
+    
+    /**
+     * Re-request location updates with the interval chosen by the adaptive sampling policy
+     * Requesting again with the same callback replaces the previous request
+     */
+    private void applyAdaptiveLocationRequest() {
+        long interval = samplingPolicy.getIntervalMs();
+        float displacement = samplingPolicy.getMinDisplacementMeters();
+        locationRequest = buildLocationRequest(interval, displacement);
+        
+        String diagnostics = samplingPolicy.describe();
+        prefs.edit().putString("adaptive_sampling_state", diagnostics).apply();
+        Log.i(TAG, "Adaptive sampling changed: " + diagnostics);
+        
+        if (!isTracking || !hasLocationPermissions()) {
+            return;
+        }
+        try {
+            fusedLocationClient.requestLocationUpdates(locationRequest, locationCallback, Looper.getMainLooper());
+        } catch (SecurityException e) {
+            Log.e(TAG, "Security exception updating location request", e);
+        }
+    }
+    
+    /**
+     * Keep the sampling policy's geofences in sync so it can widen at home and tighten near fence edges
+     */
+    private void startGeofenceListener() {
+        if (currentPatientId == null || geofenceListener != null) {
+            return;
+        }
+        
+        virtualGeofenceManager = new VirtualGeofenceManager(this::onVirtualGeofenceTransition);
+        breachPredictor = new GeofenceBreachPredictor(this::onBreachPredicted);
+        pipeline.setGeofenceEvaluators(virtualGeofenceManager, breachPredictor);
+        geofenceAlertClient = new PatientGeofenceClient(getApplicationContext(), currentPatientId);
+        
+        geofenceListener = new ValueEventListener() {
+            @Override
+            public void onDataChange(@NonNull DataSnapshot snapshot) {
+                List<GeofenceDefinition> definitions = new ArrayList<>();
+                for (DataSnapshot child : snapshot.getChildren()) {
+                    try {
+                        Map<String, Object> data = (Map<String, Object>) child.getValue();
+                        GeofenceDefinition definition = GeofenceDefinition.fromFirebase(data);
+                        if (definition.isValid()) {
+                            definitions.add(definition);
+                        }
+                    } catch (Exception e) {
+                        Log.w(TAG, "Skipping unparseable geofence " + child.getKey(), e);
+                    }
+                }
+                samplingPolicy.setGeofences(definitions);
+                virtualGeofenceManager.setGeofences(definitions);
+                breachPredictor.setGeofences(definitions);
+                Log.d(TAG, "Adaptive sampling and virtual geofencing using " + definitions.size() + " geofence(s)");
+            }
+            
+            @Override
+            public void onCancelled(@NonNull DatabaseError error) {
+                Log.w(TAG, "Geofence listener cancelled", error.toException());
+            }
+        };
+        realtimeDb.getReference("patients").child(currentPatientId).child("geofences")
+                .addValueEventListener(geofenceListener);
+    }
+    
+    private void stopGeofenceListener() {
+        if (geofenceListener != null && currentPatientId != null) {
+            realtimeDb.getReference("patients").child(currentPatientId).child("geofences")
+                    .removeEventListener(geofenceListener);
+        }
+        geofenceListener = null;
+        pipeline.setGeofenceEvaluators(null, null);
+        virtualGeofenceManager = null;
+        breachPredictor = null;
+        geofenceAlertClient = null;
+    }
+    
+    /**
+     * Forward a transition from the on-device evaluator as a geofence alert
+     */
+    private void onVirtualGeofenceTransition(VirtualGeofenceManager.TransitionEvent event) {
+        Log.i(TAG, "Virtual geofence transition: " + event);
+        if (geofenceAlertClient == null) {
+            return;
+        }
+        
+        int transitionType;
+        switch (event.transition) {
+            case ENTER:
+                transitionType = Geofence.GEOFENCE_TRANSITION_ENTER;
+                break;
+            case EXIT:
+                transitionType = Geofence.GEOFENCE_TRANSITION_EXIT;
+                break;
+            default:
+                transitionType = Geofence.GEOFENCE_TRANSITION_DWELL;
+                break;
+        }
+        geofenceAlertClient.handleVirtualTransition(event.geofence, transitionType, event.latitude, event.longitude,
+                event.timestamp);
+    }
+    
+    /**
+     * Warn caretakers that the patient is heading out of a safe zone before the exit fires
+     */
+    private void onBreachPredicted(GeofenceBreachPredictor.Prediction prediction) {
+        Log.i(TAG, "Geofence exit predicted: " + prediction);
+        if (geofenceAlertClient == null) {
+            return;
+        }
+        geofenceAlertClient.handlePredictedExit(prediction.geofence, prediction.timeToExitMs,
+                prediction.latitude, prediction.longitude);
+    }
+    
     /**
      * Setup test mode periodic location updater for reliable emulator testing
      */
@@ -375,6 +596,8 @@ public class PatientLocationService extends Service {
             public void onLocationResult(@NonNull LocationResult locationResult) {
                 super.onLocationResult(locationResult);
                 
+                telemetry.increment(LocationTelemetry.Counter.WAKEUPS);
+                
                 Location location = locationResult.getLastLocation();
                 if (location != null) {
                     // Update last location update timestamp for verification
@@ -401,20 +624,45 @@ public class PatientLocationService extends Service {
     /**
      * Process new location and upload to Firebase if necessary
      */
-    private void processLocation(Location location, boolean forceUpload) {
-        if (location == null) return;
+    private void processLocation(Location rawLocation, boolean forceUpload) {
+        if (rawLocation == null) return;
+        
+        long currentTime = System.currentTimeMillis();
+        telemetry.increment(LocationTelemetry.Counter.FIXES_RECEIVED);
+        telemetry.record(LocationTelemetry.Histogram.FIX_ACCURACY_METERS, Math.round(rawLocation.getAccuracy()));
+        if (lastFixReceivedTime > 0) {
+            telemetry.record(LocationTelemetry.Histogram.FIX_INTERVAL_MS, currentTime - lastFixReceivedTime);
+        }
+        lastFixReceivedTime = currentTime;
+        
+        LocationPipeline.Decision decision = pipeline.process(rawLocation.getLatitude(), rawLocation.getLongitude(),
+                rawLocation.getAccuracy(), rawLocation.getTime(), currentTime, forceUpload);
+        LocationFixFilter.FilteredFix fix = decision.fix;
+        if (fix == null) {
+            Log.d(TAG, "🚫 Dropping fix (" + decision.rejection + "): accuracy " + rawLocation.getAccuracy() + "m");
+            telemetry.recordRejection(decision.rejection);
+            return;
+        }
+        telemetry.increment(LocationTelemetry.Counter.FIXES_ACCEPTED);
+        
+        // Downstream consumers and the upload use the smoothed position
+        Location location = new Location(rawLocation);
+        location.setLatitude(fix.latitude);
+        location.setLongitude(fix.longitude);
+        location.setAccuracy(fix.accuracy);
         
         lastKnownLocation = location;
         
-        // Check if we should upload this location
-        long currentTime = System.currentTimeMillis();
-        long timeSinceLastUpload = currentTime - lastUploadTime;
-        long minInterval = LocationConfig.getEffectiveUploadInterval(
-            prefs.getLong("location_interval_millis", LocationConfig.DEFAULT_LOCATION_INTERVAL_MS)
-        );
+        // The sampling policy widened or tightened the request based on recent motion
+        if (decision.samplingChanged) {
+            telemetry.increment(LocationTelemetry.Counter.SAMPLING_CHANGES);
+            applyAdaptiveLocationRequest();
+        }
         
-        if (!forceUpload && timeSinceLastUpload < minInterval) {
-            Log.d(TAG, "Skipping upload - too soon since last upload (" + timeSinceLastUpload + "ms < " + minInterval + "ms)");
+        // Every fix was checked against the fences, including ones that are not uploaded
+        if (!decision.upload) {
+            Log.d(TAG, "Skipping upload - too soon since last upload (" + decision.sinceLastUploadMs + "ms < "
+                    + decision.minIntervalMs + "ms)");
             return;
         }
         
@@ -429,73 +677,182 @@ public class PatientLocationService extends Service {
                 location.isFromMockProvider()
         );
         
-        // Upload to Firebase
-        uploadLocationToFirebase(locationEntity);
+        // Persist first, then let the single uploader drain the queue
+        telemetry.increment(LocationTelemetry.Counter.FIXES_QUEUED);
+        enqueueLocation(locationEntity);
         
         // Update notification with current location info
         updateTrackingNotification(location);
     }
     
     /**
-     * Upload location to Firebase using LocationUploader with error handling
+     * Append a fix to the durable queue and kick the uploader
+     * Falls back to a direct upload if the queue could not be opened
      */
-    private void uploadLocationToFirebase(LocationEntity locationEntity) {
-        if (currentPatientId == null) {
-            Log.e(TAG, "No patient ID available for upload");
+    private void enqueueLocation(LocationEntity locationEntity) {
+        if (pendingQueue == null) {
+            uploadBatch(null, Collections.singletonList(locationEntity));
             return;
         }
         
-        Log.d(TAG, "Uploading location to Firebase using LocationUploader");
+        runOnQueueThread(() -> {
+            try {
+                pendingQueue.append(locationEntity);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to persist location, uploading directly", e);
+                mainHandler.post(() -> uploadBatch(null, Collections.singletonList(locationEntity)));
+                return;
+            }
+            mainHandler.post(this::drainPendingQueue);
+        });
+    }
+    
+    /**
+     * Upload the oldest pending fixes in timestamp order
+     * Only one drain runs at a time; it keeps going until the queue is empty or an upload fails,
+     * and after a failure nothing drains until the retry timer fires
+     */
+    private void drainPendingQueue() {
+        if (isDraining || retryPending || pendingQueue == null || currentPatientId == null) {
+            return;
+        }
         
-        // Convert LocationEntity to Location for LocationUploader
-        Location location = new Location("fused");
-        location.setLatitude(locationEntity.latitude);
-        location.setLongitude(locationEntity.longitude);
-        location.setTime(locationEntity.timestamp);
-        location.setAccuracy(locationEntity.accuracy);
-        if (locationEntity.provider != null) {
-            location.setProvider(locationEntity.provider);
+        isDraining = true;
+        
+        runOnQueueThread(() -> {
+            PendingLocationQueue.Batch batch;
+            try {
+                batch = pendingQueue.peek(MAX_UPLOAD_BATCH_SIZE);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to read pending location queue", e);
+                mainHandler.post(() -> isDraining = false);
+                return;
+            }
+            mainHandler.post(() -> {
+                if (batch.isEmpty()) {
+                    isDraining = false;
+                    return;
+                }
+                
+                List<LocationEntity> entities = new ArrayList<>();
+                for (LocationEntity entity : batch.entities) {
+                    // Fixes recorded under a previous account cannot be written with this one
+                    if (entity.patientId == null || entity.patientId.equals(currentPatientId)) {
+                        entities.add(entity);
+                    }
+                }
+                if (entities.isEmpty()) {
+                    commitBatch(batch);
+                    return;
+                }
+                uploadBatch(batch, entities);
+            });
+        });
+    }
+    
+    /**
+     * Upload a batch with LocationUploader; {@code batch} is null for fixes that bypassed the queue
+     */
+    private void uploadBatch(@Nullable PendingLocationQueue.Batch batch, List<LocationEntity> entities) {
+        if (currentPatientId == null) {
+            Log.e(TAG, "No patient ID available for upload");
+            if (batch != null) {
+                isDraining = false;
+            }
+            return;
         }
         
-        locationUploader.uploadCurrentLocation(currentPatientId, location, new LocationUploader.UploadCallback() {
+        Log.d(TAG, "Uploading " + entities.size() + " location(s) to Firebase using LocationUploader");
+        
+        // Latest location and history entries go out as one multi-path write
+        locationUploader.uploadLocations(currentPatientId, entities, new LocationUploader.UploadCallback() {
             @Override
             public void onSuccess() {
-                Log.d(TAG, "Location uploaded successfully via LocationUploader");
-                lastUploadTime = System.currentTimeMillis();
+                Log.d(TAG, "Location batch uploaded successfully via LocationUploader");
                 
                 // Reset retry delay on success
                 currentRetryDelay = INITIAL_RETRY_DELAY_MS;
                 consecutiveFailures = 0;
+                
+                if (batch != null) {
+                    commitBatch(batch);
+                }
             }
             
             @Override
             public void onError(String error) {
                 Log.e(TAG, "Failed to upload location via LocationUploader: " + error);
-                handleUploadFailure(locationEntity);
+                if (batch != null) {
+                    isDraining = false;
+                }
+                handleUploadFailure();
             }
         });
     }
     
-
+    /**
+     * Drop an uploaded batch from the queue and continue draining
+     */
+    private void commitBatch(PendingLocationQueue.Batch batch) {
+        runOnQueueThread(() -> {
+            try {
+                pendingQueue.commit(batch);
+            } catch (IOException e) {
+                // The batch will be uploaded again; history tolerates the duplicate
+                Log.e(TAG, "Failed to commit uploaded locations", e);
+            }
+            mainHandler.post(() -> {
+                isDraining = false;
+                drainPendingQueue();
+            });
+        });
+    }
     
     /**
-     * Handle upload failure with exponential backoff retry
+     * Run queue file I/O off the main thread; ignored once the service is destroyed
      */
-    private void handleUploadFailure(LocationEntity locationEntity) {
+    private void runOnQueueThread(Runnable task) {
+        if (!queueExecutor.isShutdown()) {
+            queueExecutor.execute(task);
+        }
+    }
+    
+    /**
+     * Handle upload failure with bounded exponential backoff
+     * At most one retry is pending at a time; it drains the queue in timestamp order
+     */
+    private void handleUploadFailure() {
         consecutiveFailures++;
+        telemetry.increment(LocationTelemetry.Counter.UPLOAD_RETRIES);
+        telemetry.record(LocationTelemetry.Histogram.RETRY_DELAY_MS, currentRetryDelay);
         
         Log.w(TAG, "Upload failed, scheduling retry #" + consecutiveFailures + " in " + currentRetryDelay + "ms");
         
-        // Schedule retry with exponential backoff
-        mainHandler.postDelayed(() -> {
-            Log.d(TAG, "Retrying location upload after " + currentRetryDelay + "ms delay");
-            uploadLocationToFirebase(locationEntity);
-        }, currentRetryDelay);
+        retryPending = true;
+        mainHandler.removeCallbacks(drainRunnable);
+        mainHandler.postDelayed(drainRunnable, currentRetryDelay);
         
         // Increase delay for next retry (exponential backoff)
         currentRetryDelay = Math.min(currentRetryDelay * 2, MAX_RETRY_DELAY_MS);
     }
     
+    /**
+     * Append the current telemetry snapshot to the rolling log, off the main thread
+     */
+    private void dumpTelemetry() {
+        if (telemetryLog == null) {
+            return;
+        }
+        String line = telemetry.snapshot().toLogLine();
+        runOnQueueThread(() -> {
+            try {
+                telemetryLog.append(line);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write telemetry log", e);
+            }
+        });
+    }
+    
     /**
      * Remove current location from Firebase (for privacy when stopping tracking)
      */
@@ -592,9 +949,13 @@ public class PatientLocationService extends Service {
                 new SimpleDateFormat("HH:mm:ss", Locale.getDefault()).format(new Date()),
                 location.getAccuracy());
         
+        // Expanded view shows what tracking has cost so far
+        String costText = telemetry.snapshot().toNotificationText();
+        
         Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setContentTitle("Location Sharing Active")
                 .setContentText(locationText)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(locationText + "\n" + costText))
                 .setSmallIcon(R.drawable.ic_notification)
                 .setOngoing(true)
                 .setSilent(true)
@@ -0,0 +1,268 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import com.mihir.alzheimerscaregiver.entities.LocationEntity;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Append-only on-disk queue of location fixes that have not reached Firebase yet
+ *
+ * Layout:
+ * - {name}.bin holds length-prefixed binary records, appended and fsynced one fix at a time
+ * - {name}.head holds the byte offset of the first record that has not been committed
+ *
+ * A torn record at the tail (process killed mid-write) is truncated away on open.
+ * Once every record has been committed both files are reset, so the log never grows
+ * beyond the backlog of a single offline period.
+ */
+public class PendingLocationQueue {
+
+    private static final int RECORD_VERSION = 1;
+
+    private final File dataFile;
+    private final File headFile;
+    private long headOffset;
+    private int size;
+
+    /**
+     * A contiguous run of records read from the head of the queue
+     * Entities are sorted by timestamp; commit() releases exactly this run.
+     */
+    public static class Batch {
+        public final List<LocationEntity> entities;
+        final long endOffset;
+
+        Batch(List<LocationEntity> entities, long endOffset) {
+            this.entities = entities;
+            this.endOffset = endOffset;
+        }
+
+        public boolean isEmpty() {
+            return entities.isEmpty();
+        }
+    }
+
+    public PendingLocationQueue(File directory, String name) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create queue directory: " + directory);
+        }
+        this.dataFile = new File(directory, name + ".bin");
+        this.headFile = new File(directory, name + ".head");
+        recover();
+    }
+
+    /**
+     * Append a fix and flush it to disk before returning
+     */
+    public synchronized void append(LocationEntity entity) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeByte(RECORD_VERSION);
+        record.writeUTF(entity.patientId != null ? entity.patientId : "");
+        record.writeDouble(entity.latitude);
+        record.writeDouble(entity.longitude);
+        record.writeLong(entity.timestamp);
+        record.writeFloat(entity.accuracy);
+        record.writeUTF(entity.provider != null ? entity.provider : "");
+        record.writeBoolean(entity.isMockLocation);
+        record.flush();
+
+        try (FileOutputStream out = new FileOutputStream(dataFile, true)) {
+            DataOutputStream framed = new DataOutputStream(out);
+            framed.writeShort(buffer.size());
+            buffer.writeTo(framed);
+            framed.flush();
+            out.getFD().sync();
+        }
+        size++;
+    }
+
+    /**
+     * Read up to {@code maxRecords} fixes from the head without removing them
+     */
+    public synchronized Batch peek(int maxRecords) throws IOException {
+        List<LocationEntity> entities = new ArrayList<>();
+        long offset = headOffset;
+
+        if (dataFile.exists() && offset < dataFile.length()) {
+            try (DataInputStream in = openAt(offset)) {
+                while (entities.size() < maxRecords) {
+                    int length;
+                    try {
+                        length = in.readUnsignedShort();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    entities.add(decode(payload));
+                    offset += 2 + length;
+                }
+            }
+        }
+
+        Collections.sort(entities, new Comparator<LocationEntity>() {
+            @Override
+            public int compare(LocationEntity a, LocationEntity b) {
+                return Long.compare(a.timestamp, b.timestamp);
+            }
+        });
+        return new Batch(entities, offset);
+    }
+
+    /**
+     * Release a batch previously returned by peek() after it has been uploaded
+     */
+    public synchronized void commit(Batch batch) throws IOException {
+        if (batch.endOffset <= headOffset) {
+            return;
+        }
+
+        headOffset = batch.endOffset;
+        size = Math.max(0, size - batch.entities.size());
+
+        if (headOffset >= dataFile.length()) {
+            // Fully drained: reset instead of letting the log grow forever
+            reset();
+        } else {
+            writeHead();
+        }
+    }
+
+    /**
+     * Number of fixes waiting to be uploaded
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void recover() throws IOException {
+        headOffset = 0;
+        size = 0;
+
+        if (headFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(headFile))) {
+                headOffset = in.readLong();
+            } catch (EOFException e) {
+                headOffset = 0;
+            }
+        }
+
+        if (!dataFile.exists()) {
+            // A head left without its data would point into the next log's records
+            reset();
+            return;
+        }
+
+        long fileLength = dataFile.length();
+        if (headOffset > fileLength) {
+            headOffset = 0;
+        }
+
+        // Walk the records after the head, stopping at the first torn one
+        long validEnd = headOffset;
+        try (DataInputStream in = openAt(headOffset)) {
+            while (true) {
+                int length = in.readUnsignedShort();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                decode(payload);
+                validEnd += 2 + length;
+                size++;
+            }
+        } catch (EOFException e) {
+            // Reached the end, possibly in the middle of a record
+        } catch (IOException e) {
+            // Unreadable payload: keep everything before it
+        }
+
+        if (validEnd < fileLength) {
+            try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+                raf.setLength(validEnd);
+            }
+        }
+
+        if (size == 0) {
+            reset();
+        }
+    }
+
+    private void reset() throws IOException {
+        headOffset = 0;
+        size = 0;
+        // Head first: a crash in between then replays committed fixes rather than leaving a
+        // head that points past the start of the next log
+        if (headFile.exists() && !headFile.delete()) {
+            writeHead();
+        }
+        if (dataFile.exists() && !dataFile.delete()) {
+            try (RandomAccessFile raf = new RandomAccessFile(dataFile, "rw")) {
+                raf.setLength(0);
+            }
+        }
+    }
+
+    private void writeHead() throws IOException {
+        File temp = new File(headFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeLong(headOffset);
+            data.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(headFile)) {
+            throw new IOException("Failed to update queue head");
+        }
+    }
+
+    private DataInputStream openAt(long offset) throws IOException {
+        FileInputStream in = new FileInputStream(dataFile);
+        long skipped = 0;
+        while (skipped < offset) {
+            long step = in.skip(offset - skipped);
+            if (step <= 0) {
+                break;
+            }
+            skipped += step;
+        }
+        return new DataInputStream(new BufferedInputStream(in));
+    }
+
+    private static LocationEntity decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int version = in.readUnsignedByte();
+        if (version != RECORD_VERSION) {
+            throw new IOException("Unknown queue record version: " + version);
+        }
+
+        LocationEntity entity = new LocationEntity();
+        String patientId = in.readUTF();
+        entity.patientId = patientId.isEmpty() ? null : patientId;
+        entity.latitude = in.readDouble();
+        entity.longitude = in.readDouble();
+        entity.timestamp = in.readLong();
+        entity.accuracy = in.readFloat();
+        String provider = in.readUTF();
+        entity.provider = provider.isEmpty() ? null : provider;
+        entity.isMockLocation = in.readBoolean();
+        return entity;
+    }
+}
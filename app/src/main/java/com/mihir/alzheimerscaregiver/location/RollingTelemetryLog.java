@@ -0,0 +1,114 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Size-capped text log of LocationTelemetry snapshots, one line each
+ *
+ * Layout: {name}.log is written to; when the next line would push it past maxBytes it is
+ * renamed to {name}.1.log, the previous .1 becomes .2, and so on up to maxFiles files in
+ * total. The oldest file is deleted, so the log never uses more than about maxBytes * maxFiles.
+ */
+public class RollingTelemetryLog {
+
+    private final File directory;
+    private final String name;
+    private final long maxBytes;
+    private final int maxFiles;
+
+    public RollingTelemetryLog(File directory, String name, long maxBytes, int maxFiles) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Cannot create telemetry directory: " + directory);
+        }
+        this.directory = directory;
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    /**
+     * Append one line, rolling the files over first if it does not fit
+     */
+    public synchronized void append(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        File current = file(0);
+        if (current.length() > 0 && current.length() + bytes.length > maxBytes) {
+            rotate();
+        }
+        try (FileOutputStream out = new FileOutputStream(current, true)) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Every retained line, oldest first
+     */
+    public synchronized List<String> readAll() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int index = maxFiles - 1; index >= 0; index--) {
+            File file = file(index);
+            if (!file.exists()) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Files currently on disk, newest first, e.g. for sharing from the debug screen
+     */
+    public synchronized List<File> getFiles() {
+        List<File> files = new ArrayList<>();
+        for (int index = 0; index < maxFiles; index++) {
+            File file = file(index);
+            if (file.exists()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Write every retained line into one stream, oldest first
+     */
+    public void copyTo(Writer writer) throws IOException {
+        for (String line : readAll()) {
+            writer.write(line);
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private void rotate() throws IOException {
+        File oldest = file(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Cannot delete " + oldest);
+        }
+        for (int index = maxFiles - 2; index >= 0; index--) {
+            File from = file(index);
+            if (from.exists() && !from.renameTo(file(index + 1))) {
+                throw new IOException("Cannot rename " + from);
+            }
+        }
+    }
+
+    private File file(int index) {
+        return new File(directory, index == 0 ? name + ".log" : name + "." + index + ".log");
+    }
+}
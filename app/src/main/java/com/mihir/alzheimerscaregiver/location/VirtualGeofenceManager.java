@@ -0,0 +1,304 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-device geofence evaluator fed by PatientLocationService with every fix
+ *
+ * Complements the Play Services geofences registered by PatientGeofenceClient:
+ * - Fences are bucketed by geohash cell, so a fix is only tested against the
+ *   fences whose (radius + hysteresis) circle overlaps the fix's cell
+ * - Enter/exit use a hysteresis band around the radius that widens with the
+ *   fix accuracy, so GPS jitter along the edge does not flap between states
+ * - DWELL fires once after staying inside for the configured time
+ *
+ * The first fix after a fence is added only establishes its state; it does not
+ * raise ENTER/EXIT, matching the initial-trigger-off behaviour of the platform API.
+ */
+public class VirtualGeofenceManager {
+
+    public enum Transition {
+        ENTER,
+        EXIT,
+        DWELL
+    }
+
+    public enum FenceState {
+        UNKNOWN,
+        INSIDE,
+        OUTSIDE
+    }
+
+    /**
+     * A transition detected for one fence on one fix
+     */
+    public static class TransitionEvent {
+        public final GeofenceDefinition geofence;
+        public final Transition transition;
+        public final double latitude;
+        public final double longitude;
+        public final long timestamp;
+        public final double distanceMeters;
+
+        TransitionEvent(GeofenceDefinition geofence, Transition transition,
+                        double latitude, double longitude, long timestamp, double distanceMeters) {
+            this.geofence = geofence;
+            this.transition = transition;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.timestamp = timestamp;
+            this.distanceMeters = distanceMeters;
+        }
+
+        @Override
+        public String toString() {
+            return transition + " " + geofence.id + " @" + timestamp +
+                    " (" + Math.round(distanceMeters) + "m from center)";
+        }
+    }
+
+    public interface TransitionListener {
+        void onTransition(TransitionEvent event);
+    }
+
+    // ~1.2 km x 0.6 km cells; fences are at most 500 m so each covers only a handful of cells
+    static final int INDEX_PRECISION = 6;
+
+    // Hysteresis band on each side of the radius: accuracy-driven, clamped to this range
+    private static final double MIN_HYSTERESIS_METERS = 10.0;
+    private static final double MAX_HYSTERESIS_METERS = 50.0;
+
+    // Fixes worse than this are ignored entirely
+    private static final float MAX_FIX_ACCURACY_METERS = LocationConfig.MAX_ACCURACY_METERS;
+
+    public static final long DEFAULT_DWELL_MS = 5 * 60 * 1000; // 5 minutes
+
+    private static class FenceEntry {
+        final GeofenceDefinition definition;
+        FenceState state = FenceState.UNKNOWN;
+        long insideSince;
+        boolean dwellReported;
+
+        FenceEntry(GeofenceDefinition definition) {
+            this.definition = definition;
+        }
+    }
+
+    private final long dwellMs;
+    private final TransitionListener listener;
+
+    private final Map<String, FenceEntry> fences = new LinkedHashMap<>();
+    private final Map<String, List<FenceEntry>> cellIndex = new HashMap<>();
+    // Fences that must be evaluated on every fix regardless of the cell lookup
+    private final Set<FenceEntry> insideFences = new HashSet<>();
+    private final Set<FenceEntry> unknownFences = new HashSet<>();
+
+    private long evaluatedFixes;
+    private long candidateChecks;
+
+    public VirtualGeofenceManager(TransitionListener listener) {
+        this(DEFAULT_DWELL_MS, listener);
+    }
+
+    public VirtualGeofenceManager(long dwellMs, TransitionListener listener) {
+        this.dwellMs = dwellMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Replace the monitored fences
+     * State is kept for fences whose id, center and radius are unchanged.
+     */
+    public synchronized void setGeofences(Collection<GeofenceDefinition> definitions) {
+        Map<String, FenceEntry> previous = new HashMap<>(fences);
+        fences.clear();
+        cellIndex.clear();
+        insideFences.clear();
+        unknownFences.clear();
+
+        if (definitions == null) {
+            return;
+        }
+
+        for (GeofenceDefinition definition : definitions) {
+            if (definition == null || definition.id == null || !definition.active || definition.radius <= 0) {
+                continue;
+            }
+
+            FenceEntry entry = new FenceEntry(definition);
+            FenceEntry old = previous.get(definition.id);
+            if (old != null && sameGeometry(old.definition, definition)) {
+                entry.state = old.state;
+                entry.insideSince = old.insideSince;
+                entry.dwellReported = old.dwellReported;
+            }
+
+            fences.put(definition.id, entry);
+            if (entry.state == FenceState.INSIDE) {
+                insideFences.add(entry);
+            } else if (entry.state == FenceState.UNKNOWN) {
+                unknownFences.add(entry);
+            }
+
+            double indexRadius = definition.radius + MAX_HYSTERESIS_METERS;
+            for (String cell : Geohash.coverCircle(definition.lat, definition.lng, indexRadius, INDEX_PRECISION)) {
+                List<FenceEntry> bucket = cellIndex.get(cell);
+                if (bucket == null) {
+                    bucket = new ArrayList<>(2);
+                    cellIndex.put(cell, bucket);
+                }
+                bucket.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Evaluate a fix against every fence near it
+     *
+     * @return Transitions raised by this fix (also delivered to the listener)
+     */
+    public synchronized List<TransitionEvent> onFix(double latitude, double longitude, float accuracy, long timestamp) {
+        if (fences.isEmpty() || accuracy > MAX_FIX_ACCURACY_METERS) {
+            return Collections.emptyList();
+        }
+        evaluatedFixes++;
+
+        double hysteresis = Math.max(MIN_HYSTERESIS_METERS, Math.min(MAX_HYSTERESIS_METERS, accuracy));
+        List<TransitionEvent> events = null;
+
+        List<FenceEntry> bucket = cellIndex.get(Geohash.encode(latitude, longitude, INDEX_PRECISION));
+        Set<FenceEntry> visited = null;
+        if (bucket != null) {
+            visited = new HashSet<>(bucket.size() * 2);
+            for (FenceEntry entry : bucket) {
+                visited.add(entry);
+                events = evaluate(entry, latitude, longitude, hysteresis, timestamp, events);
+            }
+        }
+
+        // A fence we are inside but whose cells we left entirely has clearly been exited
+        if (!insideFences.isEmpty()) {
+            for (FenceEntry entry : new ArrayList<>(insideFences)) {
+                if (visited == null || !visited.contains(entry)) {
+                    events = evaluate(entry, latitude, longitude, hysteresis, timestamp, events);
+                }
+            }
+        }
+
+        // Fences never seen before that are nowhere near this fix start out OUTSIDE
+        if (!unknownFences.isEmpty()) {
+            for (FenceEntry entry : new ArrayList<>(unknownFences)) {
+                if (visited == null || !visited.contains(entry)) {
+                    entry.state = FenceState.OUTSIDE;
+                    unknownFences.remove(entry);
+                }
+            }
+        }
+
+        if (events == null) {
+            return Collections.emptyList();
+        }
+        if (listener != null) {
+            for (TransitionEvent event : events) {
+                listener.onTransition(event);
+            }
+        }
+        return events;
+    }
+
+    private List<TransitionEvent> evaluate(FenceEntry entry, double latitude, double longitude,
+                                           double hysteresis, long timestamp, List<TransitionEvent> events) {
+        candidateChecks++;
+        GeofenceDefinition fence = entry.definition;
+        double distance = GeoUtils.distanceMeters(latitude, longitude, fence.lat, fence.lng);
+
+        // Inside the band neither side is certain, so keep the current state
+        boolean clearlyInside = distance <= fence.radius - hysteresis;
+        boolean clearlyOutside = distance >= fence.radius + hysteresis;
+
+        switch (entry.state) {
+            case UNKNOWN:
+                if (distance <= fence.radius) {
+                    markInside(entry, timestamp);
+                } else {
+                    entry.state = FenceState.OUTSIDE;
+                }
+                unknownFences.remove(entry);
+                break;
+
+            case OUTSIDE:
+                if (clearlyInside) {
+                    markInside(entry, timestamp);
+                    events = add(events, new TransitionEvent(fence, Transition.ENTER, latitude, longitude, timestamp, distance));
+                }
+                break;
+
+            case INSIDE:
+                if (clearlyOutside) {
+                    entry.state = FenceState.OUTSIDE;
+                    insideFences.remove(entry);
+                    events = add(events, new TransitionEvent(fence, Transition.EXIT, latitude, longitude, timestamp, distance));
+                } else if (!entry.dwellReported && timestamp - entry.insideSince >= dwellMs) {
+                    entry.dwellReported = true;
+                    events = add(events, new TransitionEvent(fence, Transition.DWELL, latitude, longitude, timestamp, distance));
+                }
+                break;
+        }
+        return events;
+    }
+
+    private void markInside(FenceEntry entry, long timestamp) {
+        entry.state = FenceState.INSIDE;
+        entry.insideSince = timestamp;
+        entry.dwellReported = false;
+        insideFences.add(entry);
+    }
+
+    private static List<TransitionEvent> add(List<TransitionEvent> events, TransitionEvent event) {
+        if (events == null) {
+            events = new ArrayList<>(2);
+        }
+        events.add(event);
+        return events;
+    }
+
+    private static boolean sameGeometry(GeofenceDefinition a, GeofenceDefinition b) {
+        return a.lat == b.lat && a.lng == b.lng && a.radius == b.radius;
+    }
+
+    /**
+     * Current state of a fence, or null if it is not monitored
+     */
+    public synchronized FenceState getState(String geofenceId) {
+        FenceEntry entry = fences.get(geofenceId);
+        return entry != null ? entry.state : null;
+    }
+
+    public synchronized int getGeofenceCount() {
+        return fences.size();
+    }
+
+    /**
+     * Number of occupied index cells
+     */
+    public synchronized int getIndexedCellCount() {
+        return cellIndex.size();
+    }
+
+    /**
+     * Average number of distance checks per evaluated fix
+     */
+    public synchronized double getAverageCandidatesPerFix() {
+        return evaluatedFixes == 0 ? 0 : (double) candidateChecks / evaluatedFixes;
+    }
+}
@@ -4,26 +4,19 @@ import android.content.Context;
 import android.util.Log;
 
 import com.mihir.alzheimerscaregiver.BuildConfig;
+import com.mihir.alzheimerscaregiver.gemini.GeminiClient;
+import com.mihir.alzheimerscaregiver.gemini.GeminiRequest;
+import com.mihir.alzheimerscaregiver.gemini.RequestScheduler;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 
 /**
  * Intelligent MMSE Answer Evaluator using Gemini AI
@@ -38,23 +31,11 @@ import okhttp3.Response;
 public class GeminiMMSEEvaluator {
     private static final String TAG = "GeminiMMSEEvaluator";
     
-    // Gemini API Configuration - Updated with newer available models
-    private static final String BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
-    private static final String[] MODEL_NAMES = {
-        
-        "gemini-2.5-flash",          // Recommended: Fast, efficient, multimodal (Active)
-        "gemini-2.5-flash-lite",     // Extremely low cost/latency fallback
-        "gemini-2.5-pro"             // High intelligence for complex reasoning
-    };
-    private static final String GENERATE_ENDPOINT = ":generateContent?key=";
+    // Gemini API Configuration - models and fallback are handled by GeminiClient
     private static final String API_KEY = BuildConfig.GEMINI_API_KEY;
     
     private final Context context;
     private final ExecutorService executorService;
-    private final OkHttpClient httpClient;
-    
-    // Track current model index for fallback
-    private int currentModelIndex = 0;
     
     public interface MMSEEvaluationCallback {
         void onEvaluationComplete(List<AnswerEvaluation> evaluations, int totalScore, String overallFeedback);
@@ -94,12 +75,7 @@ public class GeminiMMSEEvaluator {
     
     public GeminiMMSEEvaluator(Context context) {
         this.context = context;
-        this.executorService = Executors.newCachedThreadPool();
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                .readTimeout(60, java.util.concurrent.TimeUnit.SECONDS)
-                .writeTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                .build();
+        this.executorService = GeminiClient.getInstance().getExecutor();
     }
     
     /**
@@ -140,84 +116,40 @@ public class GeminiMMSEEvaluator {
             
             Log.d(TAG, "Evaluating MMSE answers with Gemini AI");
             
-            // Create request body
-            JSONObject requestBody = new JSONObject();
-            JSONArray contents = new JSONArray();
-            JSONObject content = new JSONObject();
-            JSONArray parts = new JSONArray();
-            JSONObject part = new JSONObject();
-            part.put("text", prompt);
-            parts.put(part);
-            content.put("parts", parts);
-            contents.put(content);
-            requestBody.put("contents", contents);
-            
             // Add generation config for structured output
             JSONObject generationConfig = new JSONObject();
             generationConfig.put("temperature", 0.3); // Lower temperature for consistent evaluation
             generationConfig.put("topK", 20);
             generationConfig.put("topP", 0.8);
             generationConfig.put("maxOutputTokens", 2048);
-            requestBody.put("generationConfig", generationConfig);
             
-            RequestBody body = RequestBody.create(
-                MediaType.parse("application/json"),
-                requestBody.toString()
-            );
+            GeminiRequest request = new GeminiRequest("MMSE evaluation", prompt, API_KEY)
+                    .setPriority(RequestScheduler.Priority.FOREGROUND)
+                    .setGenerationConfig(generationConfig);
             
-            // Build URL with current model
-            String currentModel = MODEL_NAMES[currentModelIndex];
-            String apiUrl = BASE_URL + currentModel + GENERATE_ENDPOINT + API_KEY;
-            
-            Request request = new Request.Builder()
-                    .url(apiUrl)
-                    .addHeader("Content-Type", "application/json")
-                    .post(body)
-                    .build();
-            
-            httpClient.newCall(request).enqueue(new Callback() {
+            GeminiClient.getInstance().generate(request, new GeminiClient.ResponseCallback() {
                 @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Gemini API evaluation call failed", e);
-                    // Fallback to basic evaluation
-                    List<AnswerEvaluation> fallbackEvaluations = performBasicEvaluation(questions, patientAnswers);
-                    int totalScore = calculateTotalScore(fallbackEvaluations);
-                    callback.onEvaluationComplete(fallbackEvaluations, totalScore, "Evaluation completed (basic mode)");
+                public void onSuccess(String generatedText, String model) {
+                    List<AnswerEvaluation> evaluations = parseEvaluationResponse(generatedText, questions, patientAnswers);
+                    
+                    if (evaluations.isEmpty()) {
+                        Log.w(TAG, "No evaluations parsed, using fallback");
+                        evaluations = performBasicEvaluation(questions, patientAnswers);
+                    }
+                    
+                    int totalScore = calculateTotalScore(evaluations);
+                    String overallFeedback = generateOverallFeedback(evaluations, totalScore);
+                    
+                    callback.onEvaluationComplete(evaluations, totalScore, overallFeedback);
                 }
                 
                 @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try {
-                        if (response.isSuccessful() && response.body() != null) {
-                            String responseBody = response.body().string();
-                            List<AnswerEvaluation> evaluations = parseEvaluationResponse(responseBody, questions, patientAnswers);
-                            
-                            if (evaluations.isEmpty()) {
-                                Log.w(TAG, "No evaluations parsed, using fallback");
-                                evaluations = performBasicEvaluation(questions, patientAnswers);
-                            }
-                            
-                            int totalScore = calculateTotalScore(evaluations);
-                            String overallFeedback = generateOverallFeedback(evaluations, totalScore);
-                            
-                            callback.onEvaluationComplete(evaluations, totalScore, overallFeedback);
-                        } else {
-                            String errorBody = response.body() != null ? response.body().string() : "";
-                            Log.e(TAG, "Gemini evaluation API error: " + response.code() + " - " + errorBody);
-                            
-                            // Fallback to basic evaluation
-                            List<AnswerEvaluation> fallbackEvaluations = performBasicEvaluation(questions, patientAnswers);
-                            int totalScore = calculateTotalScore(fallbackEvaluations);
-                            callback.onEvaluationComplete(fallbackEvaluations, totalScore, "Evaluation completed (fallback mode)");
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing evaluation response", e);
-                        callback.onEvaluationFailed("Error processing evaluation: " + e.getMessage());
-                    } finally {
-                        if (response.body() != null) {
-                            response.body().close();
-                        }
-                    }
+                public void onFailure(String error) {
+                    Log.e(TAG, "Gemini API evaluation call failed: " + error);
+                    // Fallback to basic evaluation
+                    List<AnswerEvaluation> fallbackEvaluations = performBasicEvaluation(questions, patientAnswers);
+                    int totalScore = calculateTotalScore(fallbackEvaluations);
+                    callback.onEvaluationComplete(fallbackEvaluations, totalScore, "Evaluation completed (fallback mode)");
                 }
             });
             
@@ -298,65 +230,52 @@ public class GeminiMMSEEvaluator {
     /**
      * Parse Gemini evaluation response
      */
-    private List<AnswerEvaluation> parseEvaluationResponse(String responseBody,
+    private List<AnswerEvaluation> parseEvaluationResponse(String generatedText,
                                                           List<GeminiMMSEGenerator.PersonalizedMMSEQuestion> questions,
                                                           Map<String, String> patientAnswers) {
         List<AnswerEvaluation> evaluations = new ArrayList<>();
         
         try {
-            JSONObject response = new JSONObject(responseBody);
-            JSONArray candidates = response.getJSONArray("candidates");
+            // Clean up the response to extract JSON
+            generatedText = generatedText.trim();
+            if (generatedText.startsWith("```json")) {
+                generatedText = generatedText.substring(7);
+            }
+            if (generatedText.endsWith("```")) {
+                generatedText = generatedText.substring(0, generatedText.length() - 3);
+            }
+            
+            Log.d(TAG, "Evaluation response: " + generatedText.substring(0, Math.min(300, generatedText.length())));
             
-            if (candidates.length() > 0) {
-                JSONObject candidate = candidates.getJSONObject(0);
-                JSONObject content = candidate.getJSONObject("content");
-                JSONArray parts = content.getJSONArray("parts");
+            JSONObject evaluationJson = new JSONObject(generatedText);
+            JSONArray evaluationArray = evaluationJson.getJSONArray("evaluations");
+            
+            // Create map for quick question lookup
+            Map<String, GeminiMMSEGenerator.PersonalizedMMSEQuestion> questionMap = new HashMap<>();
+            for (GeminiMMSEGenerator.PersonalizedMMSEQuestion q : questions) {
+                questionMap.put(q.id, q);
+            }
+            
+            for (int i = 0; i < evaluationArray.length(); i++) {
+                JSONObject evalObj = evaluationArray.getJSONObject(i);
                 
-                if (parts.length() > 0) {
-                    String generatedText = parts.getJSONObject(0).getString("text");
-                    
-                    // Clean up the response to extract JSON
-                    generatedText = generatedText.trim();
-                    if (generatedText.startsWith("```json")) {
-                        generatedText = generatedText.substring(7);
-                    }
-                    if (generatedText.endsWith("```")) {
-                        generatedText = generatedText.substring(0, generatedText.length() - 3);
-                    }
-                    
-                    Log.d(TAG, "Evaluation response: " + generatedText.substring(0, Math.min(300, generatedText.length())));
-                    
-                    JSONObject evaluationJson = new JSONObject(generatedText);
-                    JSONArray evaluationArray = evaluationJson.getJSONArray("evaluations");
+                String questionId = evalObj.getString("questionId");
+                double score = evalObj.getDouble("score");
+                String evaluation = evalObj.getString("evaluation");
+                String feedback = evalObj.getString("feedback");
+                
+                GeminiMMSEGenerator.PersonalizedMMSEQuestion question = questionMap.get(questionId);
+                if (question != null) {
+                    String patientAnswer = patientAnswers.get(questionId);
                     
-                    // Create map for quick question lookup
-                    Map<String, GeminiMMSEGenerator.PersonalizedMMSEQuestion> questionMap = new HashMap<>();
-                    for (GeminiMMSEGenerator.PersonalizedMMSEQuestion q : questions) {
-                        questionMap.put(q.id, q);
-                    }
+                    AnswerEvaluation answerEval = new AnswerEvaluation(
+                        questionId, question.question, 
+                        patientAnswer != null ? patientAnswer : "",
+                        question.correctAnswer, score, question.score,
+                        evaluation, feedback, question.difficulty, question.source
+                    );
                     
-                    for (int i = 0; i < evaluationArray.length(); i++) {
-                        JSONObject evalObj = evaluationArray.getJSONObject(i);
-                        
-                        String questionId = evalObj.getString("questionId");
-                        double score = evalObj.getDouble("score");
-                        String evaluation = evalObj.getString("evaluation");
-                        String feedback = evalObj.getString("feedback");
-                        
-                        GeminiMMSEGenerator.PersonalizedMMSEQuestion question = questionMap.get(questionId);
-                        if (question != null) {
-                            String patientAnswer = patientAnswers.get(questionId);
-                            
-                            AnswerEvaluation answerEval = new AnswerEvaluation(
-                                questionId, question.question, 
-                                patientAnswer != null ? patientAnswer : "",
-                                question.correctAnswer, score, question.score,
-                                evaluation, feedback, question.difficulty, question.source
-                            );
-                            
-                            evaluations.add(answerEval);
-                        }
-                    }
+                    evaluations.add(answerEval);
                 }
             }
             
@@ -7,25 +7,18 @@ import android.util.Log;
 
 import com.mihir.alzheimerscaregiver.BuildConfig;
 import com.mihir.alzheimerscaregiver.data.model.PatientProfile;
+import com.mihir.alzheimerscaregiver.gemini.GeminiClient;
+import com.mihir.alzheimerscaregiver.gemini.GeminiRequest;
+import com.mihir.alzheimerscaregiver.gemini.RequestScheduler;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 
 /**
  * Advanced MMSE Question Generator using Gemini AI
@@ -44,15 +37,7 @@ import okhttp3.Response;
 public class GeminiMMSEGenerator {
     private static final String TAG = "GeminiMMSEGenerator";
     
-    // Gemini API Configuration - Updated with newer available models
-    private static final String BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
-    private static final String[] MODEL_NAMES = {
-       
-        "gemini-2.5-flash",          // Recommended: Fast, efficient, multimodal (Active)
-        "gemini-2.5-flash-lite",     // Extremely low cost/latency fallback
-        "gemini-2.5-pro"             // High intelligence for complex reasoning
-    };
-    private static final String GENERATE_ENDPOINT = ":generateContent?key=";
+    // Gemini API Configuration - models and fallback are handled by GeminiClient
     private static final String API_KEY = BuildConfig.GEMINI_API_KEY;
     
     // Question Distribution
@@ -63,12 +48,8 @@ public class GeminiMMSEGenerator {
     
     private final Context context;
     private final ExecutorService executorService;
-    private final OkHttpClient httpClient;
     private final Handler mainHandler;
     
-    // Track current model index for fallback
-    private int currentModelIndex = 0;
-    
     public interface MMSEGenerationCallback {
         void onQuestionsGenerated(List<PersonalizedMMSEQuestion> questions);
         void onGenerationFailed(String error);
@@ -120,13 +101,8 @@ public class GeminiMMSEGenerator {
     
     public GeminiMMSEGenerator(Context context) {
         this.context = context;
-        this.executorService = Executors.newCachedThreadPool();
+        this.executorService = GeminiClient.getInstance().getExecutor();
         this.mainHandler = new Handler(Looper.getMainLooper());
-        this.httpClient = new OkHttpClient.Builder()
-                .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                .readTimeout(90, java.util.concurrent.TimeUnit.SECONDS)
-                .writeTimeout(30, java.util.concurrent.TimeUnit.SECONDS)
-                .build();
     }
     
     /**
@@ -184,91 +160,35 @@ public class GeminiMMSEGenerator {
             
             Log.d(TAG, "Generating personalized MMSE questions with Gemini");
             
-            // Create request body
-            JSONObject requestBody = new JSONObject();
-            JSONArray contents = new JSONArray();
-            JSONObject content = new JSONObject();
-            JSONArray parts = new JSONArray();
-            JSONObject part = new JSONObject();
-            part.put("text", prompt);
-            parts.put(part);
-            content.put("parts", parts);
-            contents.put(content);
-            requestBody.put("contents", contents);
-            
             // Add generation config for better JSON output
             JSONObject generationConfig = new JSONObject();
             generationConfig.put("temperature", 0.7);
             generationConfig.put("topK", 40);
             generationConfig.put("topP", 0.95);
             generationConfig.put("maxOutputTokens", 2048);
-            requestBody.put("generationConfig", generationConfig);
             
-            RequestBody body = RequestBody.create(
-                MediaType.parse("application/json"),
-                requestBody.toString()
-            );
+            GeminiRequest request = new GeminiRequest("MMSE generation", prompt, API_KEY)
+                    .setPriority(RequestScheduler.Priority.FOREGROUND)
+                    .setGenerationConfig(generationConfig);
             
-            // Build URL with current model
-            String currentModel = MODEL_NAMES[currentModelIndex];
-            String apiUrl = BASE_URL + currentModel + GENERATE_ENDPOINT + API_KEY;
-            
-            Request request = new Request.Builder()
-                    .url(apiUrl)
-                    .addHeader("Content-Type", "application/json")
-                    .post(body)
-                    .build();
-            
-            httpClient.newCall(request).enqueue(new Callback() {
+            GeminiClient.getInstance().generate(request, new GeminiClient.ResponseCallback() {
                 @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Gemini API call failed", e);
-                    mainHandler.post(() -> callback.onGenerationFailed("Network error: " + e.getMessage()));
+                public void onSuccess(String generatedText, String model) {
+                    List<PersonalizedMMSEQuestion> questions = parseGeminiResponse(generatedText, patientProfile, extractedMemories);
+                    
+                    if (questions.isEmpty()) {
+                        Log.w(TAG, "No questions generated, using fallback");
+                        questions = generateFallbackQuestions(patientProfile);
+                    }
+                    
+                    final List<PersonalizedMMSEQuestion> finalQuestions = questions;
+                    mainHandler.post(() -> callback.onQuestionsGenerated(finalQuestions));
                 }
                 
                 @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try {
-                        if (response.isSuccessful() && response.body() != null) {
-                            String responseBody = response.body().string();
-                            List<PersonalizedMMSEQuestion> questions = parseGeminiResponse(responseBody, patientProfile, extractedMemories);
-                            
-                            if (questions.isEmpty()) {
-                                Log.w(TAG, "No questions generated, using fallback");
-                                questions = generateFallbackQuestions(patientProfile);
-                            }
-                            
-                            final List<PersonalizedMMSEQuestion> finalQuestions = questions;
-                            mainHandler.post(() -> callback.onQuestionsGenerated(finalQuestions));
-                        } else {
-                            String errorBody = response.body() != null ? response.body().string() : "";
-                            Log.e(TAG, "Gemini API error: " + response.code() + " - " + errorBody);
-                            
-                            // Try fallback model if available (404 = model not found)
-                            if (response.code() == 404 && currentModelIndex < MODEL_NAMES.length - 1) {
-                                currentModelIndex++;
-                                Log.d(TAG, "Model not found, trying fallback: " + MODEL_NAMES[currentModelIndex]);
-                                generateQuestionsFromAPI(patientProfile, extractedMemories, callback);
-                            } else {
-                                mainHandler.post(() -> callback.onGenerationFailed("API error: " + response.code()));
-                            }
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing Gemini response", e);
-                        
-                        // Try fallback model if available  
-                        if (currentModelIndex < MODEL_NAMES.length - 1) {
-                            currentModelIndex++;
-                            Log.d(TAG, "Trying fallback model due to response error: " + MODEL_NAMES[currentModelIndex]);
-                            generateQuestionsFromAPI(patientProfile, extractedMemories, callback);
-                        } else {
-                            mainHandler.post(() -> callback.onGenerationFailed("Error processing response: " + e.getMessage()));
-                        }
-                    } finally {
-                        if (response.body() != null) {
-                            response.body().close();
-                        }
-                    }
+                public void onFailure(String error) {
+                    Log.e(TAG, "Gemini API call failed: " + error);
+                    mainHandler.post(() -> callback.onGenerationFailed(error));
                 }
             });
             
@@ -366,76 +286,63 @@ public class GeminiMMSEGenerator {
     /**
      * Parse Gemini API response into PersonalizedMMSEQuestion objects
      */
-    private List<PersonalizedMMSEQuestion> parseGeminiResponse(String responseBody, PatientProfile patientProfile, String extractedMemories) {
+    private List<PersonalizedMMSEQuestion> parseGeminiResponse(String generatedText, PatientProfile patientProfile, String extractedMemories) {
         List<PersonalizedMMSEQuestion> questions = new ArrayList<>();
         
         try {
-            JSONObject response = new JSONObject(responseBody);
-            JSONArray candidates = response.getJSONArray("candidates");
+            // Clean up the response to extract JSON
+            generatedText = generatedText.trim();
+            if (generatedText.startsWith("```json")) {
+                generatedText = generatedText.substring(7);
+            }
+            if (generatedText.endsWith("```")) {
+                generatedText = generatedText.substring(0, generatedText.length() - 3);
+            }
+            
+            Log.d(TAG, "Generated MMSE questions: " + generatedText.substring(0, Math.min(200, generatedText.length())));
             
-            if (candidates.length() > 0) {
-                JSONObject candidate = candidates.getJSONObject(0);
-                JSONObject content = candidate.getJSONObject("content");
-                JSONArray parts = content.getJSONArray("parts");
+            JSONObject questionsJson = new JSONObject(generatedText);
+            JSONArray questionArray = questionsJson.getJSONArray("questions");
+            
+            for (int i = 0; i < questionArray.length(); i++) {
+                JSONObject questionObj = questionArray.getJSONObject(i);
                 
-                if (parts.length() > 0) {
-                    String generatedText = parts.getJSONObject(0).getString("text");
-                    
-                    // Clean up the response to extract JSON
-                    generatedText = generatedText.trim();
-                    if (generatedText.startsWith("```json")) {
-                        generatedText = generatedText.substring(7);
-                    }
-                    if (generatedText.endsWith("```")) {
-                        generatedText = generatedText.substring(0, generatedText.length() - 3);
+                String id = questionObj.optString("id", "q" + (i + 1));
+                String section = questionObj.optString("section", "General");
+                String question = questionObj.getString("question");
+                String type = questionObj.optString("type", "text");
+                String correctAnswer = questionObj.optString("correctAnswer", "");
+                int score = questionObj.optInt("score", 1);
+                String difficulty = questionObj.optString("difficulty", "Medium");
+                String source = questionObj.optString("source", "Standard");
+                String memoryContext = questionObj.optString("memoryContext", "");
+                
+                String[] options = null;
+                if (questionObj.has("options")) {
+                    JSONArray optionsArray = questionObj.getJSONArray("options");
+                    options = new String[optionsArray.length()];
+                    for (int j = 0; j < optionsArray.length(); j++) {
+                        options[j] = optionsArray.getString(j);
                     }
-                    
-                    Log.d(TAG, "Generated MMSE questions: " + generatedText.substring(0, Math.min(200, generatedText.length())));
-                    
-                    JSONObject questionsJson = new JSONObject(generatedText);
-                    JSONArray questionArray = questionsJson.getJSONArray("questions");
-                    
-                    for (int i = 0; i < questionArray.length(); i++) {
-                        JSONObject questionObj = questionArray.getJSONObject(i);
-                        
-                        String id = questionObj.optString("id", "q" + (i + 1));
-                        String section = questionObj.optString("section", "General");
-                        String question = questionObj.getString("question");
-                        String type = questionObj.optString("type", "text");
-                        String correctAnswer = questionObj.optString("correctAnswer", "");
-                        int score = questionObj.optInt("score", 1);
-                        String difficulty = questionObj.optString("difficulty", "Medium");
-                        String source = questionObj.optString("source", "Standard");
-                        String memoryContext = questionObj.optString("memoryContext", "");
-                        
-                        String[] options = null;
-                        if (questionObj.has("options")) {
-                            JSONArray optionsArray = questionObj.getJSONArray("options");
-                            options = new String[optionsArray.length()];
-                            for (int j = 0; j < optionsArray.length(); j++) {
-                                options[j] = optionsArray.getString(j);
-                            }
-                        }
-                        
-                        List<String> acceptedAnswers = new ArrayList<>();
-                        if (questionObj.has("acceptedAnswers")) {
-                            JSONArray acceptedArray = questionObj.getJSONArray("acceptedAnswers");
-                            for (int j = 0; j < acceptedArray.length(); j++) {
-                                acceptedAnswers.add(acceptedArray.getString(j));
-                            }
-                        }
-                        if (acceptedAnswers.isEmpty() && !correctAnswer.isEmpty()) {
-                            acceptedAnswers.add(correctAnswer);
-                        }
-                        
-                        PersonalizedMMSEQuestion mmseQuestion = new PersonalizedMMSEQuestion(
-                            id, section, question, type, options, correctAnswer, acceptedAnswers,
-                            score, difficulty, source, memoryContext
-                        );
-                        
-                        questions.add(mmseQuestion);
+                }
+                
+                List<String> acceptedAnswers = new ArrayList<>();
+                if (questionObj.has("acceptedAnswers")) {
+                    JSONArray acceptedArray = questionObj.getJSONArray("acceptedAnswers");
+                    for (int j = 0; j < acceptedArray.length(); j++) {
+                        acceptedAnswers.add(acceptedArray.getString(j));
                     }
                 }
+                if (acceptedAnswers.isEmpty() && !correctAnswer.isEmpty()) {
+                    acceptedAnswers.add(correctAnswer);
+                }
+                
+                PersonalizedMMSEQuestion mmseQuestion = new PersonalizedMMSEQuestion(
+                    id, section, question, type, options, correctAnswer, acceptedAnswers,
+                    score, difficulty, source, memoryContext
+                );
+                
+                questions.add(mmseQuestion);
             }
             
         } catch (JSONException e) {
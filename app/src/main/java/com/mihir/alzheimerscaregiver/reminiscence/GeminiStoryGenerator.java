@@ -6,25 +6,10 @@ import android.os.Looper;
 import android.util.Log;
 
 import com.mihir.alzheimerscaregiver.BuildConfig;
+import com.mihir.alzheimerscaregiver.gemini.GeminiClient;
+import com.mihir.alzheimerscaregiver.gemini.GeminiRequest;
 import com.mihir.alzheimerscaregiver.utils.LanguagePreferenceManager;
 
-
-import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 /**
  * Modular class for generating reminiscence stories using Google Gemini API
  * This class handles all Gemini API interactions and can be extended for future features
@@ -33,27 +18,10 @@ import org.json.JSONObject;
 public class GeminiStoryGenerator {
     
     private static final String TAG = "GeminiStoryGenerator";
-    // API Configuration - Updated with newer available models
-    private static final String BASE_URL = "https://generativelanguage.googleapis.com/v1beta/models/";
-    private static final String[] MODEL_NAMES = {
-        "gemini-2.5-flash",          // Recommended: Fast, efficient, multimodal (Active)
-        "gemini-2.5-flash-lite",     // Extremely low cost/latency fallback
-        "gemini-2.5-pro"             // High intelligence for complex reasoning
-    };
-    private static final String GENERATE_ENDPOINT = ":generateContent?key=";
-    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
     
-    private final OkHttpClient httpClient;
-    private final ExecutorService executor;
     private final Handler mainHandler;
     
-    // Track current model index for fallback
-    private int currentModelIndex = 0;
-    
     public GeminiStoryGenerator() {
-        httpClient = new OkHttpClient.Builder()
-                .build();
-        executor = Executors.newSingleThreadExecutor();
         mainHandler = new Handler(Looper.getMainLooper());
     }
     
@@ -263,177 +231,21 @@ public class GeminiStoryGenerator {
         String prompt = buildStoryPrompt(patientDetails, context);
         Log.d(TAG, "Generated prompt: " + prompt);
         
-        // Execute API call in background thread
-        executor.execute(() -> {
-            try {
-                // Create JSON request body
-                JSONObject requestBody = createRequestBody(prompt);
-                
-                // Create the API request with the latest model
-                String url = BASE_URL + MODEL_NAMES[0] + GENERATE_ENDPOINT + BuildConfig.GOOGLE_API_KEY;
-                Request request = new Request.Builder()
-                        .url(url)
-                        .post(RequestBody.create(requestBody.toString(), JSON))
-                        .addHeader("Content-Type", "application/json")
-                        .build();
-                
-                // Make the API call
-                httpClient.newCall(request).enqueue(new Callback() {
+        // Send through the shared client, which falls back across models
+        GeminiClient.getInstance().generate(new GeminiRequest("story", prompt, BuildConfig.GOOGLE_API_KEY),
+                new GeminiClient.ResponseCallback() {
                     @Override
-                    public void onFailure(Call call, IOException e) {
-                        Log.e(TAG, "Failed to generate story with " + MODEL_NAMES[0] + ", trying next model", e);
-                        // Try next model
-                        tryNextModelOrFallback(patientDetails, callback, 1, buildStoryPrompt(patientDetails, context), context);
+                    public void onSuccess(String story, String model) {
+                        Log.d(TAG, "Successfully generated story with model: " + model);
+                        mainHandler.post(() -> callback.onSuccess(story.trim()));
                     }
                     
                     @Override
-                    public void onResponse(Call call, Response response) throws IOException {
-                        try (Response r = response) {
-                            if (!r.isSuccessful()) {
-                                String responseBody = r.body() != null ? r.body().string() : "No response body";
-                                Log.e(TAG, "API call unsuccessful for " + MODEL_NAMES[0] + ": " + r.code() + " - " + r.message());
-                                Log.e(TAG, "Response body: " + responseBody);
-                                
-                                // Try next model
-                                mainHandler.post(() -> tryNextModelOrFallback(patientDetails, callback, 1, buildStoryPrompt(patientDetails, context), context));
-                                return;
-                            }
-                            
-                            String responseBody = r.body().string();
-                            String story = parseStoryFromResponse(responseBody);
-                            
-                            if (story != null && !story.trim().isEmpty()) {
-                                Log.d(TAG, "Story generated successfully");
-                                mainHandler.post(() -> callback.onSuccess(story.trim()));
-                            } else {
-                                Log.w(TAG, "Generated story is empty");
-                                mainHandler.post(() -> callback.onError("Story generation returned empty content. Please try again in a moment."));
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error processing response", e);
-                            mainHandler.post(() -> callback.onError("There was an issue processing the story. Please try again."));
-                        }
+                    public void onFailure(String error) {
+                        Log.e(TAG, "All API models failed: " + error);
+                        mainHandler.post(() -> callback.onError("Story generation is temporarily unavailable. Please check your internet connection and try again in a few minutes."));
                     }
                 });
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error creating request", e);
-                mainHandler.post(() -> callback.onError("Unable to prepare story request. Please check patient information and try again."));
-            }
-        });
-        // END OF REAL API CODE */
-    }
-
-    /**
-     * Tries the next available model or shows appropriate error if all models fail
-     */
-    private void tryNextModelOrFallback(PatientDetails patientDetails, StoryGenerationCallback callback, 
-                                      int modelIndex, String prompt, android.content.Context context) {
-        if (modelIndex >= MODEL_NAMES.length) {
-            Log.e(TAG, "All API models failed");
-            mainHandler.post(() -> callback.onError("Story generation is temporarily unavailable. Please check your internet connection and try again in a few minutes."));
-            return;
-        }
-
-        String currentModel = MODEL_NAMES[modelIndex];
-        Log.d(TAG, "Trying model: " + currentModel + " (attempt " + (modelIndex + 1) + "/" + MODEL_NAMES.length + ")");
-
-        try {
-            JSONObject requestBody = createRequestBody(prompt);
-            String url = BASE_URL + currentModel + GENERATE_ENDPOINT + BuildConfig.GOOGLE_API_KEY;
-            
-            Request request = new Request.Builder()
-                    .url(url)
-                    .post(RequestBody.create(requestBody.toString(), JSON))
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Failed to generate story with " + currentModel, e);
-                    mainHandler.post(() -> tryNextModelOrFallback(patientDetails, callback, modelIndex + 1, prompt, context));
-                }
-
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try (Response r = response) {
-                        if (!r.isSuccessful()) {
-                            String responseBody = r.body() != null ? r.body().string() : "No response body";
-                            Log.e(TAG, "API call unsuccessful for " + currentModel + ": " + r.code() + " - " + r.message());
-                            
-                            // Try next model
-                            mainHandler.post(() -> tryNextModelOrFallback(patientDetails, callback, modelIndex + 1, prompt, context));
-                            return;
-                        }
-
-                        String responseBody = r.body().string();
-                        String story = parseStoryFromResponse(responseBody);
-                        
-                        if (story == null || story.trim().isEmpty()) {
-                            Log.w(TAG, "Generated story is empty for " + currentModel);
-                            mainHandler.post(() -> tryNextModelOrFallback(patientDetails, callback, modelIndex + 1, prompt, context));
-                            return;
-                        }
-                        
-                        Log.d(TAG, "Successfully generated story with model: " + currentModel);
-                        mainHandler.post(() -> callback.onSuccess(story));
-                        
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error processing response for " + currentModel, e);
-                        mainHandler.post(() -> tryNextModelOrFallback(patientDetails, callback, modelIndex + 1, prompt, context));
-                    }
-                }
-            });
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error creating request for " + currentModel, e);
-            mainHandler.post(() -> tryNextModelOrFallback(patientDetails, callback, modelIndex + 1, prompt, context));
-        }
-    }
-
-    
-    /**
-     * Creates the JSON request body for the Gemini API
-     */
-    private JSONObject createRequestBody(String prompt) throws JSONException {
-        JSONObject requestBody = new JSONObject();
-        JSONArray contents = new JSONArray();
-        JSONObject content = new JSONObject();
-        JSONArray parts = new JSONArray();
-        JSONObject part = new JSONObject();
-        
-        part.put("text", prompt);
-        parts.put(part);
-        content.put("parts", parts);
-        contents.put(content);
-        requestBody.put("contents", contents);
-        
-        return requestBody;
-    }
-    
-    /**
-     * Parses the story from the Gemini API response
-     */
-    private String parseStoryFromResponse(String responseBody) {
-        try {
-            JSONObject response = new JSONObject(responseBody);
-            JSONArray candidates = response.getJSONArray("candidates");
-            
-            if (candidates.length() > 0) {
-                JSONObject candidate = candidates.getJSONObject(0);
-                JSONObject content = candidate.getJSONObject("content");
-                JSONArray parts = content.getJSONArray("parts");
-                
-                if (parts.length() > 0) {
-                    JSONObject part = parts.getJSONObject(0);
-                    return part.getString("text");
-                }
-            }
-        } catch (JSONException e) {
-            Log.e(TAG, "Error parsing response", e);
-        }
-        return null;
     }
     
     /**
@@ -7,19 +7,15 @@ import android.util.Log;
 
 import com.mihir.alzheimerscaregiver.data.entity.MemoryQuestionEntity;
 import com.mihir.alzheimerscaregiver.BuildConfig;
+import com.mihir.alzheimerscaregiver.gemini.GeminiClient;
+import com.mihir.alzheimerscaregiver.gemini.GeminiRequest;
+import com.mihir.alzheimerscaregiver.gemini.RequestScheduler;
 import com.mihir.alzheimerscaregiver.utils.LanguagePreferenceManager;
 import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.List;
 import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -34,22 +30,12 @@ public class ProactiveQuestionGeneratorService {
     private static final String TAG = "ProactiveQuestionGen";
     private static final String FIREBASE_COLLECTION = "patients";
     
-    // Same Gemini models as the enhanced MMSE system
-    private static final String[] MODEL_NAMES = {
-    
-        "gemini-2.5-flash",          // Recommended: Fast, efficient, multimodal (Active)
-        "gemini-2.5-flash-lite",     // Extremely low cost/latency fallback
-        "gemini-2.5-pro"             // High intelligence for complex reasoning
-    };
-    
     private final Context context;
     private final FirebaseFirestore db;
-    private final OkHttpClient client;
     private final ExecutorService executor;
     private final Handler mainHandler;
     private final String preferredLanguage;
     
-    private int currentModelIndex = 0;
     private String geminiApiKey;
     
     public interface QuestionGenerationCallback {
@@ -60,8 +46,7 @@ public class ProactiveQuestionGeneratorService {
     public ProactiveQuestionGeneratorService(Context context) {
         this.context = context;
         this.db = FirebaseFirestore.getInstance();
-        this.client = new OkHttpClient();
-        this.executor = Executors.newFixedThreadPool(2);
+        this.executor = GeminiClient.getInstance().getExecutor();
         this.mainHandler = new Handler(Looper.getMainLooper());
         
         // Get user's preferred language for culturally appropriate question generation
@@ -95,36 +80,21 @@ public class ProactiveQuestionGeneratorService {
                 List<String> filteredMemories = filterMemoriesForQuestionGeneration(extractedMemories);
                 Log.d(TAG, "📝 Filtered " + extractedMemories.size() + " memories down to " + filteredMemories.size() + " for question generation");
                 
-                // Generate questions with aggressive rate limiting to avoid API 429 errors
+                // Calls go out at BACKGROUND priority; GeminiClient paces them against the
+                // per-model quota and lets chat turns go first, so no delays are needed here
                 for (int i = 0; i < filteredMemories.size() && generatedQuestions.size() < 4; i++) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        Log.w(TAG, "Question generation interrupted");
+                        break;
+                    }
                     String memory = filteredMemories.get(i);
                     if (memory != null && !memory.trim().isEmpty()) {
                         try {
-                            // Aggressive rate limiting to prevent 429 errors
-                            if (i > 0) {
-                                Thread.sleep(5000); // 5 second delay between calls
-                            }
-                            
                             List<MemoryQuestionEntity> memoryQuestions = generateQuestionsForSingleMemory(
                                 patientId, memory, conversationId);
                             generatedQuestions.addAll(memoryQuestions);
-                            
-                            // Additional delay after successful call
-                            Thread.sleep(2000); // 2 second delay after each successful call
-                            
-                        } catch (InterruptedException e) {
-                            Log.w(TAG, "Question generation interrupted", e);
-                            Thread.currentThread().interrupt();
-                            break;
                         } catch (Exception e) {
                             Log.e(TAG, "Error generating questions for memory: " + memory + " (" + e.getMessage() + ")", e);
-                            // Add delay even on failure to prevent rapid retries
-                            try {
-                                Thread.sleep(3000); // 3 second delay after error
-                            } catch (InterruptedException ie) {
-                                Thread.currentThread().interrupt();
-                                break;
-                            }
                         }
                     }
                 }
@@ -367,86 +337,12 @@ public class ProactiveQuestionGeneratorService {
     
     /**
      * Call Gemini API with fallback system
+     * Blocks the calling thread; only called from the executor
      */
     private String callGeminiAPI(String prompt) throws Exception {
-        return tryApiCallOrFallback(prompt, 0);
-    }
-    
-    private String tryApiCallOrFallback(String prompt, int modelIndex) throws Exception {
-        if (modelIndex >= MODEL_NAMES.length) {
-            throw new Exception("All Gemini models failed");
-        }
-        
-        try {
-            String modelName = MODEL_NAMES[modelIndex];
-            Log.d(TAG, "Trying Gemini model: " + modelName);
-            
-            JSONObject requestJson = new JSONObject();
-            JSONArray contentsArray = new JSONArray();
-            JSONObject contentObject = new JSONObject();
-            JSONArray partsArray = new JSONArray();
-            JSONObject partObject = new JSONObject();
-            
-            partObject.put("text", prompt);
-            partsArray.put(partObject);
-            contentObject.put("parts", partsArray);
-            contentsArray.put(contentObject);
-            requestJson.put("contents", contentsArray);
-            
-            RequestBody body = RequestBody.create(
-                requestJson.toString(), 
-                MediaType.get("application/json; charset=utf-8"));
-            
-            Request request = new Request.Builder()
-                .url("https://generativelanguage.googleapis.com/v1beta/models/" + modelName + ":generateContent?key=" + geminiApiKey)
-                .post(body)
-                .addHeader("Content-Type", "application/json")
-                .build();
-            
-            try (Response response = client.newCall(request).execute()) {
-                if (response.isSuccessful() && response.body() != null) {
-                    String responseBody = response.body().string();
-                    JSONObject jsonResponse = new JSONObject(responseBody);
-                    
-                    if (jsonResponse.has("candidates")) {
-                        JSONArray candidates = jsonResponse.getJSONArray("candidates");
-                        if (candidates.length() > 0) {
-                            JSONObject content = candidates.getJSONObject(0)
-                                .getJSONObject("content");
-                            JSONArray parts = content.getJSONArray("parts");
-                            if (parts.length() > 0) {
-                                return parts.getJSONObject(0).getString("text");
-                            }
-                        }
-                    }
-                    throw new Exception("Invalid response format");
-                } else if (response.code() == 404) {
-                    Log.w(TAG, "Model " + modelName + " not found, trying fallback");
-                    return tryApiCallOrFallback(prompt, modelIndex + 1);
-                } else if (response.code() == 429) {
-                    // Rate limit hit - add exponential backoff delay
-                    int delaySeconds = (int) Math.pow(2, modelIndex) * 5; // 5s, 10s, 20s, 40s
-                    Log.w(TAG, "Rate limit hit for model " + modelName + ", waiting " + delaySeconds + " seconds before retry");
-                    try {
-                        Thread.sleep(delaySeconds * 1000);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new Exception("Interrupted during rate limit backoff");
-                    }
-                    throw new Exception("API call failed: " + response.code());
-                } else {
-                    throw new Exception("API call failed: " + response.code());
-                }
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error with model " + MODEL_NAMES[modelIndex], e);
-            if (modelIndex < MODEL_NAMES.length - 1) {
-                return tryApiCallOrFallback(prompt, modelIndex + 1);
-            } else {
-                throw e;
-            }
-        }
+        GeminiRequest request = new GeminiRequest("proactive questions", prompt, geminiApiKey)
+                .setPriority(RequestScheduler.Priority.BACKGROUND);
+        return GeminiClient.getInstance().generateBlocking(request);
     }
     
     /**
@@ -0,0 +1,180 @@
+package com.mihir.alzheimerscaregiver.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Coalesces bursts of caretaker alerts that share a key (patient / subject / type)
+ *
+ * - The first event of a key is delivered immediately and opens a window whose
+ *   length depends on the severity; further events in the window are suppressed
+ * - When the window closes with suppressed events, one summary is emitted with
+ *   the latest event and the number of events it stands for
+ * - High severity bypasses the window and is always delivered at once; only a
+ *   repeat of the same transition within the duplicate window is dropped (e.g. the
+ *   same exit reported by both the platform geofence and the on-device evaluator).
+ *   Any other transition of the subject in between means it was a new crossing.
+ *
+ * Time and scheduling are injected so tests can drive windows without waiting.
+ *
+ * @param <T> Event payload handed back to the sink
+ */
+public class AlertCoalescer<T> {
+
+    public static final String SEVERITY_HIGH = "high";
+
+    public static final long DEFAULT_WINDOW_MS = 5 * 60 * 1000;      // 5 minutes
+    // Platform geofence reports can trail the on-device evaluator by several minutes
+    public static final long DEFAULT_DUPLICATE_WINDOW_MS = 10 * 60 * 1000; // 10 minutes
+
+    public enum Decision {
+        // Deliver now
+        SEND,
+        // Folded into the open window; counted towards its summary
+        SUPPRESSED,
+        // High-severity repeat of the same transition within the duplicate window; dropped
+        DUPLICATE
+    }
+
+    public interface Sink<T> {
+        /**
+         * Called when a window closes that suppressed at least one event
+         *
+         * @param latest Most recent suppressed event
+         * @param suppressedCount Number of events folded into this summary
+         */
+        void onSummary(String key, T latest, int suppressedCount, long windowStartMs, long windowEndMs);
+    }
+
+    public interface Clock {
+        long now();
+    }
+
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    private static class Window<T> {
+        final long startMs;
+        final long endMs;
+        int suppressed;
+        T latest;
+
+        Window(long startMs, long endMs) {
+            this.startMs = startMs;
+            this.endMs = endMs;
+        }
+    }
+
+    private final long windowMs;
+    private final long duplicateWindowMs;
+    private final Clock clock;
+    private final Scheduler scheduler;
+    private final Sink<T> sink;
+
+    private final Map<String, Window<T>> windows = new HashMap<>();
+    private final Map<String, Long> lastHighSeverity = new HashMap<>();
+    // subject -> transition most recently submitted for it
+    private final Map<String, String> lastTransition = new HashMap<>();
+    private final Map<String, Integer> suppressedTotals = new HashMap<>();
+
+    public AlertCoalescer(long windowMs, long duplicateWindowMs, Clock clock, Scheduler scheduler, Sink<T> sink) {
+        this.windowMs = windowMs;
+        this.duplicateWindowMs = duplicateWindowMs;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.sink = sink;
+    }
+
+    /**
+     * Submit an event that is not a transition
+     *
+     * @param key Coalescing key, e.g. patientId|general|title
+     * @param severity "high" bypasses the window
+     * @return Whether the caller should deliver the event now
+     */
+    public Decision submit(String key, String severity, T event) {
+        return submit(key, null, severity, event);
+    }
+
+    /**
+     * Submit a transition of a subject
+     *
+     * @param subject What transitioned, e.g. patientId|fence
+     * @param transition e.g. EXIT; events are coalesced per subject and transition
+     * @param severity Severity from determineSeverity(); "high" bypasses the window
+     * @return Whether the caller should deliver the event now
+     */
+    public Decision submit(String subject, String transition, String severity, T event) {
+        long now = clock.now();
+        String key = transition != null ? subject + "|" + transition : subject;
+        String severityKey = key + "|" + severity;
+
+        synchronized (this) {
+            boolean crossedBack = false;
+            if (transition != null) {
+                String previous = lastTransition.put(subject, transition);
+                crossedBack = previous != null && !previous.equals(transition);
+            }
+
+            if (SEVERITY_HIGH.equals(severity)) {
+                Long last = lastHighSeverity.get(severityKey);
+                if (last != null && now - last < duplicateWindowMs && !crossedBack) {
+                    recordSuppressed(key, 1);
+                    return Decision.DUPLICATE;
+                }
+                lastHighSeverity.put(severityKey, now);
+                return Decision.SEND;
+            }
+
+            Window<T> window = windows.get(severityKey);
+            if (window != null && now < window.endMs) {
+                window.suppressed++;
+                window.latest = event;
+                recordSuppressed(key, 1);
+                return Decision.SUPPRESSED;
+            }
+
+            windows.put(severityKey, new Window<T>(now, now + windowMs));
+        }
+
+        scheduler.schedule(() -> closeWindow(severityKey, key), windowMs);
+        return Decision.SEND;
+    }
+
+    private void closeWindow(String severityKey, String key) {
+        Window<T> window;
+        synchronized (this) {
+            window = windows.get(severityKey);
+            if (window == null || clock.now() < window.endMs) {
+                return;
+            }
+            windows.remove(severityKey);
+        }
+
+        if (window.suppressed > 0) {
+            sink.onSummary(key, window.latest, window.suppressed, window.startMs, window.endMs);
+        }
+    }
+
+    private void recordSuppressed(String key, int count) {
+        Integer total = suppressedTotals.get(key);
+        suppressedTotals.put(key, (total != null ? total : 0) + count);
+    }
+
+    /**
+     * Events suppressed or dropped for a key since this coalescer was created
+     */
+    public synchronized int getSuppressedCount(String key) {
+        Integer total = suppressedTotals.get(key);
+        return total != null ? total : 0;
+    }
+
+    public synchronized int getTotalSuppressedCount() {
+        int total = 0;
+        for (int count : suppressedTotals.values()) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,440 @@
+package com.mihir.alzheimerscaregiver.utils;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Transaction;
+import com.google.firebase.database.ValueEventListener;
+import com.mihir.alzheimerscaregiver.BuildConfig;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Process-wide FCM HTTP v1 fan-out used by FCMNotificationSender
+ *
+ * - OAuth token: service account loaded once, access token cached and refreshed in
+ *   the background a few minutes before it expires, so alerts never wait on it
+ * - Caretaker tokens: patient_caretaker_tokens/{patientId} is kept in memory by a
+ *   live listener; changes made by the CaretakerApp replace the cached set
+ * - Sends: all caretakers of an alert are sent concurrently, bounded by the shared
+ *   OkHttp dispatcher
+ * - Dead tokens (404 / UNREGISTERED) are dropped from the cache and removed from
+ *   the database so they are not retried on every alert
+ */
+public class FCMDispatcher {
+
+    private static final String TAG = "FCMDispatcher";
+    private static final String FCM_SCOPE = "https://www.googleapis.com/auth/firebase.messaging";
+    private static final MediaType JSON = MediaType.parse("application/json");
+
+    // Refresh the access token this long before it expires
+    private static final long TOKEN_REFRESH_MARGIN_MS = 5 * 60 * 1000;
+    // Upper bound on simultaneous FCM requests
+    private static final int MAX_CONCURRENT_SENDS = 8;
+
+    private static FCMDispatcher instance;
+
+    /**
+     * Builds the HTTP v1 payload for one caretaker token
+     */
+    public interface PayloadBuilder {
+        JSONObject build(String token) throws JSONException;
+    }
+
+    /**
+     * Told about each message FCM accepted, once per caretaker
+     */
+    public interface DeliveryCallback {
+        void onDelivered(String caretakerId);
+    }
+
+    private interface TokensCallback {
+        void onTokens(Map<String, String> caretakerTokens);
+    }
+
+    private final Context context;
+    private final DatabaseReference databaseReference;
+    private final OkHttpClient httpClient;
+    private final ScheduledExecutorService executor;
+
+    // OAuth
+    private GoogleCredentials credentials;
+    private volatile AccessToken accessToken;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    // Caretaker tokens per patient: caretakerId -> FCM token
+    private final Map<String, Map<String, String>> caretakerTokens = new HashMap<>();
+    private final Map<String, ValueEventListener> tokenListeners = new HashMap<>();
+    private final Map<String, List<TokensCallback>> pendingTokenRequests = new HashMap<>();
+
+    public static synchronized FCMDispatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new FCMDispatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private FCMDispatcher(Context context) {
+        this.context = context;
+        this.databaseReference = FirebaseDatabase.getInstance().getReference();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CONCURRENT_SENDS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_SENDS);
+        this.httpClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .build();
+        this.executor = Executors.newSingleThreadScheduledExecutor();
+
+        // Warm the access token so the first alert does not pay for it
+        executor.execute(() -> refreshAccessToken(false));
+    }
+
+    /**
+     * Send one message per active caretaker token of a patient
+     *
+     * @param label Short description for logs
+     */
+    public void sendToCaretakers(String patientId, String label, PayloadBuilder payloadBuilder) {
+        sendToCaretakers(patientId, label, payloadBuilder, null);
+    }
+
+    /**
+     * Send one message per active caretaker token of a patient
+     *
+     * @param label Short description for logs
+     * @param deliveryCallback Called on the OkHttp thread for each accepted message; may be null
+     */
+    public void sendToCaretakers(String patientId, String label, PayloadBuilder payloadBuilder,
+                                 DeliveryCallback deliveryCallback) {
+        long requestedAt = System.currentTimeMillis();
+        withCaretakerTokens(patientId, tokens -> {
+            if (tokens.isEmpty()) {
+                Log.w(TAG, "❌ No caretaker tokens for patient " + patientId + " (" + label + ")");
+                return;
+            }
+            // Payloads and the access token are prepared off the main thread
+            executor.execute(() -> dispatch(patientId, label, tokens, payloadBuilder, deliveryCallback, requestedAt));
+        });
+    }
+
+    private void dispatch(String patientId, String label, Map<String, String> tokens,
+                          PayloadBuilder payloadBuilder, DeliveryCallback deliveryCallback, long requestedAt) {
+        String fcmUrl = getFCMUrl();
+        String bearer = getAccessToken();
+        if (fcmUrl == null || bearer == null) {
+            Log.e(TAG, "Cannot send FCM notification (" + label + "): FCM not configured");
+            return;
+        }
+
+        for (Map.Entry<String, String> entry : tokens.entrySet()) {
+            String caretakerId = entry.getKey();
+            String token = entry.getValue();
+            try {
+                String payload = payloadBuilder.build(token).toString();
+                send(patientId, caretakerId, token, fcmUrl, bearer, payload, label, deliveryCallback,
+                        requestedAt, true);
+            } catch (JSONException e) {
+                Log.e(TAG, "Error creating FCM payload for " + label, e);
+            }
+        }
+        Log.i(TAG, "📤 " + label + " dispatched to " + tokens.size() + " caretaker(s)");
+    }
+
+    private void send(String patientId, String caretakerId, String token, String fcmUrl, String bearer,
+                      String payload, String label, DeliveryCallback deliveryCallback, long requestedAt,
+                      boolean retryOnAuthFailure) {
+        Request request = new Request.Builder()
+                .url(fcmUrl)
+                .post(RequestBody.create(JSON, payload))
+                .addHeader("Authorization", "Bearer " + bearer)
+                .addHeader("Content-Type", "application/json")
+                .build();
+
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.e(TAG, "Failed to send FCM notification to " + caretakerId + " (" + label + ")", e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    int code = response.code();
+                    if (response.isSuccessful()) {
+                        Log.d(TAG, "FCM delivered to " + caretakerId + " in " +
+                              (System.currentTimeMillis() - requestedAt) + "ms (" + label + ")");
+                        if (deliveryCallback != null) {
+                            deliveryCallback.onDelivered(caretakerId);
+                        }
+                        return;
+                    }
+
+                    String body = response.body() != null ? response.body().string() : "";
+                    if (code == 401 && retryOnAuthFailure) {
+                        // Token revoked or clock skew: force a refresh and retry once
+                        executor.execute(() -> {
+                            String fresh = refreshAccessToken(true);
+                            if (fresh != null) {
+                                send(patientId, caretakerId, token, fcmUrl, fresh, payload, label,
+                                        deliveryCallback, requestedAt, false);
+                            }
+                        });
+                    } else if (isDeadToken(code, body)) {
+                        Log.w(TAG, "Reaping dead FCM token for caretaker " + caretakerId);
+                        reapToken(patientId, caretakerId, token);
+                    } else {
+                        Log.w(TAG, "FCM notification failed: " + code + " - " + response.message() + " - " + body);
+                    }
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 404 or an UNREGISTERED error code means the app instance is gone for good
+     */
+    static boolean isDeadToken(int code, String body) {
+        return code == 404 || (body != null && body.contains("UNREGISTERED"));
+    }
+
+    /**
+     * Forget a dead token and delete it from the database if it has not been replaced meanwhile
+     */
+    private void reapToken(String patientId, String caretakerId, String deadToken) {
+        synchronized (caretakerTokens) {
+            Map<String, String> tokens = caretakerTokens.get(patientId);
+            if (tokens != null && deadToken.equals(tokens.get(caretakerId))) {
+                Map<String, String> updated = new LinkedHashMap<>(tokens);
+                updated.remove(caretakerId);
+                caretakerTokens.put(patientId, Collections.unmodifiableMap(updated));
+            }
+        }
+
+        databaseReference.child("patient_caretaker_tokens").child(patientId).child(caretakerId)
+                .runTransaction(new Transaction.Handler() {
+                    @Override
+                    public Transaction.Result doTransaction(MutableData currentData) {
+                        Object value = currentData.getValue();
+                        String current = null;
+                        if (value instanceof String) {
+                            current = (String) value;
+                        } else if (value instanceof Map) {
+                            Object nested = ((Map<?, ?>) value).get("token");
+                            current = nested instanceof String ? (String) nested : null;
+                        }
+                        if (deadToken.equals(current)) {
+                            currentData.setValue(null);
+                        }
+                        return Transaction.success(currentData);
+                    }
+
+                    @Override
+                    public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                        if (error != null) {
+                            Log.w(TAG, "Failed to remove dead token for " + caretakerId, error.toException());
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Deliver the cached caretaker tokens, attaching the listener on first use
+     */
+    private void withCaretakerTokens(String patientId, TokensCallback callback) {
+        synchronized (caretakerTokens) {
+            Map<String, String> cached = caretakerTokens.get(patientId);
+            if (cached != null) {
+                callback.onTokens(cached);
+                return;
+            }
+
+            List<TokensCallback> pending = pendingTokenRequests.get(patientId);
+            if (pending == null) {
+                pending = new ArrayList<>();
+                pendingTokenRequests.put(patientId, pending);
+            }
+            pending.add(callback);
+
+            if (tokenListeners.containsKey(patientId)) {
+                return;
+            }
+
+            ValueEventListener listener = new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot dataSnapshot) {
+                    Map<String, String> tokens = Collections.unmodifiableMap(parseCaretakerTokens(dataSnapshot));
+                    List<TokensCallback> waiting;
+                    synchronized (caretakerTokens) {
+                        caretakerTokens.put(patientId, tokens);
+                        waiting = pendingTokenRequests.remove(patientId);
+                    }
+                    Log.d(TAG, "Caretaker tokens for " + patientId + " updated: " + tokens.size());
+                    if (waiting != null) {
+                        for (TokensCallback pendingCallback : waiting) {
+                            pendingCallback.onTokens(tokens);
+                        }
+                    }
+                }
+
+                @Override
+                public void onCancelled(DatabaseError databaseError) {
+                    Log.e(TAG, "Caretaker token listener cancelled", databaseError.toException());
+                    List<TokensCallback> waiting;
+                    synchronized (caretakerTokens) {
+                        caretakerTokens.remove(patientId);
+                        tokenListeners.remove(patientId);
+                        waiting = pendingTokenRequests.remove(patientId);
+                    }
+                    if (waiting != null) {
+                        for (TokensCallback pendingCallback : waiting) {
+                            pendingCallback.onTokens(Collections.emptyMap());
+                        }
+                    }
+                }
+            };
+            tokenListeners.put(patientId, listener);
+            databaseReference.child("patient_caretaker_tokens").child(patientId)
+                    .addValueEventListener(listener);
+        }
+    }
+
+    /**
+     * Accepts both a bare token string and {token, active} objects per caretaker
+     */
+    private static Map<String, String> parseCaretakerTokens(DataSnapshot dataSnapshot) {
+        Map<String, String> tokens = new LinkedHashMap<>();
+        for (DataSnapshot caretakerSnapshot : dataSnapshot.getChildren()) {
+            try {
+                Object snapshotValue = caretakerSnapshot.getValue();
+                String token = null;
+                if (snapshotValue instanceof String) {
+                    token = (String) snapshotValue;
+                } else {
+                    Boolean active = caretakerSnapshot.child("active").getValue(Boolean.class);
+                    if (active != null && !active) {
+                        continue;
+                    }
+                    token = caretakerSnapshot.child("token").getValue(String.class);
+                }
+
+                if (token != null && !token.isEmpty()) {
+                    tokens.put(caretakerSnapshot.getKey(), token);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error processing caretaker token for: " + caretakerSnapshot.getKey(), e);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Cached OAuth access token, refreshed synchronously only if the background refresh missed
+     */
+    private String getAccessToken() {
+        AccessToken current = accessToken;
+        if (current != null && !expiresSoon(current)) {
+            return current.getTokenValue();
+        }
+        return refreshAccessToken(false);
+    }
+
+    /**
+     * @param force Refresh even if the cached token is still valid (scheduled refresh)
+     */
+    private synchronized String refreshAccessToken(boolean force) {
+        AccessToken current = accessToken;
+        if (!force && current != null && !expiresSoon(current)) {
+            return current.getTokenValue();
+        }
+
+        try {
+            if (credentials == null) {
+                credentials = loadCredentials();
+                if (credentials == null) {
+                    return null;
+                }
+            }
+
+            credentials.refresh();
+            current = credentials.getAccessToken();
+            accessToken = current;
+            scheduleRefresh(current);
+            return current != null ? current.getTokenValue() : null;
+        } catch (IOException e) {
+            Log.e(TAG, "Error getting OAuth 2.0 access token - check firebase-service-account.json in assets/", e);
+            return null;
+        }
+    }
+
+    private void scheduleRefresh(AccessToken token) {
+        if (token == null || token.getExpirationTime() == null) {
+            return;
+        }
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        long delay = token.getExpirationTime().getTime() - TOKEN_REFRESH_MARGIN_MS - System.currentTimeMillis();
+        scheduledRefresh = executor.schedule(() -> refreshAccessToken(true), Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean expiresSoon(AccessToken token) {
+        return token.getExpirationTime() != null &&
+                token.getExpirationTime().getTime() - System.currentTimeMillis() < TOKEN_REFRESH_MARGIN_MS;
+    }
+
+    private GoogleCredentials loadCredentials() throws IOException {
+        String serviceAccountPath = BuildConfig.FIREBASE_SERVICE_ACCOUNT_PATH;
+        if ("firebase-service-account.json.template".equals(serviceAccountPath) ||
+            serviceAccountPath == null || serviceAccountPath.isEmpty()) {
+            Log.w(TAG, "🔐 Firebase service account not configured! FCM notifications disabled.");
+            return null;
+        }
+
+        try (InputStream serviceAccount = context.getAssets().open(serviceAccountPath)) {
+            return GoogleCredentials.fromStream(serviceAccount).createScoped(Arrays.asList(FCM_SCOPE));
+        }
+    }
+
+    private static String getFCMUrl() {
+        String projectId = BuildConfig.FIREBASE_PROJECT_ID;
+        if ("placeholder".equals(projectId)) {
+            Log.w(TAG, "Firebase Project ID not configured! Please add it to fcm-keys.properties");
+            return null;
+        }
+        return "https://fcm.googleapis.com/v1/projects/" + projectId + "/messages:send";
+    }
+}
@@ -1,530 +1,378 @@
 package com.mihir.alzheimerscaregiver.utils;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
-import com.google.auth.oauth2.GoogleCredentials;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
-import com.mihir.alzheimerscaregiver.BuildConfig;
+import com.google.firebase.database.ServerValue;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-
-import okhttp3.Call;
-import okhttp3.Callback;
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Helper class for sending FCM notifications using HTTP v1 API from Patient App to CaretakerApp
  * Uses OAuth 2.0 service account authentication instead of deprecated server keys
+ *
+ * Builds the payloads; token lookup, OAuth and the concurrent fan-out are handled by the
+ * shared FCMDispatcher, so creating a sender per alert is cheap.
+ *
+ * Every alert passes through a process-wide AlertCoalescer keyed by patient / subject / type:
+ * bursts within the window collapse into one summary push, high severity goes straight
+ * through, and suppression counts are recorded under patients/{id}/alertSuppression/{date}.
  */
 public class FCMNotificationSender {
     
     private static final String TAG = "FCMNotificationSender";
-    private static final String FCM_SCOPE = "https://www.googleapis.com/auth/firebase.messaging";
     
-    private Context context;
-    private DatabaseReference databaseReference;
-    private OkHttpClient httpClient;
+    // Coalescing window, overridable via the "alert_coalescing_window_ms" preference
+    private static final String PREFS_NAME = "alzheimers_caregiver";
+    private static final String PREF_COALESCING_WINDOW_MS = "alert_coalescing_window_ms";
+    
+    private static AlertCoalescer<CoalescedAlert> coalescer;
+    
+    private final FCMDispatcher dispatcher;
     
-    // Get FCM HTTP v1 API URL with project ID
-    private static String getFCMUrl() {
-        String projectId = BuildConfig.FIREBASE_PROJECT_ID;
-        if ("placeholder".equals(projectId)) {
-            Log.w(TAG, "Firebase Project ID not configured! Please add it to fcm-keys.properties");
-            return null;
+    /**
+     * What is needed to summarize a suppressed burst once its window closes
+     */
+    private static class CoalescedAlert {
+        final String patientId;
+        final String statsKey;
+        final String label;
+        final SummaryBuilder summaryBuilder;
+        
+        CoalescedAlert(String patientId, String statsKey, String label, SummaryBuilder summaryBuilder) {
+            this.patientId = patientId;
+            this.statsKey = statsKey;
+            this.label = label;
+            this.summaryBuilder = summaryBuilder;
         }
-        return "https://fcm.googleapis.com/v1/projects/" + projectId + "/messages:send";
+    }
+    
+    private interface SummaryBuilder {
+        FCMDispatcher.PayloadBuilder build(int suppressedCount, long windowMs);
+    }
+    
+    public FCMNotificationSender(Context context) {
+        this.dispatcher = FCMDispatcher.getInstance(context);
+        initCoalescer(context.getApplicationContext());
+    }
+    
+    private static synchronized void initCoalescer(Context appContext) {
+        if (coalescer != null) {
+            return;
+        }
+        
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long windowMs = prefs.getLong(PREF_COALESCING_WINDOW_MS, AlertCoalescer.DEFAULT_WINDOW_MS);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        FCMDispatcher dispatcher = FCMDispatcher.getInstance(appContext);
+        
+        coalescer = new AlertCoalescer<>(
+                windowMs,
+                AlertCoalescer.DEFAULT_DUPLICATE_WINDOW_MS,
+                System::currentTimeMillis,
+                (task, delayMs) -> scheduler.schedule(task, delayMs, TimeUnit.MILLISECONDS),
+                (key, latest, suppressedCount, windowStartMs, windowEndMs) -> {
+                    Log.i(TAG, "📦 Sending summary for " + suppressedCount + " coalesced alert(s): " + key);
+                    dispatcher.sendToCaretakers(latest.patientId, latest.label + " summary",
+                            latest.summaryBuilder.build(suppressedCount, windowEndMs - windowStartMs));
+                    recordSuppression(latest.patientId, latest.statsKey, suppressedCount);
+                });
+        Log.d(TAG, "Alert coalescing window: " + windowMs + "ms");
     }
     
     /**
-     * Get OAuth 2.0 access token using service account credentials (Async - prevents ANR)
+     * Run an alert through the coalescer
+     * @return true if it should be pushed now
      */
-    private String getAccessToken() {
-        try {
-            String serviceAccountPath = BuildConfig.FIREBASE_SERVICE_ACCOUNT_PATH;
-            if ("firebase-service-account.json.template".equals(serviceAccountPath) || 
-                serviceAccountPath == null || serviceAccountPath.isEmpty()) {
-                Log.w(TAG, "🔐 Firebase service account not configured! FCM notifications disabled.");
-                Log.w(TAG, "📋 To enable notifications: Replace placeholder values in firebase-service-account.json");
-                return null;
-            }
-            
-            // Load service account from assets folder
-            InputStream serviceAccount = context.getAssets().open(serviceAccountPath);
-            GoogleCredentials googleCredentials = GoogleCredentials
-                    .fromStream(serviceAccount)
-                    .createScoped(Arrays.asList(FCM_SCOPE));
-            
-            // Note: This should ideally be called on background thread to prevent ANR
-            // But for FCM notifications, this is already called from notification background context
-            googleCredentials.refreshIfExpired();
-            return googleCredentials.getAccessToken().getTokenValue();
-            
-        } catch (IOException e) {
-            Log.e(TAG, "Error getting OAuth 2.0 access token - check firebase-service-account.json in assets/", e);
-            return null;
+    private static boolean admit(String key, String severity, CoalescedAlert alert) {
+        return admit(key, null, severity, alert);
+    }
+    
+    /**
+     * Run a transition alert through the coalescer; a repeat is only a duplicate if the
+     * subject has not transitioned the other way since
+     */
+    private static boolean admit(String subject, String transition, String severity, CoalescedAlert alert) {
+        AlertCoalescer.Decision decision = coalescer.submit(subject, transition, severity, alert);
+        String key = transition != null ? subject + "|" + transition : subject;
+        switch (decision) {
+            case SEND:
+                return true;
+            case DUPLICATE:
+                Log.i(TAG, "🔁 Dropped duplicate " + severity + " alert: " + key);
+                recordSuppression(alert.patientId, alert.statsKey, 1);
+                return false;
+            default:
+                Log.i(TAG, "⏳ Coalesced alert into open window: " + key);
+                return false;
         }
     }
     
-    public FCMNotificationSender(Context context) {
-        this.context = context;
-        this.databaseReference = FirebaseDatabase.getInstance().getReference();
-        this.httpClient = new OkHttpClient();
+    /**
+     * Count suppressed pushes per day and kind so caretakers can see what was folded
+     */
+    private static void recordSuppression(String patientId, String statsKey, int count) {
+        String date = new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
+        FirebaseDatabase.getInstance().getReference("patients")
+                .child(patientId)
+                .child("alertSuppression")
+                .child(date)
+                .child(statsKey)
+                .setValue(ServerValue.increment(count))
+                .addOnFailureListener(e -> Log.w(TAG, "Failed to record alert suppression", e));
     }
     
     /**
      * Send geofence alert notification to all caretakers associated with patient
      */
-    public void sendGeofenceAlert(String patientId, String patientName, String geofenceName, 
+    public void sendGeofenceAlert(String patientId, String patientName, String geofenceId, String geofenceName, 
                                  String transitionType, String severity, String alertId) {
+        sendGeofenceAlert(patientId, patientName, geofenceId, geofenceName, transitionType, severity, alertId, null);
+    }
+    
+    /**
+     * Send geofence alert notification to all caretakers associated with patient
+     * 
+     * @param geofenceId Coalescing subject; the name is only shown, since caretakers can rename
+     *                   a fence or give two fences the same name
+     * @param deliveryCallback Told about each caretaker FCM accepted the alert for; not called
+     *                         when the alert is coalesced or dropped as a duplicate
+     */
+    public void sendGeofenceAlert(String patientId, String patientName, String geofenceId, String geofenceName, 
+                                 String transitionType, String severity, String alertId,
+                                 FCMDispatcher.DeliveryCallback deliveryCallback) {
         
         Log.i(TAG, "🚨 sendGeofenceAlert() called:");
         Log.i(TAG, "   Patient: " + patientName + " (" + patientId + ")");
-        Log.i(TAG, "   Geofence: " + geofenceName);
+        Log.i(TAG, "   Geofence: " + geofenceName + " (" + geofenceId + ")");
         Log.i(TAG, "   Transition: " + transitionType);
         Log.i(TAG, "   Severity: " + severity);
         
-        // Get all caretaker tokens for this patient
-        Log.i(TAG, "🔍 Looking up FCM tokens at: patient_caretaker_tokens/" + patientId);
-        databaseReference.child("patient_caretaker_tokens")
-                .child(patientId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(DataSnapshot dataSnapshot) {
-                        if (!dataSnapshot.exists()) {
-                            Log.w(TAG, "❌ No caretaker tokens found at patient_caretaker_tokens/" + patientId);
-                            return;
-                        }
-                        
-                        int tokenCount = 0;
-                        for (DataSnapshot caretakerSnapshot : dataSnapshot.getChildren()) {
-                            try {
-                                // Check if this is a direct token string or nested object
-                                Object snapshotValue = caretakerSnapshot.getValue();
-                                
-                                String token = null;
-                                if (snapshotValue instanceof String) {
-                                    // Direct string token
-                                    token = (String) snapshotValue;
-                                    Log.d(TAG, "Found direct string token for caretaker: " + caretakerSnapshot.getKey());
-                                } else {
-                                    // Nested object with token field
-                                    DataSnapshot tokenField = caretakerSnapshot.child("token");
-                                    if (tokenField.exists()) {
-                                        token = tokenField.getValue(String.class);
-                                        Log.d(TAG, "Found nested token for caretaker: " + caretakerSnapshot.getKey());
-                                    }
-                                    
-                                    // Also check for active status
-                                    DataSnapshot activeField = caretakerSnapshot.child("active");
-                                    Boolean active = activeField.exists() ? activeField.getValue(Boolean.class) : true;
-                                    if (active != null && !active) {
-                                        Log.d(TAG, "Skipping inactive token for caretaker: " + caretakerSnapshot.getKey());
-                                        continue;
-                                    }
-                                }
-                                
-                                if (token != null && !token.isEmpty()) {
-                                    Log.i(TAG, "📤 Sending FCM to caretaker: " + caretakerSnapshot.getKey());
-                                    sendFCMNotification(token, patientId, patientName, geofenceName,
-                                                      transitionType, severity, alertId);
-                                    tokenCount++;
-                                } else {
-                                    Log.w(TAG, "Empty or missing token for caretaker: " + caretakerSnapshot.getKey());
-                                }
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error processing caretaker token for: " + caretakerSnapshot.getKey(), e);
-                            }
-                        }
-                        
-                        Log.i(TAG, "✅ FCM notification sent to " + tokenCount + " caretaker(s)");
-                    }
-                    
-                    @Override
-                    public void onCancelled(DatabaseError databaseError) {
-                        Log.e(TAG, "Failed to load caretaker tokens", databaseError.toException());
-                    }
-                });
+        String label = "geofence " + transitionType + " " + geofenceName;
+        CoalescedAlert alert = new CoalescedAlert(patientId, "geofence_" + transitionType, label,
+                (count, windowMs) -> token -> buildGeofenceSummaryPayload(token, patientId, patientName,
+                        geofenceName, transitionType, severity, alertId, count, windowMs));
+        if (!admit(patientId + "|" + geofenceId, transitionType, severity, alert)) {
+            return;
+        }
+        
+        dispatcher.sendToCaretakers(patientId, label,
+                token -> buildGeofencePayload(token, patientId, patientName, geofenceName,
+                                              transitionType, severity, alertId),
+                deliveryCallback);
     }
     
     /**
-     * Send FCM notification to specific caretaker token using HTTP v1 API
+     * Geofence payload summarizing events folded into a coalescing window
      */
-    private void sendFCMNotification(String token, String patientId, String patientName, 
-                                   String geofenceName, String transitionType, 
-                                   String severity, String alertId) {
+    private JSONObject buildGeofenceSummaryPayload(String token, String patientId, String patientName,
+                                                   String geofenceName, String transitionType, String severity,
+                                                   String alertId, int suppressedCount, long windowMs) throws JSONException {
+        JSONObject payload = buildGeofencePayload(token, patientId, patientName, geofenceName,
+                                                  transitionType, severity, alertId);
+        JSONObject message = payload.getJSONObject("message");
         
-        // Move FCM operations to background thread to prevent NetworkOnMainThreadException
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "📤 Starting FCM send on background thread...");
-                
-                // Get OAuth 2.0 access token
-                String accessToken = getAccessToken();
-                if (accessToken == null) {
-                    Log.e(TAG, "Cannot send FCM notification: Access token not available");
-                    return;
-                }
-            
-            String fcmUrl = getFCMUrl();
-            if (fcmUrl == null) {
-                Log.e(TAG, "Cannot send FCM notification: FCM URL not configured");
-                return;
-            }
-            
-            // Create notification object (HTTP v1 format)
-            JSONObject notification = new JSONObject();
-            
-            // Dynamic title based on severity and transition type
-            String title;
-            if ("high".equals(severity)) {
-                title = "🚨 URGENT: Patient Safety Alert";
-            } else if ("EXIT".equals(transitionType)) {
-                title = "📍 Patient Location Update";
-            } else {
-                title = "✅ Safe Zone Activity";
-            }
-            notification.put("title", title);
-            
-            // Enhanced body with emojis and clear messaging
-            String body;
-            if ("EXIT".equals(transitionType)) {
-                if ("high".equals(severity)) {
-                    body = "⚠️ " + patientName + " has LEFT the " + geofenceName + " safe zone. Please check their status immediately.";
-                } else {
-                    body = "📤 " + patientName + " has left " + geofenceName + ". They may be heading out.";
-                }
-            } else if ("ENTER".equals(transitionType)) {
-                body = "🏠 " + patientName + " has safely entered " + geofenceName + ".";
-            } else {
-                body = "📱 " + patientName + " - " + transitionType + " detected at " + geofenceName;
-            }
-            notification.put("body", body);
-            
-            // Create data payload - all values must be strings in HTTP v1
-            JSONObject data = new JSONObject();
-            data.put("alertType", "geofence_alert");
-            data.put("patientId", patientId);
-            data.put("patientName", patientName);
-            data.put("geofenceName", geofenceName);
-            data.put("transitionType", transitionType);
-            data.put("severity", severity);
-            data.put("alertId", alertId);
-            data.put("timestamp", String.valueOf(System.currentTimeMillis()));
-            
-            // Create Android-specific configuration
-            JSONObject androidNotification = new JSONObject();
-            androidNotification.put("icon", "ic_notification_location");
-            androidNotification.put("click_action", "OPEN_GEOFENCE_MANAGEMENT");
-            androidNotification.put("tag", "geofence_alert_" + patientId);
-            
+        long minutes = Math.max(1, windowMs / 60000);
+        message.getJSONObject("notification").put("body", "🔁 " + patientName + " - " + suppressedCount + 
+                " more " + transitionType + " event(s) at " + geofenceName + " in the last " + minutes + 
+                " min.");
+        message.getJSONObject("data").put("coalesced", "true");
+        message.getJSONObject("data").put("suppressedCount", String.valueOf(suppressedCount));
+        return payload;
+    }
+    
+    /**
+     * Build the HTTP v1 geofence alert payload for one caretaker token
+     */
+    private JSONObject buildGeofencePayload(String token, String patientId, String patientName, 
+                                            String geofenceName, String transitionType, 
+                                            String severity, String alertId) throws JSONException {
+        // Create notification object (HTTP v1 format)
+        JSONObject notification = new JSONObject();
+        
+        // Dynamic title based on severity and transition type
+        String title;
+        if ("high".equals(severity)) {
+            title = "🚨 URGENT: Patient Safety Alert";
+        } else if ("EXIT_PREDICTED".equals(transitionType)) {
+            title = "⏱️ Patient May Leave Safe Zone";
+        } else if ("EXIT".equals(transitionType)) {
+            title = "📍 Patient Location Update";
+        } else {
+            title = "✅ Safe Zone Activity";
+        }
+        notification.put("title", title);
+        
+        // Enhanced body with emojis and clear messaging
+        String body;
+        if ("EXIT".equals(transitionType)) {
             if ("high".equals(severity)) {
-                androidNotification.put("sound", "urgent_alert");
-                androidNotification.put("color", "#FF4444"); // Red color for urgent alerts
+                body = "⚠️ " + patientName + " has LEFT the " + geofenceName + " safe zone. Please check their status immediately.";
             } else {
-                androidNotification.put("sound", "gentle_chime");
-                androidNotification.put("color", "#4CAF50"); // Green color for normal alerts
+                body = "📤 " + patientName + " has left " + geofenceName + ". They may be heading out.";
             }
-            
-            JSONObject androidConfig = new JSONObject();
-            androidConfig.put("notification", androidNotification);
-            androidConfig.put("priority", "high");
-            
-            // Create the message object (HTTP v1 format)
-            JSONObject message = new JSONObject();
-            message.put("token", token); // Use 'token' instead of 'to'
-            message.put("notification", notification);
-            message.put("data", data);
-            message.put("android", androidConfig);
-            
-            // Create the root payload
-            JSONObject payload = new JSONObject();
-            payload.put("message", message);
-            
-            // Send HTTP v1 request to FCM
-            RequestBody requestBody = RequestBody.create(
-                MediaType.parse("application/json"), 
-                payload.toString() // Send the complete payload, not just message
-            );
-            
-            Request request = new Request.Builder()
-                    .url(fcmUrl) // Use HTTP v1 URL
-                    .post(requestBody)
-                    .addHeader("Authorization", "Bearer " + accessToken) // OAuth 2.0 Bearer token
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-            
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Failed to send FCM HTTP v1 notification", e);
-                }
-                
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    if (response.isSuccessful()) {
-                        Log.d(TAG, "FCM HTTP v1 notification sent successfully: " + 
-                              patientName + " - " + transitionType + " " + geofenceName);
-                    } else {
-                        String responseBody = response.body() != null ? response.body().string() : "No response body";
-                        Log.w(TAG, "FCM HTTP v1 notification failed: " + response.code() + 
-                              " - " + response.message() + " - " + responseBody);
-                    }
-                    response.close();
-                }
-            });
-            
-            } catch (JSONException e) {
-                Log.e(TAG, "Error creating FCM notification JSON", e);
-            } catch (Exception e) {
-                Log.e(TAG, "Error sending FCM notification", e);
-            }
-        }).start(); // Start the background thread
+        } else if ("EXIT_PREDICTED".equals(transitionType)) {
+            body = "⏱️ " + patientName + " is heading out of " + geofenceName + " and is likely to leave shortly.";
+        } else if ("ENTER".equals(transitionType)) {
+            body = "🏠 " + patientName + " has safely entered " + geofenceName + ".";
+        } else {
+            body = "📱 " + patientName + " - " + transitionType + " detected at " + geofenceName;
+        }
+        notification.put("body", body);
+        
+        // Create data payload - all values must be strings in HTTP v1
+        JSONObject data = new JSONObject();
+        data.put("alertType", "geofence_alert");
+        data.put("patientId", patientId);
+        data.put("patientName", patientName);
+        data.put("geofenceName", geofenceName);
+        data.put("transitionType", transitionType);
+        data.put("severity", severity);
+        data.put("alertId", alertId);
+        data.put("timestamp", String.valueOf(System.currentTimeMillis()));
+        
+        // Create Android-specific configuration
+        JSONObject androidNotification = new JSONObject();
+        androidNotification.put("icon", "ic_notification_location");
+        androidNotification.put("click_action", "OPEN_GEOFENCE_MANAGEMENT");
+        androidNotification.put("tag", "geofence_alert_" + patientId);
+        
+        if ("high".equals(severity)) {
+            androidNotification.put("sound", "urgent_alert");
+            androidNotification.put("color", "#FF4444"); // Red color for urgent alerts
+        } else {
+            androidNotification.put("sound", "gentle_chime");
+            androidNotification.put("color", "#4CAF50"); // Green color for normal alerts
+        }
+        
+        JSONObject androidConfig = new JSONObject();
+        androidConfig.put("notification", androidNotification);
+        androidConfig.put("priority", "high");
+        
+        // Create the message object (HTTP v1 format)
+        JSONObject message = new JSONObject();
+        message.put("token", token); // Use 'token' instead of 'to'
+        message.put("notification", notification);
+        message.put("data", data);
+        message.put("android", androidConfig);
+        
+        // Create the root payload
+        JSONObject payload = new JSONObject();
+        payload.put("message", message);
+        return payload;
     }
     
     /**
      * Send general notification to caretakers
      */
     public void sendGeneralNotification(String patientId, String title, String message) {
-        databaseReference.child("patient_caretaker_tokens")
-                .child(patientId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(DataSnapshot dataSnapshot) {
-                        for (DataSnapshot caretakerSnapshot : dataSnapshot.getChildren()) {
-                            try {
-                                String token = caretakerSnapshot.child("token").getValue(String.class);
-                                Boolean active = caretakerSnapshot.child("active").getValue(Boolean.class);
-                                
-                                if (token != null && (active == null || active)) {
-                                    sendSimpleFCMNotification(token, title, message);
-                                }
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error processing caretaker token", e);
-                            }
-                        }
-                    }
-                    
-                    @Override
-                    public void onCancelled(DatabaseError databaseError) {
-                        Log.e(TAG, "Failed to load caretaker tokens", databaseError.toException());
-                    }
-                });
+        String label = "general " + title;
+        CoalescedAlert alert = new CoalescedAlert(patientId, "general", label,
+                (count, windowMs) -> token -> buildSimplePayload(token, title,
+                        message + " (" + count + " similar alert(s) grouped)"));
+        if (!admit(patientId + "|general|" + title, "medium", alert)) {
+            return;
+        }
+        
+        dispatcher.sendToCaretakers(patientId, label,
+                token -> buildSimplePayload(token, title, message));
     }
     
     /**
-     * Send simple FCM notification using HTTP v1 API
+     * Build a simple HTTP v1 notification payload
      */
-    private void sendSimpleFCMNotification(String token, String title, String body) {
-        try {
-            // Get OAuth 2.0 access token
-            String accessToken = getAccessToken();
-            if (accessToken == null) {
-                Log.e(TAG, "Cannot send simple FCM notification: Access token not available");
-                return;
-            }
-            
-            String fcmUrl = getFCMUrl();
-            if (fcmUrl == null) {
-                Log.e(TAG, "Cannot send simple FCM notification: FCM URL not configured");
-                return;
-            }
-            
-            // Create notification object (HTTP v1 format)
-            JSONObject notification = new JSONObject();
-            notification.put("title", title);
-            notification.put("body", body);
-            
-            // Create the message object (HTTP v1 format)
-            JSONObject message = new JSONObject();
-            message.put("token", token); // Use 'token' instead of 'to'
-            message.put("notification", notification);
-            
-            // Create the root payload
-            JSONObject payload = new JSONObject();
-            payload.put("message", message);
-            
-            // Send HTTP v1 request to FCM
-            RequestBody requestBody = RequestBody.create(
-                MediaType.parse("application/json"), 
-                payload.toString()
-            );
-            
-            Request request = new Request.Builder()
-                    .url(fcmUrl) // Use HTTP v1 URL
-                    .post(requestBody)
-                    .addHeader("Authorization", "Bearer " + accessToken) // OAuth 2.0 Bearer token
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-            
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Failed to send simple FCM HTTP v1 notification", e);
-                }
-                
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    if (response.isSuccessful()) {
-                        Log.d(TAG, "Simple FCM HTTP v1 notification sent successfully: " + title);
-                    } else {
-                        String responseBody = response.body() != null ? response.body().string() : "No response body";
-                        Log.w(TAG, "Simple FCM HTTP v1 notification failed: " + response.code() + 
-                              " - " + response.message() + " - " + responseBody);
-                    }
-                    response.close();
-                }
-            });
-            
-        } catch (JSONException e) {
-            Log.e(TAG, "Error creating simple FCM HTTP v1 notification JSON", e);
-        }
+    private JSONObject buildSimplePayload(String token, String title, String body) throws JSONException {
+        // Create notification object (HTTP v1 format)
+        JSONObject notification = new JSONObject();
+        notification.put("title", title);
+        notification.put("body", body);
+        
+        // Create the message object (HTTP v1 format)
+        JSONObject message = new JSONObject();
+        message.put("token", token); // Use 'token' instead of 'to'
+        message.put("notification", notification);
+        
+        // Create the root payload
+        JSONObject payload = new JSONObject();
+        payload.put("message", message);
+        return payload;
     }
     
     /**
      * Send missed medication alert notification to caretakers
      */
     public void sendMissedMedicationAlert(String patientId, String patientName, String medicationName, String scheduledTime) {
-        databaseReference.child("patient_caretaker_tokens")
-                .child(patientId)
-                .addListenerForSingleValueEvent(new ValueEventListener() {
-                    @Override
-                    public void onDataChange(DataSnapshot dataSnapshot) {
-                        for (DataSnapshot caretakerSnapshot : dataSnapshot.getChildren()) {
-                            try {
-                                String token = caretakerSnapshot.child("token").getValue(String.class);
-                                Boolean active = caretakerSnapshot.child("active").getValue(Boolean.class);
-                                
-                                if (token != null && (active == null || active)) {
-                                    sendMissedMedicationFCM(token, patientName, medicationName, scheduledTime);
-                                }
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error processing caretaker token for missed medication alert", e);
-                            }
-                        }
-                    }
-                    
-                    @Override
-                    public void onCancelled(DatabaseError databaseError) {
-                        Log.e(TAG, "Failed to load caretaker tokens for missed medication alert", databaseError.toException());
-                    }
+        String label = "missed medication " + medicationName;
+        CoalescedAlert alert = new CoalescedAlert(patientId, "missed_medication", label,
+                (count, windowMs) -> token -> {
+                    JSONObject payload = buildMissedMedicationPayload(token, patientName, medicationName, scheduledTime);
+                    JSONObject message = payload.getJSONObject("message");
+                    message.getJSONObject("notification").put("body", patientName + " missed " + medicationName + 
+                            " again: " + count + " more missed reminder(s) since the last alert, latest scheduled at " + 
+                            scheduledTime + ". Please check on them.");
+                    message.getJSONObject("data").put("coalesced", "true");
+                    message.getJSONObject("data").put("suppressedCount", String.valueOf(count));
+                    return payload;
                 });
+        if (!admit(patientId + "|" + medicationName + "|missed_medication", "medium", alert)) {
+            return;
+        }
+        
+        dispatcher.sendToCaretakers(patientId, label,
+                token -> buildMissedMedicationPayload(token, patientName, medicationName, scheduledTime));
     }
     
     /**
-     * Send missed medication FCM notification using HTTP v1 API
-     * FIXED: Now runs on background thread to prevent NetworkOnMainThreadException
+     * Build the HTTP v1 missed medication payload for one caretaker token
      */
-    private void sendMissedMedicationFCM(String token, String patientName, String medicationName, String scheduledTime) {
-        // Move FCM operations to background thread to prevent NetworkOnMainThreadException
-        new Thread(() -> {
-            try {
-                Log.d(TAG, "🔄 Starting FCM notification on background thread...");
-                
-                // Get OAuth 2.0 access token (network operation)
-                String accessToken = getAccessToken();
-            if (accessToken == null) {
-                Log.e(TAG, "Cannot send missed medication FCM notification: Access token not available");
-                return;
-            }
-            
-            String fcmUrl = getFCMUrl();
-            if (fcmUrl == null) {
-                Log.e(TAG, "Cannot send missed medication FCM notification: FCM URL not configured");
-                return;
-            }
-            
-            // Create notification object (HTTP v1 format)
-            JSONObject notification = new JSONObject();
-            notification.put("title", "💊 Medication Reminder Missed");
-            notification.put("body", patientName + " has not taken their " + medicationName + " medication scheduled at " + scheduledTime + ". Please check on them.");
-            
-            // Create data payload - all values must be strings in HTTP v1
-            JSONObject data = new JSONObject();
-            data.put("alertType", "missed_medication");
-            data.put("patientName", patientName);
-            data.put("medicationName", medicationName);
-            data.put("scheduledTime", scheduledTime);
-            data.put("timestamp", String.valueOf(System.currentTimeMillis()));
-            
-            // Create Android-specific configuration
-            JSONObject androidNotification = new JSONObject();
-            androidNotification.put("icon", "ic_notification_medication");
-            androidNotification.put("click_action", "OPEN_MEDICATION_MANAGEMENT");
-            androidNotification.put("tag", "missed_medication_alert");
-            androidNotification.put("sound", "medication_alert");
-            androidNotification.put("color", "#FF9800"); // Orange color for medication alerts
-            
-            JSONObject androidConfig = new JSONObject();
-            androidConfig.put("notification", androidNotification);
-            androidConfig.put("priority", "high");
-            
-            // Create the message object (HTTP v1 format)
-            JSONObject message = new JSONObject();
-            message.put("token", token); // Use 'token' instead of 'to'
-            message.put("notification", notification);
-            message.put("data", data);
-            message.put("android", androidConfig);
-            
-            // Create the root payload
-            JSONObject payload = new JSONObject();
-            payload.put("message", message);
-            
-            // Send HTTP v1 request to FCM
-            RequestBody requestBody = RequestBody.create(
-                MediaType.parse("application/json"), 
-                payload.toString()
-            );
-            
-            Request request = new Request.Builder()
-                    .url(fcmUrl) // Use HTTP v1 URL
-                    .post(requestBody)
-                    .addHeader("Authorization", "Bearer " + accessToken) // OAuth 2.0 Bearer token
-                    .addHeader("Content-Type", "application/json")
-                    .build();
-            
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "Failed to send missed medication FCM HTTP v1 notification", e);
-                }
-                
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    if (response.isSuccessful()) {
-                        Log.d(TAG, "Missed medication FCM HTTP v1 notification sent successfully: " + 
-                              patientName + " - " + medicationName);
-                    } else {
-                        String responseBody = response.body() != null ? response.body().string() : "No response body";
-                        Log.w(TAG, "Missed medication FCM HTTP v1 notification failed: " + response.code() + 
-                              " - " + response.message() + " - " + responseBody);
-                    }
-                    response.close();
-                }
-            });
-            
-            } catch (JSONException e) {
-                Log.e(TAG, "Error creating missed medication FCM notification JSON", e);
-            } catch (Exception e) {
-                Log.e(TAG, "Error sending missed medication FCM notification", e);
-            }
-        }).start(); // Start the background thread
+    private JSONObject buildMissedMedicationPayload(String token, String patientName, String medicationName, 
+                                                    String scheduledTime) throws JSONException {
+        // Create notification object (HTTP v1 format)
+        JSONObject notification = new JSONObject();
+        notification.put("title", "💊 Medication Reminder Missed");
+        notification.put("body", patientName + " has not taken their " + medicationName + " medication scheduled at " + scheduledTime + ". Please check on them.");
+        
+        // Create data payload - all values must be strings in HTTP v1
+        JSONObject data = new JSONObject();
+        data.put("alertType", "missed_medication");
+        data.put("patientName", patientName);
+        data.put("medicationName", medicationName);
+        data.put("scheduledTime", scheduledTime);
+        data.put("timestamp", String.valueOf(System.currentTimeMillis()));
+        
+        // Create Android-specific configuration
+        JSONObject androidNotification = new JSONObject();
+        androidNotification.put("icon", "ic_notification_medication");
+        androidNotification.put("click_action", "OPEN_MEDICATION_MANAGEMENT");
+        androidNotification.put("tag", "missed_medication_alert");
+        androidNotification.put("sound", "medication_alert");
+        androidNotification.put("color", "#FF9800"); // Orange color for medication alerts
+        
+        JSONObject androidConfig = new JSONObject();
+        androidConfig.put("notification", androidNotification);
+        androidConfig.put("priority", "high");
+        
+        // Create the message object (HTTP v1 format)
+        JSONObject message = new JSONObject();
+        message.put("token", token); // Use 'token' instead of 'to'
+        message.put("notification", notification);
+        message.put("data", data);
+        message.put("android", androidConfig);
+        
+        // Create the root payload
+        JSONObject payload = new JSONObject();
+        payload.put("message", message);
+        return payload;
     }
     
     /**
@@ -544,4 +392,4 @@ public class FCMNotificationSender {
             return baseUrl + "location_update_banner.png"; // General location icon
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package com.mihir.alzheimerscaregiver.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Cuts streamed chat text into sentence-sized pieces for TextToSpeechManager
+ *
+ * Text is released at sentence ends (., !, ?, the Devanagari danda and line breaks) once a
+ * piece is long enough to sound natural on its own. A run-on sentence is broken at a comma
+ * or space rather than held back, so speech starts as soon as there is something to say.
+ * A period after a common abbreviation ("Dr.", "e.g.") or an initial does not end a sentence.
+ */
+public class SpeechChunker {
+
+    // Shorter sentences are joined with the next one, e.g. "Oh!" or "Yes."
+    static final int MIN_CHUNK_CHARS = 20;
+    // Longer text is broken without waiting for the sentence to end
+    static final int MAX_CHUNK_CHARS = 220;
+
+    // Lower case, without the final period
+    private static final Set<String> ABBREVIATIONS = new HashSet<>(Arrays.asList(
+            "dr", "mr", "mrs", "ms", "prof", "st", "jr", "sr", "vs", "e.g", "i.e", "approx"));
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    /**
+     * Add newly streamed text
+     * @return Pieces ready to speak, in order; often empty
+     */
+    public List<String> append(String delta) {
+        buffer.append(delta);
+        List<String> chunks = new ArrayList<>();
+        int end;
+        while ((end = findBreak()) > 0) {
+            String chunk = buffer.substring(0, end).trim();
+            buffer.delete(0, end);
+            if (!chunk.isEmpty()) {
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Whatever is left once the stream has ended, or null if nothing is
+     */
+    public String flush() {
+        String rest = buffer.toString().trim();
+        buffer.setLength(0);
+        return rest.isEmpty() ? null : rest;
+    }
+
+    public void reset() {
+        buffer.setLength(0);
+    }
+
+    /**
+     * Length of the next piece to release, or 0 to keep waiting
+     */
+    private int findBreak() {
+        for (int i = 0; i < buffer.length(); i++) {
+            if (i + 1 >= MIN_CHUNK_CHARS && isSentenceEnd(i)) {
+                return i + 1;
+            }
+            if (i + 1 >= MAX_CHUNK_CHARS) {
+                return softBreak(i + 1);
+            }
+        }
+        return 0;
+    }
+
+    private boolean isSentenceEnd(int i) {
+        char c = buffer.charAt(i);
+        if (c == '\n' || c == '।') {
+            return true;
+        }
+        if (c != '.' && c != '!' && c != '?') {
+            return false;
+        }
+        // Only once the next character shows the sentence is over, so "3.5" and "..." stay whole
+        if (i + 1 >= buffer.length() || !Character.isWhitespace(buffer.charAt(i + 1))) {
+            return false;
+        }
+        return c != '.' || !isAbbreviation(i);
+    }
+
+    /**
+     * Whether the word ending at the period at i is an abbreviation or an initial
+     */
+    private boolean isAbbreviation(int i) {
+        int start = i;
+        while (start > 0 && !Character.isWhitespace(buffer.charAt(start - 1))) {
+            start--;
+        }
+        String word = buffer.substring(start, i);
+        while (!word.isEmpty() && !Character.isLetter(word.charAt(0))) {
+            // Opening quotes or brackets
+            word = word.substring(1);
+        }
+        // An initial such as "J. Smith", but not the pronoun in "So do I."
+        if (word.length() == 1 && Character.isUpperCase(word.charAt(0)) && word.charAt(0) != 'I') {
+            return true;
+        }
+        return ABBREVIATIONS.contains(word.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Last comma or space within limit, so a long sentence is not cut mid-word
+     */
+    private int softBreak(int limit) {
+        for (int i = limit - 1; i > MIN_CHUNK_CHARS; i--) {
+            char c = buffer.charAt(i);
+            if (c == ',' || c == ';' || c == ':') {
+                return i + 1;
+            }
+        }
+        for (int i = limit - 1; i > MIN_CHUNK_CHARS; i--) {
+            if (Character.isWhitespace(buffer.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
@@ -22,6 +22,7 @@ public class TextToSpeechManager implements TextToSpeech.OnInitListener {
     private TTSCallback callback;
     private String pendingText = null;
     private String pendingLanguageCode = null;
+    private int utteranceCount = 0;
     
     // Language code mapping for supported languages
     private static final Map<String, Locale> LANGUAGE_LOCALES = new HashMap<>();
@@ -115,9 +116,20 @@ public class TextToSpeechManager implements TextToSpeech.OnInitListener {
      * @param languageCode The language code (from LanguagePreferenceManager)
      */
     public void speak(String text, String languageCode) {
+        speak(text, languageCode, false);
+    }
+    
+    /**
+     * Speak the given text, either replacing current speech or after it
+     * @param text The text to speak
+     * @param languageCode The language code (from LanguagePreferenceManager)
+     * @param queue True to play after what is already being spoken, e.g. the next sentence
+     *              of a streamed chat reply
+     */
+    public void speak(String text, String languageCode, boolean queue) {
         if (!isInitialized) {
             // Store text to speak once initialized
-            pendingText = text;
+            pendingText = queue && pendingText != null ? pendingText + " " + text : text;
             pendingLanguageCode = languageCode;
             Log.d(TAG, "TTS not initialized yet, storing text for later");
             return;
@@ -148,10 +160,11 @@ public class TextToSpeechManager implements TextToSpeech.OnInitListener {
             textToSpeech.setPitch(1.0f); // Normal pitch
             
             // Create utterance ID for tracking
-            String utteranceId = "story_speech_" + System.currentTimeMillis();
+            String utteranceId = "story_speech_" + System.currentTimeMillis() + "_" + (++utteranceCount);
             
             // Speak the text
-            int result = textToSpeech.speak(text, TextToSpeech.QUEUE_FLUSH, null, utteranceId);
+            int queueMode = queue ? TextToSpeech.QUEUE_ADD : TextToSpeech.QUEUE_FLUSH;
+            int result = textToSpeech.speak(text, queueMode, null, utteranceId);
             
             if (result != TextToSpeech.SUCCESS) {
                 Log.e(TAG, "Failed to start speech synthesis");
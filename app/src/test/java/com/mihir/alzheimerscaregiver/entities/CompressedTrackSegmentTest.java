@@ -0,0 +1,162 @@
+package com.mihir.alzheimerscaregiver.entities;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Round-trip tests for CompressedTrackSegment against the raw LocationEntity history format
+ */
+public class CompressedTrackSegmentTest {
+
+    private static final String PATIENT_ID = "test-patient-123";
+    private static final long DAY_START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long TEST_MODE_INTERVAL_MS = 10 * 1000;
+
+    /**
+     * A day of 10-second samples: a slow walk around the block with GPS noise and pauses
+     */
+    private List<LocationEntity> buildTestModeDay() {
+        List<LocationEntity> entities = new ArrayList<>();
+        java.util.Random random = new java.util.Random(42);
+        double lat = 40.712800;
+        double lng = -74.006000;
+        for (int i = 0; i < 24 * 60 * 6; i++) {
+            boolean walking = (i / 360) % 3 == 1;
+            if (walking) {
+                lat += 0.000010 * Math.cos(i / 200.0);
+                lng += 0.000010 * Math.sin(i / 200.0);
+            }
+            double noiseLat = (random.nextDouble() - 0.5) * 0.00004;
+            double noiseLng = (random.nextDouble() - 0.5) * 0.00004;
+            long timestamp = DAY_START + i * TEST_MODE_INTERVAL_MS + random.nextInt(500);
+            entities.add(new LocationEntity(PATIENT_ID, lat + noiseLat, lng + noiseLng, timestamp,
+                    5f + random.nextInt(20), "fused", false));
+        }
+        return entities;
+    }
+
+    private static List<CompressedTrackSegment.TrackPoint> toTrackPoints(List<LocationEntity> entities) {
+        List<CompressedTrackSegment.TrackPoint> points = new ArrayList<>();
+        for (LocationEntity entity : entities) {
+            points.add(new CompressedTrackSegment.TrackPoint(
+                    entity.latitude, entity.longitude, entity.timestamp, entity.accuracy));
+        }
+        return points;
+    }
+
+    /**
+     * Approximate JSON size of the raw format as stored under a push key today
+     */
+    private static long rawFormatBytes(List<LocationEntity> entities) {
+        long bytes = 0;
+        for (LocationEntity entity : entities) {
+            String json = String.format(Locale.US,
+                    "\"-NabcdefghijklmnopqR\":{\"accuracy\":%s,\"isMockLocation\":%s,\"latitude\":%s,"
+                            + "\"longitude\":%s,\"patientId\":\"%s\",\"provider\":\"%s\",\"timestamp\":%d},",
+                    entity.accuracy, entity.isMockLocation, entity.latitude, entity.longitude,
+                    entity.patientId, entity.provider, entity.timestamp);
+            bytes += json.length();
+        }
+        return bytes;
+    }
+
+    private static long segmentBytes(CompressedTrackSegment segment) {
+        long bytes = 0;
+        for (Map.Entry<String, Object> entry : segment.toFirebaseMap().entrySet()) {
+            bytes += entry.getKey().length() + String.valueOf(entry.getValue()).length() + 6;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testRoundTripPreservesPositionAndTime() {
+        List<LocationEntity> day = buildTestModeDay();
+        CompressedTrackSegment segment = CompressedTrackSegment.encode(
+                toTrackPoints(day), CompressedTrackSegment.DEFAULT_SIMPLIFY_TOLERANCE_METERS);
+
+        List<CompressedTrackSegment.TrackPoint> decoded = segment.decodePoints();
+
+        assertEquals(day.size(), decoded.size());
+        for (int i = 0; i < day.size(); i++) {
+            LocationEntity original = day.get(i);
+            CompressedTrackSegment.TrackPoint point = decoded.get(i);
+            assertEquals("latitude at " + i, original.latitude, point.latitude, 1e-6);
+            assertEquals("longitude at " + i, original.longitude, point.longitude, 1e-6);
+            assertEquals("timestamp at " + i, original.timestamp, point.timestamp);
+            assertEquals("accuracy at " + i, Math.round(original.accuracy), Math.round(point.accuracy));
+        }
+    }
+
+    @Test
+    public void testRoundTripThroughFirebaseMap() {
+        List<LocationEntity> day = buildTestModeDay().subList(0, 500);
+        CompressedTrackSegment segment = CompressedTrackSegment.encode(
+                toTrackPoints(day), CompressedTrackSegment.DEFAULT_SIMPLIFY_TOLERANCE_METERS);
+
+        CompressedTrackSegment restored = CompressedTrackSegment.fromFirebase(segment.toFirebaseMap());
+
+        assertTrue(restored.isSupportedVersion());
+        assertEquals(segment.startTime, restored.startTime);
+        assertEquals(segment.endTime, restored.endTime);
+        assertEquals(segment.count, restored.count);
+        assertEquals(day.get(499).timestamp, restored.decodePoints().get(499).timestamp);
+    }
+
+    @Test
+    public void testCompressedDayIsAnOrderOfMagnitudeSmaller() {
+        List<LocationEntity> day = buildTestModeDay();
+        CompressedTrackSegment segment = CompressedTrackSegment.encode(
+                toTrackPoints(day), CompressedTrackSegment.DEFAULT_SIMPLIFY_TOLERANCE_METERS);
+
+        long raw = rawFormatBytes(day);
+        long compressed = segmentBytes(segment);
+
+        assertTrue("Expected >= 10x reduction, raw=" + raw + " compressed=" + compressed,
+                compressed * 10 <= raw);
+    }
+
+    @Test
+    public void testSimplifiedTrackKeepsEndpointsAndShape() {
+        List<CompressedTrackSegment.TrackPoint> points = new ArrayList<>();
+        // Straight line east, then a right-angle turn north
+        for (int i = 0; i <= 100; i++) {
+            points.add(new CompressedTrackSegment.TrackPoint(40.0, -74.0 + i * 0.0001, DAY_START + i * 1000L, 5f));
+        }
+        for (int i = 1; i <= 100; i++) {
+            points.add(new CompressedTrackSegment.TrackPoint(40.0 + i * 0.0001, -73.99, DAY_START + (100 + i) * 1000L, 5f));
+        }
+
+        CompressedTrackSegment segment = CompressedTrackSegment.encode(points, 1.0);
+        List<CompressedTrackSegment.TrackPoint> simplified = segment.decodeSimplifiedPoints();
+
+        assertEquals(3, simplified.size());
+        assertEquals(points.get(0).timestamp, simplified.get(0).timestamp);
+        assertEquals(points.get(100).timestamp, simplified.get(1).timestamp);
+        assertEquals(points.get(200).timestamp, simplified.get(2).timestamp);
+    }
+
+    @Test
+    public void testSinglePointSegment() {
+        List<CompressedTrackSegment.TrackPoint> points = new ArrayList<>();
+        points.add(new CompressedTrackSegment.TrackPoint(-33.8688, 151.2093, DAY_START, 12f));
+
+        CompressedTrackSegment segment = CompressedTrackSegment.encode(points, 10.0);
+        List<CompressedTrackSegment.TrackPoint> decoded = segment.decodePoints();
+
+        assertEquals(1, decoded.size());
+        assertEquals(-33.8688, decoded.get(0).latitude, 1e-6);
+        assertEquals(151.2093, decoded.get(0).longitude, 1e-6);
+        assertEquals(1, segment.decodeSimplifiedPoints().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyTrackRejected() {
+        CompressedTrackSegment.encode(new ArrayList<CompressedTrackSegment.TrackPoint>(), 10.0);
+    }
+}
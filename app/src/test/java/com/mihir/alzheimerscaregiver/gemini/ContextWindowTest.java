@@ -0,0 +1,172 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Token budget, eviction and summary folding tests for ContextWindow
+ */
+public class ContextWindowTest {
+
+    private static final String PROMPT = "You are a kind companion.";
+
+    private final ContextWindow window = new ContextWindow(PROMPT);
+
+    /**
+     * ASCII text estimated at exactly the given number of tokens, tagged so turns can be told apart
+     */
+    private static String text(String tag, int tokens) {
+        StringBuilder text = new StringBuilder(tag);
+        while (text.length() < tokens * 4) {
+            text.append('.');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Add exchanges of two 100-token turns, "u0"/"a0", "u1"/"a1" and so on
+     */
+    private void addExchanges(int from, int to) {
+        for (int i = from; i < to; i++) {
+            window.addTurn(true, text("u" + i, 100));
+            window.addTurn(false, text("a" + i, 100));
+        }
+    }
+
+    private static String tag(ContextWindow.Turn turn) {
+        return turn.text.substring(0, turn.text.indexOf('.'));
+    }
+
+    @Test
+    public void tokensAreEstimatedPerScript() {
+        assertEquals(0, ContextWindow.estimateTokens(null));
+        assertEquals(25, ContextWindow.estimateTokens(text("x", 25)));
+        assertEquals(1, ContextWindow.estimateTokens("Hi"));
+        // Indic characters count about two to a token
+        assertEquals(3, ContextWindow.estimateTokens("नमस्ते"));
+    }
+
+    @Test
+    public void turnsWithinTheBudgetAreAllSentVerbatim() {
+        // 15 turns of 100 tokens fill the 1500-token budget exactly
+        addExchanges(0, 7);
+        window.addTurn(true, text("u7", 100));
+
+        assertEquals(15, window.getTurns().size());
+        assertFalse(window.needsSummary());
+        assertEquals(ContextWindow.estimateTokens(PROMPT) + 1500, window.estimatedTokens());
+    }
+
+    @Test
+    public void overflowMovesTheOldestExchangeToPending() {
+        addExchanges(0, 8);
+
+        // Still sent while waiting for a summary, and the window starts with the patient
+        List<ContextWindow.Turn> turns = window.getTurns();
+        assertEquals(16, turns.size());
+        assertTrue(turns.get(0).fromUser);
+        assertTrue(window.needsSummary());
+
+        List<ContextWindow.Turn> evicted = window.beginSummary();
+        assertEquals(2, evicted.size());
+        assertEquals("u0", tag(evicted.get(0)));
+        assertEquals("a0", tag(evicted.get(1)));
+    }
+
+    @Test
+    public void completedSummaryReplacesTheTurnsItCovers() {
+        addExchanges(0, 8);
+        List<ContextWindow.Turn> evicted = window.beginSummary();
+        assertFalse("one summary at a time", window.needsSummary());
+        assertNull(window.beginSummary());
+
+        // More turns are evicted while the summary is being written
+        addExchanges(8, 9);
+        window.completeSummary("  They talked about the garden.  ");
+
+        assertEquals("They talked about the garden.", window.getSummary());
+        List<ContextWindow.Turn> turns = window.getTurns();
+        assertEquals(16, turns.size());
+        assertEquals("u1", tag(turns.get(0)));
+        for (ContextWindow.Turn turn : evicted) {
+            assertFalse(turns.contains(turn));
+        }
+        // The turns evicted after beginSummary() wait for the next one
+        assertTrue(window.needsSummary());
+        assertEquals(2, window.beginSummary().size());
+        assertTrue(window.toTranscript().contains("Summary: They talked about the garden.\n\nUser: u1"));
+    }
+
+    @Test
+    public void abandonedSummaryLeavesTheTurnsWaiting() {
+        addExchanges(0, 8);
+        window.beginSummary();
+
+        window.abandonSummary();
+
+        assertEquals("", window.getSummary());
+        assertEquals(16, window.getTurns().size());
+        assertEquals(2, window.beginSummary().size());
+    }
+
+    @Test
+    public void completeWithoutBeginIsIgnored() {
+        addExchanges(0, 8);
+
+        window.completeSummary("Nothing was claimed.");
+
+        assertEquals("", window.getSummary());
+        assertEquals(16, window.getTurns().size());
+    }
+
+    @Test
+    public void pendingTurnsAreDroppedWhenSummariesKeepFailing() {
+        addExchanges(0, 30);
+
+        // 1500 recent plus at most 1500 pending, whole exchanges only
+        List<ContextWindow.Turn> turns = window.getTurns();
+        assertTrue(window.estimatedTokens() <= ContextWindow.estimateTokens(PROMPT) + 3000);
+        assertTrue(turns.get(0).fromUser);
+        assertEquals("a29", tag(turns.get(turns.size() - 1)));
+        // The oldest exchanges went first, and the rest are all still there
+        int first = Integer.parseInt(tag(turns.get(0)).substring(1));
+        assertTrue(first > 0);
+        assertEquals(2 * (30 - first), turns.size());
+    }
+
+    @Test
+    public void sameTextTwiceIsFoldedByIdentity() {
+        ContextWindow small = new ContextWindow(PROMPT, 200, 1500);
+        String repeated = text("where", 100);
+        small.addTurn(true, repeated);
+        small.addTurn(false, text("a0", 100));
+        small.addTurn(true, repeated);
+        small.addTurn(false, text("a1", 100));
+
+        List<ContextWindow.Turn> evicted = small.beginSummary();
+        small.addTurn(true, repeated);
+        small.addTurn(false, text("a2", 100));
+        small.completeSummary("They asked where their wife was.");
+
+        List<ContextWindow.Turn> turns = small.getTurns();
+        assertEquals(4, turns.size());
+        assertNotSame(evicted.get(0), turns.get(0));
+        assertEquals(repeated, turns.get(0).text);
+    }
+
+    @Test
+    public void latestExchangeIsKeptWhateverItsSize() {
+        window.addTurn(true, text("u0", 100));
+        window.addTurn(false, text("a0", 100));
+        window.addTurn(true, text("long", 1000));
+        window.addTurn(false, text("longer", 2000));
+
+        List<ContextWindow.Turn> turns = window.getTurns();
+        assertEquals("long", tag(turns.get(turns.size() - 2)));
+        assertEquals("longer", tag(turns.get(turns.size() - 1)));
+        assertEquals(2, window.beginSummary().size());
+    }
+}
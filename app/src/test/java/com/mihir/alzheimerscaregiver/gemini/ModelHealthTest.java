@@ -0,0 +1,126 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Cooldown, backoff and fallback-order tests for ModelHealth on a fake clock
+ */
+public class ModelHealthTest {
+
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final String FLASH = "gemini-2.5-flash";
+    private static final String PRO = "gemini-2.5-pro";
+    private static final String LITE = "gemini-2.0-flash-lite";
+
+    private final ModelHealth health = new ModelHealth(FLASH, PRO, LITE);
+
+    @Test
+    public void healthyModelsKeepPreferenceOrder() {
+        assertEquals(Arrays.asList(FLASH, PRO, LITE), health.order(START));
+    }
+
+    @Test
+    public void notFoundRetiresModelForAnHour() {
+        health.record(FLASH, ModelHealth.Outcome.NOT_FOUND, START);
+
+        assertEquals(Arrays.asList(PRO, LITE), health.order(START + 1));
+        assertEquals(Arrays.asList(PRO, LITE), health.order(START + ModelHealth.NOT_FOUND_COOLDOWN_MS - 1));
+        assertEquals(ModelHealth.NOT_FOUND_COOLDOWN_MS, health.cooldownRemaining(FLASH, START));
+
+        assertEquals(Arrays.asList(FLASH, PRO, LITE), health.order(START + ModelHealth.NOT_FOUND_COOLDOWN_MS));
+    }
+
+    @Test
+    public void serverErrorsBackOffExponentiallyUpToTheCap() {
+        long now = START;
+        long expected = ModelHealth.FAILURE_BASE_COOLDOWN_MS;
+        for (int failure = 1; failure <= 10; failure++) {
+            health.record(PRO, ModelHealth.Outcome.SERVER_ERROR, now);
+            assertEquals("after failure " + failure, expected, health.cooldownRemaining(PRO, now));
+            now += health.cooldownRemaining(PRO, now);
+            expected = Math.min(expected * 2, ModelHealth.FAILURE_MAX_COOLDOWN_MS);
+        }
+        assertEquals(ModelHealth.FAILURE_MAX_COOLDOWN_MS, expected);
+    }
+
+    @Test
+    public void badResponseCountsAsAFailure() {
+        health.record(FLASH, ModelHealth.Outcome.BAD_RESPONSE, START);
+        health.record(FLASH, ModelHealth.Outcome.BAD_RESPONSE, START);
+
+        assertEquals(2 * ModelHealth.FAILURE_BASE_COOLDOWN_MS, health.cooldownRemaining(FLASH, START));
+    }
+
+    @Test
+    public void successClearsCooldownAndBackoff() {
+        health.record(FLASH, ModelHealth.Outcome.SERVER_ERROR, START);
+        health.record(FLASH, ModelHealth.Outcome.SERVER_ERROR, START);
+        health.record(FLASH, ModelHealth.Outcome.SUCCESS, START + 1);
+
+        assertTrue(health.isAvailable(FLASH, START + 1));
+        health.record(FLASH, ModelHealth.Outcome.SERVER_ERROR, START + 2);
+        assertEquals(ModelHealth.FAILURE_BASE_COOLDOWN_MS, health.cooldownRemaining(FLASH, START + 2));
+    }
+
+    @Test
+    public void rateLimitsNetworkAndRequestErrorsDoNotCount() {
+        health.record(FLASH, ModelHealth.Outcome.RATE_LIMITED, START);
+        health.record(FLASH, ModelHealth.Outcome.NETWORK_ERROR, START);
+        health.record(FLASH, ModelHealth.Outcome.REQUEST_ERROR, START);
+
+        assertTrue(health.isAvailable(FLASH, START));
+        assertEquals(FLASH + " ok, " + PRO + " ok, " + LITE + " ok", health.describe(START));
+    }
+
+    @Test
+    public void allCoolingReturnsTheSoonestToRecoverAsProbe() {
+        health.record(FLASH, ModelHealth.Outcome.NOT_FOUND, START);
+        health.record(PRO, ModelHealth.Outcome.SERVER_ERROR, START);
+        health.record(LITE, ModelHealth.Outcome.SERVER_ERROR, START);
+        health.record(LITE, ModelHealth.Outcome.SERVER_ERROR, START);
+
+        assertEquals(Collections.singletonList(PRO), health.order(START + 1));
+    }
+
+    @Test
+    public void describeShowsCooldownAndFailures() {
+        health.record(PRO, ModelHealth.Outcome.SERVER_ERROR, START);
+        health.record(PRO, ModelHealth.Outcome.SERVER_ERROR, START);
+
+        assertEquals(FLASH + " ok, " + PRO + " cooling 10s (2 failures), " + LITE + " ok", health.describe(START));
+    }
+
+    @Test
+    public void unknownModelIsIgnored() {
+        health.record("gemini-1.0-pro", ModelHealth.Outcome.NOT_FOUND, START);
+
+        assertEquals(Arrays.asList(FLASH, PRO, LITE), health.order(START));
+        assertFalse(health.isAvailable("gemini-1.0-pro", START));
+    }
+
+    @Test
+    public void httpCodesAreClassified() {
+        assertEquals(ModelHealth.Outcome.SUCCESS, ModelHealth.classify(200));
+        assertEquals(ModelHealth.Outcome.NOT_FOUND, ModelHealth.classify(404));
+        assertEquals(ModelHealth.Outcome.RATE_LIMITED, ModelHealth.classify(429));
+        assertEquals(ModelHealth.Outcome.SERVER_ERROR, ModelHealth.classify(503));
+        assertEquals(ModelHealth.Outcome.REQUEST_ERROR, ModelHealth.classify(400));
+        assertEquals(ModelHealth.Outcome.REQUEST_ERROR, ModelHealth.classify(403));
+    }
+
+    @Test
+    public void retryDelayIsReadFromTheErrorBody() {
+        String body = "{\"error\":{\"code\":429,\"details\":[{\"@type\":\"type.googleapis.com/google.rpc.RetryInfo\","
+                + "\"retryDelay\": \"23s\"}]}}";
+
+        assertEquals(23000, ModelHealth.parseRetryDelayMs(body));
+        assertEquals(1500, ModelHealth.parseRetryDelayMs("{\"retryDelay\":\"1.5s\"}"));
+        assertEquals(0, ModelHealth.parseRetryDelayMs("{\"error\":{\"code\":429}}"));
+        assertEquals(0, ModelHealth.parseRetryDelayMs(null));
+    }
+}
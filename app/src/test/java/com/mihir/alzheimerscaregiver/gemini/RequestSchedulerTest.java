@@ -0,0 +1,138 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Priority, background reserve, 429 and deadline tests for RequestScheduler on a fake clock
+ */
+public class RequestSchedulerTest {
+
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long SECOND = 1000;
+    private static final String FLASH = "gemini-2.5-flash";
+    private static final String PRO = "gemini-2.5-pro";
+    private static final List<String> FLASH_ONLY = Collections.singletonList(FLASH);
+
+    // FLASH: 4 tokens refilled at one per second; PRO: 2 tokens at one every 6 seconds
+    private final RequestScheduler<String> scheduler = new RequestScheduler<>(
+            new String[]{FLASH, PRO}, new int[]{60, 10}, new int[]{4, 2}, START);
+
+    private static List<String> payloads(List<RequestScheduler.Ticket<String>> tickets) {
+        List<String> payloads = new ArrayList<>();
+        for (RequestScheduler.Ticket<String> ticket : tickets) {
+            payloads.add(ticket.payload + (ticket.isExpired() ? " expired" : "@" + ticket.getModel()));
+        }
+        return payloads;
+    }
+
+    @Test
+    public void backgroundLeavesOneTokenInEachBucket() {
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit("bg" + i, RequestScheduler.Priority.BACKGROUND, Arrays.asList(FLASH, PRO), START);
+        }
+
+        List<RequestScheduler.Ticket<String>> ready = scheduler.poll(START);
+
+        // 3 of FLASH's 4 tokens and 1 of PRO's 2
+        assertEquals(Arrays.asList("bg0@" + FLASH, "bg1@" + FLASH, "bg2@" + FLASH, "bg3@" + PRO), payloads(ready));
+        assertEquals(6, scheduler.size());
+
+        scheduler.submit("chat", RequestScheduler.Priority.CHAT, FLASH_ONLY, START);
+        assertEquals(Collections.singletonList("chat@" + FLASH), payloads(scheduler.poll(START)));
+    }
+
+    @Test
+    public void chatPreemptsQueuedBackgroundWork() {
+        for (int i = 0; i < 5; i++) {
+            scheduler.submit("bg" + i, RequestScheduler.Priority.BACKGROUND, FLASH_ONLY, START);
+        }
+        assertEquals(3, scheduler.poll(START).size());
+
+        // Arrives after two background calls are already waiting
+        scheduler.submit("chat", RequestScheduler.Priority.CHAT, FLASH_ONLY, START + 100);
+
+        assertEquals(Collections.singletonList("chat@" + FLASH), payloads(scheduler.poll(START + 100)));
+        // The refilled token is not enough for background until the bucket is back to 2
+        assertTrue(scheduler.poll(START + SECOND + 100).isEmpty());
+        assertEquals(Collections.singletonList("bg3@" + FLASH), payloads(scheduler.poll(START + 2 * SECOND + 100)));
+    }
+
+    @Test
+    public void emptyModelFallsBackToTheNextOneOnlyWhileItsReserveLasts() {
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit("fg" + i, RequestScheduler.Priority.FOREGROUND, FLASH_ONLY, START);
+        }
+        scheduler.poll(START);
+
+        scheduler.submit("bg", RequestScheduler.Priority.BACKGROUND, Arrays.asList(FLASH, PRO), START);
+        scheduler.submit("chat", RequestScheduler.Priority.CHAT, Arrays.asList(FLASH, PRO), START);
+
+        // FLASH is empty; chat takes one of PRO's two tokens and background may not take the last
+        assertEquals(Collections.singletonList("chat@" + PRO), payloads(scheduler.poll(START)));
+        // Background needs two tokens back in FLASH
+        assertEquals(START + 2 * SECOND, scheduler.nextWakeup(START));
+        assertTrue(scheduler.poll(START + SECOND).isEmpty());
+        assertEquals(Collections.singletonList("bg@" + FLASH), payloads(scheduler.poll(START + 2 * SECOND)));
+    }
+
+    @Test
+    public void rateLimitPausesTheModelForTheRetryDelay() {
+        scheduler.rateLimited(FLASH, 20 * SECOND, START);
+        scheduler.submit("chat", RequestScheduler.Priority.CHAT, FLASH_ONLY, START);
+
+        assertTrue(scheduler.poll(START + 20 * SECOND).isEmpty());
+        // Refill restarts at the end of the pause, one token per second
+        assertEquals(START + 21 * SECOND, scheduler.nextWakeup(START + SECOND));
+        assertTrue(scheduler.poll(START + 21 * SECOND - 1).isEmpty());
+        assertEquals(Collections.singletonList("chat@" + FLASH), payloads(scheduler.poll(START + 21 * SECOND)));
+    }
+
+    @Test
+    public void rateLimitedModelIsSkippedForTheNextOne() {
+        scheduler.rateLimited(FLASH, 20 * SECOND, START);
+        scheduler.submit("chat", RequestScheduler.Priority.CHAT, Arrays.asList(FLASH, PRO), START);
+
+        assertEquals(Collections.singletonList("chat@" + PRO), payloads(scheduler.poll(START)));
+    }
+
+    @Test
+    public void eachPriorityExpiresAfterItsOwnMaxWait() {
+        scheduler.rateLimited(FLASH, 20 * 60 * SECOND, START);
+        scheduler.submit("chat", RequestScheduler.Priority.CHAT, FLASH_ONLY, START);
+        scheduler.submit("fg", RequestScheduler.Priority.FOREGROUND, FLASH_ONLY, START);
+        scheduler.submit("bg", RequestScheduler.Priority.BACKGROUND, FLASH_ONLY, START);
+
+        assertEquals(START + RequestScheduler.Priority.CHAT.maxWaitMs, scheduler.nextWakeup(START));
+        assertTrue(scheduler.poll(START + 30 * SECOND - 1).isEmpty());
+        assertEquals(Collections.singletonList("chat expired"), payloads(scheduler.poll(START + 30 * SECOND)));
+        assertEquals(Collections.singletonList("fg expired"), payloads(scheduler.poll(START + 60 * SECOND)));
+        assertTrue(scheduler.poll(START + 10 * 60 * SECOND - 1).isEmpty());
+        assertEquals(Collections.singletonList("bg expired"), payloads(scheduler.poll(START + 10 * 60 * SECOND)));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void requeuedTicketKeepsItsPlaceAndDeadline() {
+        RequestScheduler.Ticket<String> first =
+                scheduler.submit("first", RequestScheduler.Priority.FOREGROUND, Arrays.asList(FLASH, PRO), START);
+        scheduler.poll(START);
+        scheduler.submit("second", RequestScheduler.Priority.FOREGROUND, Arrays.asList(FLASH, PRO), START + 1);
+
+        assertTrue(scheduler.requeue(first, Collections.singletonList(PRO)));
+
+        assertEquals(Arrays.asList("first@" + PRO, "second@" + FLASH), payloads(scheduler.poll(START + 2)));
+        assertFalse(scheduler.requeue(first, Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void nextWakeupIsMaxValueWhenIdle() {
+        assertEquals(Long.MAX_VALUE, scheduler.nextWakeup(START));
+    }
+}
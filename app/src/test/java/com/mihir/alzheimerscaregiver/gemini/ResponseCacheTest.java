@@ -0,0 +1,144 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Normalization, similarity, TTL, LRU and language partition tests for ResponseCache
+ */
+public class ResponseCacheTest {
+
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long MINUTE = 60 * 1000;
+    private static final String ENGLISH = "English";
+    private static final String HINDI = "Hindi";
+
+    private final ResponseCache cache = new ResponseCache();
+
+    @Test
+    public void normalizeFoldsCasePunctuationAndContractions() {
+        assertEquals("where is my wife", ResponseCache.normalize("  Where's my WIFE?! "));
+        assertEquals("i do not know where i am going", ResponseCache.normalize("I don’t know where I'm going..."));
+        assertEquals("", ResponseCache.normalize(null));
+        // Chandrabindu and nukta variants of the same Devanagari word
+        assertEquals(ResponseCache.normalize("मैं कहाँ हूँ"), ResponseCache.normalize("मैं कहां हूं"));
+    }
+
+    @Test
+    public void rephrasedQuestionIsAnExactHit() {
+        cache.store(ENGLISH, "Where is my wife?", "She has gone to the market.", START);
+
+        assertEquals("She has gone to the market.", cache.lookup(ENGLISH, "where's my wife", START + MINUTE));
+        assertEquals(1, cache.stats().exactHits);
+    }
+
+    @Test
+    public void misspelledQuestionClearsTheSimilarityThreshold() {
+        cache.store(ENGLISH, "Where are my glasses?", "On the table by your chair.", START);
+
+        assertEquals("On the table by your chair.", cache.lookup(ENGLISH, "where are my glases", START));
+        assertEquals(1, cache.stats().similarHits);
+    }
+
+    @Test
+    public void differentQuestionFallsBelowTheThreshold() {
+        cache.store(ENGLISH, "Where is my wife?", "She has gone to the market.", START);
+        cache.store(ENGLISH, "Did I take my tablets?", "Yes, after breakfast.", START);
+
+        assertNull(cache.lookup(ENGLISH, "Where is my son?", START));
+        assertNull(cache.lookup(ENGLISH, "Did I take my medicine?", START));
+        assertEquals(2, cache.stats().misses);
+    }
+
+    @Test
+    public void stricterThresholdRejectsTheMisspelling() {
+        ResponseCache strict = new ResponseCache(0.9, ResponseCache.DEFAULT_TTL_MS, ResponseCache.DEFAULT_MAX_ENTRIES);
+        strict.store(ENGLISH, "Where are my glasses?", "On the table by your chair.", START);
+
+        assertNull(strict.lookup(ENGLISH, "where are my glases", START));
+    }
+
+    @Test
+    public void entriesExpireAfterTheTtl() {
+        cache.store(ENGLISH, "Who is coming to visit?", "Your daughter, this afternoon.", START);
+
+        assertNotNull(cache.lookup(ENGLISH, "Who is coming to visit?", START + ResponseCache.DEFAULT_TTL_MS - 1));
+        assertNull(cache.lookup(ENGLISH, "Who is coming to visit?", START + ResponseCache.DEFAULT_TTL_MS));
+        assertEquals(1, cache.stats().expirations);
+        assertEquals(0, cache.stats().entries);
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        ResponseCache small = new ResponseCache(ResponseCache.DEFAULT_MIN_SIMILARITY, ResponseCache.DEFAULT_TTL_MS, 2);
+        small.store(ENGLISH, "Where is my wife?", "At the market.", START);
+        small.store(ENGLISH, "Where are my glasses?", "On the table.", START);
+        // Touch the wife question so the glasses become least recently used
+        small.lookup(ENGLISH, "Where is my wife?", START);
+
+        small.store(ENGLISH, "Who is coming to visit?", "Your daughter.", START);
+
+        assertEquals("At the market.", small.lookup(ENGLISH, "Where is my wife?", START));
+        assertNull(small.lookup(ENGLISH, "Where are my glasses?", START));
+        assertEquals(1, small.stats().evictions);
+        assertEquals(2, small.stats().entries);
+    }
+
+    @Test
+    public void languagesArePartitioned() {
+        cache.store(ENGLISH, "Where is my wife?", "She has gone to the market.", START);
+
+        assertNull(cache.lookup(HINDI, "Where is my wife?", START));
+
+        cache.store(HINDI, "Where is my wife?", "वह बाज़ार गई हैं।", START);
+        assertEquals("वह बाज़ार गई हैं।", cache.lookup(HINDI, "Where is my wife?", START));
+        assertEquals("She has gone to the market.", cache.lookup(ENGLISH, "Where is my wife?", START));
+    }
+
+    @Test
+    public void shortMessagesAreNeverCached() {
+        cache.store(ENGLISH, "Tell me", "About what?", START);
+
+        assertNull(cache.lookup(ENGLISH, "Tell me", START));
+        assertEquals(0, cache.stats().entries);
+        assertEquals(1, cache.stats().skipped);
+    }
+
+    @Test
+    public void timeAndDateQuestionsAreNeverCached() {
+        String[] questions = {
+                "What day is it today?",
+                "What is the time now?",
+                "Is it Sunday tomorrow?",
+                "आज कौन सा दिन है?",
+                "ಈಗ ಸಮಯ ಎಷ್ಟು?",
+                "இன்றைக்கு என்ன தேதி?",
+        };
+        for (String question : questions) {
+            cache.store(ENGLISH, question, "It is Wednesday.", START);
+            assertNull(question, cache.lookup(ENGLISH, question, START));
+        }
+        assertEquals(0, cache.stats().entries);
+        assertEquals(questions.length, cache.stats().skipped);
+    }
+
+    @Test
+    public void everydayWordsAreNotMistakenForTimeWords() {
+        assertFalse(ResponseCache.isAboutTime(ResponseCache.normalize("Where is my daughter?")));
+        assertFalse(ResponseCache.isAboutTime(ResponseCache.normalize("Do you know my name?")));
+        assertFalse(ResponseCache.isAboutTime(ResponseCache.normalize("मेरी कलम कहाँ है?")));
+    }
+
+    @Test
+    public void statsLineReportsHitRate() {
+        cache.store(ENGLISH, "Where is my wife?", "At the market.", START);
+        cache.lookup(ENGLISH, "Where is my wife?", START);
+        cache.lookup(ENGLISH, "Where is my son?", START);
+
+        ResponseCache.Stats stats = cache.stats();
+        assertEquals(0.5, stats.hitRate(), 1e-9);
+        assertEquals("hit rate 50% (1 exact, 0 similar, 1 misses, 0 skipped), 1 entries, 0 evicted, 0 expired",
+                stats.toLogLine());
+    }
+}
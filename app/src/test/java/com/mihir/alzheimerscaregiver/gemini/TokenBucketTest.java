@@ -0,0 +1,82 @@
+package com.mihir.alzheimerscaregiver.gemini;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Refill, reserve and 429 pause tests for TokenBucket on a fake clock
+ */
+public class TokenBucketTest {
+
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long SECOND = 1000;
+
+    // 3 tokens, refilled at one per second
+    private final TokenBucket bucket = new TokenBucket(3, 60, START);
+
+    @Test
+    public void startsFullAndRefillsAtTheQuota() {
+        assertTrue(bucket.tryAcquire(1, START));
+        assertTrue(bucket.tryAcquire(1, START));
+        assertTrue(bucket.tryAcquire(1, START));
+        assertFalse(bucket.tryAcquire(1, START));
+
+        assertFalse(bucket.tryAcquire(1, START + SECOND - 1));
+        assertTrue(bucket.tryAcquire(1, START + SECOND));
+    }
+
+    @Test
+    public void refillStopsAtCapacity() {
+        bucket.tryAcquire(1, START);
+
+        assertEquals(3, bucket.getTokens(START + 60 * SECOND), 1e-9);
+    }
+
+    @Test
+    public void minTokensLeavesTheRestForHigherPriorities() {
+        assertTrue(bucket.tryAcquire(2, START));
+        assertTrue(bucket.tryAcquire(2, START));
+        assertFalse(bucket.tryAcquire(2, START));
+
+        assertEquals(1, bucket.getTokens(START), 1e-9);
+        assertTrue(bucket.tryAcquire(1, START));
+    }
+
+    @Test
+    public void minTokensAboveCapacityIsCapped() {
+        TokenBucket single = new TokenBucket(1, 60, START);
+
+        assertTrue(single.tryAcquire(2, START));
+    }
+
+    @Test
+    public void pauseEmptiesTheBucketAndHoldsRefillUntilTheRetryDelay() {
+        bucket.pause(20 * SECOND, START);
+
+        assertEquals(0, bucket.getTokens(START + 20 * SECOND), 1e-9);
+        assertFalse(bucket.tryAcquire(1, START + 20 * SECOND));
+        assertEquals(START + 21 * SECOND, bucket.availableAt(1, START + 5 * SECOND));
+        assertTrue(bucket.tryAcquire(1, START + 21 * SECOND));
+    }
+
+    @Test
+    public void shorterSecondPauseDoesNotCutTheFirstShort() {
+        bucket.pause(20 * SECOND, START);
+        bucket.pause(5 * SECOND, START + SECOND);
+
+        assertFalse(bucket.tryAcquire(1, START + 10 * SECOND));
+        assertEquals(START + 21 * SECOND, bucket.availableAt(1, START + 10 * SECOND));
+    }
+
+    @Test
+    public void availableAtCountsTheTokensStillMissing() {
+        bucket.tryAcquire(1, START);
+        bucket.tryAcquire(1, START);
+        bucket.tryAcquire(1, START);
+
+        assertEquals(START + SECOND, bucket.availableAt(1, START));
+        assertEquals(START + 2 * SECOND, bucket.availableAt(2, START));
+        assertEquals(START + 5 * SECOND, bucket.availableAt(1, START + 5 * SECOND));
+    }
+}
@@ -0,0 +1,126 @@
+package com.mihir.alzheimerscaregiver.geofence;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+import com.mihir.alzheimerscaregiver.location.GeoUtils;
+import com.mihir.alzheimerscaregiver.location.VirtualGeofenceManager;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that the on-device evaluator and the Play Services geofence raise one alert per crossing
+ */
+public class GeofenceAlertDeduplicatorTest {
+
+    private static final String PATIENT = "patient-1";
+    private static final double HOME_LAT = 40.712800;
+    private static final double HOME_LNG = -74.006000;
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long FIX_INTERVAL_MS = 10 * 1000;
+    private static final long MINUTE = 60 * 1000;
+
+    private final GeofenceAlertDeduplicator deduplicator =
+            new GeofenceAlertDeduplicator(GeofenceAlertDeduplicator.DEFAULT_WINDOW_MS);
+    // Alerts that made it past the deduplicator, as "geofenceId transition"
+    private final List<String> alerts = new ArrayList<>();
+
+    private void raise(String geofenceId, String transition, long eventTime) {
+        if (deduplicator.shouldRaise(PATIENT, geofenceId, transition, eventTime)) {
+            alerts.add(geofenceId + " " + transition);
+        }
+    }
+
+    /**
+     * Walk north from home in 20 m steps, one fix every 10 s, feeding the on-device evaluator
+     * @return Time of the fix that raised the virtual EXIT
+     */
+    private long walkOutOfHome() {
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(60 * 60 * 1000, null);
+        manager.setGeofences(Collections.singletonList(
+                new GeofenceDefinition("home", "home", "", HOME_LAT, HOME_LNG, 150, "safe_zone")));
+        long exitTime = -1;
+        for (int i = 0; i < 20; i++) {
+            double lat = HOME_LAT + i * 20 / GeoUtils.metersPerDegreeLat();
+            long time = START + i * FIX_INTERVAL_MS;
+            for (VirtualGeofenceManager.TransitionEvent event : manager.onFix(lat, HOME_LNG, 10f, time)) {
+                raise(event.geofence.id, event.transition.name(), event.timestamp);
+                exitTime = event.timestamp;
+            }
+        }
+        assertTrue("Track should leave the fence", exitTime > 0);
+        return exitTime;
+    }
+
+    @Test
+    public void bothPathsFiringForOneCrossingRaiseOneAlert() {
+        long virtualExit = walkOutOfHome();
+
+        // The platform samples its own fix a couple of minutes later and delivers it later still
+        raise("home", GeofenceAlertDeduplicator.EXIT, virtualExit + 3 * MINUTE);
+
+        assertEquals(Collections.singletonList("home EXIT"), alerts);
+        assertEquals(1, deduplicator.getDuplicateCount());
+    }
+
+    @Test
+    public void platformFiringFirstSuppressesVirtualAlert() {
+        // Platform trigger location from just before the evaluator's crossing fix
+        raise("home", GeofenceAlertDeduplicator.EXIT, START + 2 * MINUTE);
+        walkOutOfHome();
+
+        assertEquals(Collections.singletonList("home EXIT"), alerts);
+    }
+
+    @Test
+    public void exitAfterReturningHomeIsANewAlert() {
+        raise("home", GeofenceAlertDeduplicator.EXIT, START);
+        raise("home", GeofenceAlertDeduplicator.ENTER, START + 2 * MINUTE);
+        raise("home", GeofenceAlertDeduplicator.EXIT, START + 4 * MINUTE);
+        // Late platform copy of the second exit
+        raise("home", GeofenceAlertDeduplicator.EXIT, START + 6 * MINUTE);
+
+        assertEquals(3, alerts.size());
+        assertEquals("home EXIT", alerts.get(2));
+    }
+
+    @Test
+    public void lateCopyOfEarlierCrossingIsStillADuplicate() {
+        raise("home", GeofenceAlertDeduplicator.EXIT, START);
+        raise("home", GeofenceAlertDeduplicator.ENTER, START + 2 * MINUTE);
+        // Platform delivers its copy of the first exit after the re-entry was raised
+        raise("home", GeofenceAlertDeduplicator.EXIT, START + MINUTE);
+
+        assertEquals(2, alerts.size());
+    }
+
+    @Test
+    public void sameTransitionOutsideWindowIsANewAlert() {
+        raise("home", GeofenceAlertDeduplicator.EXIT, START);
+        raise("home", GeofenceAlertDeduplicator.EXIT, START + GeofenceAlertDeduplicator.DEFAULT_WINDOW_MS);
+
+        assertEquals(2, alerts.size());
+    }
+
+    @Test
+    public void fencesAndPatientsAreIndependent() {
+        raise("home", GeofenceAlertDeduplicator.EXIT, START);
+        raise("park", GeofenceAlertDeduplicator.EXIT, START);
+        assertTrue(deduplicator.shouldRaise("patient-2", "home", GeofenceAlertDeduplicator.EXIT, START));
+
+        assertEquals(2, alerts.size());
+    }
+
+    @Test
+    public void dwellDoesNotSeparateTwoCopiesOfOneEnter() {
+        raise("home", GeofenceAlertDeduplicator.ENTER, START);
+        raise("home", GeofenceAlertDeduplicator.DWELL, START + 5 * MINUTE);
+        raise("home", GeofenceAlertDeduplicator.ENTER, START + 3 * MINUTE);
+
+        assertEquals(2, alerts.size());
+    }
+}
@@ -0,0 +1,135 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * State and interval tests for AdaptiveSamplingPolicy at the production base interval
+ */
+public class AdaptiveSamplingPolicyTest {
+
+    private static final double HOME_LAT = 40.712800;
+    private static final double HOME_LNG = -74.006000;
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long BASE_INTERVAL_MS = 5 * 60 * 1000;
+    private static final long MINUTE = 60 * 1000;
+
+    private final AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(BASE_INTERVAL_MS, 10f);
+    private final Random random = new Random(42);
+    private long now = START;
+
+    public AdaptiveSamplingPolicyTest() {
+        policy.setGeofences(Collections.singletonList(
+                new GeofenceDefinition("home", "Home", "", HOME_LAT, HOME_LNG, 300, "test")));
+    }
+
+    /**
+     * Deliver a fix near the given offset from home, one current interval after the last one
+     */
+    private boolean fixAt(double northMeters, double eastMeters) {
+        double jitterNorth = northMeters + (random.nextDouble() - 0.5) * 16;
+        double jitterEast = eastMeters + (random.nextDouble() - 0.5) * 16;
+        boolean changed = policy.onFix(HOME_LAT + jitterNorth / GeoUtils.metersPerDegreeLat(),
+                HOME_LNG + jitterEast / GeoUtils.metersPerDegreeLng(HOME_LAT), now);
+        now += policy.getIntervalMs();
+        return changed;
+    }
+
+    @Test
+    public void firstFixAloneIsNotStationary() {
+        fixAt(0, 0);
+
+        assertEquals(AdaptiveSamplingPolicy.State.MOVING, policy.getState());
+        assertEquals(BASE_INTERVAL_MS, policy.getIntervalMs());
+    }
+
+    @Test
+    public void knownPlaceHoldsAcrossWidenedIntervals() {
+        fixAt(0, 0);
+        assertTrue(fixAt(0, 0));
+        assertEquals(AdaptiveSamplingPolicy.State.STATIONARY_KNOWN_PLACE, policy.getState());
+        assertEquals(20 * MINUTE, policy.getIntervalMs());
+
+        // Each fix now arrives 20 minutes after the last, twice the base window age
+        for (int i = 0; i < 8; i++) {
+            assertFalse("fix " + i + " rebuilt the request", fixAt(0, 0));
+            assertEquals(AdaptiveSamplingPolicy.State.STATIONARY_KNOWN_PLACE, policy.getState());
+        }
+    }
+
+    @Test
+    public void stationaryElsewhereHoldsAcrossWidenedIntervals() {
+        fixAt(1000, 0);
+        assertTrue(fixAt(1000, 0));
+        assertEquals(AdaptiveSamplingPolicy.State.STATIONARY, policy.getState());
+        assertEquals(10 * MINUTE, policy.getIntervalMs());
+
+        for (int i = 0; i < 8; i++) {
+            assertFalse("fix " + i + " rebuilt the request", fixAt(1000, 0));
+        }
+    }
+
+    @Test
+    public void settingOffInsideTheSafeZoneSwitchesToTheWalkingRate() {
+        for (int i = 0; i < 4; i++) {
+            fixAt(0, 0);
+        }
+        assertEquals(AdaptiveSamplingPolicy.State.STATIONARY_KNOWN_PLACE, policy.getState());
+
+        // Seen once after a 20-minute gap; the edge is 150 m away, well within one base interval
+        assertTrue(fixAt(150, 0));
+
+        assertEquals(AdaptiveSamplingPolicy.State.WALKING_NEAR_BOUNDARY, policy.getState());
+        assertEquals(AdaptiveSamplingPolicy.WALKING_INTERVAL_MS, policy.getIntervalMs());
+        assertEquals(0f, policy.getMinDisplacementMeters(), 0f);
+        // Walking-rate fixes are not all uploaded
+        assertEquals(BASE_INTERVAL_MS / 4, policy.getUploadIntervalMs());
+    }
+
+    @Test
+    public void walkingRateLastsOnlyWhileMoving() {
+        fixAt(0, 0);
+        fixAt(0, 0);
+        fixAt(100, 0);
+        assertEquals(AdaptiveSamplingPolicy.State.WALKING_NEAR_BOUNDARY, policy.getState());
+
+        // Sits down on a bench; once the walk has left the window the interval widens again
+        for (int i = 0; i < 12; i++) {
+            fixAt(100, 0);
+        }
+
+        assertEquals(AdaptiveSamplingPolicy.State.STATIONARY_KNOWN_PLACE, policy.getState());
+    }
+
+    @Test
+    public void walkingOutsideSafeZonesKeepsTheBaseInterval() {
+        fixAt(1000, 0);
+        fixAt(1000, 0);
+
+        assertTrue(fixAt(1150, 0));
+
+        assertEquals(AdaptiveSamplingPolicy.State.MOVING, policy.getState());
+        assertEquals(BASE_INTERVAL_MS, policy.getIntervalMs());
+        assertEquals(BASE_INTERVAL_MS, policy.getUploadIntervalMs());
+    }
+
+    @Test
+    public void standingAtTheEdgeTightensTheInterval() {
+        fixAt(0, 0);
+        fixAt(0, 0);
+        fixAt(280, 0);
+
+        for (int i = 0; i < 12; i++) {
+            fixAt(280, 0);
+        }
+
+        assertEquals(AdaptiveSamplingPolicy.State.NEAR_BOUNDARY, policy.getState());
+        assertEquals(BASE_INTERVAL_MS / 4, policy.getIntervalMs());
+    }
+}
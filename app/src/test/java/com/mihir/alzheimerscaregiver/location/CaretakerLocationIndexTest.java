@@ -0,0 +1,123 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.LocationEntity;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Tests that the geohash index follows the caretaker link whichever uploader changes it
+ */
+public class CaretakerLocationIndexTest {
+
+    private static final String PATIENT = "patient-1";
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+
+    private final FakeLocationDatabase database = new FakeLocationDatabase();
+
+    private static LocationEntity fix(int i) {
+        return new LocationEntity(PATIENT, 40.7128 + i * 1e-4, -74.0060, START + i * 1000L);
+    }
+
+    private void upload(FakeLocationDatabase.Uploader uploader, int i) {
+        uploader.uploadLocations(PATIENT, Collections.singletonList(fix(i)));
+    }
+
+    @Test
+    public void linkChangedByAnotherUploaderMovesTheEntry() {
+        FakeLocationDatabase.Uploader service = database.newUploader();
+        FakeLocationDatabase.Uploader userManager = database.newUploader();
+        database.setLink(PATIENT, "caretaker-a");
+        upload(service, 0);
+        assertNotNull(database.indexEntry("caretaker-a", PATIENT));
+
+        userManager.updatePatientCaretakerLink(PATIENT, "caretaker-b");
+
+        // Moved as soon as the link changed, before the service's next upload
+        assertNull(database.indexEntry("caretaker-a", PATIENT));
+        assertTrue(database.indexEntry("caretaker-b", PATIENT).contains("\"timestamp\":" + START));
+
+        upload(service, 1);
+
+        assertNull(database.indexEntry("caretaker-a", PATIENT));
+        assertTrue(database.indexEntry("caretaker-b", PATIENT).contains("\"timestamp\":" + (START + 1000)));
+        assertEquals(1, database.getLinkReads());
+    }
+
+    @Test
+    public void entryWrittenUnderPreviousCaretakerBeforeRestartIsRemoved() {
+        // What an earlier process left behind, with nothing in this one watching the link
+        database.setLink(PATIENT, "caretaker-a");
+        database.update(Collections.singletonMap(CaretakerLocationIndex.entryPath("caretaker-a", PATIENT),
+                (Object) CaretakerLocationIndex.buildIndexEntry(fix(0))));
+
+        database.newUploader().updatePatientCaretakerLink(PATIENT, "caretaker-b");
+
+        assertNull(database.indexEntry("caretaker-a", PATIENT));
+    }
+
+    @Test
+    public void unlinkedPatientReadsTheLinkOnce() {
+        FakeLocationDatabase.Uploader service = database.newUploader();
+        for (int i = 0; i < 20; i++) {
+            upload(service, i);
+        }
+        assertEquals(1, database.getLinkReads());
+        assertEquals(0, database.getIndexWrites());
+
+        database.setLink(PATIENT, "caretaker-a");
+
+        // The newest fix is indexed as soon as the link appears
+        assertTrue(database.indexEntry("caretaker-a", PATIENT).contains("\"timestamp\":" + (START + 19 * 1000)));
+        assertEquals(1, database.getLinkReads());
+    }
+
+    @Test
+    public void indexWriteIsSeparateFromTheBatch() {
+        database.setLink(PATIENT, "caretaker-a");
+        FakeLocationDatabase.Uploader service = database.newUploader();
+        upload(service, 0);
+        upload(service, 1);
+
+        assertEquals(2, database.getWrites());
+        assertEquals(2, database.getIndexWrites());
+    }
+
+    @Test
+    public void clearedLocationDropsTheEntryAndLaterLinksDoNotRestoreIt() {
+        CaretakerLocationIndex index = new CaretakerLocationIndex(database);
+        database.setLink(PATIENT, "caretaker-a");
+        index.onUpload(PATIENT, fix(0));
+
+        index.onLocationCleared(PATIENT);
+        assertNull(database.indexEntry("caretaker-a", PATIENT));
+
+        database.setLink(PATIENT, "caretaker-b");
+        assertNull(database.indexEntry("caretaker-b", PATIENT));
+    }
+
+    @Test
+    public void olderFixDoesNotReplaceNewerEntry() {
+        CaretakerLocationIndex index = new CaretakerLocationIndex(database);
+        database.setLink(PATIENT, "caretaker-a");
+        index.onUpload(PATIENT, fix(5));
+        index.onUpload(PATIENT, fix(2));
+
+        assertTrue(database.indexEntry("caretaker-a", PATIENT).contains("\"timestamp\":" + (START + 5000)));
+    }
+
+    @Test
+    public void removedLinkDeletesTheEntry() {
+        CaretakerLocationIndex index = new CaretakerLocationIndex(database);
+        database.setLink(PATIENT, "caretaker-a");
+        index.onUpload(PATIENT, fix(0));
+
+        database.setLink(PATIENT, null);
+
+        assertNull(database.indexEntry("caretaker-a", PATIENT));
+        assertNull(index.getCaretakerId(PATIENT));
+    }
+}
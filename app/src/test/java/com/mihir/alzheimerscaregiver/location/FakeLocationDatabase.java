@@ -0,0 +1,233 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import com.mihir.alzheimerscaregiver.entities.LocationEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * In-memory stand-in for the Realtime Database writes made by LocationUploader.uploadLocations
+ *
+ * Each batch becomes the same multi-path update: one locationHistory/{id}/{date}/{key} entry
+ * per fix, locations/{id} for the newest fix and one locationHistoryCounts increment per day.
+ * The caretaker's geohash index entry follows in its own update from the shared
+ * CaretakerLocationIndex, which watches patientCaretakerLinks here as it would on Firebase.
+ * Bytes are the JSON size of the updates, which is close to what the SDK sends.
+ */
+class FakeLocationDatabase implements CaretakerLocationIndex.Database {
+
+    static final String CARETAKER_ID = "replay-caretaker";
+
+    private static final class Watch {
+        final String patientId;
+        final CaretakerLocationIndex index;
+
+        Watch(String patientId, CaretakerLocationIndex index) {
+            this.patientId = patientId;
+            this.index = index;
+        }
+    }
+
+    /**
+     * One LocationUploader instance; every instance shares the database's index
+     */
+    class Uploader {
+        int uploadLocations(String patientId, List<LocationEntity> entities) {
+            return FakeLocationDatabase.this.uploadLocations(patientId, entities);
+        }
+
+        /**
+         * Same steps as LocationUploader.updatePatientCaretakerLink
+         */
+        void updatePatientCaretakerLink(String patientId, String caretakerId) {
+            String previousCaretakerId = links.get(patientId);
+            setLink(patientId, caretakerId);
+            if (previousCaretakerId != null && !previousCaretakerId.equals(caretakerId)) {
+                Map<String, Object> removal = new LinkedHashMap<>();
+                removal.put(CaretakerLocationIndex.entryPath(previousCaretakerId, patientId), null);
+                update(removal);
+            }
+        }
+    }
+
+    private final Map<String, String> nodes = new LinkedHashMap<>();
+    private final Map<String, String> links = new LinkedHashMap<>();
+    private final List<Watch> watches = new ArrayList<>();
+    private final CaretakerLocationIndex locationIndex = new CaretakerLocationIndex(this);
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+    private int writes;
+    private int indexWrites;
+    private int linkReads;
+    private int entitiesWritten;
+    private long bytesWritten;
+    private int nextKey;
+
+    FakeLocationDatabase() {
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    Uploader newUploader() {
+        return new Uploader();
+    }
+
+    /**
+     * Write patientCaretakerLinks/{patientId} and notify its listeners, as Firebase does
+     */
+    void setLink(String patientId, String caretakerId) {
+        links.put(patientId, caretakerId);
+        for (Watch watch : new ArrayList<>(watches)) {
+            if (watch.patientId.equals(patientId)) {
+                watch.index.onLinkChanged(patientId, caretakerId);
+            }
+        }
+    }
+
+    @Override
+    public void watchLink(String patientId, CaretakerLocationIndex index) {
+        linkReads++;
+        watches.add(new Watch(patientId, index));
+        index.onLinkChanged(patientId, links.get(patientId));
+    }
+
+    @Override
+    public void update(Map<String, Object> updates) {
+        int bytes = 2; // {}
+        for (Map.Entry<String, Object> entry : updates.entrySet()) {
+            String json = toJson(entry.getValue());
+            bytes += entry.getKey().getBytes(StandardCharsets.UTF_8).length + 4
+                    + json.getBytes(StandardCharsets.UTF_8).length;
+            if (entry.getValue() == null) {
+                nodes.remove(entry.getKey());
+            } else {
+                nodes.put(entry.getKey(), json);
+            }
+        }
+        indexWrites++;
+        bytesWritten += bytes;
+    }
+
+    /**
+     * Apply one batch as a single multi-path update
+     *
+     * @return Bytes in the update
+     */
+    int uploadLocations(String patientId, List<LocationEntity> entities) {
+        Map<String, String> updates = new LinkedHashMap<>();
+        Map<String, Integer> pointsPerDate = new LinkedHashMap<>();
+        LocationEntity latest = null;
+
+        for (LocationEntity entity : entities) {
+            String dateKey = dateFormat.format(new Date(entity.timestamp));
+            // Push keys are 20 characters
+            String pushKey = String.format(Locale.US, "-N%018d", nextKey++);
+            updates.put("locationHistory/" + patientId + "/" + dateKey + "/" + pushKey, toJson(entity));
+            Integer count = pointsPerDate.get(dateKey);
+            pointsPerDate.put(dateKey, count == null ? 1 : count + 1);
+            if (latest == null || entity.timestamp >= latest.timestamp) {
+                latest = entity;
+            }
+        }
+        if (latest == null) {
+            return 0;
+        }
+        updates.put("locations/" + patientId, toJson(latest));
+        for (Map.Entry<String, Integer> entry : pointsPerDate.entrySet()) {
+            updates.put("locationHistoryCounts/" + patientId + "/" + entry.getKey(),
+                    "{\".sv\":{\"increment\":" + entry.getValue() + "}}");
+        }
+
+        int bytes = 2; // {}
+        for (Map.Entry<String, String> entry : updates.entrySet()) {
+            bytes += entry.getKey().getBytes(StandardCharsets.UTF_8).length + 4
+                    + entry.getValue().getBytes(StandardCharsets.UTF_8).length;
+        }
+        nodes.putAll(updates);
+        writes++;
+        entitiesWritten += entities.size();
+        bytesWritten += bytes;
+        locationIndex.onUpload(patientId, latest);
+        return bytes;
+    }
+
+    private static String toJson(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof LocationEntity) {
+            return toJson((LocationEntity) value);
+        }
+        if (value instanceof Map) {
+            // Index entries: {g, latitude, longitude, timestamp}
+            Map<?, ?> entry = (Map<?, ?>) value;
+            return String.format(Locale.US, "{\"g\":\"%s\",\"latitude\":%s,\"longitude\":%s,\"timestamp\":%d}",
+                    entry.get("g"), entry.get("latitude"), entry.get("longitude"), entry.get("timestamp"));
+        }
+        return String.valueOf(value);
+    }
+
+    private static String toJson(LocationEntity entity) {
+        return String.format(Locale.US,
+                "{\"accuracy\":%s,\"isMockLocation\":%s,\"latitude\":%s,\"longitude\":%s," +
+                        "\"patientId\":\"%s\",\"provider\":\"%s\",\"timestamp\":%d}",
+                entity.accuracy, entity.isMockLocation, entity.latitude, entity.longitude,
+                entity.patientId, entity.provider, entity.timestamp);
+    }
+
+    /**
+     * Number of history entries stored under the patient, across all days
+     */
+    int historySize(String patientId) {
+        int count = 0;
+        String prefix = "locationHistory/" + patientId + "/";
+        for (String path : nodes.keySet()) {
+            if (path.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    String latest(String patientId) {
+        return nodes.get("locations/" + patientId);
+    }
+
+    /**
+     * The patient's entry in the caretaker's geohash index, null if there is none
+     */
+    String indexEntry(String caretakerId, String patientId) {
+        return nodes.get(CaretakerLocationIndex.entryPath(caretakerId, patientId));
+    }
+
+    /**
+     * Location batches written; index updates are counted by getIndexWrites
+     */
+    int getWrites() {
+        return writes;
+    }
+
+    int getIndexWrites() {
+        return indexWrites;
+    }
+
+    /**
+     * Listeners attached to patientCaretakerLinks entries, each of which reads the link once
+     */
+    int getLinkReads() {
+        return linkReads;
+    }
+
+    int getEntitiesWritten() {
+        return entitiesWritten;
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,428 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic-track tests and a replay evaluation (lead time, false alarms) for GeofenceBreachPredictor
+ */
+public class GeofenceBreachPredictorTest {
+
+    private static final double HOME_LAT = 40.712800;
+    private static final double HOME_LNG = -74.006000;
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    // The rate AdaptiveSamplingPolicy samples at while a walker is in reach of a safe-zone edge
+    private static final long FIX_INTERVAL_MS = AdaptiveSamplingPolicy.WALKING_INTERVAL_MS;
+    private static final float RADIUS = 150f;
+
+    private static GeofenceDefinition fence(String id, double lat, double lng, float radius) {
+        return new GeofenceDefinition(id, id, "", lat, lng, radius, "test");
+    }
+
+    private static List<GeofenceDefinition> home() {
+        return Collections.singletonList(fence("home", HOME_LAT, HOME_LNG, RADIUS));
+    }
+
+    /**
+     * Builds a track in meters north/east of home, one fix every FIX_INTERVAL_MS unless given
+     */
+    private static class Track {
+        final List<GeofenceBreachReplay.Fix> fixes = new ArrayList<>();
+        final Random random;
+        final double noiseMeters;
+        final float accuracy;
+        final long intervalMs;
+        double north;
+        double east;
+        long time;
+
+        Track(long seed, double noiseMeters, float accuracy, long startTime) {
+            this(seed, noiseMeters, accuracy, startTime, FIX_INTERVAL_MS);
+        }
+
+        Track(long seed, double noiseMeters, float accuracy, long startTime, long intervalMs) {
+            this.random = new Random(seed);
+            this.noiseMeters = noiseMeters;
+            this.accuracy = accuracy;
+            this.time = startTime;
+            this.intervalMs = intervalMs;
+        }
+
+        Track at(double north, double east) {
+            this.north = north;
+            this.east = east;
+            return this;
+        }
+
+        void emit() {
+            double n = north + random.nextGaussian() * noiseMeters;
+            double e = east + random.nextGaussian() * noiseMeters;
+            fixes.add(new GeofenceBreachReplay.Fix(time,
+                    HOME_LAT + n / GeoUtils.metersPerDegreeLat(),
+                    HOME_LNG + e / GeoUtils.metersPerDegreeLng(HOME_LAT),
+                    accuracy));
+            time += intervalMs;
+        }
+
+        Track stay(long durationMs) {
+            for (long t = 0; t < durationMs; t += intervalMs) {
+                emit();
+            }
+            return this;
+        }
+
+        /**
+         * Walk in a straight line to the target at the given speed
+         */
+        Track walkTo(double targetNorth, double targetEast, double speedMps) {
+            double distance = Math.hypot(targetNorth - north, targetEast - east);
+            int steps = Math.max(1, (int) Math.round(distance / (speedMps * intervalMs / 1000.0)));
+            double startNorth = north;
+            double startEast = east;
+            for (int i = 1; i <= steps; i++) {
+                north = startNorth + (targetNorth - startNorth) * i / steps;
+                east = startEast + (targetEast - startEast) * i / steps;
+                emit();
+            }
+            return this;
+        }
+
+        /**
+         * Shuffle back and forth between two points, e.g. pacing a garden path
+         */
+        Track pace(double aNorth, double aEast, double bNorth, double bEast, double speedMps, int legs) {
+            for (int i = 0; i < legs; i++) {
+                if (i % 2 == 0) {
+                    walkTo(bNorth, bEast, speedMps);
+                } else {
+                    walkTo(aNorth, aEast, speedMps);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Walk part of the way round a circle about home, starting from the current angle
+         */
+        Track circle(double radius, double turns, double speedMps) {
+            double start = Math.atan2(east, north);
+            int legs = (int) Math.ceil(turns * 36);
+            for (int i = 1; i <= legs; i++) {
+                double angle = start + 2 * Math.PI * turns * i / legs;
+                walkTo(radius * Math.cos(angle), radius * Math.sin(angle), speedMps);
+            }
+            return this;
+        }
+    }
+
+    private static List<GeofenceBreachPredictor.Prediction> feed(GeofenceBreachPredictor predictor, Track track) {
+        List<GeofenceBreachPredictor.Prediction> predictions = new ArrayList<>();
+        for (GeofenceBreachReplay.Fix fix : track.fixes) {
+            predictions.addAll(predictor.onFix(fix.latitude, fix.longitude, fix.accuracy, fix.timestamp));
+        }
+        return predictions;
+    }
+
+    @Test
+    public void timeToExitSolvesRayCircleIntersection() {
+        // From the center at 2 m/s: 100 m in 50 s
+        assertEquals(50000, GeofenceBreachPredictor.timeToExitMs(0, 0, 2, 0, 100));
+        // 50 m south of center heading north at 1 m/s: crosses the far edge after 150 m
+        assertEquals(150000, GeofenceBreachPredictor.timeToExitMs(0, -50, 0, 1, 100));
+        // 50 m north heading north: 50 m to the near edge
+        assertEquals(50000, GeofenceBreachPredictor.timeToExitMs(0, 50, 0, 1, 100));
+        assertEquals(Long.MAX_VALUE, GeofenceBreachPredictor.timeToExitMs(10, 10, 0, 0, 100));
+    }
+
+    @Test
+    public void walkingOutWarnsBeforeExit() {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(null);
+        predictor.setGeofences(home());
+
+        Track track = new Track(1, 4, 10f, START).at(0, 0).stay(60 * 1000).walkTo(0, 300, 1.2);
+        List<GeofenceBreachPredictor.Prediction> predictions = feed(predictor, track);
+
+        assertEquals(1, predictions.size());
+        GeofenceBreachPredictor.Prediction prediction = predictions.get(0);
+        assertEquals("home", prediction.geofence.id);
+        // Close enough to the edge that a stop at the gate would not have been warned about
+        assertTrue("warned " + prediction.distanceToEdgeMeters + " m from the edge",
+                prediction.distanceToEdgeMeters > 0 && prediction.distanceToEdgeMeters <= 15);
+        assertTrue(prediction.timeToExitMs <= GeofenceBreachPredictor.DEFAULT_WARNING_THRESHOLD_MS);
+        // Heading east
+        assertEquals(90, prediction.bearingDegrees, 20);
+        assertEquals(1.2, prediction.speedMetersPerSecond, 0.3);
+    }
+
+    @Test
+    public void stoppingAtTheGateDoesNotWarn() {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(null);
+        predictor.setGeofences(home());
+
+        // Straight for the edge, then a stop 25 m inside it and back home
+        Track track = new Track(10, 4, 10f, START).at(0, 0).stay(60 * 1000)
+                .walkTo(0, 125, 1.2).stay(2 * 60 * 1000).walkTo(0, 0, 1.2);
+
+        assertTrue(feed(predictor, track).isEmpty());
+    }
+
+    @Test
+    public void walkingAlongTheEdgeDoesNotWarn() {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(null);
+        predictor.setGeofences(home());
+
+        // Round the garden 120 m out, never heading away from the center
+        Track track = new Track(11, 3, 8f, START).at(120, 0);
+        for (int i = 1; i <= 36; i++) {
+            double angle = Math.toRadians(i * 10);
+            track.walkTo(120 * Math.cos(angle), 120 * Math.sin(angle), 1.0);
+        }
+
+        assertTrue(feed(predictor, track).isEmpty());
+    }
+
+    @Test
+    public void stationaryJitterDoesNotWarn() {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(null);
+        predictor.setGeofences(home());
+
+        // Sitting 120 m from the center with poor but accepted accuracy
+        Track track = new Track(2, 12, 30f, START).at(120, 0).stay(2 * 60 * 60 * 1000);
+
+        assertTrue(feed(predictor, track).isEmpty());
+    }
+
+    @Test
+    public void pacingNearEdgeWarnsOnce() {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(null);
+        predictor.setGeofences(home());
+
+        // Half an hour of legs toward and away from the edge, turning 25 m inside it
+        Track track = new Track(3, 3, 8f, START).at(0, 0).stay(60 * 1000)
+                .walkTo(95, 0, 1.0).pace(95, 0, 125, 0, 1.0, 60);
+
+        assertTrue(feed(predictor, track).size() <= 1);
+    }
+
+    @Test
+    public void inaccurateFixesAreIgnored() {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(null);
+        predictor.setGeofences(home());
+
+        Track track = new Track(4, 4, 60f, START).at(0, 0).stay(60 * 1000).walkTo(0, 300, 1.2);
+
+        assertTrue(feed(predictor, track).isEmpty());
+    }
+
+    @Test
+    public void inactiveAndUntypedFencesAreSkipped() {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(null);
+        GeofenceDefinition inactive = fence("inactive", HOME_LAT, HOME_LNG, RADIUS);
+        inactive.active = false;
+        GeofenceDefinition other = fence("other", HOME_LAT, HOME_LNG, RADIUS);
+        other.type = "DANGER_ZONE";
+        List<GeofenceDefinition> fences = new ArrayList<>();
+        fences.add(inactive);
+        fences.add(other);
+        predictor.setGeofences(fences);
+
+        Track track = new Track(5, 4, 10f, START).at(0, 0).stay(60 * 1000).walkTo(0, 300, 1.2);
+
+        assertTrue(feed(predictor, track).isEmpty());
+    }
+
+    @Test
+    public void rearmsOnlyAfterReturningDeepInsideAndCooldown() {
+        List<GeofenceBreachPredictor.Prediction> received = new ArrayList<>();
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(received::add);
+        predictor.setGeofences(home());
+
+        // Head for the edge, turn back just before it, then head out again right away
+        Track track = new Track(6, 3, 8f, START).at(0, 0).stay(60 * 1000)
+                .walkTo(0, 145, 1.2).walkTo(0, 60, 1.2).walkTo(0, 145, 1.2);
+        List<GeofenceBreachPredictor.Prediction> predictions = feed(predictor, track);
+        assertEquals(1, predictions.size());
+        assertEquals(predictions, received);
+
+        // Back home long enough for the cooldown, then out again
+        Track later = new Track(7, 3, 8f, track.time).at(0, 145).walkTo(0, 0, 1.2)
+                .stay(6 * 60 * 1000).walkTo(0, 300, 1.2);
+        assertEquals(1, feed(predictor, later).size());
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void setGeofencesKeepsArmingStateForUnchangedIds() {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(null);
+        predictor.setGeofences(home());
+
+        Track track = new Track(8, 3, 8f, START).at(0, 0).stay(60 * 1000).walkTo(0, 145, 1.2);
+        assertEquals(1, feed(predictor, track).size());
+
+        // A listener refresh must not re-arm the fence mid-exit
+        predictor.setGeofences(home());
+        Track onward = new Track(9, 3, 8f, track.time).at(0, 145).walkTo(0, 149, 1.2);
+        assertTrue(feed(predictor, onward).isEmpty());
+    }
+
+    @Test
+    public void replayReadsCsvTracks() throws Exception {
+        String csv = "timestamp,lat,lng,accuracy\n" +
+                "# recorded on a test walk\n" +
+                START + "," + HOME_LAT + "," + HOME_LNG + ",8\n" +
+                (START + 5000) + "," + HOME_LAT + "," + HOME_LNG + ",9.5\n";
+
+        List<GeofenceBreachReplay.Fix> track = GeofenceBreachReplay.readCsv(new StringReader(csv));
+
+        assertEquals(2, track.size());
+        assertEquals(START + 5000, track.get(1).timestamp);
+        assertEquals(9.5f, track.get(1).accuracy, 0.001f);
+    }
+
+    /**
+     * Replays a day's worth of synthetic walks at the walking rate and bounds, per scenario, how
+     * much earlier caretakers hear about an exit and how often a warning is not followed by one
+     */
+    @Test
+    public void replayEvaluationBoundsLeadTimeAndFalseAlarms() {
+        GeofenceBreachReplay.Report walkOuts = new GeofenceBreachReplay.Report();
+        GeofenceBreachReplay.Report pottering = new GeofenceBreachReplay.Report();
+        GeofenceBreachReplay.Report nearMisses = new GeofenceBreachReplay.Report();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 40; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double speed = 0.7 + random.nextDouble() * 0.8; // slow to brisk walking
+            double noise = 2 + random.nextDouble() * 8;
+            Track track = new Track(100 + i, noise, (float) (5 + noise), START).at(0, 0).stay(2 * 60 * 1000);
+            GeofenceBreachReplay.Report bucket;
+
+            switch (i % 4) {
+                case 0:
+                    // Straight out the door
+                    track.walkTo(300 * Math.cos(angle), 300 * Math.sin(angle), speed);
+                    bucket = walkOuts;
+                    break;
+                case 1:
+                    // Wanders to a point inside, lingers, then leaves in another direction
+                    track.walkTo(60 * Math.cos(angle), 60 * Math.sin(angle), speed).stay(3 * 60 * 1000)
+                            .walkTo(300 * Math.cos(angle + 0.5), 300 * Math.sin(angle + 0.5), speed);
+                    bucket = walkOuts;
+                    break;
+                case 2:
+                    // Potters around the garden without going near the fence
+                    double r = 30 + random.nextDouble() * 30;
+                    track.pace(0, 0, r * Math.cos(angle), r * Math.sin(angle), speed, 12).stay(10 * 60 * 1000);
+                    bucket = pottering;
+                    break;
+                default:
+                    // Walks right up to the fence, stops at the gate, comes back
+                    track.walkTo(125 * Math.cos(angle), 125 * Math.sin(angle), speed).stay(2 * 60 * 1000)
+                            .walkTo(0, 0, speed).stay(5 * 60 * 1000);
+                    bucket = nearMisses;
+                    break;
+            }
+            bucket.add(GeofenceBreachReplay.replay(home(), track.fixes,
+                    GeofenceBreachPredictor.DEFAULT_WARNING_THRESHOLD_MS));
+        }
+
+        assertEquals(20, walkOuts.exits);
+        assertTrue("walk-outs: " + walkOuts, walkOuts.recall() >= 0.9);
+        assertEquals("walk-outs: " + walkOuts, 0, walkOuts.falseAlarms);
+        assertTrue("walk-outs: " + walkOuts, walkOuts.meanLeadTimeMs() >= 12 * 1000);
+        assertTrue("walk-outs: " + walkOuts, Collections.min(walkOuts.leadTimesMs) >= 5 * 1000);
+
+        assertEquals("pottering: " + pottering, 0, pottering.predictions);
+
+        // Stops 25 m inside are only told apart from exits by noise in the fitted position
+        assertEquals(0, nearMisses.exits);
+        assertTrue("near misses: " + nearMisses, nearMisses.falseAlarms <= 1);
+    }
+
+    /**
+     * The same kinds of walk recorded at 1 Hz and replayed through LocationReplayHarness at the
+     * production base interval, so the predictor only sees the fixes the service is delivered.
+     * Lead time is measured to the exit in the full trace.
+     */
+    @Test
+    public void replayAtServiceCadenceBoundsLeadTimeAndFalseAlarms() {
+        GeofenceBreachReplay.Report fromRest = new GeofenceBreachReplay.Report();
+        GeofenceBreachReplay.Report underway = new GeofenceBreachReplay.Report();
+        GeofenceBreachReplay.Report pottering = new GeofenceBreachReplay.Report();
+        GeofenceBreachReplay.Report nearMisses = new GeofenceBreachReplay.Report();
+        Random random = new Random(43);
+        int deliveries = 0;
+        long durationMs = 0;
+
+        for (int i = 0; i < 60; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double speed = 0.7 + random.nextDouble() * 0.8;
+            double noise = 2 + random.nextDouble() * 8;
+            // Long enough at home for the interval to widen, at a random phase against it
+            long settle = 30 * 60 * 1000 + (long) (random.nextDouble() * 30 * 60 * 1000);
+            Track track = new Track(200 + i, noise, (float) (5 + noise), START, 1000).at(0, 0).stay(settle);
+            GeofenceBreachReplay.Report bucket;
+
+            switch (i % 4) {
+                case 0:
+                    // Gets up and walks straight out the door
+                    track.walkTo(300 * Math.cos(angle), 300 * Math.sin(angle), speed);
+                    bucket = fromRest;
+                    break;
+                case 1:
+                    // Walks round the garden first, then out
+                    track.walkTo(90 * Math.cos(angle), 90 * Math.sin(angle), speed).circle(90, 0.5, speed)
+                            .walkTo(300 * Math.cos(angle + Math.PI), 300 * Math.sin(angle + Math.PI), speed);
+                    bucket = underway;
+                    break;
+                case 2:
+                    double r = 30 + random.nextDouble() * 30;
+                    track.pace(0, 0, r * Math.cos(angle), r * Math.sin(angle), speed, 12).stay(10 * 60 * 1000);
+                    bucket = pottering;
+                    break;
+                default:
+                    track.walkTo(125 * Math.cos(angle), 125 * Math.sin(angle), speed).stay(2 * 60 * 1000)
+                            .walkTo(0, 0, speed).stay(5 * 60 * 1000);
+                    bucket = nearMisses;
+                    break;
+            }
+
+            LocationReplayHarness.Report run = LocationReplayHarness.run(
+                    new LocationReplayHarness.Config().geofences(home()), track.fixes);
+            bucket.add(GeofenceBreachReplay.evaluate(run.predictions,
+                    GeofenceBreachReplay.exits(home(), track.fixes), run.durationMs));
+            deliveries += run.deliveredFixes;
+            durationMs += run.durationMs;
+        }
+
+        System.out.println("Breach replay at service cadence, from rest: " + fromRest);
+        System.out.println("Breach replay at service cadence, already walking: " + underway);
+        System.out.println("Breach replay at service cadence, pottering: " + pottering);
+        System.out.println("Breach replay at service cadence, near misses: " + nearMisses);
+        double deliveriesPerHour = deliveries * 3600000.0 / durationMs;
+        System.out.println("Breach replay at service cadence: " + deliveries + " fixes delivered, "
+                + Math.round(deliveriesPerHour) + "/h");
+
+        // A walk that starts between two widened fixes at home is over before the next one;
+        // only the regular EXIT reports it
+        assertEquals("from rest: " + fromRest, 0, fromRest.falseAlarms);
+        // Once a fix catches the patient on the move the walking rate gives the predictor its track
+        assertEquals(16, underway.exits);
+        assertTrue("already walking: " + underway, underway.recall() >= 0.4);
+        assertEquals("already walking: " + underway, 0, underway.falseAlarms);
+        assertTrue("already walking: " + underway, underway.meanLeadTimeMs() >= 10 * 1000);
+        assertEquals("pottering: " + pottering, 0, pottering.predictions);
+        assertTrue("near misses: " + nearMisses, nearMisses.falseAlarms <= 1);
+        // The walking rate only runs while moving
+        assertTrue(deliveriesPerHour < 30);
+    }
+}
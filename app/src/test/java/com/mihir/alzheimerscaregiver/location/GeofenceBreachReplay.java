@@ -0,0 +1,192 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Offline evaluation of GeofenceBreachPredictor against recorded or synthetic tracks
+ *
+ * Each track is replayed through the predictor and a VirtualGeofenceManager, whose EXIT
+ * events are the ground truth. replay() feeds the predictor every fix of the track;
+ * LocationReplayHarness feeds it only the fixes the service would be delivered, and its
+ * predictions are scored with evaluate() against the same ground truth. A prediction counts as a hit when an EXIT of the same fence
+ * follows within HORIZON_MS; otherwise it is a false alarm. Lead time is the gap between
+ * the first matching prediction and the EXIT.
+ */
+class GeofenceBreachReplay {
+
+    // A prediction not followed by an exit within this long is a false alarm
+    static final long HORIZON_MS = 3 * 60 * 1000;
+
+    static class Fix {
+        final long timestamp;
+        final double latitude;
+        final double longitude;
+        final float accuracy;
+
+        Fix(long timestamp, double latitude, double longitude, float accuracy) {
+            this.timestamp = timestamp;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracy = accuracy;
+        }
+    }
+
+    static class Report {
+        int exits;
+        int predictedExits;
+        int predictions;
+        int falseAlarms;
+        long trackDurationMs;
+        final List<Long> leadTimesMs = new ArrayList<>();
+
+        double recall() {
+            return exits == 0 ? 1.0 : (double) predictedExits / exits;
+        }
+
+        double falseAlarmRate() {
+            return predictions == 0 ? 0.0 : (double) falseAlarms / predictions;
+        }
+
+        double falseAlarmsPerHour() {
+            return trackDurationMs == 0 ? 0.0 : falseAlarms * 3600000.0 / trackDurationMs;
+        }
+
+        long meanLeadTimeMs() {
+            if (leadTimesMs.isEmpty()) {
+                return 0;
+            }
+            long sum = 0;
+            for (long lead : leadTimesMs) {
+                sum += lead;
+            }
+            return sum / leadTimesMs.size();
+        }
+
+        long medianLeadTimeMs() {
+            if (leadTimesMs.isEmpty()) {
+                return 0;
+            }
+            List<Long> sorted = new ArrayList<>(leadTimesMs);
+            Collections.sort(sorted);
+            return sorted.get(sorted.size() / 2);
+        }
+
+        void add(Report other) {
+            exits += other.exits;
+            predictedExits += other.predictedExits;
+            predictions += other.predictions;
+            falseAlarms += other.falseAlarms;
+            trackDurationMs += other.trackDurationMs;
+            leadTimesMs.addAll(other.leadTimesMs);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "exits=%d predicted=%d recall=%.2f leadMean=%ds leadMedian=%ds predictions=%d " +
+                            "falseAlarms=%d (%.2f of predictions, %.2f/h over %.1fh)",
+                    exits, predictedExits, recall(), meanLeadTimeMs() / 1000, medianLeadTimeMs() / 1000,
+                    predictions, falseAlarms, falseAlarmRate(), falseAlarmsPerHour(), trackDurationMs / 3600000.0);
+        }
+    }
+
+    /**
+     * Replay one track against the fences with a fresh predictor and evaluator
+     */
+    static Report replay(List<GeofenceDefinition> fences, List<Fix> track, long warningThresholdMs) {
+        GeofenceBreachPredictor predictor = new GeofenceBreachPredictor(warningThresholdMs, null);
+        predictor.setGeofences(fences);
+        List<GeofenceBreachPredictor.Prediction> predictions = new ArrayList<>();
+        for (Fix fix : track) {
+            predictions.addAll(predictor.onFix(fix.latitude, fix.longitude, fix.accuracy, fix.timestamp));
+        }
+
+        long durationMs = track.isEmpty() ? 0 : track.get(track.size() - 1).timestamp - track.get(0).timestamp;
+        return evaluate(predictions, exits(fences, track), durationMs);
+    }
+
+    /**
+     * Ground-truth EXIT events, seeing every fix of the track
+     */
+    static List<VirtualGeofenceManager.TransitionEvent> exits(List<GeofenceDefinition> fences, List<Fix> track) {
+        // Long dwell so only enter/exit are reported
+        VirtualGeofenceManager evaluator = new VirtualGeofenceManager(24 * 60 * 60 * 1000, null);
+        evaluator.setGeofences(fences);
+        List<VirtualGeofenceManager.TransitionEvent> exits = new ArrayList<>();
+        for (Fix fix : track) {
+            for (VirtualGeofenceManager.TransitionEvent event :
+                    evaluator.onFix(fix.latitude, fix.longitude, fix.accuracy, fix.timestamp)) {
+                if (event.transition == VirtualGeofenceManager.Transition.EXIT) {
+                    exits.add(event);
+                }
+            }
+        }
+        return exits;
+    }
+
+    /**
+     * Match predictions to the EXIT events that followed them
+     */
+    static Report evaluate(List<GeofenceBreachPredictor.Prediction> predictions,
+                           List<VirtualGeofenceManager.TransitionEvent> exits, long durationMs) {
+        Report report = new Report();
+        report.exits = exits.size();
+        report.predictions = predictions.size();
+        report.trackDurationMs = durationMs;
+
+        boolean[] used = new boolean[predictions.size()];
+        for (VirtualGeofenceManager.TransitionEvent exit : exits) {
+            for (int i = 0; i < predictions.size(); i++) {
+                GeofenceBreachPredictor.Prediction prediction = predictions.get(i);
+                long lead = exit.timestamp - prediction.timestamp;
+                if (!used[i] && prediction.geofence.id.equals(exit.geofence.id) && lead >= 0 && lead <= HORIZON_MS) {
+                    used[i] = true;
+                    report.predictedExits++;
+                    report.leadTimesMs.add(lead);
+                    break;
+                }
+            }
+        }
+        for (boolean hit : used) {
+            if (!hit) {
+                report.falseAlarms++;
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Read a recorded track as CSV lines of timestamp,lat,lng,accuracy
+     * Blank lines, # comments and a non-numeric header are skipped.
+     */
+    static List<Fix> readCsv(Reader source) throws IOException {
+        List<Fix> track = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(",");
+            if (parts.length < 4) {
+                continue;
+            }
+            try {
+                track.add(new Fix(Long.parseLong(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                        Double.parseDouble(parts[2].trim()), Float.parseFloat(parts[3].trim())));
+            } catch (NumberFormatException e) {
+                // Header row
+            }
+        }
+        return track;
+    }
+}
@@ -0,0 +1,94 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * Reads GPX 1.0/1.1 track points (trkpt, or rtept/wpt when there is no track) into replay fixes
+ *
+ * Accuracy comes from hdop when present (about 5 m per unit of HDOP), otherwise
+ * DEFAULT_ACCURACY_METERS. Points without a parseable time are skipped, since the
+ * pipeline is time driven.
+ */
+class GpxTrackReader {
+
+    static final float DEFAULT_ACCURACY_METERS = 10f;
+    private static final float METERS_PER_HDOP = 5f;
+
+    static List<GeofenceBreachReplay.Fix> read(InputStream source) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        // Recorded files come from anywhere; never resolve external entities
+        factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(source);
+
+        List<GeofenceBreachReplay.Fix> fixes = readPoints(document, "trkpt");
+        if (fixes.isEmpty()) {
+            fixes = readPoints(document, "rtept");
+        }
+        if (fixes.isEmpty()) {
+            fixes = readPoints(document, "wpt");
+        }
+        fixes.sort((a, b) -> Long.compare(a.timestamp, b.timestamp));
+        return fixes;
+    }
+
+    private static List<GeofenceBreachReplay.Fix> readPoints(Document document, String tag) {
+        List<GeofenceBreachReplay.Fix> fixes = new ArrayList<>();
+        NodeList points = document.getElementsByTagNameNS("*", tag);
+        for (int i = 0; i < points.getLength(); i++) {
+            Element point = (Element) points.item(i);
+            String time = childText(point, "time");
+            if (time == null) {
+                continue;
+            }
+            long timestamp;
+            double latitude;
+            double longitude;
+            try {
+                timestamp = Instant.parse(time).toEpochMilli();
+                latitude = Double.parseDouble(point.getAttribute("lat"));
+                longitude = Double.parseDouble(point.getAttribute("lon"));
+            } catch (DateTimeParseException | NumberFormatException e) {
+                continue;
+            }
+
+            float accuracy = DEFAULT_ACCURACY_METERS;
+            String hdop = childText(point, "hdop");
+            if (hdop != null) {
+                try {
+                    accuracy = Float.parseFloat(hdop) * METERS_PER_HDOP;
+                } catch (NumberFormatException e) {
+                    // Keep the default
+                }
+            }
+            fixes.add(new GeofenceBreachReplay.Fix(timestamp, latitude, longitude, accuracy));
+        }
+        return fixes;
+    }
+
+    private static String childText(Element parent, String localName) {
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            String name = child.getLocalName() != null ? child.getLocalName() : child.getNodeName();
+            if (localName.equals(name)) {
+                return child.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+}
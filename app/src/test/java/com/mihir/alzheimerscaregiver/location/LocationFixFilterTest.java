@@ -0,0 +1,224 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Noisy synthetic-track tests for LocationFixFilter
+ */
+public class LocationFixFilterTest {
+
+    private static final double HOME_LAT = 40.712800;
+    private static final double HOME_LNG = -74.006000;
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long FIX_INTERVAL_MS = 10 * 1000;
+
+    /**
+     * Point offset from home by meters north/east
+     */
+    private static double[] offset(double northMeters, double eastMeters) {
+        return new double[] {
+                HOME_LAT + northMeters / GeoUtils.metersPerDegreeLat(),
+                HOME_LNG + eastMeters / GeoUtils.metersPerDegreeLng(HOME_LAT)
+        };
+    }
+
+    private static double errorMeters(double[] truth, double lat, double lng) {
+        return GeoUtils.distanceMeters(truth[0], truth[1], lat, lng);
+    }
+
+    @Test
+    public void accuracyGateUsesConfiguredMaximum() {
+        LocationFixFilter filter = new LocationFixFilter();
+
+        assertNull(filter.onFix(HOME_LAT, HOME_LNG, LocationConfig.MAX_ACCURACY_METERS + 1, START));
+        assertEquals(LocationFixFilter.Rejection.INACCURATE, filter.getLastRejection());
+        assertNull(filter.onFix(HOME_LAT, HOME_LNG, 0f, START));
+
+        assertNotNull(filter.onFix(HOME_LAT, HOME_LNG, LocationConfig.MAX_ACCURACY_METERS, START));
+        assertNull(filter.getLastRejection());
+        assertEquals(2, filter.getRejectedCount(LocationFixFilter.Rejection.INACCURATE));
+        assertEquals(1, filter.getAcceptedCount());
+    }
+
+    @Test
+    public void outOfOrderFixesAreRejected() {
+        LocationFixFilter filter = new LocationFixFilter();
+        assertNotNull(filter.onFix(HOME_LAT, HOME_LNG, 10f, START + 20000));
+
+        assertNull(filter.onFix(HOME_LAT, HOME_LNG, 10f, START + 10000));
+        assertNull(filter.onFix(HOME_LAT, HOME_LNG, 10f, START + 20000));
+        assertEquals(2, filter.getRejectedCount(LocationFixFilter.Rejection.OUT_OF_ORDER));
+    }
+
+    @Test
+    public void isolatedJumpIsRejectedAsOutlier() {
+        LocationFixFilter filter = new LocationFixFilter();
+        long time = START;
+        for (int i = 0; i < 10; i++) {
+            double[] p = offset(i * 12, 0); // 1.2 m/s walk north
+            assertNotNull(filter.onFix(p[0], p[1], 8f, time));
+            time += FIX_INTERVAL_MS;
+        }
+
+        // Multipath: a fix 2 km away, then back on track
+        double[] spike = offset(2000, 0);
+        assertNull(filter.onFix(spike[0], spike[1], 15f, time));
+        assertEquals(LocationFixFilter.Rejection.IMPLAUSIBLE_SPEED, filter.getLastRejection());
+        time += FIX_INTERVAL_MS;
+
+        double[] next = offset(11 * 12, 0);
+        LocationFixFilter.FilteredFix fix = filter.onFix(next[0], next[1], 8f, time);
+        assertNotNull(fix);
+        assertTrue(errorMeters(next, fix.latitude, fix.longitude) < 20);
+    }
+
+    @Test
+    public void fastButPlausibleTravelIsAccepted() {
+        LocationFixFilter filter = new LocationFixFilter();
+        long time = START;
+        // Riding in a car at 25 m/s
+        for (int i = 0; i < 20; i++) {
+            double[] p = offset(0, i * 250);
+            assertNotNull(filter.onFix(p[0], p[1], 10f, time));
+            time += FIX_INTERVAL_MS;
+        }
+        assertEquals(0, filter.getRejectedCount(LocationFixFilter.Rejection.IMPLAUSIBLE_SPEED));
+    }
+
+    @Test
+    public void repeatedOutliersAreTakenAsRelocation() {
+        LocationFixFilter filter = new LocationFixFilter();
+        long time = START;
+        assertNotNull(filter.onFix(HOME_LAT, HOME_LNG, 10f, time));
+
+        // The first fixes after a stale Wi-Fi position look impossible; consistently so
+        double[] elsewhere = offset(5000, 0);
+        LocationFixFilter.FilteredFix fix = null;
+        for (int i = 0; i < 3; i++) {
+            time += FIX_INTERVAL_MS;
+            fix = filter.onFix(elsewhere[0], elsewhere[1], 10f, time);
+        }
+
+        assertNotNull(fix);
+        assertEquals(2, filter.getRejectedCount(LocationFixFilter.Rejection.IMPLAUSIBLE_SPEED));
+        assertEquals(elsewhere[0], fix.latitude, 1e-9);
+        assertEquals(elsewhere[1], fix.longitude, 1e-9);
+    }
+
+    @Test
+    public void longGapRestartsTheSmoother() {
+        LocationFixFilter filter = new LocationFixFilter();
+        assertNotNull(filter.onFix(HOME_LAT, HOME_LNG, 10f, START));
+
+        // Phone off for an hour, then a fix 3 km away: plausible, and taken as is
+        double[] p = offset(3000, 0);
+        LocationFixFilter.FilteredFix fix = filter.onFix(p[0], p[1], 10f, START + 60 * 60 * 1000);
+
+        assertNotNull(fix);
+        assertEquals(p[0], fix.latitude, 1e-9);
+        assertEquals(10f, fix.accuracy, 0.001f);
+    }
+
+    @Test
+    public void smoothingReducesJitterWhileStationary() {
+        LocationFixFilter filter = new LocationFixFilter();
+        Random random = new Random(11);
+        double[] truth = offset(0, 0);
+        double rawError = 0;
+        double smoothedError = 0;
+        int n = 0;
+
+        for (int i = 0; i < 360; i++) {
+            double[] raw = offset(random.nextGaussian() * 15, random.nextGaussian() * 15);
+            LocationFixFilter.FilteredFix fix = filter.onFix(raw[0], raw[1], 20f, START + i * FIX_INTERVAL_MS);
+            assertNotNull(fix);
+            if (i >= 10) {
+                rawError += Math.pow(errorMeters(truth, raw[0], raw[1]), 2);
+                smoothedError += Math.pow(errorMeters(truth, fix.latitude, fix.longitude), 2);
+                n++;
+            }
+        }
+        double rawRms = Math.sqrt(rawError / n);
+        double smoothedRms = Math.sqrt(smoothedError / n);
+
+        System.out.println(String.format(java.util.Locale.US,
+                "LocationFixFilter stationary: raw RMS %.1fm, smoothed RMS %.1fm", rawRms, smoothedRms));
+        assertTrue("smoothed " + smoothedRms + " vs raw " + rawRms, smoothedRms < rawRms * 0.8);
+    }
+
+    @Test
+    public void smoothingKeepsUpWithWalkingAndDropsSpikes() {
+        LocationFixFilter filter = new LocationFixFilter();
+        Random random = new Random(12);
+        double rawError = 0;
+        double smoothedError = 0;
+        int n = 0;
+        int spikes = 0;
+        double[] truth = null;
+        LocationFixFilter.FilteredFix last = null;
+
+        for (int i = 0; i < 180; i++) {
+            // 1.3 m/s walk heading north-east with 8 m noise
+            truth = offset(i * 9.2, i * 9.2);
+            double[] raw;
+            if (i > 5 && i % 25 == 0) {
+                // Occasional multipath spike of a kilometre or more
+                raw = offset(i * 9.2 + 1000 + random.nextDouble() * 1000, i * 9.2);
+                spikes++;
+            } else {
+                raw = offset(i * 9.2 + random.nextGaussian() * 8, i * 9.2 + random.nextGaussian() * 8);
+            }
+            LocationFixFilter.FilteredFix fix = filter.onFix(raw[0], raw[1], 12f, START + i * FIX_INTERVAL_MS);
+            if (fix == null) {
+                continue;
+            }
+            last = fix;
+            if (i >= 10) {
+                rawError += Math.pow(errorMeters(truth, raw[0], raw[1]), 2);
+                smoothedError += Math.pow(errorMeters(truth, fix.latitude, fix.longitude), 2);
+                n++;
+            }
+        }
+        double rawRms = Math.sqrt(rawError / n);
+        double smoothedRms = Math.sqrt(smoothedError / n);
+
+        System.out.println(String.format(java.util.Locale.US,
+                "LocationFixFilter walking: raw RMS %.1fm, smoothed RMS %.1fm, %d/%d spikes rejected",
+                rawRms, smoothedRms, filter.getRejectedCount(LocationFixFilter.Rejection.IMPLAUSIBLE_SPEED), spikes));
+        assertEquals(spikes, filter.getRejectedCount(LocationFixFilter.Rejection.IMPLAUSIBLE_SPEED));
+        assertTrue("smoothed " + smoothedRms + " vs raw " + rawRms, smoothedRms <= rawRms);
+        // Not trailing far behind the patient
+        assertTrue(errorMeters(truth, last.latitude, last.longitude) < 20);
+    }
+
+    @Test
+    public void smoothingFollowsATurn() {
+        LocationFixFilter filter = new LocationFixFilter();
+        Random random = new Random(13);
+        long time = START;
+        double[] truth = null;
+        LocationFixFilter.FilteredFix fix = null;
+
+        // Walk east for ten minutes, then turn north for a minute
+        for (int i = 0; i < 60; i++) {
+            truth = offset(0, i * 13);
+            double[] raw = offset(random.nextGaussian() * 6, i * 13 + random.nextGaussian() * 6);
+            fix = filter.onFix(raw[0], raw[1], 8f, time);
+            time += FIX_INTERVAL_MS;
+        }
+        for (int i = 1; i <= 6; i++) {
+            truth = offset(i * 13, 59 * 13);
+            double[] raw = offset(i * 13 + random.nextGaussian() * 6, 59 * 13 + random.nextGaussian() * 6);
+            fix = filter.onFix(raw[0], raw[1], 8f, time);
+            time += FIX_INTERVAL_MS;
+        }
+
+        assertNotNull(fix);
+        double error = errorMeters(truth, fix.latitude, fix.longitude);
+        assertTrue("error after turn " + error, error < 25);
+    }
+}
@@ -0,0 +1,287 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+import com.mihir.alzheimerscaregiver.entities.LocationEntity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays a GPS trace through PatientLocationService's processing chain on the JVM
+ *
+ * Time is simulated, so a day of trace runs in milliseconds. Around the real LocationPipeline
+ * the harness models the parts that live in Android:
+ * - FusedLocationProvider: a recorded fix is delivered only once the current request interval
+ *   has passed and the patient has moved the request's minimum displacement
+ * - The pending queue and single uploader: batches of up to MAX_UPLOAD_BATCH_SIZE, one write
+ *   in flight at a time, retried after offline windows
+ * - The database: FakeLocationDatabase, with a configurable round-trip latency
+ *
+ * The report covers deliveries (a proxy for GPS wake-ups and battery), uploads and bytes per
+ * hour (bandwidth), fix-to-server latency percentiles and the geofence decisions made.
+ */
+class LocationReplayHarness {
+
+    static final String PATIENT_ID = "replay-patient";
+
+    static class Config {
+        long baseIntervalMs = LocationConfig.DEFAULT_LOCATION_INTERVAL_MS;
+        float displacementMeters = LocationConfig.SMALLEST_DISPLACEMENT_METERS;
+        List<GeofenceDefinition> geofences = Collections.emptyList();
+        long networkLatencyMs = 300;
+        long networkJitterMs = 200;
+        int maxBatchSize = 50;
+        long seed = 1;
+        final List<long[]> offlineWindows = new ArrayList<>();
+
+        Config interval(long baseIntervalMs, float displacementMeters) {
+            this.baseIntervalMs = baseIntervalMs;
+            this.displacementMeters = displacementMeters;
+            return this;
+        }
+
+        Config geofences(List<GeofenceDefinition> geofences) {
+            this.geofences = geofences;
+            return this;
+        }
+
+        Config network(long latencyMs, long jitterMs) {
+            this.networkLatencyMs = latencyMs;
+            this.networkJitterMs = jitterMs;
+            return this;
+        }
+
+        /**
+         * No connectivity between the two timestamps; writes wait until it returns
+         */
+        Config offline(long from, long to) {
+            offlineWindows.add(new long[] {from, to});
+            return this;
+        }
+    }
+
+    static class Report {
+        int traceFixes;
+        int deliveredFixes;
+        final Map<LocationFixFilter.Rejection, Integer> rejected = new EnumMap<>(LocationFixFilter.Rejection.class);
+        int samplingChanges;
+        int uploads;
+        int writes;
+        long bytes;
+        long durationMs;
+        final List<Long> latenciesMs = new ArrayList<>();
+        final Map<VirtualGeofenceManager.Transition, Integer> transitions =
+                new EnumMap<>(VirtualGeofenceManager.Transition.class);
+        final List<GeofenceBreachPredictor.Prediction> predictions = new ArrayList<>();
+
+        double hours() {
+            return Math.max(durationMs, 1) / 3600000.0;
+        }
+
+        double uploadsPerHour() {
+            return uploads / hours();
+        }
+
+        double deliveriesPerHour() {
+            return deliveredFixes / hours();
+        }
+
+        double bytesPerHour() {
+            return bytes / hours();
+        }
+
+        int transitions(VirtualGeofenceManager.Transition transition) {
+            Integer count = transitions.get(transition);
+            return count == null ? 0 : count;
+        }
+
+        int rejected(LocationFixFilter.Rejection rejection) {
+            Integer count = rejected.get(rejection);
+            return count == null ? 0 : count;
+        }
+
+        /**
+         * Fix-to-server latency at the given percentile (0-100), nearest rank
+         */
+        long latencyPercentileMs(double percentile) {
+            if (latenciesMs.isEmpty()) {
+                return 0;
+            }
+            List<Long> sorted = new ArrayList<>(latenciesMs);
+            Collections.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+            return sorted.get(Math.max(0, Math.min(sorted.size() - 1, rank - 1)));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%.1fh: delivered %d/%d fixes (%.1f/h), rejected %s, sampling changes %d, " +
+                            "uploads %d (%.1f/h) in %d writes, %d bytes (%.0f B/h), " +
+                            "latency p50=%dms p90=%dms p99=%dms, geofence %s, predicted exits %d",
+                    hours(), deliveredFixes, traceFixes, deliveriesPerHour(), rejected, samplingChanges,
+                    uploads, uploadsPerHour(), writes, bytes, bytesPerHour(),
+                    latencyPercentileMs(50), latencyPercentileMs(90), latencyPercentileMs(99),
+                    transitions, predictions.size());
+        }
+    }
+
+    private static class Pending {
+        final LocationEntity entity;
+        final long fixTime;
+
+        Pending(LocationEntity entity, long fixTime) {
+            this.entity = entity;
+            this.fixTime = fixTime;
+        }
+    }
+
+    private final Config config;
+    private final Random random;
+    private final FakeLocationDatabase database = new FakeLocationDatabase();
+    private final Report report = new Report();
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+    private List<Pending> inFlight = Collections.emptyList();
+    private long inFlightAckTime;
+
+    LocationReplayHarness(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+        database.setLink(PATIENT_ID, FakeLocationDatabase.CARETAKER_ID);
+    }
+
+    static Report run(Config config, List<GeofenceBreachReplay.Fix> trace) {
+        return new LocationReplayHarness(config).replay(trace);
+    }
+
+    /**
+     * Replay a trace once; a harness instance is single use
+     */
+    Report replay(List<GeofenceBreachReplay.Fix> trace) {
+        AdaptiveSamplingPolicy samplingPolicy = new AdaptiveSamplingPolicy(config.baseIntervalMs, config.displacementMeters);
+        samplingPolicy.setGeofences(config.geofences);
+        VirtualGeofenceManager geofenceManager = new VirtualGeofenceManager(event -> {
+            Integer count = report.transitions.get(event.transition);
+            report.transitions.put(event.transition, count == null ? 1 : count + 1);
+        });
+        geofenceManager.setGeofences(config.geofences);
+        GeofenceBreachPredictor breachPredictor = new GeofenceBreachPredictor(report.predictions::add);
+        breachPredictor.setGeofences(config.geofences);
+
+        LocationPipeline pipeline = new LocationPipeline();
+        pipeline.setSamplingPolicy(samplingPolicy);
+        pipeline.setGeofenceEvaluators(geofenceManager, breachPredictor);
+
+        report.traceFixes = trace.size();
+        if (trace.isEmpty()) {
+            return report;
+        }
+        report.durationMs = trace.get(trace.size() - 1).timestamp - trace.get(0).timestamp;
+
+        long requestInterval = samplingPolicy.getIntervalMs();
+        float requestDisplacement = samplingPolicy.getMinDisplacementMeters();
+        GeofenceBreachReplay.Fix lastDelivered = null;
+
+        for (GeofenceBreachReplay.Fix fix : trace) {
+            pumpUploads(fix.timestamp);
+
+            // FusedLocationProvider honours the requested interval and minimum displacement
+            if (lastDelivered != null) {
+                long elapsed = fix.timestamp - lastDelivered.timestamp;
+                double moved = GeoUtils.distanceMeters(lastDelivered.latitude, lastDelivered.longitude,
+                        fix.latitude, fix.longitude);
+                if (elapsed < requestInterval || moved < requestDisplacement) {
+                    continue;
+                }
+            }
+            lastDelivered = fix;
+            report.deliveredFixes++;
+
+            LocationPipeline.Decision decision = pipeline.process(fix.latitude, fix.longitude, fix.accuracy,
+                    fix.timestamp, fix.timestamp, false);
+            if (decision.fix == null) {
+                Integer count = report.rejected.get(decision.rejection);
+                report.rejected.put(decision.rejection, count == null ? 1 : count + 1);
+                continue;
+            }
+            if (decision.samplingChanged) {
+                report.samplingChanges++;
+                requestInterval = samplingPolicy.getIntervalMs();
+                requestDisplacement = samplingPolicy.getMinDisplacementMeters();
+            }
+            if (decision.upload) {
+                LocationEntity entity = new LocationEntity(PATIENT_ID, decision.fix.latitude, decision.fix.longitude,
+                        fix.timestamp, decision.fix.accuracy, "fused", false);
+                queue.add(new Pending(entity, fix.timestamp));
+                report.uploads++;
+                pumpUploads(fix.timestamp);
+            }
+        }
+
+        // Let everything still queued reach the server
+        long now = trace.get(trace.size() - 1).timestamp;
+        while (!queue.isEmpty() || !inFlight.isEmpty()) {
+            now = Math.max(now, inFlight.isEmpty() ? nextOnline(now) : inFlightAckTime);
+            pumpUploads(now);
+        }
+
+        report.writes = database.getWrites();
+        report.bytes = database.getBytesWritten();
+        return report;
+    }
+
+    /**
+     * Complete the write in flight if it has been acknowledged, then start the next batch
+     */
+    private void pumpUploads(long now) {
+        if (!inFlight.isEmpty() && inFlightAckTime <= now) {
+            for (Pending pending : inFlight) {
+                report.latenciesMs.add(inFlightAckTime - pending.fixTime);
+            }
+            inFlight = Collections.emptyList();
+        }
+        if (!inFlight.isEmpty() || queue.isEmpty() || !isOnline(now)) {
+            return;
+        }
+
+        List<Pending> batch = new ArrayList<>();
+        List<LocationEntity> entities = new ArrayList<>();
+        while (!queue.isEmpty() && batch.size() < config.maxBatchSize) {
+            Pending pending = queue.poll();
+            batch.add(pending);
+            entities.add(pending.entity);
+        }
+        database.uploadLocations(PATIENT_ID, entities);
+        inFlight = batch;
+        long jitter = config.networkJitterMs > 0 ? (long) (random.nextDouble() * config.networkJitterMs) : 0;
+        inFlightAckTime = now + config.networkLatencyMs + jitter;
+    }
+
+    private boolean isOnline(long time) {
+        for (long[] window : config.offlineWindows) {
+            if (time >= window[0] && time < window[1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long nextOnline(long time) {
+        for (long[] window : config.offlineWindows) {
+            if (time >= window[0] && time < window[1]) {
+                return window[1];
+            }
+        }
+        return time;
+    }
+
+    FakeLocationDatabase getDatabase() {
+        return database;
+    }
+}
@@ -0,0 +1,170 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * GPX import and end-to-end replays of the location pipeline, with a sampling benchmark
+ */
+public class LocationReplayHarnessTest {
+
+    private static final double HOME_LAT = 40.712800;
+    private static final double HOME_LNG = -74.006000;
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+
+    private static List<GeofenceDefinition> home() {
+        return Collections.singletonList(new GeofenceDefinition("home", "home", "", HOME_LAT, HOME_LNG, 150f, "test"));
+    }
+
+    /**
+     * A 1 Hz logger trace in meters north/east of home, like a phone GPX recording
+     */
+    private static class Trace {
+        final List<GeofenceBreachReplay.Fix> fixes = new ArrayList<>();
+        final Random random = new Random(5);
+        double north;
+        double east;
+        long time = START;
+
+        void emit(double noiseMeters, float accuracy) {
+            double n = north + random.nextGaussian() * noiseMeters;
+            double e = east + random.nextGaussian() * noiseMeters;
+            fixes.add(new GeofenceBreachReplay.Fix(time,
+                    HOME_LAT + n / GeoUtils.metersPerDegreeLat(),
+                    HOME_LNG + e / GeoUtils.metersPerDegreeLng(HOME_LAT),
+                    accuracy));
+            time += 1000;
+        }
+
+        Trace stay(long durationMs) {
+            for (long t = 0; t < durationMs; t += 1000) {
+                emit(4, 8f);
+            }
+            return this;
+        }
+
+        Trace walkTo(double targetNorth, double targetEast, double speedMps) {
+            int steps = (int) Math.round(Math.hypot(targetNorth - north, targetEast - east) / speedMps);
+            double startNorth = north;
+            double startEast = east;
+            for (int i = 1; i <= steps; i++) {
+                north = startNorth + (targetNorth - startNorth) * i / steps;
+                east = startEast + (targetEast - startEast) * i / steps;
+                emit(3, 6f);
+            }
+            return this;
+        }
+
+        /**
+         * Indoors: network-only positions with poor accuracy
+         */
+        Trace indoors(long durationMs) {
+            for (long t = 0; t < durationMs; t += 1000) {
+                emit(60, 150f);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Morning at home, a walk to the shop 400 m away and back, afternoon at home
+     */
+    private static List<GeofenceBreachReplay.Fix> dayTrace() {
+        return new Trace().stay(2 * HOUR).walkTo(0, 400, 1.2).stay(10 * MINUTE).indoors(20 * MINUTE)
+                .walkTo(0, 0, 1.2).stay(2 * HOUR).fixes;
+    }
+
+    @Test
+    public void gpxImportReadsTrackPoints() throws Exception {
+        String gpx = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<gpx version=\"1.1\" creator=\"test\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n" +
+                "  <trk><name>walk</name><trkseg>\n" +
+                "    <trkpt lat=\"40.7129\" lon=\"-74.0061\"><ele>10</ele><time>2025-01-01T00:00:05Z</time></trkpt>\n" +
+                "    <trkpt lat=\"40.7128\" lon=\"-74.0060\"><time>2025-01-01T00:00:00Z</time><hdop>1.2</hdop></trkpt>\n" +
+                "    <trkpt lat=\"40.7130\" lon=\"-74.0062\"></trkpt>\n" +
+                "    <trkpt lat=\"40.7131\" lon=\"-74.0063\"><time>2025-01-01T00:00:10.500Z</time></trkpt>\n" +
+                "  </trkseg></trk>\n" +
+                "</gpx>";
+
+        List<GeofenceBreachReplay.Fix> fixes =
+                GpxTrackReader.read(new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)));
+
+        // Untimed point skipped, the rest sorted by time
+        assertEquals(3, fixes.size());
+        assertEquals(START, fixes.get(0).timestamp);
+        assertEquals(40.7128, fixes.get(0).latitude, 1e-9);
+        assertEquals(6f, fixes.get(0).accuracy, 0.001f);
+        assertEquals(GpxTrackReader.DEFAULT_ACCURACY_METERS, fixes.get(1).accuracy, 0.001f);
+        assertEquals(START + 10500, fixes.get(2).timestamp);
+    }
+
+    @Test
+    public void replayedDayReachesTheDatabaseWithGeofenceDecisions() {
+        LocationReplayHarness harness = new LocationReplayHarness(new LocationReplayHarness.Config()
+                .interval(MINUTE, 10f).geofences(home()).network(300, 200));
+
+        LocationReplayHarness.Report report = harness.replay(dayTrace());
+        System.out.println("Location replay (day): " + report);
+
+        assertEquals(1, report.transitions(VirtualGeofenceManager.Transition.EXIT));
+        assertEquals(1, report.transitions(VirtualGeofenceManager.Transition.ENTER));
+        assertTrue(report.rejected(LocationFixFilter.Rejection.INACCURATE) > 0);
+        // Every upload lands in history exactly once, and the latest node is the last one
+        assertEquals(report.uploads, harness.getDatabase().historySize(LocationReplayHarness.PATIENT_ID));
+        assertNotNull(harness.getDatabase().latest(LocationReplayHarness.PATIENT_ID));
+        assertTrue(report.bytes > 0);
+        assertTrue(report.latencyPercentileMs(50) >= 300 && report.latencyPercentileMs(99) < 500);
+    }
+
+    @Test
+    public void offlineWindowDelaysUploadsWithoutLosingThem() {
+        long offlineFrom = START + 2 * HOUR;
+        LocationReplayHarness harness = new LocationReplayHarness(new LocationReplayHarness.Config()
+                .interval(MINUTE, 10f).geofences(home()).offline(offlineFrom, offlineFrom + 20 * MINUTE));
+
+        LocationReplayHarness.Report report = harness.replay(dayTrace());
+        System.out.println("Location replay (20 min offline): " + report);
+
+        assertEquals(report.uploads, harness.getDatabase().historySize(LocationReplayHarness.PATIENT_ID));
+        // Fixes taken while offline wait for the connection; the queue drains in batches
+        assertTrue(report.writes < report.uploads);
+        assertTrue(report.latencyPercentileMs(100) >= 15 * MINUTE);
+        assertTrue(report.latencyPercentileMs(50) < 1000);
+    }
+
+    /**
+     * Uploads, bytes and GPS deliveries per hour for a few base intervals over the same day,
+     * the numbers to compare before changing sampling defaults
+     */
+    @Test
+    public void benchmarkBaseIntervals() {
+        List<GeofenceBreachReplay.Fix> trace = dayTrace();
+        long[] intervals = {30 * 1000, MINUTE, 5 * MINUTE};
+        double previousUploadsPerHour = Double.MAX_VALUE;
+
+        long started = System.nanoTime();
+        for (long interval : intervals) {
+            LocationReplayHarness.Report report = LocationReplayHarness.run(new LocationReplayHarness.Config()
+                    .interval(interval, LocationConfig.SMALLEST_DISPLACEMENT_METERS).geofences(home()), trace);
+            System.out.println("Location replay (base " + interval / 1000 + "s): " + report);
+
+            assertTrue(report.uploadsPerHour() <= previousUploadsPerHour);
+            assertEquals(1, report.transitions(VirtualGeofenceManager.Transition.EXIT));
+            previousUploadsPerHour = report.uploadsPerHour();
+        }
+        long elapsedMs = (System.nanoTime() - started) / 1000000;
+        System.out.println("Location replay: " + intervals.length + " x " + trace.size() + " fixes in " + elapsedMs + "ms");
+    }
+}
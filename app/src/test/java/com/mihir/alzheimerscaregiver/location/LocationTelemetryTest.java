@@ -0,0 +1,143 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * Counter, histogram bucket and snapshot format tests for LocationTelemetry
+ */
+public class LocationTelemetryTest {
+
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private final LocationTelemetry telemetry = new LocationTelemetry();
+
+    @Test
+    public void countersAccumulateAndResetToZero() {
+        telemetry.increment(LocationTelemetry.Counter.UPLOAD_WRITES);
+        telemetry.increment(LocationTelemetry.Counter.UPLOAD_WRITES);
+        telemetry.add(LocationTelemetry.Counter.UPLOAD_BYTES, 1500);
+
+        LocationTelemetry.Snapshot snapshot = telemetry.snapshot();
+        assertEquals(2, snapshot.get(LocationTelemetry.Counter.UPLOAD_WRITES));
+        assertEquals(1500, snapshot.get(LocationTelemetry.Counter.UPLOAD_BYTES));
+        assertEquals(0, snapshot.get(LocationTelemetry.Counter.UPLOAD_FAILURES));
+
+        telemetry.reset();
+        assertEquals(0, telemetry.snapshot().get(LocationTelemetry.Counter.UPLOAD_WRITES));
+    }
+
+    @Test
+    public void rejectionsAreCountedUnderTheirDropCounter() {
+        telemetry.recordRejection(LocationFixFilter.Rejection.INACCURATE);
+        telemetry.recordRejection(LocationFixFilter.Rejection.INACCURATE);
+        telemetry.recordRejection(LocationFixFilter.Rejection.OUT_OF_ORDER);
+        telemetry.recordRejection(LocationFixFilter.Rejection.IMPLAUSIBLE_SPEED);
+        telemetry.recordRejection(null);
+
+        LocationTelemetry.Snapshot snapshot = telemetry.snapshot();
+        assertEquals(2, snapshot.get(LocationTelemetry.Counter.FIXES_DROPPED_INACCURATE));
+        assertEquals(1, snapshot.get(LocationTelemetry.Counter.FIXES_DROPPED_OUT_OF_ORDER));
+        assertEquals(1, snapshot.get(LocationTelemetry.Counter.FIXES_DROPPED_SPEED));
+        assertEquals(4, snapshot.fixesDropped());
+    }
+
+    @Test
+    public void bucketsAreExactBelowFourAndAtMostAQuarterWideAbove() {
+        for (long value = 0; value < LocationTelemetry.SUB_BUCKETS; value++) {
+            assertEquals(value, LocationTelemetry.bucketUpperBound(LocationTelemetry.bucketIndex(value)));
+        }
+        long[] values = {4, 5, 7, 8, 100, 1000, 65535, 65536, 1L << 40, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LocationTelemetry.bucketIndex(value);
+            long upper = LocationTelemetry.bucketUpperBound(index);
+            assertTrue(index < LocationTelemetry.BUCKET_COUNT);
+            assertTrue("upper bound " + upper + " below " + value, upper >= value);
+            assertTrue("bucket of " + value + " too wide", upper - value <= value / 4);
+            if (index > 0) {
+                assertTrue(LocationTelemetry.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void percentilesComeFromBucketsAndNeverExceedMax() {
+        for (long value = 1; value <= 100; value++) {
+            telemetry.record(LocationTelemetry.Histogram.UPLOAD_LATENCY_MS, value);
+        }
+
+        LocationTelemetry.HistogramSnapshot h =
+                telemetry.snapshot().get(LocationTelemetry.Histogram.UPLOAD_LATENCY_MS);
+        assertEquals(100, h.count);
+        assertEquals(50.5, h.mean(), 1e-9);
+        assertEquals(100, h.max);
+        assertEquals(50, h.percentile(50), 50 / 4.0);
+        assertEquals(90, h.percentile(90), 90 / 4.0);
+        assertEquals(100, h.percentile(99));
+        assertEquals(100, h.percentile(100));
+    }
+
+    @Test
+    public void negativeValuesCountAsZero() {
+        telemetry.record(LocationTelemetry.Histogram.RETRY_DELAY_MS, -50);
+
+        LocationTelemetry.HistogramSnapshot h = telemetry.snapshot().get(LocationTelemetry.Histogram.RETRY_DELAY_MS);
+        assertEquals(1, h.count);
+        assertEquals(0, h.max);
+        assertEquals(0, h.percentile(50));
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LocationTelemetry.HistogramSnapshot h = telemetry.snapshot().get(LocationTelemetry.Histogram.FIX_INTERVAL_MS);
+
+        assertEquals(0, h.count);
+        assertEquals(0, h.mean(), 0);
+        assertEquals(0, h.percentile(99));
+    }
+
+    @Test
+    public void logLineListsEveryCounterAndHistogramInOrder() {
+        telemetry.add(LocationTelemetry.Counter.FIXES_RECEIVED, 7);
+        telemetry.record(LocationTelemetry.Histogram.UPLOAD_BATCH_SIZE, 3);
+
+        String line = telemetry.snapshot(START).toLogLine();
+
+        assertTrue(line.startsWith("t=" + START + " since="));
+        assertTrue(line.contains(" fixes_received=7 "));
+        assertTrue(line.contains(" upload_batch_size=n:1,p50:3,p90:3,p99:3,max:3"));
+        int previous = -1;
+        for (LocationTelemetry.Counter counter : LocationTelemetry.Counter.values()) {
+            int position = line.indexOf(" " + counter.name().toLowerCase() + "=");
+            assertTrue(counter.name(), position > previous);
+            previous = position;
+        }
+    }
+
+    @Test
+    public void reportShowsRatesPerHour() {
+        LocationTelemetry.Snapshot snapshot = new LocationTelemetry().snapshot();
+        long[] counts = new long[LocationTelemetry.Counter.values().length];
+        counts[LocationTelemetry.Counter.UPLOAD_WRITES.ordinal()] = 30;
+        LocationTelemetry.HistogramSnapshot[] histograms =
+                new LocationTelemetry.HistogramSnapshot[LocationTelemetry.Histogram.values().length];
+        for (LocationTelemetry.Histogram histogram : LocationTelemetry.Histogram.values()) {
+            histograms[histogram.ordinal()] = snapshot.get(histogram);
+        }
+
+        LocationTelemetry.Snapshot twoHours = new LocationTelemetry.Snapshot(START, START + 2 * HOUR, counts, histograms);
+
+        assertEquals(2.0, twoHours.hours(), 1e-9);
+        assertTrue(twoHours.toReport().startsWith("Over 2.0 h"));
+        assertTrue(twoHours.toReport().contains("(15.0/h)"));
+    }
+
+    @Test
+    public void bytesAreFormattedInBinaryUnits() {
+        assertEquals("512 B", LocationTelemetry.Snapshot.formatBytes(512));
+        assertEquals("1.5 KB", LocationTelemetry.Snapshot.formatBytes(1536));
+        assertEquals("2.0 MB", LocationTelemetry.Snapshot.formatBytes(2 * 1024 * 1024));
+    }
+}
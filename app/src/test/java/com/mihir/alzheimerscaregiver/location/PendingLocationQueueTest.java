@@ -0,0 +1,229 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.LocationEntity;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Restart, torn-write and commit tests for PendingLocationQueue on real files
+ */
+public class PendingLocationQueueTest {
+
+    private static final String NAME = "pending_locations";
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static LocationEntity fix(int i) {
+        LocationEntity entity = new LocationEntity("patient-1", 40.7128 + i * 1e-4, -74.0060 - i * 1e-4, START + i * 1000L);
+        entity.accuracy = 5f + i;
+        entity.provider = "fused";
+        return entity;
+    }
+
+    private File dataFile() {
+        return new File(folder.getRoot(), NAME + ".bin");
+    }
+
+    private File headFile() {
+        return new File(folder.getRoot(), NAME + ".head");
+    }
+
+    private PendingLocationQueue open() throws IOException {
+        return new PendingLocationQueue(folder.getRoot(), NAME);
+    }
+
+    @Test
+    public void peekReturnsAppendedFixesWithoutRemovingThem() throws IOException {
+        PendingLocationQueue queue = open();
+        for (int i = 0; i < 3; i++) {
+            queue.append(fix(i));
+        }
+
+        PendingLocationQueue.Batch batch = queue.peek(10);
+        assertEquals(3, batch.entities.size());
+        LocationEntity first = batch.entities.get(0);
+        assertEquals("patient-1", first.patientId);
+        assertEquals(40.7128, first.latitude, 0);
+        assertEquals(-74.0060, first.longitude, 0);
+        assertEquals(START, first.timestamp);
+        assertEquals(5f, first.accuracy, 0);
+        assertEquals("fused", first.provider);
+        assertFalse(first.isMockLocation);
+
+        assertEquals(3, queue.size());
+        assertEquals(3, queue.peek(10).entities.size());
+    }
+
+    @Test
+    public void peekSortsBatchByTimestamp() throws IOException {
+        PendingLocationQueue queue = open();
+        queue.append(fix(2));
+        queue.append(fix(0));
+        queue.append(fix(1));
+
+        PendingLocationQueue.Batch batch = queue.peek(10);
+        assertEquals(START, batch.entities.get(0).timestamp);
+        assertEquals(START + 1000, batch.entities.get(1).timestamp);
+        assertEquals(START + 2000, batch.entities.get(2).timestamp);
+    }
+
+    @Test
+    public void reopenedQueueResumesAfterCommittedRecords() throws IOException {
+        PendingLocationQueue queue = open();
+        for (int i = 0; i < 5; i++) {
+            queue.append(fix(i));
+        }
+        queue.commit(queue.peek(2));
+        assertEquals(3, queue.size());
+
+        PendingLocationQueue reopened = open();
+        assertEquals(3, reopened.size());
+        PendingLocationQueue.Batch batch = reopened.peek(10);
+        assertEquals(3, batch.entities.size());
+        assertEquals(START + 2000, batch.entities.get(0).timestamp);
+        assertEquals(START + 4000, batch.entities.get(2).timestamp);
+    }
+
+    @Test
+    public void reopenedQueueKeepsUncommittedRecordsAfterCrashMidUpload() throws IOException {
+        PendingLocationQueue queue = open();
+        for (int i = 0; i < 4; i++) {
+            queue.append(fix(i));
+        }
+        // Peeked but never committed: the upload did not finish before the process died
+        queue.peek(4);
+
+        assertEquals(4, open().size());
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnOpen() throws IOException {
+        PendingLocationQueue queue = open();
+        for (int i = 0; i < 3; i++) {
+            queue.append(fix(i));
+        }
+        long validLength = dataFile().length();
+
+        // Length prefix promises 40 bytes but only 10 made it to disk
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(dataFile(), true))) {
+            out.writeShort(40);
+            out.write(new byte[10]);
+        }
+
+        PendingLocationQueue reopened = open();
+        assertEquals(3, reopened.size());
+        assertEquals(validLength, dataFile().length());
+
+        // New records land after the truncation point and read back normally
+        reopened.append(fix(3));
+        assertEquals(4, open().peek(10).entities.size());
+    }
+
+    @Test
+    public void tornLengthPrefixIsTruncatedOnOpen() throws IOException {
+        PendingLocationQueue queue = open();
+        queue.append(fix(0));
+        long validLength = dataFile().length();
+
+        try (FileOutputStream out = new FileOutputStream(dataFile(), true)) {
+            out.write(0);
+        }
+
+        assertEquals(1, open().size());
+        assertEquals(validLength, dataFile().length());
+    }
+
+    @Test
+    public void commitOfWholeQueueDeletesBothFiles() throws IOException {
+        PendingLocationQueue queue = open();
+        for (int i = 0; i < 3; i++) {
+            queue.append(fix(i));
+        }
+        queue.commit(queue.peek(2));
+        assertTrue(headFile().exists());
+
+        queue.commit(queue.peek(10));
+        assertTrue(queue.isEmpty());
+        assertFalse(dataFile().exists());
+        assertFalse(headFile().exists());
+        assertTrue(open().isEmpty());
+    }
+
+    @Test
+    public void queueIsUsableAfterReset() throws IOException {
+        PendingLocationQueue queue = open();
+        queue.append(fix(0));
+        queue.commit(queue.peek(10));
+
+        queue.append(fix(1));
+        PendingLocationQueue.Batch batch = open().peek(10);
+        assertEquals(1, batch.entities.size());
+        assertEquals(START + 1000, batch.entities.get(0).timestamp);
+    }
+
+    @Test
+    public void staleBatchCommitIsIgnored() throws IOException {
+        PendingLocationQueue queue = open();
+        for (int i = 0; i < 3; i++) {
+            queue.append(fix(i));
+        }
+        PendingLocationQueue.Batch first = queue.peek(1);
+        queue.commit(queue.peek(2));
+
+        queue.commit(first);
+        assertEquals(1, queue.size());
+        assertEquals(START + 2000, queue.peek(10).entities.get(0).timestamp);
+    }
+
+    @Test
+    public void headLeftWithoutDataIsDiscarded() throws IOException {
+        PendingLocationQueue queue = open();
+        for (int i = 0; i < 4; i++) {
+            queue.append(fix(i));
+        }
+        queue.commit(queue.peek(3));
+        assertTrue(headFile().exists());
+
+        // Crash after the data file went but before the head did
+        assertTrue(dataFile().delete());
+
+        PendingLocationQueue reopened = open();
+        assertTrue(reopened.isEmpty());
+        assertFalse(headFile().exists());
+
+        // The old head must not skip into the records of the new log
+        reopened.append(fix(10));
+        reopened.append(fix(11));
+        assertEquals(2, open().peek(10).entities.size());
+    }
+
+    @Test
+    public void headPastEndOfDataIsIgnored() throws IOException {
+        PendingLocationQueue queue = open();
+        for (int i = 0; i < 4; i++) {
+            queue.append(fix(i));
+        }
+        queue.commit(queue.peek(3));
+        long head = dataFile().length() - 1;
+
+        // A new, shorter log under an old head
+        assertTrue(dataFile().delete());
+        PendingLocationQueue fresh = new PendingLocationQueue(folder.getRoot(), "other");
+        fresh.append(fix(20));
+        assertTrue(new File(folder.getRoot(), "other.bin").renameTo(dataFile()));
+        assertTrue(dataFile().length() < head);
+
+        assertEquals(1, open().size());
+    }
+}
@@ -0,0 +1,124 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rotation and rolling-window tests for RollingTelemetryLog
+ */
+public class RollingTelemetryLogTest {
+
+    // "line-NN" plus the newline
+    private static final int LINE_BYTES = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String line(int i) {
+        return String.format("line-%02d", i);
+    }
+
+    private static List<String> lines(int from, int to) {
+        List<String> lines = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            lines.add(line(i));
+        }
+        return lines;
+    }
+
+    @Test
+    public void linesAreReadBackInOrder() throws IOException {
+        RollingTelemetryLog log = new RollingTelemetryLog(folder.getRoot(), "telemetry", 1024, 3);
+        for (int i = 0; i < 5; i++) {
+            log.append(line(i));
+        }
+
+        assertEquals(lines(0, 4), log.readAll());
+        assertEquals(1, log.getFiles().size());
+    }
+
+    @Test
+    public void fullFileRollsOverToNumberedFiles() throws IOException {
+        // Three lines per file
+        RollingTelemetryLog log = new RollingTelemetryLog(folder.getRoot(), "telemetry", 3 * LINE_BYTES, 3);
+        for (int i = 0; i < 7; i++) {
+            log.append(line(i));
+        }
+
+        List<File> files = log.getFiles();
+        assertEquals(Arrays.asList("telemetry.log", "telemetry.1.log", "telemetry.2.log"),
+                Arrays.asList(files.get(0).getName(), files.get(1).getName(), files.get(2).getName()));
+        assertEquals(LINE_BYTES, files.get(0).length());
+        assertEquals(3 * LINE_BYTES, files.get(1).length());
+        assertEquals(lines(0, 6), log.readAll());
+    }
+
+    @Test
+    public void oldestLinesDropOutOfTheWindow() throws IOException {
+        RollingTelemetryLog log = new RollingTelemetryLog(folder.getRoot(), "telemetry", 3 * LINE_BYTES, 3);
+        for (int i = 0; i < 20; i++) {
+            log.append(line(i));
+        }
+
+        // Two full files plus the two lines written since the last rotation
+        assertEquals(lines(12, 19), log.readAll());
+        assertEquals(3, folder.getRoot().listFiles().length);
+        long total = 0;
+        for (File file : log.getFiles()) {
+            assertTrue(file.length() <= 3 * LINE_BYTES);
+            total += file.length();
+        }
+        assertTrue(total <= 3 * 3 * LINE_BYTES);
+    }
+
+    @Test
+    public void lineLargerThanTheCapStillGetsItsOwnFile() throws IOException {
+        RollingTelemetryLog log = new RollingTelemetryLog(folder.getRoot(), "telemetry", 4, 2);
+        log.append(line(0));
+        log.append(line(1));
+
+        assertEquals(lines(0, 1), log.readAll());
+        assertEquals(2, log.getFiles().size());
+    }
+
+    @Test
+    public void reopenedLogContinuesTheSameFiles() throws IOException {
+        new RollingTelemetryLog(folder.getRoot(), "telemetry", 3 * LINE_BYTES, 2).append(line(0));
+        RollingTelemetryLog reopened = new RollingTelemetryLog(folder.getRoot(), "telemetry", 3 * LINE_BYTES, 2);
+        reopened.append(line(1));
+
+        assertEquals(lines(0, 1), reopened.readAll());
+    }
+
+    @Test
+    public void copyToWritesEveryRetainedLine() throws IOException {
+        RollingTelemetryLog log = new RollingTelemetryLog(folder.getRoot(), "telemetry", 3 * LINE_BYTES, 2);
+        for (int i = 0; i < 5; i++) {
+            log.append(line(i));
+        }
+        StringWriter writer = new StringWriter();
+
+        log.copyTo(writer);
+
+        assertEquals("line-00\nline-01\nline-02\nline-03\nline-04\n", writer.toString());
+    }
+
+    @Test
+    public void missingDirectoryIsCreated() throws IOException {
+        File directory = new File(folder.getRoot(), "nested/telemetry");
+
+        new RollingTelemetryLog(directory, "telemetry", 1024, 2).append(line(0));
+
+        assertTrue(new File(directory, "telemetry.log").exists());
+    }
+}
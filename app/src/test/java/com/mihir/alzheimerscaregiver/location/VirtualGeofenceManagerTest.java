@@ -0,0 +1,255 @@
+package com.mihir.alzheimerscaregiver.location;
+
+import static org.junit.Assert.*;
+
+import com.mihir.alzheimerscaregiver.entities.GeofenceDefinition;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic-track tests and a per-fix cost benchmark for VirtualGeofenceManager
+ */
+public class VirtualGeofenceManagerTest {
+
+    private static final double HOME_LAT = 40.712800;
+    private static final double HOME_LNG = -74.006000;
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long FIX_INTERVAL_MS = 10 * 1000;
+
+    private static GeofenceDefinition fence(String id, double lat, double lng, float radius) {
+        return new GeofenceDefinition(id, id, "", lat, lng, radius, "test");
+    }
+
+    /**
+     * Point offset from a center by meters north/east
+     */
+    private static double[] offset(double lat, double lng, double northMeters, double eastMeters) {
+        return new double[] {
+                lat + northMeters / GeoUtils.metersPerDegreeLat(),
+                lng + eastMeters / GeoUtils.metersPerDegreeLng(lat)
+        };
+    }
+
+    private static List<VirtualGeofenceManager.TransitionEvent> feed(VirtualGeofenceManager manager,
+                                                                      List<double[]> track, float accuracy) {
+        List<VirtualGeofenceManager.TransitionEvent> events = new ArrayList<>();
+        for (int i = 0; i < track.size(); i++) {
+            double[] point = track.get(i);
+            events.addAll(manager.onFix(point[0], point[1], accuracy, START + i * FIX_INTERVAL_MS));
+        }
+        return events;
+    }
+
+    @Test
+    public void firstFixOnlyEstablishesState() {
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(null);
+        manager.setGeofences(Collections.singletonList(fence("home", HOME_LAT, HOME_LNG, 150)));
+
+        List<VirtualGeofenceManager.TransitionEvent> events = manager.onFix(HOME_LAT, HOME_LNG, 10f, START);
+
+        assertTrue(events.isEmpty());
+        assertEquals(VirtualGeofenceManager.FenceState.INSIDE, manager.getState("home"));
+    }
+
+    @Test
+    public void jitterAlongEdgeRaisesSingleExit() {
+        // Long dwell time so only enter/exit are in play
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(60 * 60 * 1000, null);
+        manager.setGeofences(Collections.singletonList(fence("home", HOME_LAT, HOME_LNG, 150)));
+        Random random = new Random(7);
+
+        List<double[]> track = new ArrayList<>();
+        track.add(new double[] {HOME_LAT, HOME_LNG});
+        // Hover around the radius with +/-12 m of noise, well inside the 20 m band
+        for (int i = 0; i < 60; i++) {
+            track.add(offset(HOME_LAT, HOME_LNG, 150 + (random.nextDouble() - 0.5) * 24, 0));
+        }
+        // Then walk clearly away
+        for (int i = 1; i <= 10; i++) {
+            track.add(offset(HOME_LAT, HOME_LNG, 150 + i * 20, 0));
+        }
+
+        List<VirtualGeofenceManager.TransitionEvent> events = feed(manager, track, 20f);
+
+        assertEquals(1, events.size());
+        assertEquals(VirtualGeofenceManager.Transition.EXIT, events.get(0).transition);
+        assertTrue(events.get(0).distanceMeters >= 170);
+        assertEquals(VirtualGeofenceManager.FenceState.OUTSIDE, manager.getState("home"));
+    }
+
+    @Test
+    public void walkingBackInRaisesEnter() {
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(null);
+        manager.setGeofences(Collections.singletonList(fence("home", HOME_LAT, HOME_LNG, 150)));
+
+        List<double[]> track = new ArrayList<>();
+        for (int i = 0; i <= 40; i++) {
+            track.add(offset(HOME_LAT, HOME_LNG, 400 - i * 10, 0));
+        }
+        List<VirtualGeofenceManager.TransitionEvent> events = feed(manager, track, 10f);
+
+        assertEquals(1, events.size());
+        assertEquals(VirtualGeofenceManager.Transition.ENTER, events.get(0).transition);
+        assertTrue(events.get(0).distanceMeters <= 140);
+    }
+
+    @Test
+    public void dwellFiresOnceAfterDwellTime() {
+        List<VirtualGeofenceManager.TransitionEvent> delivered = new ArrayList<>();
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(60 * 1000, delivered::add);
+        manager.setGeofences(Collections.singletonList(fence("park", HOME_LAT, HOME_LNG, 100)));
+
+        List<double[]> track = new ArrayList<>();
+        track.add(offset(HOME_LAT, HOME_LNG, 300, 0));
+        for (int i = 0; i < 30; i++) {
+            track.add(offset(HOME_LAT, HOME_LNG, 5, 5));
+        }
+        List<VirtualGeofenceManager.TransitionEvent> events = feed(manager, track, 10f);
+
+        assertEquals(2, events.size());
+        assertEquals(VirtualGeofenceManager.Transition.ENTER, events.get(0).transition);
+        assertEquals(VirtualGeofenceManager.Transition.DWELL, events.get(1).transition);
+        assertEquals(events.get(0).timestamp + 60 * 1000, events.get(1).timestamp);
+        assertEquals(events, delivered);
+    }
+
+    @Test
+    public void inaccurateFixesAreIgnored() {
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(null);
+        manager.setGeofences(Collections.singletonList(fence("home", HOME_LAT, HOME_LNG, 150)));
+        manager.onFix(HOME_LAT, HOME_LNG, 10f, START);
+
+        double[] far = offset(HOME_LAT, HOME_LNG, 1000, 0);
+        assertTrue(manager.onFix(far[0], far[1], 500f, START + FIX_INTERVAL_MS).isEmpty());
+        assertEquals(VirtualGeofenceManager.FenceState.INSIDE, manager.getState("home"));
+    }
+
+    @Test
+    public void leavingAllIndexedCellsStillExits() {
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(null);
+        manager.setGeofences(Collections.singletonList(fence("home", HOME_LAT, HOME_LNG, 150)));
+        manager.onFix(HOME_LAT, HOME_LNG, 10f, START);
+
+        // A jump of several kilometres lands in a cell that does not index the fence
+        double[] far = offset(HOME_LAT, HOME_LNG, 5000, 5000);
+        List<VirtualGeofenceManager.TransitionEvent> events = manager.onFix(far[0], far[1], 10f, START + FIX_INTERVAL_MS);
+
+        assertEquals(1, events.size());
+        assertEquals(VirtualGeofenceManager.Transition.EXIT, events.get(0).transition);
+    }
+
+    @Test
+    public void updatingFencesKeepsStateOfUnchangedOnes() {
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(null);
+        GeofenceDefinition home = fence("home", HOME_LAT, HOME_LNG, 150);
+        manager.setGeofences(Collections.singletonList(home));
+        manager.onFix(HOME_LAT, HOME_LNG, 10f, START);
+
+        List<GeofenceDefinition> updated = new ArrayList<>();
+        updated.add(fence("home", HOME_LAT, HOME_LNG, 150));
+        updated.add(fence("shop", HOME_LAT + 0.01, HOME_LNG, 100));
+        manager.setGeofences(updated);
+
+        assertEquals(VirtualGeofenceManager.FenceState.INSIDE, manager.getState("home"));
+        assertEquals(VirtualGeofenceManager.FenceState.UNKNOWN, manager.getState("shop"));
+        assertTrue(manager.onFix(HOME_LAT, HOME_LNG, 10f, START + FIX_INTERVAL_MS).isEmpty());
+        assertEquals(VirtualGeofenceManager.FenceState.OUTSIDE, manager.getState("shop"));
+    }
+
+    /**
+     * 1,000 fences scattered over a ~20 km square around the city
+     */
+    private static List<GeofenceDefinition> cityFences(Random random) {
+        List<GeofenceDefinition> fences = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            double[] center = offset(HOME_LAT, HOME_LNG,
+                    (random.nextDouble() - 0.5) * 20000, (random.nextDouble() - 0.5) * 20000);
+            fences.add(fence("f" + i, center[0], center[1],
+                    GeofenceDefinition.MIN_RADIUS + random.nextFloat() * (GeofenceDefinition.MAX_RADIUS - GeofenceDefinition.MIN_RADIUS)));
+        }
+        return fences;
+    }
+
+    @Test
+    public void indexAgreesWithBruteForce() {
+        Random random = new Random(11);
+        List<GeofenceDefinition> fences = cityFences(random);
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(null);
+        manager.setGeofences(fences);
+
+        // Random walk across the area; after each fix every fence clearly inside or
+        // outside must agree with a direct distance check
+        double lat = HOME_LAT;
+        double lng = HOME_LNG;
+        for (int i = 0; i < 5000; i++) {
+            double[] next = offset(lat, lng, (random.nextDouble() - 0.5) * 200, (random.nextDouble() - 0.5) * 200);
+            lat = next[0];
+            lng = next[1];
+            manager.onFix(lat, lng, 10f, START + i * FIX_INTERVAL_MS);
+
+            for (GeofenceDefinition fence : fences) {
+                double distance = GeoUtils.distanceMeters(lat, lng, fence.lat, fence.lng);
+                VirtualGeofenceManager.FenceState state = manager.getState(fence.id);
+                if (distance <= fence.radius - 10) {
+                    assertEquals(fence.id, VirtualGeofenceManager.FenceState.INSIDE, state);
+                } else if (distance >= fence.radius + 10) {
+                    assertEquals(fence.id, VirtualGeofenceManager.FenceState.OUTSIDE, state);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkEvaluationCostPerFixWithThousandFences() {
+        Random random = new Random(3);
+        List<GeofenceDefinition> fences = cityFences(random);
+        VirtualGeofenceManager manager = new VirtualGeofenceManager(null);
+        manager.setGeofences(fences);
+
+        int fixes = 200000;
+        double[][] track = new double[fixes][];
+        double lat = HOME_LAT;
+        double lng = HOME_LNG;
+        for (int i = 0; i < fixes; i++) {
+            double[] next = offset(lat, lng, (random.nextDouble() - 0.5) * 60, (random.nextDouble() - 0.5) * 60);
+            lat = next[0];
+            lng = next[1];
+            track[i] = next;
+        }
+
+        // Warm up the JIT before timing
+        for (int i = 0; i < 20000; i++) {
+            manager.onFix(track[i][0], track[i][1], 10f, START + i * FIX_INTERVAL_MS);
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 20000; i < fixes; i++) {
+            manager.onFix(track[i][0], track[i][1], 10f, START + i * FIX_INTERVAL_MS);
+        }
+        double indexedNs = (System.nanoTime() - begin) / (double) (fixes - 20000);
+
+        // Baseline: distance to every fence on every fix
+        double sink = 0;
+        begin = System.nanoTime();
+        for (int i = 20000; i < fixes; i++) {
+            for (GeofenceDefinition fence : fences) {
+                sink += GeoUtils.distanceMeters(track[i][0], track[i][1], fence.lat, fence.lng);
+            }
+        }
+        double bruteForceNs = (System.nanoTime() - begin) / (double) (fixes - 20000);
+
+        System.out.println(String.format(java.util.Locale.US,
+                "VirtualGeofenceManager: %d fences, %d cells, %.1f candidates/fix, %.0f ns/fix indexed vs %.0f ns/fix brute force (%.0f)",
+                manager.getGeofenceCount(), manager.getIndexedCellCount(), manager.getAverageCandidatesPerFix(),
+                indexedNs, bruteForceNs, sink % 10));
+
+        assertEquals(1000, manager.getGeofenceCount());
+        assertTrue("Too many candidates per fix", manager.getAverageCandidatesPerFix() < 20);
+        assertTrue("Indexed evaluation should beat brute force", indexedNs < bruteForceNs);
+    }
+}
@@ -0,0 +1,171 @@
+package com.mihir.alzheimerscaregiver.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Duplicate-window, burst and window-flush tests for AlertCoalescer on a fake clock
+ */
+public class AlertCoalescerTest {
+
+    private static final long START = 1735689600000L; // 2025-01-01 00:00:00 UTC
+    private static final long MINUTE = 60 * 1000;
+    private static final String FENCE = "patient-1|Home";
+
+    private static final class Summary {
+        final String key;
+        final String latest;
+        final int count;
+        final long windowMs;
+
+        Summary(String key, String latest, int count, long windowMs) {
+            this.key = key;
+            this.latest = latest;
+            this.count = count;
+            this.windowMs = windowMs;
+        }
+    }
+
+    private static final class Task {
+        final Runnable runnable;
+        final long dueMs;
+
+        Task(Runnable runnable, long dueMs) {
+            this.runnable = runnable;
+            this.dueMs = dueMs;
+        }
+    }
+
+    private long now = START;
+    private final List<Task> tasks = new ArrayList<>();
+    private final List<Summary> summaries = new ArrayList<>();
+
+    private final AlertCoalescer<String> coalescer = new AlertCoalescer<>(
+            AlertCoalescer.DEFAULT_WINDOW_MS,
+            AlertCoalescer.DEFAULT_DUPLICATE_WINDOW_MS,
+            () -> now,
+            (task, delayMs) -> tasks.add(new Task(task, now + delayMs)),
+            (key, latest, count, startMs, endMs) -> summaries.add(new Summary(key, latest, count, endMs - startMs)));
+
+    /**
+     * Move the clock forward, running scheduled tasks as they fall due
+     */
+    private void advance(long ms) {
+        now += ms;
+        Iterator<Task> iterator = tasks.iterator();
+        List<Task> due = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Task task = iterator.next();
+            if (task.dueMs <= now) {
+                due.add(task);
+                iterator.remove();
+            }
+        }
+        for (Task task : due) {
+            task.runnable.run();
+        }
+    }
+
+    @Test
+    public void platformExitMinutesAfterVirtualExitIsDuplicate() {
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit(FENCE, "EXIT", "high", "virtual"));
+        advance(4 * MINUTE);
+
+        assertEquals(AlertCoalescer.Decision.DUPLICATE, coalescer.submit(FENCE, "EXIT", "high", "platform"));
+        assertEquals(1, coalescer.getSuppressedCount(FENCE + "|EXIT"));
+    }
+
+    @Test
+    public void exitAfterDuplicateWindowIsSent() {
+        coalescer.submit(FENCE, "EXIT", "high", "first");
+        advance(AlertCoalescer.DEFAULT_DUPLICATE_WINDOW_MS);
+
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit(FENCE, "EXIT", "high", "second"));
+    }
+
+    @Test
+    public void exitAfterReEntryIsSentWithinDuplicateWindow() {
+        coalescer.submit(FENCE, "EXIT", "high", "first exit");
+        advance(MINUTE);
+        coalescer.submit(FENCE, "ENTER", "low", "back home");
+        advance(MINUTE);
+
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit(FENCE, "EXIT", "high", "second exit"));
+        assertEquals(0, coalescer.getSuppressedCount(FENCE + "|EXIT"));
+    }
+
+    @Test
+    public void otherFenceIsNotADuplicate() {
+        coalescer.submit(FENCE, "EXIT", "high", "home");
+
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit("patient-1|Park", "EXIT", "high", "park"));
+    }
+
+    @Test
+    public void burstCollapsesIntoOneSummaryWhenWindowCloses() {
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit(FENCE, "ENTER", "medium", "event 0"));
+        for (int i = 1; i <= 4; i++) {
+            advance(30 * 1000);
+            assertEquals(AlertCoalescer.Decision.SUPPRESSED, coalescer.submit(FENCE, "ENTER", "medium", "event " + i));
+        }
+        assertTrue(summaries.isEmpty());
+
+        advance(AlertCoalescer.DEFAULT_WINDOW_MS);
+
+        assertEquals(1, summaries.size());
+        Summary summary = summaries.get(0);
+        assertEquals(FENCE + "|ENTER", summary.key);
+        assertEquals("event 4", summary.latest);
+        assertEquals(4, summary.count);
+        assertEquals(AlertCoalescer.DEFAULT_WINDOW_MS, summary.windowMs);
+        assertEquals(4, coalescer.getTotalSuppressedCount());
+    }
+
+    @Test
+    public void windowWithoutSuppressedEventsClosesSilently() {
+        coalescer.submit(FENCE, "ENTER", "medium", "only");
+        advance(AlertCoalescer.DEFAULT_WINDOW_MS);
+
+        assertTrue(summaries.isEmpty());
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit(FENCE, "ENTER", "medium", "next"));
+    }
+
+    @Test
+    public void eventAfterFlushOpensNewWindow() {
+        coalescer.submit(FENCE, "ENTER", "medium", "a");
+        coalescer.submit(FENCE, "ENTER", "medium", "b");
+        advance(AlertCoalescer.DEFAULT_WINDOW_MS);
+        assertEquals(1, summaries.size());
+
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit(FENCE, "ENTER", "medium", "c"));
+        assertEquals(AlertCoalescer.Decision.SUPPRESSED, coalescer.submit(FENCE, "ENTER", "medium", "d"));
+        advance(AlertCoalescer.DEFAULT_WINDOW_MS);
+
+        assertEquals(2, summaries.size());
+        assertEquals("d", summaries.get(1).latest);
+        assertEquals(1, summaries.get(1).count);
+    }
+
+    @Test
+    public void highSeverityBypassesOpenWindow() {
+        coalescer.submit(FENCE, "EXIT", "medium", "medium exit");
+
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit(FENCE, "EXIT", "high", "high exit"));
+    }
+
+    @Test
+    public void keysWithoutTransitionCoalesceSeparately() {
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit("patient-1|general|Hi", "medium", "a"));
+        assertEquals(AlertCoalescer.Decision.SUPPRESSED, coalescer.submit("patient-1|general|Hi", "medium", "b"));
+        assertEquals(AlertCoalescer.Decision.SEND, coalescer.submit("patient-1|general|Other", "medium", "c"));
+        advance(AlertCoalescer.DEFAULT_WINDOW_MS);
+
+        assertEquals(1, summaries.size());
+        assertEquals("patient-1|general|Hi", summaries.get(0).key);
+    }
+}
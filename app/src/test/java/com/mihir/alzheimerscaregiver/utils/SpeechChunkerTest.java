@@ -0,0 +1,125 @@
+package com.mihir.alzheimerscaregiver.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sentence splitting tests for SpeechChunker over streamed deltas
+ */
+public class SpeechChunkerTest {
+
+    private final SpeechChunker chunker = new SpeechChunker();
+
+    /**
+     * Stream text in fixed-size deltas, then flush
+     */
+    private List<String> stream(String text, int deltaSize) {
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < text.length(); i += deltaSize) {
+            chunks.addAll(chunker.append(text.substring(i, Math.min(text.length(), i + deltaSize))));
+        }
+        String rest = chunker.flush();
+        if (rest != null) {
+            chunks.add(rest);
+        }
+        return chunks;
+    }
+
+    @Test
+    public void sentenceSplitAcrossDeltasIsReleasedWhole() {
+        String text = "Good morning, Margaret. It is a sunny day today. Shall we go for a walk?";
+
+        List<String> expected = Arrays.asList("Good morning, Margaret.", "It is a sunny day today.",
+                "Shall we go for a walk?");
+        for (int deltaSize : new int[]{1, 3, 7, text.length()}) {
+            assertEquals("delta size " + deltaSize, expected, stream(text, deltaSize));
+        }
+    }
+
+    @Test
+    public void sentenceIsHeldUntilTheNextCharacterArrives() {
+        assertTrue(chunker.append("Good morning, Margaret.").isEmpty());
+
+        assertEquals(Collections.singletonList("Good morning, Margaret."), chunker.append(" It"));
+    }
+
+    @Test
+    public void shortSentencesAreJoinedWithTheNext() {
+        assertEquals(Arrays.asList("Oh! Yes. That sounds lovely.", "Let us do that."),
+                stream("Oh! Yes. That sounds lovely. Let us do that.", 4));
+    }
+
+    @Test
+    public void abbreviationsAndInitialsDoNotEndASentence() {
+        assertEquals(Arrays.asList("Your appointment with Dr. Smith is at ten.", "Bring your card."),
+                stream("Your appointment with Dr. Smith is at ten. Bring your card.", 5));
+        assertEquals(Arrays.asList("Your daughter, J. R. Patel, called this morning.", "She will visit soon."),
+                stream("Your daughter, J. R. Patel, called this morning. She will visit soon.", 5));
+        assertEquals(Arrays.asList("Eat something light, e.g. soup or toast.", "Then rest a while."),
+                stream("Eat something light, e.g. soup or toast. Then rest a while.", 5));
+    }
+
+    @Test
+    public void pronounIDoesEndASentence() {
+        assertEquals(Arrays.asList("You like gardening and so do I.", "Shall we plant some roses?"),
+                stream("You like gardening and so do I. Shall we plant some roses?", 6));
+    }
+
+    @Test
+    public void decimalsAndEllipsesStayWhole() {
+        assertEquals(Arrays.asList("Your temperature is 36.6 degrees today.", "Well... that is normal."),
+                stream("Your temperature is 36.6 degrees today. Well... that is normal.", 2));
+    }
+
+    @Test
+    public void dandaAndLineBreaksEndSentences() {
+        assertEquals(Arrays.asList("आज मौसम बहुत अच्छा है।", "चलिए बाहर टहलने चलते हैं।"),
+                stream("आज मौसम बहुत अच्छा है। चलिए बाहर टहलने चलते हैं।", 3));
+        assertEquals(Arrays.asList("First take your tablets", "then have breakfast"),
+                stream("First take your tablets\nthen have breakfast", 4));
+    }
+
+    @Test
+    public void runOnSentenceIsBrokenAtACommaBeforeTheLimit() {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < SpeechChunker.MAX_CHUNK_CHARS + 50) {
+            text.append("and then we walked along the river, ");
+        }
+
+        List<String> chunks = stream(text.toString(), 10);
+
+        assertTrue(chunks.size() > 1);
+        assertTrue(chunks.get(0).length() <= SpeechChunker.MAX_CHUNK_CHARS);
+        assertTrue(chunks.get(0).endsWith(","));
+    }
+
+    @Test
+    public void flushReturnsTheTrailingFragmentOnce() {
+        assertEquals(Collections.singletonList("The kettle is on the stove."),
+                chunker.append("The kettle is on the stove. Careful, it is"));
+
+        assertEquals("Careful, it is", chunker.flush());
+        assertNull(chunker.flush());
+    }
+
+    @Test
+    public void flushOfWhitespaceIsNull() {
+        chunker.append("   \n ");
+
+        assertNull(chunker.flush());
+    }
+
+    @Test
+    public void resetDropsBufferedText() {
+        chunker.append("Half a sent");
+        chunker.reset();
+
+        assertNull(chunker.flush());
+    }
+}
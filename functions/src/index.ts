@@ -8,11 +8,22 @@
  */
 
 import {setGlobalOptions} from "firebase-functions";
-import {onRequest} from "firebase-functions/https";
+import {onSchedule} from "firebase-functions/scheduler";
+import {defineString} from "firebase-functions/params";
 import * as logger from "firebase-functions/logger";
-
-// Start writing functions
-// https://firebase.google.com/docs/functions/typescript
+import {initializeApp} from "firebase-admin/app";
+import {getDatabase} from "firebase-admin/database";
+import type {Database} from "firebase-admin/database";
+import {
+  Fence,
+  LocationSample,
+  MAX_HISTORY_AGE_MS,
+  TrackSegment,
+  buildDailyRollup,
+  dateKey,
+  decodeSegment,
+  previousDateKey,
+} from "./rollup";
 
 // For cost control, you can set the maximum number of containers that can be
 // running at the same time. This helps mitigate the impact of unexpected
@@ -24,9 +35,215 @@ import * as logger from "firebase-functions/logger";
 // functions should each use functions.runWith({ maxInstances: 10 }) instead.
 // In the v1 API, each function can only serve one request per container, so
 // this will be the maximum concurrent request count.
-setGlobalOptions({ maxInstances: 10 });
+setGlobalOptions({maxInstances: 10});
+
+initializeApp();
+
+// Day keys of /locationHistory are written in the patient's local time; the
+// rollup has to use the same zone to pick the right "yesterday".
+const rollupTimeZone = defineString("ROLLUP_TIME_ZONE", {default: "UTC"});
+
+const HISTORY_PATH = "locationHistory";
+const TRACKS_PATH = "locationTracks";
+const HISTORY_COUNTS_PATH = "locationHistoryCounts";
+const ROLLUPS_PATH = "locationRollups";
+const LINKS_PATH = "patientCaretakerLinks";
+
+// Patients processed in parallel by one run
+const PATIENT_CONCURRENCY = 10;
+
+/**
+ * Read one day of raw points plus compressed segments for a patient.
+ * @param {Database} db Realtime Database
+ * @param {string} patientId Patient uid
+ * @param {string} date Day key (YYYY-MM-DD)
+ * @return {Promise<LocationSample[]>} Points in no particular order
+ */
+async function readDay(
+  db: Database, patientId: string, date: string,
+): Promise<LocationSample[]> {
+  const [raw, tracks] = await Promise.all([
+    db.ref(`${HISTORY_PATH}/${patientId}/${date}`).get(),
+    db.ref(`${TRACKS_PATH}/${patientId}/${date}`).get(),
+  ]);
+
+  const points: LocationSample[] = [];
+  raw.forEach((child) => {
+    const value = child.val();
+    if (value && typeof value.latitude === "number" &&
+        typeof value.longitude === "number" &&
+        typeof value.timestamp === "number") {
+      points.push({
+        latitude: value.latitude,
+        longitude: value.longitude,
+        timestamp: value.timestamp,
+      });
+    }
+  });
+  tracks.forEach((child) => {
+    points.push(...decodeSegment(child.val() as TrackSegment));
+  });
+  return points;
+}
+
+/**
+ * Read the patient's geofences (same node the apps use).
+ * @param {Database} db Realtime Database
+ * @param {string} patientId Patient uid
+ * @return {Promise<Fence[]>} Fences with valid coordinates
+ */
+async function readFences(db: Database, patientId: string): Promise<Fence[]> {
+  const snapshot = await db.ref(`patients/${patientId}/geofences`).get();
+  const fences: Fence[] = [];
+  snapshot.forEach((child) => {
+    const value = child.val();
+    if (value && typeof value.lat === "number" &&
+        typeof value.lng === "number" && typeof value.radius === "number") {
+      fences.push({
+        lat: value.lat,
+        lng: value.lng,
+        radius: value.radius,
+        type: value.type,
+        active: value.active,
+      });
+    }
+  });
+  return fences;
+}
+
+/**
+ * Compact one patient day into /locationRollups/{patientId}/{date}.
+ * Re-running overwrites the rollup, so retries are safe.
+ * @param {Database} db Realtime Database
+ * @param {string} patientId Patient uid
+ * @param {string} date Day key (YYYY-MM-DD)
+ * @param {number} now Generation time
+ * @return {Promise<boolean>} False when the day had no points
+ */
+export async function rollupPatientDay(
+  db: Database, patientId: string, date: string, now: number,
+): Promise<boolean> {
+  const [points, fences] = await Promise.all([
+    readDay(db, patientId, date),
+    readFences(db, patientId),
+  ]);
+  if (points.length === 0) {
+    return false;
+  }
+
+  const rollup = buildDailyRollup(date, points, fences, now);
+  await db.ref(`${ROLLUPS_PATH}/${patientId}/${date}`).set(rollup);
+  logger.debug("Rolled up location history", {
+    patientId,
+    date,
+    points: rollup.pointCount,
+    trackPoints: rollup.track ? rollup.track.count : 0,
+  });
+  return true;
+}
+
+/**
+ * Delete raw history, segments and counters for days older than the cutoff.
+ * Days that were never rolled up (e.g. the function was not deployed yet)
+ * are rolled up first so nothing is lost.
+ * @param {Database} db Realtime Database
+ * @param {string} patientId Patient uid
+ * @param {string} cutoffDate Oldest day key to keep (YYYY-MM-DD)
+ * @param {number} now Generation time
+ * @return {Promise<string[]>} Day keys that were pruned
+ */
+export async function pruneExpiredHistory(
+  db: Database, patientId: string, cutoffDate: string, now: number,
+): Promise<string[]> {
+  // Day keys sort lexicographically in date order
+  const [history, tracks, rollups] = await Promise.all([
+    db.ref(`${HISTORY_PATH}/${patientId}`)
+      .orderByKey().endAt(cutoffDate).get(),
+    db.ref(`${TRACKS_PATH}/${patientId}`)
+      .orderByKey().endAt(cutoffDate).get(),
+    db.ref(`${ROLLUPS_PATH}/${patientId}`)
+      .orderByKey().endAt(cutoffDate).get(),
+  ]);
+
+  const expired = new Set<string>();
+  const collect = (child: {key: string | null}) => {
+    if (child.key && child.key < cutoffDate) {
+      expired.add(child.key);
+    }
+  };
+  history.forEach(collect);
+  tracks.forEach(collect);
+  if (expired.size === 0) {
+    return [];
+  }
+
+  const updates: {[path: string]: null} = {};
+  for (const date of [...expired].sort()) {
+    if (!rollups.child(date).exists()) {
+      await rollupPatientDay(db, patientId, date, now);
+    }
+    updates[`${HISTORY_PATH}/${patientId}/${date}`] = null;
+    updates[`${TRACKS_PATH}/${patientId}/${date}`] = null;
+    updates[`${HISTORY_COUNTS_PATH}/${patientId}/${date}`] = null;
+  }
+  await db.ref().update(updates);
+  return [...expired].sort();
+}
+
+/**
+ * Roll up the previous local day and prune expired history for every
+ * linked patient.
+ * @param {Database} db Realtime Database
+ * @param {number} now Current time
+ * @param {string} timeZone IANA time zone of the day keys
+ * @return {Promise<{patients: number, rolledUp: number, pruned: number,
+ *   failed: number}>} Run totals
+ */
+export async function runDailyRollup(
+  db: Database, now: number, timeZone: string,
+): Promise<{patients: number, rolledUp: number, pruned: number,
+    failed: number}> {
+  const date = previousDateKey(dateKey(now, timeZone));
+  const cutoffDate = dateKey(now - MAX_HISTORY_AGE_MS, timeZone);
+
+  const links = await db.ref(LINKS_PATH).get();
+  const patientIds: string[] = [];
+  links.forEach((child) => {
+    if (child.key) {
+      patientIds.push(child.key);
+    }
+  });
+
+  const totals = {patients: patientIds.length, rolledUp: 0, pruned: 0,
+    failed: 0};
+  for (let i = 0; i < patientIds.length; i += PATIENT_CONCURRENCY) {
+    const batch = patientIds.slice(i, i + PATIENT_CONCURRENCY);
+    await Promise.all(batch.map(async (patientId) => {
+      try {
+        if (await rollupPatientDay(db, patientId, date, now)) {
+          totals.rolledUp++;
+        }
+        const pruned =
+          await pruneExpiredHistory(db, patientId, cutoffDate, now);
+        totals.pruned += pruned.length;
+      } catch (error) {
+        // One bad patient must not stop the rest of the run
+        totals.failed++;
+        logger.error("Daily rollup failed", {patientId, date, error});
+      }
+    }));
+  }
+
+  logger.info("Daily location rollup finished", {date, cutoffDate, ...totals});
+  return totals;
+}
 
-// export const helloWorld = onRequest((request, response) => {
-//   logger.info("Hello logs!", {structuredData: true});
-//   response.send("Hello from Firebase!");
-// });
+// Shortly after local midnight, once the previous day is complete
+export const dailyLocationRollup = onSchedule({
+  schedule: "30 0 * * *",
+  timeZone: rollupTimeZone,
+  timeoutSeconds: 540,
+  retryCount: 1,
+}, async () => {
+  await runDailyRollup(getDatabase(), Date.now(), rollupTimeZone.value());
+});
@@ -0,0 +1,476 @@
+/**
+ * Pure daily-rollup logic for location history.
+ *
+ * Nothing in here talks to Firebase, so it can be unit tested directly and
+ * reused by the scheduled function in index.ts. Algorithms and formats mirror
+ * the Android apps:
+ * - segments use the CompressedTrackSegment encoding (encoded-polyline style
+ *   zig-zag varints, coordinates scaled by 1e6), so the rollup track can be
+ *   decoded with CompressedTrackSegment.fromFirebase()
+ * - stay points use the same thresholds as the caretaker MovementAnalyzer
+ */
+
+export const ROLLUP_FORMAT_VERSION = 1;
+export const TRACK_FORMAT_VERSION = 1;
+const COORDINATE_SCALE = 1e6;
+const EARTH_RADIUS_METERS = 6371008.8;
+
+/** Keep in sync with LocationConfig.MAX_HISTORY_AGE_MS (30 days). */
+export const MAX_HISTORY_AGE_MS = 30 * 24 * 60 * 60 * 1000;
+/** Douglas-Peucker tolerance for the rollup track. */
+export const SIMPLIFY_TOLERANCE_METERS = 10;
+/** Same as MovementAnalyzer.STAY_RADIUS_METERS. */
+export const STAY_RADIUS_METERS = 100;
+/** Same as MovementAnalyzer.STAY_MIN_DURATION_MS (10 minutes). */
+export const STAY_MIN_DURATION_MS = 10 * 60 * 1000;
+/** Steps longer than this (tracking stopped) do not count as time. */
+export const MAX_STEP_GAP_MS = 60 * 60 * 1000;
+
+export interface LocationSample {
+  latitude: number;
+  longitude: number;
+  timestamp: number;
+}
+
+export interface Fence {
+  lat: number;
+  lng: number;
+  radius: number;
+  type?: string;
+  active?: boolean;
+}
+
+/** Raw /locationTracks segment as stored by LocationUploader. */
+export interface TrackSegment {
+  version: number;
+  startTime: number;
+  endTime: number;
+  count: number;
+  coords: string;
+  times: string;
+  accuracies?: string;
+  keep?: string;
+}
+
+export interface StayPoint {
+  lat: number;
+  lng: number;
+  arrivalTime: number;
+  departureTime: number;
+  pointCount: number;
+}
+
+export interface DailyRollup {
+  version: number;
+  date: string;
+  generatedAt: number;
+  pointCount: number;
+  firstTimestamp: number;
+  lastTimestamp: number;
+  distanceMeters: number;
+  outOfFenceMinutes: number;
+  stayPoints: StayPoint[];
+  track: TrackSegment | null;
+}
+
+/**
+ * Great-circle distance in meters.
+ * @param {number} lat1 First latitude
+ * @param {number} lng1 First longitude
+ * @param {number} lat2 Second latitude
+ * @param {number} lng2 Second longitude
+ * @return {number} Distance in meters
+ */
+export function distanceMeters(
+  lat1: number, lng1: number, lat2: number, lng2: number,
+): number {
+  const toRad = Math.PI / 180;
+  const dLat = (lat2 - lat1) * toRad;
+  const dLng = (lng2 - lng1) * toRad;
+  const a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+    Math.cos(lat1 * toRad) * Math.cos(lat2 * toRad) *
+    Math.sin(dLng / 2) * Math.sin(dLng / 2);
+  return 2 * EARTH_RADIUS_METERS *
+    Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+}
+
+/**
+ * Append a signed value as zig-zag 5-bit printable chunks.
+ * Values stay well inside 2^53, so plain number arithmetic is exact.
+ * @param {string[]} out Output chunks
+ * @param {number} value Integer to write
+ */
+function writeSigned(out: string[], value: number): void {
+  let zigzag = value < 0 ? -2 * value - 1 : 2 * value;
+  while (zigzag >= 0x20) {
+    out.push(String.fromCharCode((0x20 | (zigzag % 0x20)) + 63));
+    zigzag = Math.floor(zigzag / 0x20);
+  }
+  out.push(String.fromCharCode(zigzag + 63));
+}
+
+/**
+ * Read one signed value written by writeSigned.
+ * @param {string} input Encoded string
+ * @param {number[]} cursor Single-element read position, advanced in place
+ * @return {number} Decoded integer
+ */
+function readSigned(input: string, cursor: number[]): number {
+  let result = 0;
+  let factor = 1;
+  let chunk: number;
+  do {
+    chunk = input.charCodeAt(cursor[0]++) - 63;
+    result += (chunk & 0x1f) * factor;
+    factor *= 0x20;
+  } while (chunk >= 0x20);
+  return result % 2 === 1 ? -(result + 1) / 2 : result / 2;
+}
+
+/**
+ * Decode every point of a compressed segment.
+ * @param {TrackSegment} segment Segment read from /locationTracks
+ * @return {LocationSample[]} Points in time order
+ */
+export function decodeSegment(segment: TrackSegment): LocationSample[] {
+  const points: LocationSample[] = [];
+  if (segment.version !== TRACK_FORMAT_VERSION || !segment.coords ||
+      !segment.times || segment.count <= 0) {
+    return points;
+  }
+
+  const coordCursor = [0];
+  const timeCursor = [0];
+  let lat = 0;
+  let lng = 0;
+  let time = segment.startTime;
+  for (let i = 0; i < segment.count; i++) {
+    lat += readSigned(segment.coords, coordCursor);
+    lng += readSigned(segment.coords, coordCursor);
+    time += readSigned(segment.times, timeCursor);
+    points.push({
+      latitude: lat / COORDINATE_SCALE,
+      longitude: lng / COORDINATE_SCALE,
+      timestamp: time,
+    });
+  }
+  return points;
+}
+
+/**
+ * Encode points in the CompressedTrackSegment format.
+ * @param {LocationSample[]} points Points in time order (at least one)
+ * @return {TrackSegment} Segment with empty accuracies and keep lists
+ */
+export function encodeSegment(points: LocationSample[]): TrackSegment {
+  const coords: string[] = [];
+  const times: string[] = [];
+  let previousLat = 0;
+  let previousLng = 0;
+  let previousTime = points[0].timestamp;
+  for (const point of points) {
+    const lat = Math.round(point.latitude * COORDINATE_SCALE);
+    const lng = Math.round(point.longitude * COORDINATE_SCALE);
+    writeSigned(coords, lat - previousLat);
+    writeSigned(coords, lng - previousLng);
+    writeSigned(times, point.timestamp - previousTime);
+    previousLat = lat;
+    previousLng = lng;
+    previousTime = point.timestamp;
+  }
+  return {
+    version: TRACK_FORMAT_VERSION,
+    startTime: points[0].timestamp,
+    endTime: points[points.length - 1].timestamp,
+    count: points.length,
+    coords: coords.join(""),
+    times: times.join(""),
+    accuracies: "",
+    keep: "",
+  };
+}
+
+/**
+ * Douglas-Peucker simplification on a local flat projection.
+ * @param {LocationSample[]} points Points in time order
+ * @param {number} toleranceMeters Maximum deviation of dropped points
+ * @return {number[]} Sorted indices of kept points (first and last included)
+ */
+export function simplify(
+  points: LocationSample[], toleranceMeters: number,
+): number[] {
+  const n = points.length;
+  if (n <= 2) {
+    return points.map((_, i) => i);
+  }
+
+  const metersPerDegree = Math.PI / 180 * EARTH_RADIUS_METERS;
+  const cosLat = Math.cos(points[0].latitude * Math.PI / 180);
+  const xs = points.map((p) =>
+    (p.longitude - points[0].longitude) * metersPerDegree * cosLat);
+  const ys = points.map((p) =>
+    (p.latitude - points[0].latitude) * metersPerDegree);
+
+  const kept = new Array<boolean>(n).fill(false);
+  kept[0] = true;
+  kept[n - 1] = true;
+
+  // Explicit stack so long days cannot overflow the call stack
+  const stack: number[] = [0, n - 1];
+  while (stack.length > 0) {
+    const last = stack.pop() as number;
+    const first = stack.pop() as number;
+    let maxDistance = -1;
+    let maxIndex = -1;
+    for (let i = first + 1; i < last; i++) {
+      const distance = segmentDistance(
+        xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+      if (distance > maxDistance) {
+        maxDistance = distance;
+        maxIndex = i;
+      }
+    }
+    if (maxIndex >= 0 && maxDistance > toleranceMeters) {
+      kept[maxIndex] = true;
+      stack.push(first, maxIndex, maxIndex, last);
+    }
+  }
+
+  const indices: number[] = [];
+  kept.forEach((k, i) => {
+    if (k) {
+      indices.push(i);
+    }
+  });
+  return indices;
+}
+
+/**
+ * Distance from a point to a segment in the projected plane.
+ * @param {number} px Point x
+ * @param {number} py Point y
+ * @param {number} ax Segment start x
+ * @param {number} ay Segment start y
+ * @param {number} bx Segment end x
+ * @param {number} by Segment end y
+ * @return {number} Distance in meters
+ */
+function segmentDistance(
+  px: number, py: number, ax: number, ay: number, bx: number, by: number,
+): number {
+  const dx = bx - ax;
+  const dy = by - ay;
+  const lengthSquared = dx * dx + dy * dy;
+  if (lengthSquared === 0) {
+    return Math.hypot(px - ax, py - ay);
+  }
+  const t = Math.max(0, Math.min(1,
+    ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+  return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+}
+
+/**
+ * Stay points by time/distance thresholds with a sliding anchor: points
+ * within STAY_RADIUS_METERS of the anchor for STAY_MIN_DURATION_MS open a
+ * stay, which is then held while points remain within the radius of its
+ * centroid (the same rules as the caretaker MovementAnalyzer).
+ * @param {LocationSample[]} points Points in time order
+ * @return {number[][]} [firstIndex, lastIndex] of each stay, in order
+ */
+export function findStayRanges(points: LocationSample[]): number[][] {
+  const ranges: number[][] = [];
+  let anchor = 0;
+  let i = 1;
+  while (anchor < points.length) {
+    // Grow the window while points stay near the anchor
+    while (i < points.length && distanceMeters(
+      points[anchor].latitude, points[anchor].longitude,
+      points[i].latitude, points[i].longitude) <= STAY_RADIUS_METERS &&
+      points[i].timestamp - points[anchor].timestamp < STAY_MIN_DURATION_MS) {
+      i++;
+    }
+
+    const reachedDuration = i < points.length &&
+      points[i].timestamp - points[anchor].timestamp >= STAY_MIN_DURATION_MS &&
+      distanceMeters(points[anchor].latitude, points[anchor].longitude,
+        points[i].latitude, points[i].longitude) <= STAY_RADIUS_METERS;
+    if (!reachedDuration) {
+      anchor++;
+      i = Math.max(i, anchor + 1);
+      continue;
+    }
+
+    // Open stay: hold it around the running centroid
+    let latSum = 0;
+    let lngSum = 0;
+    for (let k = anchor; k <= i; k++) {
+      latSum += points[k].latitude;
+      lngSum += points[k].longitude;
+    }
+    let count = i - anchor + 1;
+    let end = i;
+    while (end + 1 < points.length && distanceMeters(
+      latSum / count, lngSum / count,
+      points[end + 1].latitude, points[end + 1].longitude,
+    ) <= STAY_RADIUS_METERS) {
+      end++;
+      latSum += points[end].latitude;
+      lngSum += points[end].longitude;
+      count++;
+    }
+
+    ranges.push([anchor, end]);
+    anchor = end + 1;
+    i = anchor + 1;
+  }
+  return ranges;
+}
+
+/**
+ * Whether a fence counts as a safe zone (active SAFE_ZONE or untyped).
+ * @param {Fence} fence Geofence definition
+ * @return {boolean} True for safe zones
+ */
+function isSafeZone(fence: Fence): boolean {
+  return fence.active !== false &&
+    (!fence.type || fence.type.toUpperCase() === "SAFE_ZONE");
+}
+
+/**
+ * Minutes spent outside every safe zone; zero when there are none.
+ * Each step's time is attributed to where it started.
+ * @param {LocationSample[]} points Points in time order
+ * @param {Fence[]} fences Patient geofences
+ * @return {number} Whole minutes outside
+ */
+export function outOfFenceMinutes(
+  points: LocationSample[], fences: Fence[],
+): number {
+  const safeZones = fences.filter(isSafeZone);
+  if (safeZones.length === 0) {
+    return 0;
+  }
+
+  let outsideMs = 0;
+  for (let i = 0; i + 1 < points.length; i++) {
+    const dt = points[i + 1].timestamp - points[i].timestamp;
+    if (dt > MAX_STEP_GAP_MS) {
+      continue;
+    }
+    const inside = safeZones.some((zone) => distanceMeters(
+      zone.lat, zone.lng, points[i].latitude, points[i].longitude,
+    ) <= zone.radius);
+    if (!inside) {
+      outsideMs += dt;
+    }
+  }
+  return Math.round(outsideMs / 60000);
+}
+
+/**
+ * Build the rollup for one day of points.
+ * @param {string} date Day key (YYYY-MM-DD)
+ * @param {LocationSample[]} points The day's points, any order
+ * @param {Fence[]} fences Patient geofences
+ * @param {number} now Generation time
+ * @return {DailyRollup} Rollup ready to be written
+ */
+export function buildDailyRollup(
+  date: string, points: LocationSample[], fences: Fence[], now: number,
+): DailyRollup {
+  const sorted = dedupeByTimestamp(points);
+
+  const stayRanges = findStayRanges(sorted);
+  const stayPoints: StayPoint[] = stayRanges.map(([first, last]) => {
+    let latSum = 0;
+    let lngSum = 0;
+    for (let k = first; k <= last; k++) {
+      latSum += sorted[k].latitude;
+      lngSum += sorted[k].longitude;
+    }
+    const count = last - first + 1;
+    return {
+      lat: latSum / count,
+      lng: lngSum / count,
+      arrivalTime: sorted[first].timestamp,
+      departureTime: sorted[last].timestamp,
+      pointCount: count,
+    };
+  });
+
+  // Distance over the track with each stay collapsed to its centroid, so GPS
+  // jitter while the patient is stationary does not add up
+  let distance = 0;
+  let previous: {lat: number, lng: number} | null = null;
+  let stay = 0;
+  for (let i = 0; i < sorted.length; i++) {
+    let current: {lat: number, lng: number};
+    if (stay < stayRanges.length && i >= stayRanges[stay][0]) {
+      current = {lat: stayPoints[stay].lat, lng: stayPoints[stay].lng};
+      i = stayRanges[stay][1];
+      stay++;
+    } else {
+      current = {lat: sorted[i].latitude, lng: sorted[i].longitude};
+    }
+    if (previous) {
+      distance += distanceMeters(
+        previous.lat, previous.lng, current.lat, current.lng);
+    }
+    previous = current;
+  }
+
+  const simplified = simplify(sorted, SIMPLIFY_TOLERANCE_METERS)
+    .map((index) => sorted[index]);
+
+  return {
+    version: ROLLUP_FORMAT_VERSION,
+    date,
+    generatedAt: now,
+    pointCount: sorted.length,
+    firstTimestamp: sorted.length > 0 ? sorted[0].timestamp : 0,
+    lastTimestamp: sorted.length > 0 ? sorted[sorted.length - 1].timestamp : 0,
+    distanceMeters: Math.round(distance),
+    outOfFenceMinutes: outOfFenceMinutes(sorted, fences),
+    stayPoints,
+    track: simplified.length > 0 ? encodeSegment(simplified) : null,
+  };
+}
+
+/**
+ * Sort by time and drop repeated timestamps (a point can exist both raw and
+ * compressed while compaction is in flight).
+ * @param {LocationSample[]} points Points in any order
+ * @return {LocationSample[]} Sorted unique points
+ */
+function dedupeByTimestamp(points: LocationSample[]): LocationSample[] {
+  const sorted = [...points].sort((a, b) => a.timestamp - b.timestamp);
+  return sorted.filter((point, i) =>
+    i === 0 || point.timestamp !== sorted[i - 1].timestamp);
+}
+
+/**
+ * Day key (YYYY-MM-DD) of a timestamp in a time zone.
+ * @param {number} timestamp Epoch milliseconds
+ * @param {string} timeZone IANA time zone, e.g. "Asia/Kolkata"
+ * @return {string} Day key matching the apps' date nodes
+ */
+export function dateKey(timestamp: number, timeZone: string): string {
+  // en-CA formats dates as YYYY-MM-DD
+  return new Intl.DateTimeFormat("en-CA", {
+    timeZone,
+    year: "numeric",
+    month: "2-digit",
+    day: "2-digit",
+  }).format(new Date(timestamp));
+}
+
+/**
+ * The day key before another one.
+ * @param {string} key Day key (YYYY-MM-DD)
+ * @return {string} Previous day key
+ */
+export function previousDateKey(key: string): string {
+  const [year, month, day] = key.split("-").map(Number);
+  return new Date(Date.UTC(year, month - 1, day - 1))
+    .toISOString().substring(0, 10);
+}
@@ -0,0 +1,100 @@
+import {after, before, describe, it} from "node:test";
+import * as assert from "node:assert/strict";
+import {getDatabase} from "firebase-admin/database";
+import type {Database} from "firebase-admin/database";
+import {encodeSegment} from "../rollup";
+import {runDailyRollup} from "../index";
+
+// Runs against the Realtime Database emulator only:
+//   npm run test:emulator
+const emulatorHost = process.env.FIREBASE_DATABASE_EMULATOR_HOST;
+
+const PATIENT = "patient-1";
+const NOW = Date.UTC(2025, 1, 15, 0, 30);
+const YESTERDAY = "2025-02-14";
+const EXPIRED_DAY = "2025-01-10";
+// MAX_HISTORY_AGE_MS (30 days) before NOW
+const OLDEST_KEPT_DAY = "2025-01-16";
+const MINUTE = 60 * 1000;
+
+/**
+ * One fix a minute walking north from the fence center.
+ * @param {number} start First timestamp
+ * @param {number} count Number of fixes
+ * @return {object[]} Raw /locationHistory entries
+ */
+function walk(start: number, count: number) {
+  return Array.from({length: count}, (_, i) => ({
+    latitude: 40.7128 + i * 0.0005,
+    longitude: -74.006,
+    timestamp: start + i * MINUTE,
+  }));
+}
+
+describe("dailyLocationRollup (emulator)", {skip: !emulatorHost}, () => {
+  let db: Database;
+
+  before(async () => {
+    db = getDatabase();
+    const yesterdayStart = Date.UTC(2025, 1, 14, 9);
+    const raw = walk(yesterdayStart, 20);
+    const compacted = walk(yesterdayStart - 20 * MINUTE, 20)
+      .map((point) => ({...point, longitude: point.longitude - 0.01}));
+
+    await db.ref().set({
+      patientCaretakerLinks: {[PATIENT]: "caretaker-1"},
+      patients: {[PATIENT]: {geofences: {home: {
+        lat: 40.7128, lng: -74.006, radius: 200,
+        type: "SAFE_ZONE", active: true,
+      }}}},
+      locationHistory: {[PATIENT]: {
+        [YESTERDAY]: raw.reduce((entries, point, i) =>
+          ({...entries, [`p${i}`]: point}), {}),
+        [EXPIRED_DAY]: {p0: walk(Date.UTC(2025, 0, 10, 9), 1)[0]},
+        [OLDEST_KEPT_DAY]: {p0: walk(Date.UTC(2025, 0, 16, 9), 1)[0]},
+      }},
+      locationTracks: {[PATIENT]: {
+        [YESTERDAY]: {s0: encodeSegment(compacted)},
+      }},
+      locationHistoryCounts: {[PATIENT]: {
+        [YESTERDAY]: 20, [EXPIRED_DAY]: 1, [OLDEST_KEPT_DAY]: 1,
+      }},
+    });
+  });
+
+  after(async () => {
+    await db.ref().set(null);
+  });
+
+  it("rolls up yesterday and prunes expired days", async () => {
+    const totals = await runDailyRollup(db, NOW, "UTC");
+
+    assert.deepEqual(totals, {patients: 1, rolledUp: 1, pruned: 1, failed: 0});
+
+    const rollup = (await db.ref(
+      `locationRollups/${PATIENT}/${YESTERDAY}`).get()).val();
+    assert.equal(rollup.pointCount, 40);
+    assert.equal(rollup.firstTimestamp, Date.UTC(2025, 1, 14, 8, 40));
+    assert.ok(rollup.distanceMeters > 0);
+    assert.ok(rollup.outOfFenceMinutes > 0);
+    assert.ok(rollup.track.count >= 2);
+
+    // The expired day was never rolled up, so it is compacted before pruning
+    const expired = await db.ref(
+      `locationRollups/${PATIENT}/${EXPIRED_DAY}`).get();
+    assert.equal(expired.val().pointCount, 1);
+
+    for (const path of ["locationHistory", "locationHistoryCounts"]) {
+      const days = (await db.ref(`${path}/${PATIENT}`).get()).val();
+      assert.equal(days[EXPIRED_DAY], undefined);
+      assert.ok(days[OLDEST_KEPT_DAY]);
+      assert.ok(days[YESTERDAY]);
+    }
+  });
+
+  it("is idempotent", async () => {
+    const totals = await runDailyRollup(db, NOW, "UTC");
+
+    assert.deepEqual(totals, {patients: 1, rolledUp: 1, pruned: 0, failed: 0});
+  });
+});
@@ -0,0 +1,252 @@
+import {describe, it} from "node:test";
+import * as assert from "node:assert/strict";
+import {
+  Fence,
+  LocationSample,
+  buildDailyRollup,
+  dateKey,
+  decodeSegment,
+  distanceMeters,
+  encodeSegment,
+  outOfFenceMinutes,
+  previousDateKey,
+  simplify,
+} from "../rollup";
+
+const HOME_LAT = 40.7128;
+const HOME_LNG = -74.006;
+const METERS_PER_DEGREE_LAT = 111320;
+const DAY_START = Date.UTC(2025, 0, 1);
+const MINUTE = 60 * 1000;
+const HOUR = 60 * MINUTE;
+const FIX_INTERVAL_MS = 30 * 1000;
+
+/**
+ * Synthetic track of stays and straight walks, one fix every 30 s
+ * (same shape as the caretaker MovementAnalyzerTest).
+ */
+class TrackBuilder {
+  readonly points: LocationSample[] = [];
+  private north = 0;
+  private east = 0;
+  private seed = 42;
+
+  /**
+   * @param {number} time Start time
+   */
+  constructor(private time: number) {}
+
+  /**
+   * Stay in place with a few meters of jitter.
+   * @param {number} durationMs How long
+   * @return {TrackBuilder} this
+   */
+  stay(durationMs: number): TrackBuilder {
+    const end = this.time + durationMs;
+    while (this.time + FIX_INTERVAL_MS <= end) {
+      this.time += FIX_INTERVAL_MS;
+      this.emit(this.north + this.jitter(), this.east + this.jitter());
+    }
+    return this;
+  }
+
+  /**
+   * Walk in a straight line.
+   * @param {number} north Target meters north of home
+   * @param {number} east Target meters east of home
+   * @param {number} speed Meters per second
+   * @return {TrackBuilder} this
+   */
+  walkTo(north: number, east: number, speed: number): TrackBuilder {
+    const distance = Math.hypot(north - this.north, east - this.east);
+    const steps = Math.max(1,
+      Math.round(distance / (speed * FIX_INTERVAL_MS / 1000)));
+    const startNorth = this.north;
+    const startEast = this.east;
+    for (let i = 1; i <= steps; i++) {
+      this.north = startNorth + (north - startNorth) * i / steps;
+      this.east = startEast + (east - startEast) * i / steps;
+      this.time += FIX_INTERVAL_MS;
+      this.emit(this.north, this.east);
+    }
+    return this;
+  }
+
+  /**
+   * Deterministic jitter in [-5, 5) meters.
+   * @return {number} Offset in meters
+   */
+  private jitter(): number {
+    this.seed = (this.seed * 1103515245 + 12345) % 2147483648;
+    return this.seed / 2147483648 * 10 - 5;
+  }
+
+  /**
+   * @param {number} north Meters north of home
+   * @param {number} east Meters east of home
+   */
+  private emit(north: number, east: number): void {
+    this.points.push({
+      latitude: HOME_LAT + north / METERS_PER_DEGREE_LAT,
+      longitude: HOME_LNG + east /
+        (METERS_PER_DEGREE_LAT * Math.cos(HOME_LAT * Math.PI / 180)),
+      timestamp: this.time,
+    });
+  }
+}
+
+const home: Fence = {
+  lat: HOME_LAT, lng: HOME_LNG, radius: 150, type: "SAFE_ZONE", active: true,
+};
+
+describe("track segments", () => {
+  it("decodes a segment written by CompressedTrackSegment.encode", () => {
+    const points = decodeSegment({
+      version: 1,
+      startTime: 1735689600000,
+      endTime: 1735689660000,
+      count: 3,
+      coords: "_e|slA~}}clCoKg^g^g^",
+      times: "?_ry@_ry@",
+      accuracies: "IEB",
+      keep: "?AA",
+    });
+
+    assert.equal(points.length, 3);
+    assert.deepEqual(points[0],
+      {latitude: 40.7128, longitude: -74.006, timestamp: 1735689600000});
+    assert.deepEqual(points[2],
+      {latitude: 40.7135, longitude: -74.005, timestamp: 1735689660000});
+  });
+
+  it("round-trips through encodeSegment", () => {
+    const points = new TrackBuilder(DAY_START).stay(HOUR)
+      .walkTo(1000, -300, 1.2).points;
+
+    const decoded = decodeSegment(encodeSegment(points));
+
+    assert.equal(decoded.length, points.length);
+    decoded.forEach((point, i) => {
+      assert.equal(point.timestamp, points[i].timestamp);
+      assert.ok(Math.abs(point.latitude - points[i].latitude) < 1e-6);
+      assert.ok(Math.abs(point.longitude - points[i].longitude) < 1e-6);
+    });
+  });
+
+  it("ignores unknown format versions", () => {
+    const segment = encodeSegment([
+      {latitude: HOME_LAT, longitude: HOME_LNG, timestamp: DAY_START},
+    ]);
+    assert.equal(decodeSegment({...segment, version: 2}).length, 0);
+  });
+});
+
+describe("simplify", () => {
+  it("drops collinear points and keeps the ends", () => {
+    const points = new TrackBuilder(DAY_START).walkTo(1000, 0, 1.2).points;
+
+    const kept = simplify(points, 10);
+
+    assert.deepEqual(kept, [0, points.length - 1]);
+  });
+
+  it("keeps corners", () => {
+    const points = new TrackBuilder(DAY_START)
+      .walkTo(500, 0, 1.2).walkTo(500, 500, 1.2).points;
+
+    const kept = simplify(points, 10);
+
+    assert.equal(kept.length, 3);
+  });
+});
+
+describe("buildDailyRollup", () => {
+  it("summarizes an outing", () => {
+    const points = new TrackBuilder(DAY_START + 9 * HOUR)
+      .stay(HOUR)
+      .walkTo(1000, 0, 1.2)
+      .stay(2 * HOUR)
+      .walkTo(0, 0, 1.2)
+      .stay(HOUR)
+      .points;
+
+    const rollup = buildDailyRollup("2025-01-01", points, [home], DAY_START);
+
+    assert.equal(rollup.pointCount, points.length);
+    assert.equal(rollup.firstTimestamp, points[0].timestamp);
+    assert.equal(rollup.lastTimestamp, points[points.length - 1].timestamp);
+    assert.equal(rollup.stayPoints.length, 3);
+    // Two 1 km legs; jitter inside stays is not distance
+    assert.ok(Math.abs(rollup.distanceMeters - 2000) < 150,
+      `distance ${rollup.distanceMeters}`);
+    // Two hours at the park plus most of both ~14 minute walks
+    assert.ok(rollup.outOfFenceMinutes >= 140 &&
+      rollup.outOfFenceMinutes <= 150, `outside ${rollup.outOfFenceMinutes}`);
+
+    const park = rollup.stayPoints[1];
+    assert.ok(Math.abs(
+      distanceMeters(HOME_LAT, HOME_LNG, park.lat, park.lng) - 1000) < 50);
+    assert.ok(park.departureTime - park.arrivalTime >= 115 * MINUTE);
+
+    assert.ok(rollup.track);
+    assert.ok(rollup.track.count < points.length / 10,
+      `track kept ${rollup.track.count} of ${points.length}`);
+    assert.equal(decodeSegment(rollup.track).length, rollup.track.count);
+  });
+
+  it("sorts input and drops duplicate timestamps", () => {
+    const points = new TrackBuilder(DAY_START).walkTo(300, 0, 1.2).points;
+    const shuffled = [...points].reverse().concat(points.slice(0, 5));
+
+    const rollup = buildDailyRollup("2025-01-01", shuffled, [], DAY_START);
+
+    assert.equal(rollup.pointCount, points.length);
+    assert.equal(rollup.firstTimestamp, points[0].timestamp);
+  });
+
+  it("reports an empty day", () => {
+    const rollup = buildDailyRollup("2025-01-01", [], [home], DAY_START);
+
+    assert.equal(rollup.pointCount, 0);
+    assert.equal(rollup.distanceMeters, 0);
+    assert.equal(rollup.track, null);
+  });
+});
+
+describe("outOfFenceMinutes", () => {
+  const outing = new TrackBuilder(DAY_START + 9 * HOUR)
+    .stay(HOUR).walkTo(1000, 0, 1.2).stay(HOUR).points;
+
+  it("is zero without safe zones", () => {
+    assert.equal(outOfFenceMinutes(outing, []), 0);
+    assert.equal(outOfFenceMinutes(outing, [{...home, active: false}]), 0);
+    assert.equal(outOfFenceMinutes(outing, [{...home, type: "DANGER_ZONE"}]),
+      0);
+  });
+
+  it("does not count gaps where tracking stopped", () => {
+    const away = {latitude: HOME_LAT + 0.02, longitude: HOME_LNG};
+    const points = [
+      {...away, timestamp: DAY_START},
+      {...away, timestamp: DAY_START + 10 * MINUTE},
+      {...away, timestamp: DAY_START + 5 * HOUR},
+    ];
+
+    assert.equal(outOfFenceMinutes(points, [home]), 10);
+  });
+});
+
+describe("day keys", () => {
+  it("uses the given time zone", () => {
+    // 2025-01-01 20:00 UTC is already the 2nd in Kolkata
+    const time = DAY_START + 20 * HOUR;
+    assert.equal(dateKey(time, "UTC"), "2025-01-01");
+    assert.equal(dateKey(time, "Asia/Kolkata"), "2025-01-02");
+  });
+
+  it("steps back across month and year boundaries", () => {
+    assert.equal(previousDateKey("2025-03-01"), "2025-02-28");
+    assert.equal(previousDateKey("2024-03-01"), "2024-02-29");
+    assert.equal(previousDateKey("2025-01-01"), "2024-12-31");
+  });
+});